@@ -0,0 +1,131 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * WeightedDockerEndpoint.java
+ * Copyright (C) 2023 University of Waikato, Hamilton, New Zealand
+ */
+
+package adams.core.base;
+
+import adams.core.Utils;
+
+/**
+ * Docker daemon endpoint (as used by DOCKER_HOST) with its capacity, i.e.,
+ * the number of concurrent invocations it can handle.<br>
+ * Format: endpoint[=capacity]<br>
+ * E.g.: tcp://box1:2375=4
+ *
+ * @author fracpete (fracpete at waikato dot ac dot nz)
+ */
+public class WeightedDockerEndpoint
+  extends AbstractBaseString {
+
+  private static final long serialVersionUID = 4960011338287150837L;
+
+  /** the separator between endpoint and capacity. */
+  public static final String SEPARATOR = "=";
+
+  /**
+   * Initializes with the local daemon and capacity 1.
+   */
+  public WeightedDockerEndpoint() {
+    this("unix:///var/run/docker.sock" + SEPARATOR + "1");
+  }
+
+  /**
+   * Initializes with the specified value.
+   *
+   * @param s		the string to parse
+   */
+  public WeightedDockerEndpoint(String s) {
+    super(s);
+  }
+
+  /**
+   * Initializes with the specified endpoint and capacity.
+   *
+   * @param endpoint	the endpoint
+   * @param capacity	the capacity
+   */
+  public WeightedDockerEndpoint(String endpoint, int capacity) {
+    this(endpoint + SEPARATOR + capacity);
+  }
+
+  /**
+   * Checks whether the string value is a valid presentation for this class.
+   *
+   * @param value	the string value to check
+   * @return		true if valid
+   */
+  @Override
+  public boolean isValid(String value) {
+    int		pos;
+    String	capacity;
+
+    value = value.trim();
+    if (value.isEmpty())
+      return false;
+    if (!value.contains("://"))
+      return false;
+
+    pos = value.lastIndexOf(SEPARATOR);
+    if (pos == -1)
+      return true;
+
+    capacity = value.substring(pos + 1).trim();
+    return Utils.isInteger(capacity) && (Integer.parseInt(capacity) > 0);
+  }
+
+  /**
+   * Returns the endpoint.
+   *
+   * @return		the endpoint
+   */
+  public String endpointValue() {
+    String	value;
+
+    value = getValue().trim();
+    if (value.contains(SEPARATOR))
+      return value.substring(0, value.lastIndexOf(SEPARATOR)).trim();
+    else
+      return value;
+  }
+
+  /**
+   * Returns the capacity.
+   *
+   * @return		the capacity
+   */
+  public int capacityValue() {
+    String	value;
+
+    value = getValue().trim();
+    if (value.contains(SEPARATOR))
+      return Integer.parseInt(value.substring(value.lastIndexOf(SEPARATOR) + 1).trim());
+    else
+      return 1;
+  }
+
+  /**
+   * Returns a tool tip for the GUI editor (ignored if null is returned).
+   *
+   * @return		the tool tip
+   */
+  @Override
+  public String getTipText() {
+    return "Docker daemon endpoint with capacity (= concurrent invocations), format: endpoint[" + SEPARATOR + "capacity], e.g.: tcp://box1:2375" + SEPARATOR + "4";
+  }
+}
@@ -0,0 +1,324 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * AdaptiveLimiter.java
+ * Copyright (C) 2023 University of Waikato, Hamilton, New Zealand
+ */
+
+package adams.core.command.docker;
+
+import adams.core.logging.LoggingObject;
+
+/**
+ * Limits the number of concurrent invocations and adapts the limit (AIMD)
+ * based on the latency and throughput of the completed invocations.
+ * <br>
+ * The limit gets re-evaluated once per round, i.e., after as many
+ * invocations completed as the limit allows to run concurrently:
+ * <ul>
+ *   <li>decrease (multiplicative) if the smoothed latency exceeds the baseline
+ *   latency by more than the tolerance or if the throughput dropped after the
+ *   last increase</li>
+ *   <li>increase if the limit was reached during the round (i.e., the limit
+ *   was the bottleneck); doubles the limit until the first decrease
+ *   (slow start), afterwards increases it by one (additive)</li>
+ * </ul>
+ * Latencies get normalized by the input size (if available), so that a mix
+ * of small and large inputs does not get mistaken for congestion.
+ * Failed invocations do not contribute to the measurements.
+ *
+ * @author fracpete (fracpete at waikato dot ac dot nz)
+ */
+public class AdaptiveLimiter
+  extends LoggingObject {
+
+  private static final long serialVersionUID = 1962850290740745553L;
+
+  /** the default latency tolerance (ratio of smoothed latency to baseline). */
+  public static final double DEFAULT_TOLERANCE = 2.0;
+
+  /** the default factor for decreasing the limit. */
+  public static final double DEFAULT_DECREASE = 0.75;
+
+  /** the smoothing factor for the latency. */
+  protected static final double ALPHA = 0.2;
+
+  /** the rate with which the baseline drifts towards the smoothed latency. */
+  protected static final double BASELINE_DRIFT = 0.01;
+
+  /** the minimum limit. */
+  protected int m_MinLimit;
+
+  /** the maximum limit. */
+  protected int m_MaxLimit;
+
+  /** the tolerated ratio between smoothed and baseline latency. */
+  protected double m_Tolerance;
+
+  /** the factor for decreasing the limit. */
+  protected double m_Decrease;
+
+  /** the current limit. */
+  protected int m_Limit;
+
+  /** the number of invocations in flight. */
+  protected int m_InFlight;
+
+  /** whether still in slow start. */
+  protected boolean m_SlowStart;
+
+  /** the baseline latency (normalized). */
+  protected double m_Baseline;
+
+  /** the smoothed latency (normalized). */
+  protected double m_Latency;
+
+  /** the start of the current round (msec). */
+  protected long m_RoundStart;
+
+  /** the number of completed invocations in the current round. */
+  protected int m_RoundCompleted;
+
+  /** the total input size of the completed invocations in the current round, -1 if not available. */
+  protected long m_RoundSize;
+
+  /** whether the limit was reached in the current round. */
+  protected boolean m_RoundSaturated;
+
+  /** the throughput of the last round (input size or invocations per second). */
+  protected double m_Throughput;
+
+  /** whether the limit got increased after the last round. */
+  protected boolean m_Increased;
+
+  /** the total number of completed invocations. */
+  protected long m_Completed;
+
+  /**
+   * Initializes the limiter with default tolerance and decrease factor.
+   *
+   * @param minLimit	the minimum limit
+   * @param maxLimit	the maximum limit
+   */
+  public AdaptiveLimiter(int minLimit, int maxLimit) {
+    this(minLimit, maxLimit, DEFAULT_TOLERANCE, DEFAULT_DECREASE);
+  }
+
+  /**
+   * Initializes the limiter. Starts with the minimum limit.
+   *
+   * @param minLimit	the minimum limit
+   * @param maxLimit	the maximum limit
+   * @param tolerance	the tolerated ratio between smoothed and baseline latency (&gt; 1)
+   * @param decrease	the factor for decreasing the limit (0-1)
+   */
+  public AdaptiveLimiter(int minLimit, int maxLimit, double tolerance, double decrease) {
+    if (minLimit < 1)
+      throw new IllegalArgumentException("Minimum limit must be at least 1, provided: " + minLimit);
+    if (maxLimit < minLimit)
+      throw new IllegalArgumentException("Maximum limit must be at least the minimum limit (" + minLimit + "), provided: " + maxLimit);
+    if (tolerance <= 1.0)
+      throw new IllegalArgumentException("Tolerance must be greater than 1, provided: " + tolerance);
+    if ((decrease <= 0.0) || (decrease >= 1.0))
+      throw new IllegalArgumentException("Decrease factor must be between 0 and 1 (both exclusive), provided: " + decrease);
+
+    m_MinLimit   = minLimit;
+    m_MaxLimit   = maxLimit;
+    m_Tolerance  = tolerance;
+    m_Decrease   = decrease;
+    m_Limit      = minLimit;
+    m_SlowStart  = true;
+    m_RoundStart = System.currentTimeMillis();
+  }
+
+  /**
+   * Waits until another invocation is allowed to run.
+   *
+   * @throws InterruptedException	if waiting gets interrupted
+   * @see		#release(long, long, boolean)
+   */
+  public synchronized void acquire() throws InterruptedException {
+    while (m_InFlight >= m_Limit) {
+      m_RoundSaturated = true;
+      wait(100);
+    }
+    m_InFlight++;
+    if (m_InFlight == m_Limit)
+      m_RoundSaturated = true;
+  }
+
+  /**
+   * Records the completed invocation and frees up its slot.
+   *
+   * @param latency	the time the invocation took (msec)
+   * @param size	the size of the input (eg bytes), 0 if not available
+   * @param success	whether the invocation was successful
+   */
+  public synchronized void release(long latency, long size, boolean success) {
+    double	sample;
+
+    m_InFlight = Math.max(0, m_InFlight - 1);
+    notifyAll();
+    if (!success)
+      return;
+
+    m_Completed++;
+    sample = Math.max(1, latency);
+    if (size > 0)
+      sample /= size;
+
+    if (m_Latency == 0) {
+      m_Latency  = sample;
+      m_Baseline = sample;
+    }
+    else {
+      m_Latency = (1.0 - ALPHA) * m_Latency + ALPHA * sample;
+      if (sample < m_Baseline)
+	m_Baseline = sample;
+      else
+	m_Baseline += (m_Latency - m_Baseline) * BASELINE_DRIFT;
+    }
+
+    m_RoundCompleted++;
+    if ((size > 0) && (m_RoundSize >= 0))
+      m_RoundSize += size;
+    else
+      m_RoundSize = -1;
+    if (m_RoundCompleted >= m_Limit)
+      update();
+  }
+
+  /**
+   * Re-evaluates the limit at the end of a round.
+   */
+  protected void update() {
+    long	now;
+    double	throughput;
+    int		old;
+
+    now        = System.currentTimeMillis();
+    throughput = ((m_RoundSize > 0) ? m_RoundSize : m_RoundCompleted) * 1000.0 / Math.max(1, now - m_RoundStart);
+    old        = m_Limit;
+
+    if ((m_Latency > m_Baseline * m_Tolerance) || (m_Increased && (throughput < m_Throughput * 0.9))) {
+      m_Limit     = Math.max(m_MinLimit, (int) Math.floor(m_Limit * m_Decrease));
+      m_SlowStart = false;
+    }
+    else if (m_RoundSaturated) {
+      if (m_SlowStart)
+	m_Limit = Math.min(m_MaxLimit, m_Limit * 2);
+      else
+	m_Limit = Math.min(m_MaxLimit, m_Limit + 1);
+    }
+
+    m_Increased      = (m_Limit > old);
+    m_Throughput     = throughput;
+    m_RoundStart     = now;
+    m_RoundCompleted = 0;
+    m_RoundSize      = 0;
+    m_RoundSaturated = (m_InFlight >= m_Limit);
+
+    if ((m_Limit != old) && isLoggingEnabled())
+      getLogger().info("Limit: " + old + " -> " + m_Limit + " (" + this + ")");
+  }
+
+  /**
+   * Returns the minimum limit.
+   *
+   * @return		the minimum
+   */
+  public int getMinLimit() {
+    return m_MinLimit;
+  }
+
+  /**
+   * Returns the maximum limit.
+   *
+   * @return		the maximum
+   */
+  public int getMaxLimit() {
+    return m_MaxLimit;
+  }
+
+  /**
+   * Returns the current limit.
+   *
+   * @return		the limit
+   */
+  public synchronized int getLimit() {
+    return m_Limit;
+  }
+
+  /**
+   * Returns the number of invocations currently in flight.
+   *
+   * @return		the number
+   */
+  public synchronized int getInFlight() {
+    return m_InFlight;
+  }
+
+  /**
+   * Returns the throughput of the last round.
+   *
+   * @return		the input size (if available) or invocations per second
+   */
+  public synchronized double getThroughput() {
+    return m_Throughput;
+  }
+
+  /**
+   * Returns the smoothed latency (normalized by input size if available).
+   *
+   * @return		the latency
+   */
+  public synchronized double getLatency() {
+    return m_Latency;
+  }
+
+  /**
+   * Returns the baseline latency (normalized by input size if available).
+   *
+   * @return		the latency
+   */
+  public synchronized double getBaseline() {
+    return m_Baseline;
+  }
+
+  /**
+   * Returns the total number of successfully completed invocations.
+   *
+   * @return		the number
+   */
+  public synchronized long getCompleted() {
+    return m_Completed;
+  }
+
+  /**
+   * Returns a short description of the state.
+   *
+   * @return		the description
+   */
+  @Override
+  public synchronized String toString() {
+    return "limit=" + m_Limit + " [" + m_MinLimit + "-" + m_MaxLimit + "]"
+      + ", in-flight=" + m_InFlight
+      + ", throughput=" + String.format("%.4g", m_Throughput) + "/s"
+      + ", latency=" + String.format("%.4g", m_Latency)
+      + ", baseline=" + String.format("%.4g", m_Baseline)
+      + ", completed=" + m_Completed;
+  }
+}
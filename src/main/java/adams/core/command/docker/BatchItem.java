@@ -0,0 +1,224 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * BatchItem.java
+ * Copyright (C) 2023 University of Waikato, Hamilton, New Zealand
+ */
+
+package adams.core.command.docker;
+
+import adams.core.base.DockerDirectoryMapping;
+
+import java.io.File;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A single input of a batch that gets executed in one container. The
+ * directory mappings, container arguments and command get determined when
+ * the item is created, i.e., using the command settings at that time
+ * (e.g., output file set via a variable).
+ *
+ * @author fracpete (fracpete at waikato dot ac dot nz)
+ */
+public class BatchItem
+  implements Serializable {
+
+  private static final long serialVersionUID = 5313066922785598463L;
+
+  /** the input arguments. */
+  protected String[] m_Args;
+
+  /** the directory mappings. */
+  protected List<DockerDirectoryMapping> m_Mappings;
+
+  /** the container arguments. */
+  protected String[] m_ContainerArgs;
+
+  /** the command (executable and options). */
+  protected List<String> m_Command;
+
+  /** the output, null if none. */
+  protected Object m_Output;
+
+  /** the error, null if none. */
+  protected String m_Error;
+
+  /** the key in the job journal, null if not journaled. */
+  protected String m_JournalKey;
+
+  /** the output file (for journaling), null if not available. */
+  protected File m_OutputFile;
+
+  /** the output file in the scratch area, null if not writing to the scratch area. */
+  protected ScratchFile m_ScratchFile;
+
+  /**
+   * Initializes the item.
+   *
+   * @param args	the input arguments
+   * @param mappings	the directory mappings
+   * @param containerArgs	the container arguments
+   * @param command	the command (executable and options)
+   */
+  public BatchItem(String[] args, List<DockerDirectoryMapping> mappings, String[] containerArgs, List<String> command) {
+    m_Args          = args.clone();
+    m_Mappings      = new ArrayList<>(mappings);
+    m_ContainerArgs = containerArgs.clone();
+    m_Command       = new ArrayList<>(command);
+    m_Output        = null;
+    m_Error         = null;
+  }
+
+  /**
+   * Returns the input arguments.
+   *
+   * @return		the arguments
+   */
+  public String[] getArgs() {
+    return m_Args;
+  }
+
+  /**
+   * Returns the directory mappings.
+   *
+   * @return		the mappings
+   */
+  public List<DockerDirectoryMapping> getMappings() {
+    return m_Mappings;
+  }
+
+  /**
+   * Returns the container arguments.
+   *
+   * @return		the arguments
+   */
+  public String[] getContainerArgs() {
+    return m_ContainerArgs;
+  }
+
+  /**
+   * Returns the command (executable and options).
+   *
+   * @return		the command
+   */
+  public List<String> getCommand() {
+    return m_Command;
+  }
+
+  /**
+   * Sets the output.
+   *
+   * @param value	the output
+   */
+  public void setOutput(Object value) {
+    m_Output = value;
+  }
+
+  /**
+   * Returns the output.
+   *
+   * @return		the output, null if none
+   */
+  public Object getOutput() {
+    return m_Output;
+  }
+
+  /**
+   * Returns whether output is available.
+   *
+   * @return		true if available
+   */
+  public boolean hasOutput() {
+    return (m_Output != null);
+  }
+
+  /**
+   * Sets the error.
+   *
+   * @param value	the error
+   */
+  public void setError(String value) {
+    m_Error = value;
+  }
+
+  /**
+   * Returns the error.
+   *
+   * @return		the error, null if none
+   */
+  public String getError() {
+    return m_Error;
+  }
+
+  /**
+   * Returns whether the item failed.
+   *
+   * @return		true if failed
+   */
+  public boolean hasError() {
+    return (m_Error != null);
+  }
+
+  /**
+   * Sets the key and output file for the job journal.
+   *
+   * @param key		the key, null if not journaled
+   * @param output	the output file
+   */
+  public void setJournal(String key, File output) {
+    m_JournalKey = key;
+    m_OutputFile = output;
+  }
+
+  /**
+   * Returns the key in the job journal.
+   *
+   * @return		the key, null if not journaled
+   */
+  public String getJournalKey() {
+    return m_JournalKey;
+  }
+
+  /**
+   * Returns the output file (for journaling).
+   *
+   * @return		the file, null if not available
+   */
+  public File getOutputFile() {
+    return m_OutputFile;
+  }
+
+  /**
+   * Sets the output file in the scratch area, which gets forwarded as
+   * output if successful.
+   *
+   * @param value	the file, null if not writing to the scratch area
+   */
+  public void setScratchFile(ScratchFile value) {
+    m_ScratchFile = value;
+  }
+
+  /**
+   * Returns the output file in the scratch area.
+   *
+   * @return		the file, null if not writing to the scratch area
+   */
+  public ScratchFile getScratchFile() {
+    return m_ScratchFile;
+  }
+}
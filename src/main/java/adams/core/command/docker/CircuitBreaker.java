@@ -0,0 +1,205 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * CircuitBreaker.java
+ * Copyright (C) 2023 University of Waikato, Hamilton, New Zealand
+ */
+
+package adams.core.command.docker;
+
+import adams.core.logging.LoggingObject;
+
+/**
+ * Makes invocations fail fast while the docker daemon is unresponsive,
+ * rather than adding more load to a saturated host.
+ * <br>
+ * After the specified number of consecutive daemon failures (see
+ * {@link RetryPolicy#isDaemonFailure(ProcessRunner)}) the breaker opens and
+ * rejects all invocations. Once the cool-down period has passed, a single
+ * trial invocation is let through (half-open): if it succeeds the breaker
+ * closes again, otherwise it re-opens for another cool-down period.
+ *
+ * @author fracpete (fracpete at waikato dot ac dot nz)
+ */
+public class CircuitBreaker
+  extends LoggingObject {
+
+  private static final long serialVersionUID = 3722407738915582114L;
+
+  /**
+   * The states of the breaker.
+   */
+  public enum State {
+    /** invocations get executed. */
+    CLOSED,
+    /** invocations get rejected. */
+    OPEN,
+    /** a single trial invocation gets executed. */
+    HALF_OPEN,
+  }
+
+  /** the number of consecutive failures that open the breaker. */
+  protected int m_Threshold;
+
+  /** the cool-down period (msec). */
+  protected long m_CoolDown;
+
+  /** the current state. */
+  protected State m_State;
+
+  /** the number of consecutive failures. */
+  protected int m_Failures;
+
+  /** when the breaker opened (msec). */
+  protected long m_OpenedAt;
+
+  /** whether the trial invocation is in flight. */
+  protected boolean m_TrialInFlight;
+
+  /**
+   * Initializes the breaker.
+   *
+   * @param threshold	the number of consecutive failures that open the breaker
+   * @param coolDown	the cool-down period in msec
+   */
+  public CircuitBreaker(int threshold, long coolDown) {
+    if (threshold < 1)
+      throw new IllegalArgumentException("Threshold must be at least 1, provided: " + threshold);
+    m_Threshold = threshold;
+    m_CoolDown  = Math.max(1, coolDown);
+    m_State     = State.CLOSED;
+  }
+
+  /**
+   * Returns whether the invocation can be executed. Must be followed by
+   * {@link #record(ProcessRunner)}, {@link #recordFailure()} or {@link #cancel()}
+   * if allowed.
+   *
+   * @return		true if allowed
+   */
+  public synchronized boolean allowRequest() {
+    switch (m_State) {
+      case CLOSED:
+	return true;
+      case OPEN:
+	if (System.currentTimeMillis() - m_OpenedAt < m_CoolDown)
+	  return false;
+	m_State         = State.HALF_OPEN;
+	m_TrialInFlight = true;
+	if (isLoggingEnabled())
+	  getLogger().info("Cool-down over, executing trial invocation");
+	return true;
+      case HALF_OPEN:
+	if (m_TrialInFlight)
+	  return false;
+	m_TrialInFlight = true;
+	return true;
+      default:
+	throw new IllegalStateException("Unhandled state: " + m_State);
+    }
+  }
+
+  /**
+   * Records a successful invocation (i.e., the daemon responded, regardless
+   * of the command's exit code).
+   */
+  public synchronized void recordSuccess() {
+    if (m_State != State.CLOSED)
+      getLogger().info("Docker daemon responsive again, closing circuit breaker");
+    m_State         = State.CLOSED;
+    m_Failures      = 0;
+    m_TrialInFlight = false;
+  }
+
+  /**
+   * Records a failed invocation (daemon failure).
+   */
+  public synchronized void recordFailure() {
+    m_Failures++;
+    m_TrialInFlight = false;
+    if ((m_State == State.HALF_OPEN) || ((m_State == State.CLOSED) && (m_Failures >= m_Threshold))) {
+      if (m_State == State.CLOSED)
+	getLogger().warning("Opening circuit breaker after " + m_Failures + " consecutive daemon failures");
+      m_State    = State.OPEN;
+      m_OpenedAt = System.currentTimeMillis();
+    }
+  }
+
+  /**
+   * Releases an allowed invocation that did not get executed or got stopped,
+   * without counting it as success or failure.
+   */
+  public synchronized void cancel() {
+    m_TrialInFlight = false;
+  }
+
+  /**
+   * Records the outcome of the invocation. Invocations that got stopped
+   * (other than by timing out) do not count.
+   *
+   * @param runner	the runner that was executed
+   */
+  public synchronized void record(ProcessRunner runner) {
+    if (RetryPolicy.isDaemonFailure(runner)) {
+      recordFailure();
+    }
+    else if (runner.isDestroyed()) {
+      cancel();
+    }
+    else {
+      recordSuccess();
+    }
+  }
+
+  /**
+   * Returns the current state.
+   *
+   * @return		the state
+   */
+  public synchronized State getState() {
+    return m_State;
+  }
+
+  /**
+   * Returns the time until the next trial invocation gets let through.
+   *
+   * @return		the time in msec, 0 if not open
+   */
+  public synchronized long getRemainingCoolDown() {
+    if (m_State != State.OPEN)
+      return 0;
+    return Math.max(0, m_CoolDown - (System.currentTimeMillis() - m_OpenedAt));
+  }
+
+  /**
+   * Generates the error message for rejected invocations.
+   *
+   * @return		the message
+   */
+  public String toErrorMessage() {
+    return "Docker daemon unresponsive, circuit breaker open (next trial in " + (getRemainingCoolDown() / 1000) + "s)!";
+  }
+
+  /**
+   * Returns a short description of the state.
+   *
+   * @return		the description
+   */
+  @Override
+  public synchronized String toString() {
+    return "state=" + m_State + ", failures=" + m_Failures + "/" + m_Threshold + ", cool-down=" + m_CoolDown + "ms";
+  }
+}
@@ -0,0 +1,420 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * ContainerPool.java
+ * Copyright (C) 2023 University of Waikato, Hamilton, New Zealand
+ */
+
+package adams.core.command.docker;
+
+import adams.core.logging.LoggingObject;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Manages a fixed number of long-lived containers that commands get executed
+ * in via "docker exec". The containers are started with "docker run -d" and
+ * kept alive with a no-op process. Since volumes cannot be added to a running
+ * container, containers are only re-used for identical run options (user,
+ * directory mappings, etc). Idle containers get removed after the TTL expires
+ * or when a container with different run options is required and the pool
+ * is already full. Started containers can be registered with a {@link ContainerRegistry},
+ * so they get killed when the JVM shuts down.
+ *
+ * @author fracpete (fracpete at waikato dot ac dot nz)
+ */
+public class ContainerPool
+  extends LoggingObject {
+
+  private static final long serialVersionUID = 4014574612009398924L;
+
+  /** the prefix for the container names. */
+  public static final String NAME_PREFIX = "happy-pool-";
+
+  /** the docker binary. */
+  protected String m_Binary;
+
+  /** the image to use. */
+  protected String m_Image;
+
+  /** the maximum number of containers. */
+  protected int m_MaxSize;
+
+  /** the time-to-live for idle containers (msec). */
+  protected long m_IdleTTL;
+
+  /** the containers. */
+  protected List<PooledContainer> m_Containers;
+
+  /** for evicting idle containers. */
+  protected transient ScheduledExecutorService m_Evictor;
+
+  /** whether the pool has been shut down. */
+  protected boolean m_Shutdown;
+
+  /** the registry for the started containers, can be null. */
+  protected transient ContainerRegistry m_Registry;
+
+  /**
+   * Initializes the pool.
+   *
+   * @param binary	the docker binary
+   * @param image	the image to use for the containers
+   * @param maxSize	the maximum number of containers
+   * @param idleTTL	the time in seconds after which idle containers get removed
+   */
+  public ContainerPool(String binary, String image, int maxSize, int idleTTL) {
+    m_Binary     = binary;
+    m_Image      = image;
+    m_MaxSize    = Math.max(1, maxSize);
+    m_IdleTTL    = Math.max(1, idleTTL) * 1000L;
+    m_Containers = new ArrayList<>();
+    m_Shutdown   = false;
+    m_Evictor    = Executors.newSingleThreadScheduledExecutor(r -> {
+      Thread t = new Thread(r, getClass().getSimpleName() + " evictor: " + m_Image);
+      t.setDaemon(true);
+      return t;
+    });
+    m_Evictor.scheduleWithFixedDelay(this::evictIdle, m_IdleTTL / 2, m_IdleTTL / 2, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Sets the registry to register the started containers with, so they get
+   * killed when the flow gets stopped or the JVM shuts down.
+   *
+   * @param value	the registry, null for none
+   */
+  public void setRegistry(ContainerRegistry value) {
+    m_Registry = value;
+  }
+
+  /**
+   * Returns the registry that the started containers get registered with.
+   *
+   * @return		the registry, null if none
+   */
+  public ContainerRegistry getRegistry() {
+    return m_Registry;
+  }
+
+  /**
+   * Returns the image used by the pool.
+   *
+   * @return		the image
+   */
+  public String getImage() {
+    return m_Image;
+  }
+
+  /**
+   * Returns the maximum number of containers.
+   *
+   * @return		the maximum
+   */
+  public int getMaxSize() {
+    return m_MaxSize;
+  }
+
+  /**
+   * Returns the current number of containers.
+   *
+   * @return		the number of containers
+   */
+  public synchronized int size() {
+    return m_Containers.size();
+  }
+
+  /**
+   * Generates the signature for the options.
+   *
+   * @param options	the run options
+   * @return		the signature
+   */
+  protected String signature(List<String> options) {
+    return m_Image + "\t" + String.join("\t", options);
+  }
+
+  /**
+   * Executes the docker command.
+   *
+   * @param args	the arguments for the docker binary
+   * @return		null if successful, otherwise error message
+   */
+  protected String docker(String... args) {
+    List<String>	cmd;
+    ProcessRunner	runner;
+
+    cmd = new ArrayList<>();
+    cmd.add(m_Binary);
+    cmd.addAll(Arrays.asList(args));
+    try {
+      runner = ProcessRunner.run(cmd);
+      if (!runner.hasSucceeded())
+	return runner.toErrorMessage();
+    }
+    catch (Exception e) {
+      return "Failed to execute: " + cmd + "\n" + e;
+    }
+
+    return null;
+  }
+
+  /**
+   * Starts the container.
+   *
+   * @param container	the container to start
+   * @param options	the run options
+   * @return		null if successful, otherwise error message
+   */
+  protected String start(PooledContainer container, List<String> options) {
+    List<String>	args;
+
+    args = new ArrayList<>();
+    args.add("run");
+    args.add("-d");
+    args.add("--rm");
+    args.add("--name");
+    args.add(container.getName());
+    args.addAll(options);
+    args.add("--entrypoint");
+    args.add("tail");
+    args.add(m_Image);
+    args.add("-f");
+    args.add("/dev/null");
+
+    if (isLoggingEnabled())
+      getLogger().info("Starting container: " + container.getName());
+
+    // register beforehand, the container may be running even if the command fails
+    if (m_Registry != null)
+      m_Registry.register(container.getName(), m_Binary, null);
+
+    return docker(args.toArray(new String[0]));
+  }
+
+  /**
+   * Removes the container.
+   *
+   * @param container	the container to remove
+   */
+  protected void remove(PooledContainer container) {
+    String	msg;
+
+    if (m_Registry != null) {
+      // already killed via the registry?
+      if (!m_Registry.isRegistered(container.getName()))
+	return;
+      m_Registry.unregister(container.getName());
+    }
+
+    if (isLoggingEnabled())
+      getLogger().info("Removing container: " + container);
+
+    msg = docker("rm", "-f", container.getName());
+    if (msg != null)
+      getLogger().warning("Failed to remove container " + container.getName() + ":\n" + msg);
+  }
+
+  /**
+   * Obtains a container for the specified run options. Blocks till a
+   * container becomes available.
+   *
+   * @param options	the run options (user, directory mappings, etc)
+   * @return		the leased container
+   * @throws Exception	if starting of the container fails, or waiting got interrupted
+   */
+  public PooledContainer acquire(List<String> options) throws Exception {
+    PooledContainer		result;
+    PooledContainer		evict;
+    List<PooledContainer>	evicted;
+    String			sig;
+    String			msg;
+    boolean			shutdown;
+
+    sig     = signature(options);
+    result  = null;
+    evicted = new ArrayList<>();
+
+    synchronized (this) {
+      while (result == null) {
+	if (m_Shutdown)
+	  throw new IllegalStateException("Container pool has been shut down!");
+
+	// re-use idle container?
+	evict = null;
+	for (PooledContainer cont: m_Containers) {
+	  if (cont.isInUse() || !cont.isStarted())
+	    continue;
+	  if (cont.getSignature().equals(sig)) {
+	    result = cont;
+	    break;
+	  }
+	  if ((evict == null) || (cont.getLastUsed() < evict.getLastUsed()))
+	    evict = cont;
+	}
+	if (result != null) {
+	  result.m_InUse = true;
+	  result.m_UseCount++;
+	  break;
+	}
+
+	// make room (removed outside the lock)
+	if ((m_Containers.size() >= m_MaxSize) && (evict != null)) {
+	  m_Containers.remove(evict);
+	  evicted.add(evict);
+	}
+
+	if (m_Containers.size() < m_MaxSize) {
+	  result = new PooledContainer(NAME_PREFIX + UUID.randomUUID(), sig);
+	  result.m_InUse = true;
+	  m_Containers.add(result);
+	}
+	else {
+	  wait();
+	}
+      }
+    }
+
+    for (PooledContainer cont: evicted)
+      remove(cont);
+    if (result.isStarted())
+      return result;
+
+    // start outside the lock
+    msg = start(result, options);
+    synchronized (this) {
+      shutdown = m_Shutdown;
+      if ((msg != null) || shutdown) {
+	m_Containers.remove(result);
+	notifyAll();
+      }
+      else {
+	result.m_Started = true;
+	result.m_UseCount++;
+      }
+    }
+    // pool got shut down while starting the container, which therefore didn't get removed
+    if (shutdown) {
+      remove(result);
+      throw new IllegalStateException("Container pool has been shut down!");
+    }
+    if (msg != null) {
+      remove(result);
+      throw new IllegalStateException("Failed to start container:\n" + msg);
+    }
+
+    return result;
+  }
+
+  /**
+   * Returns the container to the pool.
+   *
+   * @param container	the container to return
+   */
+  public void release(PooledContainer container) {
+    synchronized (this) {
+      if (!m_Containers.contains(container))
+	return;
+      container.m_InUse    = false;
+      container.m_LastUsed = System.currentTimeMillis();
+      notifyAll();
+      if (!m_Shutdown)
+	return;
+      m_Containers.remove(container);
+    }
+    remove(container);
+  }
+
+  /**
+   * Removes the container from the pool, e.g., after a command was
+   * aborted and the state of the container is unknown.
+   *
+   * @param container	the container to discard
+   */
+  public void discard(PooledContainer container) {
+    synchronized (this) {
+      if (!m_Containers.remove(container))
+	return;
+      notifyAll();
+    }
+    remove(container);
+  }
+
+  /**
+   * Removes all containers that have been idle longer than the TTL.
+   */
+  public void evictIdle() {
+    List<PooledContainer>	expired;
+    long			now;
+
+    expired = new ArrayList<>();
+    now     = System.currentTimeMillis();
+    synchronized (this) {
+      for (PooledContainer cont: m_Containers) {
+	if (!cont.isInUse() && cont.isStarted() && (now - cont.getLastUsed() >= m_IdleTTL))
+	  expired.add(cont);
+      }
+      m_Containers.removeAll(expired);
+      if (expired.size() > 0)
+	notifyAll();
+    }
+
+    for (PooledContainer cont: expired)
+      remove(cont);
+  }
+
+  /**
+   * Removes all containers and stops the pool. Containers that are still
+   * in use get removed as well.
+   */
+  public void shutdown() {
+    List<PooledContainer>	all;
+
+    synchronized (this) {
+      if (m_Shutdown)
+	return;
+      m_Shutdown = true;
+      all = new ArrayList<>(m_Containers);
+      m_Containers.clear();
+      notifyAll();
+    }
+
+    if (m_Evictor != null) {
+      m_Evictor.shutdownNow();
+      m_Evictor = null;
+    }
+
+    for (PooledContainer cont: all) {
+      if (cont.isStarted())
+	remove(cont);
+    }
+  }
+
+  /**
+   * Returns whether the pool has been shut down.
+   *
+   * @return		true if shut down
+   */
+  public synchronized boolean isShutdown() {
+    return m_Shutdown;
+  }
+}
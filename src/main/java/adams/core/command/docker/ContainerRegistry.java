@@ -0,0 +1,375 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * ContainerRegistry.java
+ * Copyright (C) 2023 University of Waikato, Hamilton, New Zealand
+ */
+
+package adams.core.command.docker;
+
+import adams.core.logging.LoggingObject;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps track of the live containers started by a flow, so they can be
+ * killed immediately when the flow gets stopped or cleaned up, or the JVM
+ * shuts down. Stopping the docker CLI process alone can leave the
+ * container running.
+ * <br>
+ * Containers get named deterministically: prefix-PID-counter. Containers
+ * started via the docker CLI get killed with a single "docker kill" per
+ * binary/daemon, the ones started via the Engine API through the API.
+ *
+ * @author fracpete (fracpete at waikato dot ac dot nz)
+ */
+public class ContainerRegistry
+  extends LoggingObject {
+
+  private static final long serialVersionUID = 5140370931858734361L;
+
+  /** the maximum time to wait for "docker kill" (msec). */
+  public static final long KILL_TIMEOUT = 10000;
+
+  /**
+   * A live container.
+   */
+  public static class LiveContainer {
+
+    /** the name of the container. */
+    protected String m_Name;
+
+    /** the docker binary, null if started via the Engine API. */
+    protected String m_Binary;
+
+    /** the daemon (DOCKER_HOST), null for the default one. */
+    protected String m_Host;
+
+    /** the runner executing the container, can be null. */
+    protected ProcessRunner m_Runner;
+
+    /**
+     * Initializes the container.
+     *
+     * @param name	the name of the container
+     * @param binary	the docker binary, null if started via the Engine API
+     * @param host	the daemon (DOCKER_HOST), null for the default one
+     * @param runner	the runner executing the container, can be null
+     */
+    public LiveContainer(String name, String binary, String host, ProcessRunner runner) {
+      m_Name   = name;
+      m_Binary = binary;
+      m_Host   = host;
+      m_Runner = runner;
+    }
+
+    /**
+     * Returns the name of the container.
+     *
+     * @return		the name
+     */
+    public String getName() {
+      return m_Name;
+    }
+
+    /**
+     * Returns the docker binary.
+     *
+     * @return		the binary, null if started via the Engine API
+     */
+    public String getBinary() {
+      return m_Binary;
+    }
+
+    /**
+     * Returns the daemon.
+     *
+     * @return		the daemon (DOCKER_HOST), null for the default one
+     */
+    public String getHost() {
+      return m_Host;
+    }
+
+    /**
+     * Returns the runner executing the container.
+     *
+     * @return		the runner, can be null
+     */
+    public ProcessRunner getRunner() {
+      return m_Runner;
+    }
+
+    /**
+     * Returns whether the container has finished, i.e., its runner finished.
+     *
+     * @return		true if finished
+     */
+    public boolean isFinished() {
+      return (m_Runner != null) && m_Runner.isFinished();
+    }
+
+    /**
+     * Returns a short description of the container.
+     *
+     * @return		the description
+     */
+    @Override
+    public String toString() {
+      return m_Name + ((m_Host == null) ? "" : "@" + m_Host);
+    }
+  }
+
+  /** the counter for the container names. */
+  protected static final AtomicLong m_Counter = new AtomicLong();
+
+  /** all registries, for killing the containers on JVM shutdown. */
+  protected static final Set<ContainerRegistry> m_Registries = Collections.newSetFromMap(new WeakHashMap<>());
+
+  /** the shutdown hook. */
+  protected static Thread m_ShutdownHook;
+
+  /** the live containers (name -> container). */
+  protected Map<String,LiveContainer> m_Containers;
+
+  /**
+   * Initializes the registry.
+   */
+  public ContainerRegistry() {
+    m_Containers = new HashMap<>();
+    addRegistry(this);
+  }
+
+  /**
+   * Adds the registry to the ones that get killed on JVM shutdown. Installs
+   * the shutdown hook if necessary.
+   *
+   * @param registry	the registry to add
+   */
+  protected static synchronized void addRegistry(ContainerRegistry registry) {
+    m_Registries.add(registry);
+    if (m_ShutdownHook == null) {
+      m_ShutdownHook = new Thread(ContainerRegistry::killAllRegistries, ContainerRegistry.class.getSimpleName() + "-shutdown");
+      Runtime.getRuntime().addShutdownHook(m_ShutdownHook);
+    }
+  }
+
+  /**
+   * Kills the live containers of all registries.
+   */
+  protected static void killAllRegistries() {
+    List<ContainerRegistry>	registries;
+
+    synchronized (ContainerRegistry.class) {
+      registries = new ArrayList<>(m_Registries);
+    }
+    for (ContainerRegistry registry: registries)
+      registry.killAll();
+  }
+
+  /**
+   * Generates a deterministic container name: prefix-PID-counter.
+   *
+   * @param prefix	the prefix to use
+   * @return		the name
+   */
+  public static String newName(String prefix) {
+    return prefix + "-" + ProcessHandle.current().pid() + "-" + m_Counter.incrementAndGet();
+  }
+
+  /**
+   * Removes the containers whose runners have finished.
+   */
+  protected void prune() {
+    Iterator<LiveContainer>	iter;
+
+    iter = m_Containers.values().iterator();
+    while (iter.hasNext()) {
+      if (iter.next().isFinished())
+	iter.remove();
+    }
+  }
+
+  /**
+   * Registers the container started via the docker CLI.
+   *
+   * @param name	the name of the container
+   * @param binary	the docker binary
+   * @param host	the daemon (DOCKER_HOST), null for the default one
+   */
+  public synchronized void register(String name, String binary, String host) {
+    prune();
+    m_Containers.put(name, new LiveContainer(name, binary, host, null));
+  }
+
+  /**
+   * Registers the container that the (started) runner executes in. Gets
+   * removed automatically once the runner has finished.
+   *
+   * @param runner	the runner, ignored if no container name set
+   * @param binary	the docker binary, ignored for the Engine API
+   */
+  public synchronized void register(ProcessRunner runner, String binary) {
+    if (runner.getContainerName() == null)
+      return;
+    prune();
+    m_Containers.put(runner.getContainerName(), new LiveContainer(
+      runner.getContainerName(),
+      (runner instanceof EngineRunner) ? null : binary,
+      runner.getEnvironment().get(EndpointBalancer.DOCKER_HOST),
+      runner));
+  }
+
+  /**
+   * Removes the container from the registry, eg once it finished.
+   *
+   * @param name	the name of the container
+   */
+  public synchronized void unregister(String name) {
+    m_Containers.remove(name);
+  }
+
+  /**
+   * Returns whether the container is registered.
+   *
+   * @param name	the name of the container
+   * @return		true if registered
+   */
+  public synchronized boolean isRegistered(String name) {
+    return m_Containers.containsKey(name);
+  }
+
+  /**
+   * Returns the number of live containers.
+   *
+   * @return		the number
+   */
+  public synchronized int size() {
+    prune();
+    return m_Containers.size();
+  }
+
+  /**
+   * Kills the containers via "docker kill".
+   *
+   * @param binary	the docker binary
+   * @param host	the daemon (DOCKER_HOST), null for the default one
+   * @param names	the names of the containers
+   */
+  protected void dockerKill(String binary, String host, List<String> names) {
+    List<String>	cmd;
+    ProcessRunner	runner;
+
+    cmd = new ArrayList<>();
+    cmd.add(binary);
+    cmd.add("kill");
+    cmd.addAll(names);
+    runner = new ProcessRunner(cmd);
+    if (host != null)
+      runner.getEnvironment().put(EndpointBalancer.DOCKER_HOST, host);
+    try {
+      runner.start();
+      if (!runner.waitFor(KILL_TIMEOUT))
+	runner.destroy();
+      else if (!runner.hasSucceeded() && isLoggingEnabled())
+	getLogger().info("Failed to kill (some) containers " + names + ":\n" + runner.toErrorMessage());
+    }
+    catch (Exception e) {
+      getLogger().warning("Failed to kill containers " + names + ": " + e);
+    }
+  }
+
+  /**
+   * Kills the specified containers and destroys their runners.
+   *
+   * @param names	the names of the containers, unregistered ones get ignored
+   * @return		the number of containers that got killed
+   */
+  public int kill(Collection<String> names) {
+    List<LiveContainer>		containers;
+    Map<String,List<String>>	groups;
+    String			key;
+    int				pos;
+
+    containers = new ArrayList<>();
+    synchronized (this) {
+      for (String name: names) {
+	if (m_Containers.containsKey(name))
+	  containers.add(m_Containers.remove(name));
+      }
+    }
+    if (containers.isEmpty())
+      return 0;
+
+    if (isLoggingEnabled())
+      getLogger().info("Killing containers: " + containers);
+
+    // one "docker kill" per binary/daemon
+    groups = new HashMap<>();
+    for (LiveContainer container: containers) {
+      if ((container.getBinary() == null) || container.isFinished())
+	continue;
+      key = container.getBinary() + "\t" + ((container.getHost() == null) ? "" : container.getHost());
+      groups.computeIfAbsent(key, k -> new ArrayList<>()).add(container.getName());
+    }
+    for (String group: groups.keySet()) {
+      pos = group.indexOf('\t');
+      dockerKill(group.substring(0, pos), group.substring(pos + 1).isEmpty() ? null : group.substring(pos + 1), groups.get(group));
+    }
+
+    // Engine API containers get killed when destroying the runner
+    for (LiveContainer container: containers) {
+      if (container.getRunner() != null)
+	container.getRunner().destroy();
+    }
+
+    return containers.size();
+  }
+
+  /**
+   * Kills the specified container and destroys its runner.
+   *
+   * @param name	the name of the container, ignored if not registered
+   * @return		true if killed
+   */
+  public boolean kill(String name) {
+    return (kill(Collections.singletonList(name)) > 0);
+  }
+
+  /**
+   * Kills all live containers.
+   *
+   * @return		the number of containers that got killed
+   */
+  public int killAll() {
+    List<String>	names;
+
+    synchronized (this) {
+      prune();
+      names = new ArrayList<>(m_Containers.keySet());
+    }
+
+    return kill(names);
+  }
+}
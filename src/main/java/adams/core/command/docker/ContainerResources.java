@@ -0,0 +1,210 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * ContainerResources.java
+ * Copyright (C) 2023 University of Waikato, Hamilton, New Zealand
+ */
+
+package adams.core.command.docker;
+
+import net.minidev.json.JSONObject;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Resource limits for containers: CPUs, memory and the CPUs the container
+ * is allowed to run on. Can be turned into options for "docker run" or
+ * the host config of the Engine API.
+ *
+ * @author fracpete (fracpete at waikato dot ac dot nz)
+ */
+public class ContainerResources
+  implements Serializable {
+
+  private static final long serialVersionUID = -6020474869669325116L;
+
+  /** the number of CPUs (0 = no limit). */
+  protected double m_CPUs;
+
+  /** the memory limit (docker format, eg 4g; empty = no limit). */
+  protected String m_Memory;
+
+  /** the CPUs to run on (docker format, eg 0-3 or 0,2; empty = any). */
+  protected String m_CpusetCPUs;
+
+  /**
+   * Initializes the resources.
+   *
+   * @param cpus	the number of CPUs, 0 for no limit
+   * @param memory	the memory limit (eg 512m or 4g), empty for no limit
+   * @param cpusetCpus	the CPUs to run on (eg 0-3), empty for any
+   */
+  public ContainerResources(double cpus, String memory, String cpusetCpus) {
+    m_CPUs       = Math.max(0.0, cpus);
+    m_Memory     = (memory == null) ? "" : memory.trim();
+    m_CpusetCPUs = (cpusetCpus == null) ? "" : cpusetCpus.trim();
+  }
+
+  /**
+   * Returns the number of CPUs.
+   *
+   * @return		the CPUs, 0 for no limit
+   */
+  public double getCPUs() {
+    return m_CPUs;
+  }
+
+  /**
+   * Returns the memory limit.
+   *
+   * @return		the limit, empty for no limit
+   */
+  public String getMemory() {
+    return m_Memory;
+  }
+
+  /**
+   * Returns the CPUs to run on.
+   *
+   * @return		the CPUs, empty for any
+   */
+  public String getCpusetCPUs() {
+    return m_CpusetCPUs;
+  }
+
+  /**
+   * Returns whether no limits are defined.
+   *
+   * @return		true if no limits
+   */
+  public boolean isEmpty() {
+    return (m_CPUs == 0) && m_Memory.isEmpty() && m_CpusetCPUs.isEmpty();
+  }
+
+  /**
+   * Parses the memory limit in docker format: number with optional unit
+   * (b, k, m, g; binary multiples).
+   *
+   * @param memory	the limit to parse
+   * @return		the limit in bytes
+   * @throws IllegalArgumentException	if the format is invalid
+   */
+  public static long parseMemory(String memory) {
+    String	value;
+    long	factor;
+    char	unit;
+
+    value = memory.trim().toLowerCase();
+    if (value.isEmpty())
+      throw new IllegalArgumentException("No memory limit provided!");
+    factor = 1;
+    unit   = value.charAt(value.length() - 1);
+    if (!Character.isDigit(unit)) {
+      switch (unit) {
+	case 'b':
+	  factor = 1;
+	  break;
+	case 'k':
+	  factor = 1024L;
+	  break;
+	case 'm':
+	  factor = 1024L * 1024L;
+	  break;
+	case 'g':
+	  factor = 1024L * 1024L * 1024L;
+	  break;
+	default:
+	  throw new IllegalArgumentException("Unknown unit '" + unit + "' in memory limit: " + memory);
+      }
+      value = value.substring(0, value.length() - 1);
+    }
+    try {
+      return Long.parseLong(value) * factor;
+    }
+    catch (NumberFormatException e) {
+      throw new IllegalArgumentException("Invalid memory limit: " + memory);
+    }
+  }
+
+  /**
+   * Checks whether the memory limit is valid.
+   *
+   * @param memory	the limit to check
+   * @return		true if empty (no limit) or valid
+   */
+  public static boolean isValidMemory(String memory) {
+    if ((memory == null) || memory.trim().isEmpty())
+      return true;
+    try {
+      parseMemory(memory);
+      return true;
+    }
+    catch (Exception e) {
+      return false;
+    }
+  }
+
+  /**
+   * Generates the options for "docker run".
+   *
+   * @return		the options
+   */
+  public List<String> toRunOptions() {
+    List<String>	result;
+
+    result = new ArrayList<>();
+    if (m_CPUs > 0) {
+      result.add("--cpus");
+      result.add("" + m_CPUs);
+    }
+    if (!m_Memory.isEmpty()) {
+      result.add("--memory");
+      result.add(m_Memory);
+    }
+    if (!m_CpusetCPUs.isEmpty()) {
+      result.add("--cpuset-cpus");
+      result.add(m_CpusetCPUs);
+    }
+
+    return result;
+  }
+
+  /**
+   * Adds the limits to the host config of the Engine API.
+   *
+   * @param hostConfig	the host config to update
+   */
+  public void applyTo(JSONObject hostConfig) {
+    if (m_CPUs > 0)
+      hostConfig.put("NanoCpus", Math.round(m_CPUs * 1e9));
+    if (!m_Memory.isEmpty())
+      hostConfig.put("Memory", parseMemory(m_Memory));
+    if (!m_CpusetCPUs.isEmpty())
+      hostConfig.put("CpusetCpus", m_CpusetCPUs);
+  }
+
+  /**
+   * Returns a short description of the limits.
+   *
+   * @return		the description
+   */
+  @Override
+  public String toString() {
+    return "cpus=" + m_CPUs + ", memory=" + m_Memory + ", cpuset-cpus=" + m_CpusetCPUs;
+  }
+}
@@ -0,0 +1,385 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * ContainerScript.java
+ * Copyright (C) 2023 University of Waikato, Hamilton, New Zealand
+ */
+
+package adams.core.command.docker;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Generates a shell script for executing several commands in a single
+ * container run. Each step is surrounded by marker lines on stdout and stderr,
+ * which allows splitting the output per step again.
+ * <br>
+ * Arguments of the steps can reference shell variables (eg the positional
+ * parameters of the script) via {@link #var(String)}. Optionally, a temporary
+ * directory gets created before executing the steps (available via
+ * {@link #TMP_VAR}) and removed once the script exits.
+ *
+ * @author fracpete (fracpete at waikato dot ac dot nz)
+ */
+public class ContainerScript
+  implements Serializable {
+
+  private static final long serialVersionUID = 8136709213497402478L;
+
+  /** the marker for the start of a step. */
+  public static final String MARKER_START = "@@HAPPY-STEP-START";
+
+  /** the marker for the end of a step. */
+  public static final String MARKER_END = "@@HAPPY-STEP-END";
+
+  /** the shell to use. */
+  public static final String SHELL = "/bin/sh";
+
+  /** the variable holding the temporary directory. */
+  public static final String TMP_VAR = "ADAMS_TMP";
+
+  /** the shell function outputting the timestamp in nanoseconds (falls back
+   * to seconds if date does not support %N, eg busybox). */
+  public static final String TIMESTAMP_FUNC = "adams_ts";
+
+  /** the pattern for variable references. */
+  protected static final Pattern VAR_PATTERN = Pattern.compile("@@\\$\\{([A-Za-z_][A-Za-z0-9_]*|[0-9]+)\\}@@");
+
+  /** the steps. */
+  protected List<List<String>> m_Steps;
+
+  /** whether to stop at the first failed step. */
+  protected boolean m_StopOnError;
+
+  /** the variable with the parent directory for the temporary directory, null if no temporary directory. */
+  protected String m_TmpParentVar;
+
+  /**
+   * Initializes the script.
+   *
+   * @param stopOnError	whether to stop at the first failed step
+   */
+  public ContainerScript(boolean stopOnError) {
+    m_Steps       = new ArrayList<>();
+    m_StopOnError = stopOnError;
+  }
+
+  /**
+   * Adds the command as step.
+   *
+   * @param cmd		the command (executable and arguments)
+   */
+  public void addStep(List<String> cmd) {
+    m_Steps.add(new ArrayList<>(cmd));
+  }
+
+  /**
+   * Enables the creation of a temporary directory before executing the steps,
+   * which gets removed when the script exits. The directory gets created in
+   * the directory of the specified variable, falling back on TMPDIR and /tmp.
+   *
+   * @param parentVar	the variable with the parent directory (eg CPL_TMPDIR), null for TMPDIR
+   */
+  public void useTmpDir(String parentVar) {
+    m_TmpParentVar = (parentVar == null) ? "TMPDIR" : parentVar;
+  }
+
+  /**
+   * Returns a reference to the shell variable for use in the arguments of a step.
+   *
+   * @param name	the name of the variable (or the index of the positional parameter)
+   * @return		the reference
+   */
+  public static String var(String name) {
+    return "@@${" + name + "}@@";
+  }
+
+  /**
+   * Returns a reference to the positional parameter of the script for use in
+   * the arguments of a step.
+   *
+   * @param index	the 1-based index of the parameter
+   * @return		the reference
+   */
+  public static String arg(int index) {
+    return var("" + index);
+  }
+
+  /**
+   * Returns the number of steps.
+   *
+   * @return		the number of steps
+   */
+  public int size() {
+    return m_Steps.size();
+  }
+
+  /**
+   * Returns the specified step.
+   *
+   * @param index	the index of the step
+   * @return		the step
+   */
+  public List<String> getStep(int index) {
+    return m_Steps.get(index);
+  }
+
+  /**
+   * Quotes the string for the shell. Variable references get expanded.
+   *
+   * @param s		the string to quote
+   * @return		the quoted string
+   * @see		#var(String)
+   */
+  public static String quote(String s) {
+    StringBuilder	result;
+    Matcher		matcher;
+    int			last;
+
+    result  = new StringBuilder("'");
+    matcher = VAR_PATTERN.matcher(s);
+    last    = 0;
+    while (matcher.find()) {
+      result.append(s.substring(last, matcher.start()).replace("'", "'\"'\"'"));
+      result.append("'\"${").append(matcher.group(1)).append("}\"'");
+      last = matcher.end();
+    }
+    result.append(s.substring(last).replace("'", "'\"'\"'"));
+    result.append("'");
+
+    return result.toString();
+  }
+
+  /**
+   * Checks whether the line is a marker line.
+   *
+   * @param line	the line to check
+   * @return		true if a marker line
+   */
+  public static boolean isMarker(String line) {
+    return (parseMarker(line, MARKER_START) != null) || (parseMarker(line, MARKER_END) != null);
+  }
+
+  /**
+   * Checks whether the line is an end marker line.
+   *
+   * @param line	the line to check
+   * @return		true if an end marker line
+   */
+  public static boolean isEndMarker(String line) {
+    return (parseMarker(line, MARKER_END) != null);
+  }
+
+  /**
+   * Wraps the listener, skipping marker lines and the empty line that gets
+   * output in front of an end marker. An empty line gets held back until
+   * the next line of the same stream has been read.
+   *
+   * @param listener	the listener to wrap
+   * @return		the wrapped listener
+   */
+  public static ProcessRunner.LineListener skipMarkers(final ProcessRunner.LineListener listener) {
+    final boolean[]	held;
+
+    held = new boolean[2];
+    return (String line, boolean stdout) -> {
+      int index = stdout ? 0 : 1;
+      if (held[index]) {
+	held[index] = false;
+	if (!isEndMarker(line))
+	  listener.lineRead("", stdout);
+      }
+      if (line.isEmpty())
+	held[index] = true;
+      else if (!isMarker(line))
+	listener.lineRead(line, stdout);
+    };
+  }
+
+  /**
+   * Removes the marker lines from the output, as well as the empty line that
+   * gets output in front of an end marker.
+   *
+   * @param output	the output to process
+   * @return		the output without marker lines
+   */
+  public static String removeMarkers(String output) {
+    StringBuilder	result;
+    String[]		lines;
+    int			i;
+
+    result = new StringBuilder();
+    lines  = output.split("\r?\n", -1);
+    for (i = 0; i < lines.length; i++) {
+      if (isMarker(lines[i]))
+	continue;
+      if (lines[i].isEmpty() && (i < lines.length - 1) && isEndMarker(lines[i + 1]))
+	continue;
+      result.append(lines[i]);
+      if (i < lines.length - 1)
+	result.append("\n");
+    }
+
+    return result.toString();
+  }
+
+  /**
+   * Generates the shell script.
+   *
+   * @return		the script
+   */
+  public String toScript() {
+    StringBuilder	result;
+    int			i;
+
+    result = new StringBuilder();
+    result.append(TIMESTAMP_FUNC + "() { t=$(date +%s%N 2>/dev/null); case \"$t\" in ''|*[!0-9]*) t=\"$(date +%s)000000000\";; esac; echo \"$t\"; }\n");
+    if (m_TmpParentVar != null) {
+      result.append(TMP_VAR + "=$(mktemp -d \"${" + m_TmpParentVar + ":-${TMPDIR:-/tmp}}/adams.XXXXXX\") || exit 1\n");
+      result.append("trap 'rm -rf \"$" + TMP_VAR + "\"' EXIT\n");
+    }
+    for (i = 0; i < m_Steps.size(); i++) {
+      result.append("m=\"" + MARKER_START + " " + i + " $(" + TIMESTAMP_FUNC + ")@@\"; echo \"$m\"; echo \"$m\" >&2\n");
+      for (String part: m_Steps.get(i))
+	result.append(quote(part)).append(" ");
+      result.append("\n");
+      result.append("rc=$?\n");
+      // newline in front, in case the output of the step doesn't end with one (removed again when parsing)
+      result.append("m=\"" + MARKER_END + " " + i + " $rc $(" + TIMESTAMP_FUNC + ")@@\"; printf '\\n%s\\n' \"$m\"; printf '\\n%s\\n' \"$m\" >&2\n");
+      if (m_StopOnError)
+	result.append("if [ $rc -ne 0 ]; then exit $rc; fi\n");
+    }
+
+    return result.toString();
+  }
+
+  /**
+   * Generates the command for executing the script with the shell.
+   *
+   * @return		the command (shell, -c, script)
+   */
+  public List<String> toCommand() {
+    List<String>	result;
+
+    result = new ArrayList<>();
+    result.add(SHELL);
+    result.add("-c");
+    result.add(toScript());
+
+    return result;
+  }
+
+  /**
+   * Parses a marker line. The step index (and exit code) must be numeric,
+   * a timestamp that cannot be parsed is returned as -1.
+   *
+   * @param line	the line to parse
+   * @param marker	the marker to look for
+   * @return		the values following the marker, null if not a marker line
+   */
+  protected static long[] parseMarker(String line, String marker) {
+    String[]	parts;
+    long[]	result;
+    int		i;
+
+    line = line.trim();
+    if (!line.startsWith(marker + " ") || !line.endsWith("@@"))
+      return null;
+    parts  = line.substring(marker.length(), line.length() - 2).trim().split(" ");
+    result = new long[parts.length];
+    for (i = 0; i < parts.length; i++) {
+      try {
+	result[i] = Long.parseLong(parts[i]);
+      }
+      catch (Exception e) {
+	// timestamp is always the last value
+	if ((i == 0) || (i < parts.length - 1) || (parts.length < (marker.equals(MARKER_START) ? 2 : 3)))
+	  return null;
+	result[i] = -1;
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * Splits the output according to the markers.
+   *
+   * @param output	the output to split
+   * @param results	the step results to update
+   * @param stdout	whether stdout or stderr
+   */
+  protected static void split(String output, List<ScriptStepResult> results, boolean stdout) {
+    StringBuilder	current;
+    int			index;
+    long[]		values;
+
+    current = null;
+    index   = -1;
+    for (String line: output.split("\r?\n", -1)) {
+      values = parseMarker(line, MARKER_START);
+      if ((values != null) && (values.length >= 1) && (values[0] < results.size())) {
+	index   = (int) values[0];
+	current = new StringBuilder();
+	if ((values.length >= 2) && (values[1] > -1))
+	  results.get(index).m_StartTime = values[1] / 1000000L;
+	continue;
+      }
+      values = parseMarker(line, MARKER_END);
+      if ((values != null) && (values.length >= 2) && (values[0] == index) && (current != null)) {
+	// remove the newline that got output in front of the end marker
+	if ((current.length() > 0) && (current.charAt(current.length() - 1) == '\n'))
+	  current.setLength(current.length() - 1);
+	if (stdout)
+	  results.get(index).m_StdOut = current.toString();
+	else
+	  results.get(index).m_StdErr = current.toString();
+	results.get(index).m_ExitCode = (int) values[1];
+	if ((values.length >= 3) && (values[2] > -1))
+	  results.get(index).m_EndTime = values[2] / 1000000L;
+	current = null;
+	index   = -1;
+	continue;
+      }
+      if (current != null)
+	current.append(line).append("\n");
+    }
+  }
+
+  /**
+   * Splits the collected output of the script into the steps.
+   *
+   * @param stdout	the collected stdout
+   * @param stderr	the collected stderr
+   * @return		the results for each step
+   */
+  public List<ScriptStepResult> parse(String stdout, String stderr) {
+    List<ScriptStepResult>	result;
+    int				i;
+
+    result = new ArrayList<>();
+    for (i = 0; i < m_Steps.size(); i++)
+      result.add(new ScriptStepResult(i, m_Steps.get(i)));
+    split(stdout, result, true);
+    split(stderr, result, false);
+
+    return result;
+  }
+}
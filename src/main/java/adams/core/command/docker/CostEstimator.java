@@ -0,0 +1,351 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * CostEstimator.java
+ * Copyright (C) 2023 University of Waikato, Hamilton, New Zealand
+ */
+
+package adams.core.command.docker;
+
+import adams.core.logging.LoggingObject;
+import adams.data.envi.EnviHeader;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Estimates the runtime of commands on input files, for dispatching the
+ * longest jobs first. The amount of work of an input gets derived from its
+ * file size and band count (ENVI header or TIFF tags), the runtime per unit
+ * of work gets learned per executable from completed jobs and stored in a
+ * properties file across runs.
+ *
+ * @author fracpete (fracpete at waikato dot ac dot nz)
+ */
+public class CostEstimator
+  extends LoggingObject {
+
+  private static final long serialVersionUID = -3460416106658290541L;
+
+  /** the work (in bytes) attributed to each band, for per-band overhead. */
+  public static final long BAND_OVERHEAD = 1024 * 1024;
+
+  /** the default runtime per unit of work (msec per byte, ~100MB/s). */
+  public static final double DEFAULT_RATE = 1.0e-5;
+
+  /** the smoothing factor for the learned rates. */
+  protected static final double ALPHA = 0.3;
+
+  /** the suffix for the rate properties. */
+  public static final String SUFFIX_RATE = ".rate";
+
+  /** the suffix for the count properties. */
+  public static final String SUFFIX_COUNT = ".count";
+
+  /** the TIFF tag for the number of samples per pixel. */
+  protected static final int TIFF_SAMPLES_PER_PIXEL = 277;
+
+  /** the file with the history, null if not persisted. */
+  protected File m_HistoryFile;
+
+  /** the learned rates (executable -> msec per unit of work). */
+  protected Map<String,Double> m_Rates;
+
+  /** the number of jobs the rates are based on (executable -> count). */
+  protected Map<String,Long> m_Counts;
+
+  /** whether the rates have been modified. */
+  protected boolean m_Modified;
+
+  /**
+   * Initializes the estimator.
+   *
+   * @param historyFile	the file with the history, null to not persist
+   */
+  public CostEstimator(File historyFile) {
+    m_HistoryFile = historyFile;
+    m_Rates       = new HashMap<>();
+    m_Counts      = new HashMap<>();
+    m_Modified    = false;
+    load();
+  }
+
+  /**
+   * Returns the file with the history.
+   *
+   * @return		the file, null if not persisted
+   */
+  public File getHistoryFile() {
+    return m_HistoryFile;
+  }
+
+  /**
+   * Loads the history, if available.
+   */
+  protected synchronized void load() {
+    Properties	props;
+    String	executable;
+
+    if ((m_HistoryFile == null) || !m_HistoryFile.isFile())
+      return;
+
+    props = new Properties();
+    try (InputStream in = new FileInputStream(m_HistoryFile)) {
+      props.load(in);
+    }
+    catch (Exception e) {
+      getLogger().warning("Failed to load cost history from " + m_HistoryFile + ": " + e);
+      return;
+    }
+
+    for (String key: props.stringPropertyNames()) {
+      if (!key.endsWith(SUFFIX_RATE))
+	continue;
+      executable = key.substring(0, key.length() - SUFFIX_RATE.length());
+      try {
+	m_Rates.put(executable, Double.parseDouble(props.getProperty(key)));
+	m_Counts.put(executable, Long.parseLong(props.getProperty(executable + SUFFIX_COUNT, "1")));
+      }
+      catch (Exception e) {
+	getLogger().warning("Invalid cost history entry for '" + executable + "' in " + m_HistoryFile + ": " + e);
+      }
+    }
+    if (isLoggingEnabled())
+      getLogger().info("Loaded cost history from " + m_HistoryFile + ": " + m_Rates);
+  }
+
+  /**
+   * Saves the history, if modified.
+   *
+   * @return		null if successful (or nothing to do), otherwise error message
+   */
+  public synchronized String save() {
+    Properties	props;
+
+    if ((m_HistoryFile == null) || !m_Modified)
+      return null;
+
+    props = new Properties();
+    for (String executable: m_Rates.keySet()) {
+      props.setProperty(executable + SUFFIX_RATE, "" + m_Rates.get(executable));
+      props.setProperty(executable + SUFFIX_COUNT, "" + m_Counts.get(executable));
+    }
+
+    if (!m_HistoryFile.getParentFile().exists() && !m_HistoryFile.getParentFile().mkdirs())
+      return "Failed to create directory for cost history: " + m_HistoryFile.getParentFile();
+    try (OutputStream out = new FileOutputStream(m_HistoryFile)) {
+      props.store(out, "runtime per unit of work (msec per byte)");
+      m_Modified = false;
+    }
+    catch (Exception e) {
+      return "Failed to save cost history to " + m_HistoryFile + ": " + e;
+    }
+
+    return null;
+  }
+
+  /**
+   * Reads the number of samples per pixel from the first image directory
+   * of a TIFF or BigTIFF file.
+   *
+   * @param file	the file to read
+   * @return		the number of bands, -1 if not a TIFF or tag not present
+   * @throws IOException	if reading fails
+   */
+  protected static int readTiffBands(File file) throws IOException {
+    ByteBuffer	buffer;
+    byte[]	header;
+    boolean	big;
+    long	offset;
+    long	count;
+    int		entrySize;
+    int		i;
+
+    try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+      if (raf.length() < 16)
+	return -1;
+      header = new byte[16];
+      raf.readFully(header);
+      buffer = ByteBuffer.wrap(header);
+      if ((header[0] == 'I') && (header[1] == 'I'))
+	buffer.order(ByteOrder.LITTLE_ENDIAN);
+      else if ((header[0] == 'M') && (header[1] == 'M'))
+	buffer.order(ByteOrder.BIG_ENDIAN);
+      else
+	return -1;
+
+      switch (buffer.getShort(2)) {
+	case 42:
+	  big       = false;
+	  offset    = buffer.getInt(4) & 0xffffffffL;
+	  entrySize = 12;
+	  break;
+	case 43:
+	  big       = true;
+	  offset    = buffer.getLong(8);
+	  entrySize = 20;
+	  break;
+	default:
+	  return -1;
+      }
+
+      // number of entries
+      buffer = ByteBuffer.allocate(8).order(buffer.order());
+      raf.seek(offset);
+      raf.readFully(buffer.array(), 0, big ? 8 : 2);
+      count = big ? buffer.getLong(0) : (buffer.getShort(0) & 0xffff);
+
+      // entries: tag, type, count, value
+      buffer = ByteBuffer.allocate(entrySize).order(buffer.order());
+      for (i = 0; i < count; i++) {
+	raf.readFully(buffer.array());
+	if ((buffer.getShort(0) & 0xffff) == TIFF_SAMPLES_PER_PIXEL)
+	  return buffer.getShort(big ? 12 : 8) & 0xffff;
+      }
+    }
+
+    return -1;
+  }
+
+  /**
+   * Determines the number of bands of the input, from the ENVI header or
+   * the TIFF tags.
+   *
+   * @param file	the input
+   * @return		the number of bands, 1 if not available
+   */
+  public static int readBands(File file) {
+    int		result;
+
+    result = -1;
+    try {
+      if (EnviHeader.findHeaderFile(file) != null)
+	result = EnviHeader.parse(file).getBands();
+      else
+	result = readTiffBands(file);
+    }
+    catch (Exception e) {
+      // ignored
+    }
+
+    return Math.max(1, result);
+  }
+
+  /**
+   * Determines the size of the input. For ENVI headers, the size of the
+   * data file gets used.
+   *
+   * @param file	the input
+   * @return		the size in bytes, 0 if not a file
+   */
+  public static long readSize(File file) {
+    File	data;
+
+    if (!file.isFile())
+      return 0;
+
+    if (file.getName().toLowerCase().endsWith(EnviHeader.EXTENSION)) {
+      try {
+	data = EnviHeader.parse(file).findDataFile();
+	if (data != null)
+	  return data.length();
+      }
+      catch (Exception e) {
+	// ignored
+      }
+    }
+
+    return file.length();
+  }
+
+  /**
+   * Returns the amount of work of the input.
+   *
+   * @param file	the input
+   * @return		the work, 0 if not a file
+   */
+  public static double work(File file) {
+    if (!file.isFile())
+      return 0;
+    return readSize(file) + readBands(file) * BAND_OVERHEAD;
+  }
+
+  /**
+   * Returns the runtime per unit of work for the executable. Falls back on
+   * the average of the known executables or the default rate.
+   *
+   * @param executable	the executable
+   * @return		the rate (msec per byte)
+   */
+  protected double getRate(String executable) {
+    double	sum;
+
+    if (m_Rates.containsKey(executable))
+      return m_Rates.get(executable);
+    if (m_Rates.isEmpty())
+      return DEFAULT_RATE;
+
+    sum = 0;
+    for (double rate: m_Rates.values())
+      sum += rate;
+
+    return sum / m_Rates.size();
+  }
+
+  /**
+   * Estimates the runtime of the executable on the input.
+   *
+   * @param executable	the executable
+   * @param file	the input
+   * @return		the estimated runtime in msec, 0 if not a file
+   */
+  public synchronized double estimate(String executable, File file) {
+    return getRate(executable) * work(file);
+  }
+
+  /**
+   * Records the runtime of a successfully completed job.
+   *
+   * @param executable	the executable
+   * @param file	the input
+   * @param runtime	the runtime in msec
+   */
+  public synchronized void record(String executable, File file, long runtime) {
+    double	work;
+    double	rate;
+
+    work = work(file);
+    if (work <= 0)
+      return;
+
+    rate = Math.max(1, runtime) / work;
+    if (m_Rates.containsKey(executable))
+      rate = (1.0 - ALPHA) * m_Rates.get(executable) + ALPHA * rate;
+    m_Rates.put(executable, rate);
+    m_Counts.put(executable, m_Counts.getOrDefault(executable, 0L) + 1);
+    m_Modified = true;
+  }
+}
@@ -0,0 +1,187 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * DirectoryMappingHelper.java
+ * Copyright (C) 2023 University of Waikato, Hamilton, New Zealand
+ */
+
+package adams.core.command.docker;
+
+import adams.core.base.DockerDirectoryMapping;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Helper methods for docker directory mappings.
+ *
+ * @author fracpete (fracpete at waikato dot ac dot nz)
+ */
+public class DirectoryMappingHelper {
+
+  /**
+   * Splits the mapping into local dir, container dir and (optional) mount options.
+   *
+   * @param mapping	the mapping to split
+   * @return		the parts (local, container, options), options may be empty
+   */
+  public static String[] split(DockerDirectoryMapping mapping) {
+    String	value;
+    String	local;
+    String	container;
+    String	options;
+    int		start;
+    int		pos;
+
+    value = mapping.getValue();
+    // skip drive letter on Windows
+    start = ((value.length() > 2) && (value.charAt(1) == ':')) ? 2 : 0;
+    pos   = value.indexOf(':', start);
+    if (pos == -1)
+      return new String[]{value, value, ""};
+
+    local     = value.substring(0, pos);
+    container = value.substring(pos + 1);
+    options   = "";
+    pos       = container.indexOf(':');
+    if (pos > -1) {
+      options   = container.substring(pos);
+      container = container.substring(0, pos);
+    }
+
+    return new String[]{local, container, options};
+  }
+
+  /**
+   * Returns the local directory of the mapping.
+   *
+   * @param mapping	the mapping
+   * @return		the local directory
+   */
+  public static String getLocalDir(DockerDirectoryMapping mapping) {
+    return split(mapping)[0];
+  }
+
+  /**
+   * Returns the container directory of the mapping.
+   *
+   * @param mapping	the mapping
+   * @return		the container directory
+   */
+  public static String getContainerDir(DockerDirectoryMapping mapping) {
+    return split(mapping)[1];
+  }
+
+  /**
+   * Merges the mappings into the combined list. Mappings that use the same
+   * container directory for a different local directory get their container
+   * directory renamed.
+   *
+   * @param merged	the combined mappings to add to
+   * @param mappings	the mappings to merge
+   * @return		the renamed container directories (old to new)
+   */
+  public static Map<String,String> merge(List<DockerDirectoryMapping> merged, List<DockerDirectoryMapping> mappings) {
+    Map<String,String>	result;
+    Map<String,String>	existing;
+    String[]		parts;
+    String[]		mparts;
+    String		container;
+    int			n;
+
+    result   = new HashMap<>();
+    existing = new HashMap<>();
+    for (DockerDirectoryMapping mapping: merged) {
+      mparts = split(mapping);
+      existing.put(mparts[1], mparts[0]);
+    }
+
+    for (DockerDirectoryMapping mapping: mappings) {
+      parts = split(mapping);
+      if (!existing.containsKey(parts[1])) {
+	merged.add(mapping);
+	existing.put(parts[1], parts[0]);
+	continue;
+      }
+      if (existing.get(parts[1]).equals(parts[0]))
+	continue;
+      n = 1;
+      do {
+	container = parts[1] + "-" + n;
+	n++;
+      }
+      while (existing.containsKey(container) && !existing.get(container).equals(parts[0]));
+      if (!existing.containsKey(container)) {
+	merged.add(new DockerDirectoryMapping(parts[0] + ":" + container + parts[2]));
+	existing.put(container, parts[0]);
+      }
+      result.put(parts[1], container);
+    }
+
+    return result;
+  }
+
+  /**
+   * Updates the container paths in the arguments using the renamed container directories.
+   *
+   * @param args	the arguments to update
+   * @param renamed	the renamed container directories (old to new)
+   * @return		the updated arguments
+   */
+  public static String[] rename(String[] args, Map<String,String> renamed) {
+    String[]	result;
+    String	best;
+    int		i;
+
+    result = args.clone();
+    if (renamed.isEmpty())
+      return result;
+
+    for (i = 0; i < result.length; i++) {
+      best = null;
+      for (String dir: renamed.keySet()) {
+	if (result[i].equals(dir) || result[i].startsWith(dir + "/")) {
+	  if ((best == null) || (dir.length() > best.length()))
+	    best = dir;
+	}
+      }
+      if (best != null)
+	result[i] = renamed.get(best) + result[i].substring(best.length());
+    }
+
+    return result;
+  }
+
+  /**
+   * Turns the mappings into "-v" options.
+   *
+   * @param mappings	the mappings
+   * @return		the options
+   */
+  public static List<String> toOptions(List<DockerDirectoryMapping> mappings) {
+    List<String>	result;
+
+    result = new ArrayList<>();
+    for (DockerDirectoryMapping mapping: mappings) {
+      result.add("-v");
+      result.add(mapping.getValue());
+    }
+
+    return result;
+  }
+}
@@ -0,0 +1,486 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * DockerEngineClient.java
+ * Copyright (C) 2023 University of Waikato, Hamilton, New Zealand
+ */
+
+package adams.core.command.docker;
+
+import adams.core.logging.LoggingObject;
+import net.minidev.json.JSONArray;
+import net.minidev.json.JSONObject;
+import net.minidev.json.parser.JSONParser;
+
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Minimal client for the Docker Engine HTTP API, for running containers
+ * without spawning the docker CLI. Idle connections are kept alive and
+ * re-used.
+ * <br>
+ * For more information on the API see:<br>
+ * https://docs.docker.com/engine/api/
+ *
+ * @author fracpete (fracpete at waikato dot ac dot nz)
+ */
+public class DockerEngineClient
+  extends LoggingObject {
+
+  private static final long serialVersionUID = -2418306720348792104L;
+
+  /** the default endpoint. */
+  public static final String DEFAULT_ENDPOINT = "unix:///var/run/docker.sock";
+
+  /** the default API version. */
+  public static final String DEFAULT_API_VERSION = "1.41";
+
+  /** the endpoint. */
+  protected String m_Endpoint;
+
+  /** the API version. */
+  protected String m_APIVersion;
+
+  /** the maximum number of idle connections to keep. */
+  protected int m_MaxIdle;
+
+  /** the idle connections. */
+  protected transient Deque<EngineConnection> m_Idle;
+
+  /** whether the client has been closed. */
+  protected boolean m_Closed;
+
+  /**
+   * Initializes the client.
+   *
+   * @param endpoint	the endpoint, eg unix:///var/run/docker.sock or tcp://127.0.0.1:2375
+   * @param apiVersion	the API version to use, eg 1.41
+   * @param maxIdle	the maximum number of idle connections to keep
+   */
+  public DockerEngineClient(String endpoint, String apiVersion, int maxIdle) {
+    m_Endpoint   = endpoint;
+    m_APIVersion = apiVersion;
+    m_MaxIdle    = maxIdle;
+    m_Idle       = new ArrayDeque<>();
+    m_Closed     = false;
+  }
+
+  /**
+   * Returns the endpoint.
+   *
+   * @return		the endpoint
+   */
+  public String getEndpoint() {
+    return m_Endpoint;
+  }
+
+  /**
+   * Returns the API version.
+   *
+   * @return		the version
+   */
+  public String getAPIVersion() {
+    return m_APIVersion;
+  }
+
+  /**
+   * Returns an idle connection or opens a new one.
+   *
+   * @return		the connection
+   * @throws IOException	if connecting fails
+   */
+  protected EngineConnection acquire() throws IOException {
+    EngineConnection	result;
+
+    synchronized (m_Idle) {
+      if (m_Closed)
+	throw new IllegalStateException("Client has been closed!");
+      while ((result = m_Idle.pollFirst()) != null) {
+	if (result.isReusable())
+	  return result;
+	result.close();
+      }
+    }
+
+    if (isLoggingEnabled())
+      getLogger().fine("Opening connection: " + m_Endpoint);
+
+    return new EngineConnection(m_Endpoint);
+  }
+
+  /**
+   * Returns the connection for re-use, closes it if not re-usable or if
+   * there are enough idle connections already.
+   *
+   * @param conn	the connection to return
+   */
+  protected void release(EngineConnection conn) {
+    synchronized (m_Idle) {
+      if (!m_Closed && conn.isReusable() && (m_Idle.size() < m_MaxIdle)) {
+	m_Idle.addFirst(conn);
+	return;
+      }
+    }
+    conn.close();
+  }
+
+  /**
+   * Turns the path into a versioned API path.
+   *
+   * @param path	the path (starting with /)
+   * @return		the API path
+   */
+  protected String toAPIPath(String path) {
+    if (m_APIVersion.isEmpty())
+      return path;
+    else
+      return "/v" + m_APIVersion + path;
+  }
+
+  /**
+   * Performs a request, using a pooled connection.
+   *
+   * @param method	the HTTP method
+   * @param path	the path, including query
+   * @param body	the body, null if none
+   * @return		the response
+   * @throws IOException	if the request fails
+   */
+  public EngineConnection.Response request(String method, String path, JSONObject body) throws IOException {
+    EngineConnection		conn;
+    EngineConnection.Response	result;
+
+    conn = acquire();
+    try {
+      result = conn.request(method, toAPIPath(path), (body == null) ? null : body.toJSONString());
+    }
+    finally {
+      release(conn);
+    }
+
+    if (isLoggingEnabled())
+      getLogger().fine(method + " " + path + " -> " + result.getStatus());
+
+    return result;
+  }
+
+  /**
+   * Performs a request and checks for success.
+   *
+   * @param method	the HTTP method
+   * @param path	the path, including query
+   * @param body	the body, null if none
+   * @return		the parsed JSON response, null if no body
+   * @throws IOException	if the request fails or the status is not 2xx
+   */
+  protected JSONObject requestJson(String method, String path, JSONObject body) throws IOException {
+    EngineConnection.Response	response;
+
+    response = request(method, path, body);
+    if (!response.isSuccess())
+      throw new IOException(method + " " + path + " failed: " + response);
+    if (response.getBody().length == 0)
+      return null;
+
+    return parse(response.getBodyAsString());
+  }
+
+  /**
+   * Parses the JSON object.
+   *
+   * @param json	the JSON string
+   * @return		the object
+   * @throws IOException	if parsing fails
+   */
+  protected JSONObject parse(String json) throws IOException {
+    try {
+      return (JSONObject) new JSONParser(JSONParser.MODE_PERMISSIVE).parse(json);
+    }
+    catch (Exception e) {
+      throw new IOException("Failed to parse response: " + json, e);
+    }
+  }
+
+  /**
+   * Turns the list into a JSON array.
+   *
+   * @param list	the list to convert
+   * @return		the array
+   */
+  protected static JSONArray toArray(List<String> list) {
+    JSONArray	result;
+
+    result = new JSONArray();
+    result.addAll(list);
+
+    return result;
+  }
+
+  /**
+   * URL-encodes the value.
+   *
+   * @param value	the value to encode
+   * @return		the encoded value
+   */
+  protected static String encode(String value) {
+    return URLEncoder.encode(value, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Pulls the image. Uses the "latest" tag if the image doesn't specify
+   * a tag (or digest).
+   *
+   * @param image	the image to pull
+   * @throws IOException	if pulling fails
+   */
+  public void pullImage(String image) throws IOException {
+    EngineConnection.Response	response;
+    String			query;
+    int				pos;
+
+    // without a tag, all tags of the image would get pulled
+    pos = image.lastIndexOf(':');
+    if (image.contains("@"))
+      query = "fromImage=" + encode(image);
+    else if (pos > image.lastIndexOf('/'))
+      query = "fromImage=" + encode(image.substring(0, pos)) + "&tag=" + encode(image.substring(pos + 1));
+    else
+      query = "fromImage=" + encode(image) + "&tag=latest";
+    response = request("POST", "/images/create?" + query, null);
+    // errors can be reported in the progress stream as well
+    if (!response.isSuccess() || response.getBodyAsString().contains("\"error\""))
+      throw new IOException("Failed to pull image " + image + ": " + response);
+  }
+
+  /**
+   * Creates a container.
+   *
+   * @param name	the name of the container, null for a generated one
+   * @param image	the image to use
+   * @param entrypoint	the entrypoint, null for the image's default
+   * @param cmd		the command
+   * @param user	the user (uid:gid), null for the image's default
+   * @param binds	the volume bindings (host:container)
+   * @param pullMissing	whether to pull the image if not present
+   * @return		the container ID
+   * @throws IOException	if creating the container fails
+   */
+  public String createContainer(String name, String image, List<String> entrypoint, List<String> cmd, String user, List<String> binds, boolean pullMissing) throws IOException {
+    return createContainer(name, image, entrypoint, cmd, user, binds, null, null, pullMissing);
+  }
+
+  /**
+   * Creates a container.
+   *
+   * @param name	the name of the container, null for a generated one
+   * @param image	the image to use
+   * @param entrypoint	the entrypoint, null for the image's default
+   * @param cmd		the command
+   * @param user	the user (uid:gid), null for the image's default
+   * @param binds	the volume bindings (host:container)
+   * @param env		the environment variables (KEY=VALUE), null for none
+   * @param resources	the resource limits, null for none
+   * @param pullMissing	whether to pull the image if not present
+   * @return		the container ID
+   * @throws IOException	if creating the container fails
+   */
+  public String createContainer(String name, String image, List<String> entrypoint, List<String> cmd, String user, List<String> binds, List<String> env, ContainerResources resources, boolean pullMissing) throws IOException {
+    JSONObject			body;
+    JSONObject			hostConfig;
+    String			path;
+    EngineConnection.Response	response;
+
+    hostConfig = new JSONObject();
+    hostConfig.put("Binds", toArray(binds));
+    if (resources != null)
+      resources.applyTo(hostConfig);
+    body = new JSONObject();
+    body.put("Image", image);
+    if (entrypoint != null)
+      body.put("Entrypoint", toArray(entrypoint));
+    body.put("Cmd", toArray(cmd));
+    if (user != null)
+      body.put("User", user);
+    if ((env != null) && !env.isEmpty())
+      body.put("Env", toArray(env));
+    body.put("AttachStdout", true);
+    body.put("AttachStderr", true);
+    body.put("Tty", false);
+    body.put("HostConfig", hostConfig);
+
+    path = "/containers/create" + ((name == null) ? "" : "?name=" + encode(name));
+    response = request("POST", path, body);
+    if ((response.getStatus() == 404) && pullMissing) {
+      if (isLoggingEnabled())
+	getLogger().info("Pulling missing image: " + image);
+      pullImage(image);
+      response = request("POST", path, body);
+    }
+    if (!response.isSuccess())
+      throw new IOException("Failed to create container from image " + image + ": " + response);
+
+    return (String) parse(response.getBodyAsString()).get("Id");
+  }
+
+  /**
+   * Attaches to the stdout/stderr of the (not yet started) container. The
+   * returned stream is multiplexed, see {@link EngineRunner}.
+   *
+   * @param id		the container ID
+   * @return		the hijacked connection, see {@link EngineConnection#getStream()}
+   * @throws IOException	if attaching fails
+   */
+  public EngineConnection attachContainer(String id) throws IOException {
+    return hijack("POST", "/containers/" + encode(id) + "/attach?stream=1&stdout=1&stderr=1", null);
+  }
+
+  /**
+   * Opens a new connection and hijacks it for streaming.
+   *
+   * @param method	the HTTP method
+   * @param path	the path, including query
+   * @param body	the body, null if none
+   * @return		the hijacked connection
+   * @throws IOException	if the request fails
+   */
+  protected EngineConnection hijack(String method, String path, JSONObject body) throws IOException {
+    EngineConnection	result;
+
+    result = acquire();
+    try {
+      result.hijack(method, toAPIPath(path), (body == null) ? null : body.toJSONString());
+    }
+    catch (IOException e) {
+      result.close();
+      throw e;
+    }
+
+    return result;
+  }
+
+  /**
+   * Starts the container.
+   *
+   * @param id		the container ID
+   * @throws IOException	if starting fails
+   */
+  public void startContainer(String id) throws IOException {
+    requestJson("POST", "/containers/" + encode(id) + "/start", null);
+  }
+
+  /**
+   * Waits for the container to finish.
+   *
+   * @param id		the container ID
+   * @return		the exit code
+   * @throws IOException	if waiting fails
+   */
+  public int waitContainer(String id) throws IOException {
+    return ((Number) requestJson("POST", "/containers/" + encode(id) + "/wait", null).get("StatusCode")).intValue();
+  }
+
+  /**
+   * Kills the container.
+   *
+   * @param id		the container ID
+   * @throws IOException	if killing fails
+   */
+  public void killContainer(String id) throws IOException {
+    requestJson("POST", "/containers/" + encode(id) + "/kill", null);
+  }
+
+  /**
+   * Removes the container (forcefully).
+   *
+   * @param id		the container ID
+   * @throws IOException	if removing fails
+   */
+  public void removeContainer(String id) throws IOException {
+    requestJson("DELETE", "/containers/" + encode(id) + "?force=1", null);
+  }
+
+  /**
+   * Creates an exec instance in a running container.
+   *
+   * @param container	the container ID or name
+   * @param cmd		the command to execute
+   * @return		the exec ID
+   * @throws IOException	if creating fails
+   */
+  public String createExec(String container, List<String> cmd) throws IOException {
+    JSONObject	body;
+
+    body = new JSONObject();
+    body.put("Cmd", toArray(cmd));
+    body.put("AttachStdout", true);
+    body.put("AttachStderr", true);
+    body.put("Tty", false);
+
+    return (String) requestJson("POST", "/containers/" + encode(container) + "/exec", body).get("Id");
+  }
+
+  /**
+   * Starts the exec instance and attaches to its output. The returned stream
+   * is multiplexed, see {@link EngineRunner}.
+   *
+   * @param id		the exec ID
+   * @return		the hijacked connection, see {@link EngineConnection#getStream()}
+   * @throws IOException	if starting fails
+   */
+  public EngineConnection startExec(String id) throws IOException {
+    JSONObject	body;
+
+    body = new JSONObject();
+    body.put("Detach", false);
+    body.put("Tty", false);
+
+    return hijack("POST", "/exec/" + encode(id) + "/start", body);
+  }
+
+  /**
+   * Returns the exit code of the finished exec instance.
+   *
+   * @param id		the exec ID
+   * @return		the exit code, -1 if not available
+   * @throws IOException	if inspecting fails
+   */
+  public int getExecExitCode(String id) throws IOException {
+    Object	code;
+
+    code = requestJson("GET", "/exec/" + encode(id) + "/json", null).get("ExitCode");
+    if (code instanceof Number)
+      return ((Number) code).intValue();
+    else
+      return -1;
+  }
+
+  /**
+   * Closes all idle connections, the client cannot be used afterwards.
+   */
+  public void close() {
+    synchronized (m_Idle) {
+      m_Closed = true;
+      for (EngineConnection conn: m_Idle)
+	conn.close();
+      m_Idle.clear();
+    }
+  }
+}
@@ -0,0 +1,408 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * EndpointBalancer.java
+ * Copyright (C) 2023 University of Waikato, Hamilton, New Zealand
+ */
+
+package adams.core.command.docker;
+
+import adams.core.logging.LoggingObject;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Spreads invocations across several docker daemons. An invocation gets
+ * assigned to the healthy endpoint with the lowest load, i.e., in-flight
+ * invocations relative to its capacity. Endpoints get taken out of rotation
+ * after too many consecutive daemon errors (exit code {@link #DAEMON_ERROR})
+ * or a failed health check ("docker version"), and put back once a health
+ * check succeeds again.
+ *
+ * @author fracpete (fracpete at waikato dot ac dot nz)
+ */
+public class EndpointBalancer
+  extends LoggingObject {
+
+  private static final long serialVersionUID = -5403180829366427405L;
+
+  /** the exit code of the docker CLI if the daemon could not run the container. */
+  public static final int DAEMON_ERROR = 125;
+
+  /** the environment variable for the endpoint. */
+  public static final String DOCKER_HOST = "DOCKER_HOST";
+
+  /**
+   * The state of an endpoint.
+   */
+  public static class EndpointState {
+
+    /** the endpoint. */
+    protected String m_Endpoint;
+
+    /** the capacity. */
+    protected int m_Capacity;
+
+    /** the number of invocations in flight. */
+    protected int m_InFlight;
+
+    /** the number of consecutive failures. */
+    protected int m_Failures;
+
+    /** whether the endpoint is healthy. */
+    protected boolean m_Healthy;
+
+    /** the total number of invocations. */
+    protected long m_Total;
+
+    /**
+     * Initializes the state.
+     *
+     * @param endpoint	the endpoint
+     * @param capacity	the capacity
+     */
+    public EndpointState(String endpoint, int capacity) {
+      m_Endpoint = endpoint;
+      m_Capacity = capacity;
+      m_Healthy  = true;
+    }
+
+    /**
+     * Returns the endpoint.
+     *
+     * @return		the endpoint
+     */
+    public String getEndpoint() {
+      return m_Endpoint;
+    }
+
+    /**
+     * Returns the capacity.
+     *
+     * @return		the capacity
+     */
+    public int getCapacity() {
+      return m_Capacity;
+    }
+
+    /**
+     * Returns the number of invocations in flight.
+     *
+     * @return		the number
+     */
+    public int getInFlight() {
+      return m_InFlight;
+    }
+
+    /**
+     * Returns whether the endpoint is healthy.
+     *
+     * @return		true if healthy
+     */
+    public boolean isHealthy() {
+      return m_Healthy;
+    }
+
+    /**
+     * Returns the total number of invocations.
+     *
+     * @return		the number
+     */
+    public long getTotal() {
+      return m_Total;
+    }
+
+    /**
+     * Returns the load of the endpoint if another invocation got added.
+     *
+     * @return		the load
+     */
+    protected double nextLoad() {
+      return (double) (m_InFlight + 1) / m_Capacity;
+    }
+
+    /**
+     * Returns a short description of the state.
+     *
+     * @return		the description
+     */
+    @Override
+    public String toString() {
+      return m_Endpoint + ": " + (m_Healthy ? "healthy" : "unhealthy") + ", in-flight=" + m_InFlight + "/" + m_Capacity + ", total=" + m_Total;
+    }
+  }
+
+  /** the docker binary. */
+  protected String m_Binary;
+
+  /** the endpoints. */
+  protected List<EndpointState> m_Endpoints;
+
+  /** the number of consecutive failures before taking an endpoint out of rotation. */
+  protected int m_MaxFailures;
+
+  /** for the health checks. */
+  protected transient ScheduledExecutorService m_HealthChecker;
+
+  /**
+   * Initializes the balancer.
+   *
+   * @param binary	the docker binary
+   * @param maxFailures	the number of consecutive failures before taking an endpoint out of rotation
+   */
+  public EndpointBalancer(String binary, int maxFailures) {
+    m_Binary      = binary;
+    m_MaxFailures = maxFailures;
+    m_Endpoints   = new ArrayList<>();
+  }
+
+  /**
+   * Adds the endpoint.
+   *
+   * @param endpoint	the endpoint (DOCKER_HOST)
+   * @param capacity	the number of concurrent invocations
+   */
+  public synchronized void addEndpoint(String endpoint, int capacity) {
+    m_Endpoints.add(new EndpointState(endpoint, capacity));
+  }
+
+  /**
+   * Returns the endpoints.
+   *
+   * @return		the endpoints
+   */
+  public synchronized List<String> getEndpoints() {
+    List<String>	result;
+
+    result = new ArrayList<>();
+    for (EndpointState state: m_Endpoints)
+      result.add(state.getEndpoint());
+
+    return result;
+  }
+
+  /**
+   * Returns the state of the endpoint.
+   *
+   * @param endpoint	the endpoint
+   * @return		the state, null if not found
+   */
+  protected EndpointState getState(String endpoint) {
+    for (EndpointState state: m_Endpoints) {
+      if (state.getEndpoint().equals(endpoint))
+	return state;
+    }
+    return null;
+  }
+
+  /**
+   * Assigns an invocation to the healthy endpoint with the lowest load.
+   * Endpoints are not limited to their capacity, the capacity only
+   * determines the share of invocations.
+   *
+   * @return		the endpoint, null if no healthy endpoint available
+   */
+  public synchronized String acquire() {
+    EndpointState	best;
+
+    best = null;
+    for (EndpointState state: m_Endpoints) {
+      if (!state.isHealthy())
+	continue;
+      if ((best == null) || (state.nextLoad() < best.nextLoad()))
+	best = state;
+    }
+    if (best == null)
+      return null;
+
+    best.m_InFlight++;
+    best.m_Total++;
+    if (isLoggingEnabled())
+      getLogger().fine("Acquired: " + best);
+
+    return best.getEndpoint();
+  }
+
+  /**
+   * Releases the invocation.
+   *
+   * @param endpoint	the endpoint the invocation was assigned to
+   * @param daemonError	whether the daemon failed to execute the invocation
+   */
+  public synchronized void release(String endpoint, boolean daemonError) {
+    EndpointState	state;
+
+    state = getState(endpoint);
+    if (state == null)
+      return;
+
+    state.m_InFlight = Math.max(0, state.m_InFlight - 1);
+    if (daemonError) {
+      state.m_Failures++;
+      if (state.isHealthy() && (state.m_Failures >= m_MaxFailures)) {
+	state.m_Healthy = false;
+	getLogger().warning("Taking endpoint out of rotation after " + state.m_Failures + " consecutive failures: " + endpoint);
+      }
+    }
+    else {
+      state.m_Failures = 0;
+    }
+  }
+
+  /**
+   * Takes the endpoint out of rotation until the next successful health check.
+   *
+   * @param endpoint	the endpoint
+   */
+  public synchronized void markUnhealthy(String endpoint) {
+    EndpointState	state;
+
+    state = getState(endpoint);
+    if ((state != null) && state.isHealthy()) {
+      state.m_Healthy = false;
+      getLogger().warning("Taking endpoint out of rotation: " + endpoint);
+    }
+  }
+
+  /**
+   * Returns whether the endpoint is healthy.
+   *
+   * @param endpoint	the endpoint
+   * @return		true if healthy
+   */
+  public synchronized boolean isHealthy(String endpoint) {
+    EndpointState	state;
+
+    state = getState(endpoint);
+    return (state != null) && state.isHealthy();
+  }
+
+  /**
+   * Checks the health of all endpoints in parallel via "docker version".
+   *
+   * @param timeout	the maximum time to wait for a daemon in msec
+   */
+  public void checkHealth(long timeout) {
+    List<String>	endpoints;
+    ProcessRunner[]	runners;
+    long		end;
+    boolean		healthy;
+    int			i;
+
+    endpoints = getEndpoints();
+    runners   = new ProcessRunner[endpoints.size()];
+    for (i = 0; i < endpoints.size(); i++) {
+      runners[i] = new ProcessRunner(Arrays.asList(m_Binary, "version", "--format", "{{.Server.Version}}"));
+      runners[i].getEnvironment().put(DOCKER_HOST, endpoints.get(i));
+      try {
+	runners[i].start();
+      }
+      catch (Exception e) {
+	runners[i] = null;
+      }
+    }
+
+    end = System.currentTimeMillis() + timeout;
+    for (i = 0; i < endpoints.size(); i++) {
+      healthy = false;
+      if (runners[i] != null) {
+	try {
+	  if (runners[i].waitFor(Math.max(1, end - System.currentTimeMillis())))
+	    healthy = runners[i].hasSucceeded();
+	  else
+	    runners[i].destroy();
+	}
+	catch (InterruptedException e) {
+	  runners[i].destroy();
+	  return;
+	}
+      }
+      updateHealth(endpoints.get(i), healthy);
+    }
+  }
+
+  /**
+   * Updates the health of the endpoint after a health check.
+   *
+   * @param endpoint	the endpoint
+   * @param healthy	whether the check succeeded
+   */
+  protected synchronized void updateHealth(String endpoint, boolean healthy) {
+    EndpointState	state;
+
+    state = getState(endpoint);
+    if (state == null)
+      return;
+
+    if (healthy && !state.isHealthy())
+      getLogger().info("Endpoint back in rotation: " + endpoint);
+    else if (!healthy && state.isHealthy())
+      getLogger().warning("Health check failed, taking endpoint out of rotation: " + endpoint);
+    state.m_Healthy = healthy;
+    if (healthy)
+      state.m_Failures = 0;
+  }
+
+  /**
+   * Starts the periodic health checks, the first one right away.
+   *
+   * @param interval	the interval in msec
+   * @param timeout	the maximum time to wait for a daemon in msec
+   */
+  public synchronized void startHealthChecks(long interval, final long timeout) {
+    stopHealthChecks();
+    m_HealthChecker = Executors.newSingleThreadScheduledExecutor(r -> {
+      Thread t = new Thread(r, getClass().getSimpleName() + "-health");
+      t.setDaemon(true);
+      return t;
+    });
+    m_HealthChecker.scheduleWithFixedDelay(() -> checkHealth(timeout), 0, interval, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Stops the periodic health checks.
+   */
+  public synchronized void stopHealthChecks() {
+    if (m_HealthChecker != null) {
+      m_HealthChecker.shutdownNow();
+      m_HealthChecker = null;
+    }
+  }
+
+  /**
+   * Returns a short description of the endpoint states.
+   *
+   * @return		the description
+   */
+  @Override
+  public synchronized String toString() {
+    StringBuilder	result;
+
+    result = new StringBuilder();
+    for (EndpointState state: m_Endpoints) {
+      if (result.length() > 0)
+	result.append("\n");
+      result.append(state);
+    }
+
+    return result.toString();
+  }
+}
@@ -0,0 +1,479 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * EngineConnection.java
+ * Copyright (C) 2023 University of Waikato, Hamilton, New Zealand
+ */
+
+package adams.core.command.docker;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ProtocolFamily;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.URI;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A single HTTP/1.1 connection to the docker daemon, either via a unix socket
+ * (eg unix:///var/run/docker.sock) or via TCP (eg tcp://127.0.0.1:2375).
+ * Connections are kept alive and can be re-used for further requests, unless
+ * the daemon closes them or they got hijacked for streaming container output.
+ * <br>
+ * Unix sockets are only supported on Java 16 or later (accessed via reflection).
+ *
+ * @author fracpete (fracpete at waikato dot ac dot nz)
+ */
+public class EngineConnection
+  implements Closeable {
+
+  /**
+   * Container for a response.
+   */
+  public static class Response {
+
+    /** the status code. */
+    protected int m_Status;
+
+    /** the headers (lower case names). */
+    protected Map<String,String> m_Headers;
+
+    /** the body. */
+    protected byte[] m_Body;
+
+    /**
+     * Initializes the response.
+     *
+     * @param status	the status code
+     * @param headers	the headers
+     * @param body	the body
+     */
+    public Response(int status, Map<String,String> headers, byte[] body) {
+      m_Status  = status;
+      m_Headers = headers;
+      m_Body    = body;
+    }
+
+    /**
+     * Returns the status code.
+     *
+     * @return		the code
+     */
+    public int getStatus() {
+      return m_Status;
+    }
+
+    /**
+     * Returns the specified header.
+     *
+     * @param name	the name of the header (case insensitive)
+     * @return		the value, null if not present
+     */
+    public String getHeader(String name) {
+      return m_Headers.get(name.toLowerCase());
+    }
+
+    /**
+     * Returns the body.
+     *
+     * @return		the body
+     */
+    public byte[] getBody() {
+      return m_Body;
+    }
+
+    /**
+     * Returns the body as string.
+     *
+     * @return		the body
+     */
+    public String getBodyAsString() {
+      return new String(m_Body, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns whether the status code is in the 2xx range.
+     *
+     * @return		true if successful
+     */
+    public boolean isSuccess() {
+      return (m_Status >= 200) && (m_Status < 300);
+    }
+
+    /**
+     * Returns a short description of the response.
+     *
+     * @return		the description
+     */
+    @Override
+    public String toString() {
+      return "HTTP " + m_Status + (m_Body.length > 0 ? ": " + getBodyAsString().trim() : "");
+    }
+  }
+
+  /** the endpoint. */
+  protected String m_Endpoint;
+
+  /** the channel (unix socket). */
+  protected SocketChannel m_Channel;
+
+  /** the socket (tcp). */
+  protected Socket m_Socket;
+
+  /** for reading. */
+  protected InputStream m_Input;
+
+  /** for writing. */
+  protected OutputStream m_Output;
+
+  /** whether the connection can be re-used. */
+  protected boolean m_Reusable;
+
+  /** whether the connection got hijacked (raw stream). */
+  protected boolean m_Hijacked;
+
+  /**
+   * Opens a connection to the endpoint.
+   *
+   * @param endpoint	the endpoint, eg unix:///var/run/docker.sock or tcp://127.0.0.1:2375
+   * @throws IOException	if connecting fails or the endpoint is not supported
+   */
+  public EngineConnection(String endpoint) throws IOException {
+    URI		uri;
+
+    m_Endpoint = endpoint;
+    m_Reusable = true;
+    m_Hijacked = false;
+    uri        = URI.create(endpoint);
+    switch (uri.getScheme()) {
+      case "unix":
+	m_Channel = openUnixChannel(uri.getPath());
+	m_Input   = new BufferedInputStream(Channels.newInputStream(m_Channel));
+	m_Output  = new BufferedOutputStream(Channels.newOutputStream(m_Channel));
+	break;
+      case "tcp":
+      case "http":
+	m_Socket = new Socket();
+	m_Socket.connect(new InetSocketAddress(uri.getHost(), uri.getPort() == -1 ? 2375 : uri.getPort()));
+	m_Socket.setTcpNoDelay(true);
+	m_Input  = new BufferedInputStream(m_Socket.getInputStream());
+	m_Output = new BufferedOutputStream(m_Socket.getOutputStream());
+	break;
+      default:
+	throw new IOException("Unsupported docker endpoint (unix:// or tcp://): " + endpoint);
+    }
+  }
+
+  /**
+   * Returns whether the JVM supports unix sockets (Java 16 or later).
+   *
+   * @return		true if supported
+   */
+  public static boolean supportsUnixSockets() {
+    try {
+      Class.forName("java.net.UnixDomainSocketAddress");
+      return true;
+    }
+    catch (Exception e) {
+      return false;
+    }
+  }
+
+  /**
+   * Opens a unix socket channel. Uses reflection, as unix sockets are only
+   * available on Java 16 or later.
+   *
+   * @param path	the path of the socket
+   * @return		the connected channel
+   * @throws IOException	if connecting fails or unix sockets are not supported
+   */
+  protected static SocketChannel openUnixChannel(String path) throws IOException {
+    SocketChannel	result;
+    SocketAddress	address;
+    ProtocolFamily	family;
+
+    try {
+      address = (SocketAddress) Class.forName("java.net.UnixDomainSocketAddress").getMethod("of", String.class).invoke(null, path);
+      family  = StandardProtocolFamily.valueOf("UNIX");
+      result  = (SocketChannel) SocketChannel.class.getMethod("open", ProtocolFamily.class).invoke(null, family);
+    }
+    catch (Exception e) {
+      throw new IOException("Unix sockets require Java 16 or later, use a tcp:// endpoint instead: " + path, e);
+    }
+    result.connect(address);
+
+    return result;
+  }
+
+  /**
+   * Returns the endpoint.
+   *
+   * @return		the endpoint
+   */
+  public String getEndpoint() {
+    return m_Endpoint;
+  }
+
+  /**
+   * Sends a request.
+   *
+   * @param method	the HTTP method
+   * @param path	the path, including query
+   * @param body	the JSON body, null if none
+   * @param upgrade	whether to request a raw stream (hijacking the connection)
+   * @throws IOException	if sending fails
+   */
+  protected void send(String method, String path, String body, boolean upgrade) throws IOException {
+    StringBuilder	request;
+    byte[]		data;
+
+    data    = (body == null) ? new byte[0] : body.getBytes(StandardCharsets.UTF_8);
+    request = new StringBuilder();
+    request.append(method).append(" ").append(path).append(" HTTP/1.1\r\n");
+    request.append("Host: docker\r\n");
+    if (upgrade) {
+      request.append("Connection: Upgrade\r\n");
+      request.append("Upgrade: tcp\r\n");
+    }
+    if (body != null)
+      request.append("Content-Type: application/json\r\n");
+    request.append("Content-Length: ").append(data.length).append("\r\n");
+    request.append("\r\n");
+    m_Output.write(request.toString().getBytes(StandardCharsets.US_ASCII));
+    m_Output.write(data);
+    m_Output.flush();
+  }
+
+  /**
+   * Reads a line terminated by CRLF.
+   *
+   * @return		the line (without terminator)
+   * @throws IOException	if reading fails or the stream ends
+   */
+  protected String readLine() throws IOException {
+    ByteArrayOutputStream	line;
+    int				b;
+
+    line = new ByteArrayOutputStream();
+    while ((b = m_Input.read()) != '\n') {
+      if (b == -1)
+	throw new EOFException("Connection closed by docker daemon!");
+      if (b != '\r')
+	line.write(b);
+    }
+
+    return line.toString(StandardCharsets.US_ASCII);
+  }
+
+  /**
+   * Reads exactly the specified number of bytes.
+   *
+   * @param len		the number of bytes
+   * @return		the bytes
+   * @throws IOException	if reading fails or the stream ends prematurely
+   */
+  protected byte[] readFully(int len) throws IOException {
+    byte[]	result;
+    int		read;
+    int		n;
+
+    result = new byte[len];
+    read   = 0;
+    while (read < len) {
+      n = m_Input.read(result, read, len - read);
+      if (n == -1)
+	throw new EOFException("Connection closed by docker daemon!");
+      read += n;
+    }
+
+    return result;
+  }
+
+  /**
+   * Reads the status line and the headers.
+   *
+   * @param headers	for storing the headers
+   * @return		the status code
+   * @throws IOException	if reading fails
+   */
+  protected int readHead(Map<String,String> headers) throws IOException {
+    String	line;
+    String[]	parts;
+    int		pos;
+
+    line  = readLine();
+    parts = line.split(" ", 3);
+    if ((parts.length < 2) || !parts[0].startsWith("HTTP/"))
+      throw new IOException("Invalid response from docker daemon: " + line);
+    if (parts[0].equals("HTTP/1.0"))
+      m_Reusable = false;
+
+    while (!(line = readLine()).isEmpty()) {
+      pos = line.indexOf(':');
+      if (pos > -1)
+	headers.put(line.substring(0, pos).trim().toLowerCase(), line.substring(pos + 1).trim());
+    }
+    if ("close".equalsIgnoreCase(headers.get("connection")))
+      m_Reusable = false;
+
+    return Integer.parseInt(parts[1]);
+  }
+
+  /**
+   * Reads the body of the response.
+   *
+   * @param status	the status code
+   * @param headers	the headers
+   * @return		the body
+   * @throws IOException	if reading fails
+   */
+  protected byte[] readBody(int status, Map<String,String> headers) throws IOException {
+    ByteArrayOutputStream	body;
+    byte[]			buffer;
+    int				size;
+    int				n;
+
+    if ((status == 204) || (status == 304) || (status < 200))
+      return new byte[0];
+
+    if ("chunked".equalsIgnoreCase(headers.get("transfer-encoding"))) {
+      body = new ByteArrayOutputStream();
+      while ((size = Integer.parseInt(readLine().split(";")[0].trim(), 16)) > 0)
+	body.write(readFully(size + 2), 0, size);
+      // trailers
+      while (!readLine().isEmpty());
+      return body.toByteArray();
+    }
+
+    if (headers.containsKey("content-length"))
+      return readFully(Integer.parseInt(headers.get("content-length")));
+
+    // no length information: read till the connection gets closed
+    m_Reusable = false;
+    body   = new ByteArrayOutputStream();
+    buffer = new byte[8192];
+    while ((n = m_Input.read(buffer)) != -1)
+      body.write(buffer, 0, n);
+    return body.toByteArray();
+  }
+
+  /**
+   * Performs a request.
+   *
+   * @param method	the HTTP method
+   * @param path	the path, including query
+   * @param body	the JSON body, null if none
+   * @return		the response
+   * @throws IOException	if the request fails
+   */
+  public Response request(String method, String path, String body) throws IOException {
+    Map<String,String>	headers;
+    int			status;
+
+    if (m_Hijacked)
+      throw new IllegalStateException("Connection has been hijacked!");
+
+    try {
+      send(method, path, body, false);
+      headers = new HashMap<>();
+      status  = readHead(headers);
+      return new Response(status, headers, readBody(status, headers));
+    }
+    catch (IOException e) {
+      m_Reusable = false;
+      throw e;
+    }
+  }
+
+  /**
+   * Performs a request that turns the connection into a raw stream (eg for
+   * attaching to a container). The connection cannot be re-used afterwards.
+   *
+   * @param method	the HTTP method
+   * @param path	the path, including query
+   * @param body	the JSON body, null if none
+   * @return		the raw stream
+   * @throws IOException	if the request fails or the daemon does not hand out a stream
+   */
+  public InputStream hijack(String method, String path, String body) throws IOException {
+    Map<String,String>	headers;
+    int			status;
+
+    m_Reusable = false;
+    m_Hijacked = true;
+    send(method, path, body, true);
+    headers = new HashMap<>();
+    status  = readHead(headers);
+    if ((status != 101) && (status != 200))
+      throw new IOException("Failed to attach: HTTP " + status + ": " + new String(readBody(status, headers), StandardCharsets.UTF_8).trim());
+
+    return m_Input;
+  }
+
+  /**
+   * Returns the raw stream of the hijacked connection.
+   *
+   * @return		the stream
+   * @see		#hijack(String, String, String)
+   */
+  public InputStream getStream() {
+    if (!m_Hijacked)
+      throw new IllegalStateException("Connection has not been hijacked!");
+    return m_Input;
+  }
+
+  /**
+   * Returns whether the connection can be used for further requests.
+   *
+   * @return		true if re-usable
+   */
+  public boolean isReusable() {
+    if (m_Channel != null)
+      return m_Reusable && m_Channel.isOpen();
+    else
+      return m_Reusable && !m_Socket.isClosed();
+  }
+
+  /**
+   * Closes the connection.
+   */
+  @Override
+  public void close() {
+    m_Reusable = false;
+    try {
+      if (m_Channel != null)
+	m_Channel.close();
+      if (m_Socket != null)
+	m_Socket.close();
+    }
+    catch (Exception e) {
+      // ignored
+    }
+  }
+}
@@ -0,0 +1,429 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * EngineRunner.java
+ * Copyright (C) 2023 University of Waikato, Hamilton, New Zealand
+ */
+
+package adams.core.command.docker;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Executes a command in a docker container via the Docker Engine API rather
+ * than the docker CLI. Either runs a new container (create, attach, start,
+ * wait, remove) or executes the command in a running container (exec).
+ * The environment variables (see {@link #getEnvironment()}) get set in the
+ * new container.
+ * <br>
+ * The attached output stream is multiplexed: each frame consists of an 8 byte
+ * header (stream type, 3 bytes padding, 4 bytes big-endian payload size)
+ * followed by the payload.
+ *
+ * @author fracpete (fracpete at waikato dot ac dot nz)
+ */
+public class EngineRunner
+  extends ProcessRunner {
+
+  private static final long serialVersionUID = 8236310440126283311L;
+
+  /** the client to use. */
+  protected transient DockerEngineClient m_Client;
+
+  /** the image (when running a new container). */
+  protected String m_Image;
+
+  /** the entrypoint, null for the image's default. */
+  protected List<String> m_Entrypoint;
+
+  /** the command to run in the container. */
+  protected List<String> m_ContainerCommand;
+
+  /** the user (uid:gid), null for the image's default. */
+  protected String m_User;
+
+  /** the volume bindings (host:container). */
+  protected List<String> m_Binds;
+
+  /** whether to pull the image if missing. */
+  protected boolean m_PullMissing;
+
+  /** the resource limits (when running a new container), null for none. */
+  protected ContainerResources m_Resources;
+
+  /** the running container to execute the command in, null to run a new container. */
+  protected String m_Container;
+
+  /** the ID of the created container. */
+  protected String m_ContainerID;
+
+  /** the ID of the exec instance. */
+  protected String m_ExecID;
+
+  /** the hijacked connection. */
+  protected transient EngineConnection m_Attached;
+
+  /** the thread reading the output and waiting for the container. */
+  protected transient Thread m_Reader;
+
+  /**
+   * Initializes the runner for running a new container.
+   *
+   * @param client	the client to use
+   * @param image	the image to use
+   * @param entrypoint	the entrypoint, null for the image's default
+   * @param cmd		the command to run in the container
+   * @param user	the user (uid:gid), null for the image's default
+   * @param binds	the volume bindings (host:container)
+   * @param pullMissing	whether to pull the image if missing
+   */
+  public EngineRunner(DockerEngineClient client, String image, List<String> entrypoint, List<String> cmd, String user, List<String> binds, boolean pullMissing) {
+    super(toCommandLine(client, "run", image, entrypoint, cmd));
+    m_Client           = client;
+    m_Image            = image;
+    m_Entrypoint       = (entrypoint == null) ? null : new ArrayList<>(entrypoint);
+    m_ContainerCommand = new ArrayList<>(cmd);
+    m_User             = user;
+    m_Binds            = new ArrayList<>(binds);
+    m_PullMissing      = pullMissing;
+    m_Container        = null;
+  }
+
+  /**
+   * Initializes the runner for executing the command in a running container.
+   *
+   * @param client	the client to use
+   * @param container	the ID or name of the running container
+   * @param cmd		the command to execute
+   */
+  public EngineRunner(DockerEngineClient client, String container, List<String> cmd) {
+    super(toCommandLine(client, "exec", container, null, cmd));
+    m_Client           = client;
+    m_Container        = container;
+    m_ContainerCommand = new ArrayList<>(cmd);
+  }
+
+  /**
+   * Generates the command line for logging and error messages.
+   *
+   * @param client	the client in use
+   * @param action	the action (run/exec)
+   * @param target	the image or container
+   * @param entrypoint	the entrypoint, null if default
+   * @param cmd		the command
+   * @return		the command line
+   */
+  protected static List<String> toCommandLine(DockerEngineClient client, String action, String target, List<String> entrypoint, List<String> cmd) {
+    List<String>	result;
+
+    result = new ArrayList<>(Arrays.asList(client.getEndpoint(), action, target));
+    if (entrypoint != null)
+      result.addAll(entrypoint);
+    result.addAll(cmd);
+
+    return result;
+  }
+
+  /**
+   * Sets the resource limits for the new container.
+   *
+   * @param value	the limits, null for none
+   */
+  public void setResources(ContainerResources value) {
+    m_Resources = value;
+  }
+
+  /**
+   * Returns the resource limits for the new container.
+   *
+   * @return		the limits, null for none
+   */
+  public ContainerResources getResources() {
+    return m_Resources;
+  }
+
+  /**
+   * Returns the environment variables in KEY=VALUE format for the container.
+   *
+   * @return		the variables
+   */
+  protected List<String> toContainerEnvironment() {
+    List<String>	result;
+
+    result = new ArrayList<>();
+    for (String key: m_Environment.keySet())
+      result.add(key + "=" + m_Environment.get(key));
+
+    return result;
+  }
+
+  /**
+   * Returns the ID of the container that got created.
+   *
+   * @return		the ID, null if not running a new container or not yet created
+   */
+  public String getContainerID() {
+    return m_ContainerID;
+  }
+
+  /**
+   * Reads exactly the buffer size from the stream.
+   *
+   * @param stream	the stream to read from
+   * @param buffer	the buffer to fill
+   * @return		false if the stream ended before any data was read
+   * @throws IOException	if reading fails or the stream ends prematurely
+   */
+  protected boolean readFully(InputStream stream, byte[] buffer) throws IOException {
+    int		read;
+    int		n;
+
+    read = 0;
+    while (read < buffer.length) {
+      n = stream.read(buffer, read, buffer.length - read);
+      if (n == -1) {
+	if (read == 0)
+	  return false;
+	throw new IOException("Stream ended prematurely!");
+      }
+      read += n;
+    }
+
+    return true;
+  }
+
+  /**
+   * Outputs the collected line.
+   *
+   * @param line	the line bytes
+   * @param stdout	whether stdout or stderr
+   */
+  protected void flushLine(ByteArrayOutputStream line, boolean stdout) {
+    String	str;
+
+    str = line.toString(StandardCharsets.UTF_8);
+    if (str.endsWith("\r"))
+      str = str.substring(0, str.length() - 1);
+    processLine(str, stdout);
+    line.reset();
+  }
+
+  /**
+   * Splits the multiplexed stream into stdout and stderr lines.
+   *
+   * @param stream	the stream to read
+   * @throws IOException	if reading fails
+   */
+  protected void demux(InputStream stream) throws IOException {
+    byte[]			header;
+    byte[]			payload;
+    ByteArrayOutputStream	stdout;
+    ByteArrayOutputStream	stderr;
+    ByteArrayOutputStream	line;
+    boolean			isStdout;
+    int				size;
+
+    header = new byte[8];
+    stdout = new ByteArrayOutputStream();
+    stderr = new ByteArrayOutputStream();
+    while (readFully(stream, header)) {
+      size = ((header[4] & 0xff) << 24) | ((header[5] & 0xff) << 16) | ((header[6] & 0xff) << 8) | (header[7] & 0xff);
+      payload = new byte[size];
+      if (!readFully(stream, payload) && (size > 0))
+	throw new IOException("Stream ended prematurely!");
+      isStdout = (header[0] != 2);
+      line     = isStdout ? stdout : stderr;
+      for (byte b: payload) {
+	if (b == '\n')
+	  flushLine(line, isStdout);
+	else
+	  line.write(b);
+      }
+    }
+
+    if (stdout.size() > 0)
+      flushLine(stdout, true);
+    if (stderr.size() > 0)
+      flushLine(stderr, false);
+  }
+
+  /**
+   * Reads the output and waits for the exit code, removes the container
+   * afterwards (if created).
+   */
+  protected void readAndWait() {
+    try {
+      demux(m_Attached.getStream());
+      if (m_ExecID != null)
+	m_ExitCode = m_Client.getExecExitCode(m_ExecID);
+      else
+	m_ExitCode = m_Client.waitContainer(m_ContainerID);
+    }
+    catch (Exception e) {
+      if (!m_Destroyed)
+	processLine("Failed to read output/exit code: " + e, false);
+    }
+    finally {
+      m_Attached.close();
+      removeContainer();
+      m_EndTime = System.currentTimeMillis();
+    }
+  }
+
+  /**
+   * Removes the created container, if any.
+   */
+  protected void removeContainer() {
+    if (m_ContainerID == null)
+      return;
+    try {
+      m_Client.removeContainer(m_ContainerID);
+    }
+    catch (Exception e) {
+      getLogger().warning("Failed to remove container " + m_ContainerID + ": " + e);
+    }
+  }
+
+  /**
+   * Starts the container or exec instance.
+   *
+   * @throws IOException	if starting fails
+   */
+  @Override
+  public void start() throws IOException {
+    if (m_Reader != null)
+      throw new IllegalStateException("Container already started!");
+
+    if (isLoggingEnabled())
+      getLogger().info("Executing: " + m_Command);
+
+    m_StartTime = System.currentTimeMillis();
+    try {
+      if (m_Container != null) {
+	m_ExecID   = m_Client.createExec(m_Container, m_ContainerCommand);
+	m_Attached = m_Client.startExec(m_ExecID);
+      }
+      else {
+	m_ContainerID = m_Client.createContainer(m_ContainerName, m_Image, m_Entrypoint, m_ContainerCommand, m_User, m_Binds, toContainerEnvironment(), m_Resources, m_PullMissing);
+	m_Attached    = m_Client.attachContainer(m_ContainerID);
+	m_Client.startContainer(m_ContainerID);
+      }
+    }
+    catch (IOException e) {
+      if (m_Attached != null)
+	m_Attached.close();
+      removeContainer();
+      throw e;
+    }
+
+    m_Reader = new Thread(this::readAndWait, "engine: " + m_ContainerCommand.get(0));
+    m_Reader.setDaemon(true);
+    m_Reader.start();
+  }
+
+  /**
+   * Waits for the container/exec instance to finish.
+   *
+   * @return		the exit code
+   * @throws InterruptedException	if waiting gets interrupted
+   */
+  @Override
+  public int waitFor() throws InterruptedException {
+    if (m_Reader == null)
+      throw new IllegalStateException("Container not started!");
+
+    m_Reader.join();
+
+    return m_ExitCode;
+  }
+
+  /**
+   * Waits for the container/exec instance to finish, at most the specified time.
+   *
+   * @param timeout	the maximum time to wait in msec
+   * @return		true if finished, false if still running
+   * @throws InterruptedException	if waiting gets interrupted
+   */
+  @Override
+  public boolean waitFor(long timeout) throws InterruptedException {
+    if (m_Reader == null)
+      throw new IllegalStateException("Container not started!");
+
+    m_Reader.join(timeout);
+
+    return !m_Reader.isAlive();
+  }
+
+  /**
+   * Returns whether the container/exec instance is running.
+   *
+   * @return		true if running
+   */
+  @Override
+  public boolean isRunning() {
+    return (m_Reader != null) && m_Reader.isAlive();
+  }
+
+  /**
+   * Returns whether the container/exec instance has finished.
+   *
+   * @return		true if finished
+   */
+  @Override
+  public boolean isFinished() {
+    return (m_Reader != null) && !m_Reader.isAlive();
+  }
+
+  /**
+   * Returns whether the container/exec instance has finished and its
+   * output has been read completely. A container/exec instance that never
+   * got started has no output either.
+   *
+   * @return		true if finished and output complete
+   */
+  @Override
+  public boolean isOutputComplete() {
+    return (m_Reader == null) || isFinished();
+  }
+
+  /**
+   * Kills the container. Exec instances cannot be killed, only the
+   * connection gets closed.
+   */
+  @Override
+  public void destroy() {
+    if (m_Reader == null)
+      return;
+    m_Destroyed = true;
+    if (m_ContainerID != null) {
+      try {
+	m_Client.killContainer(m_ContainerID);
+      }
+      catch (Exception e) {
+	getLogger().warning("Failed to kill container " + m_ContainerID + ": " + e);
+      }
+    }
+    else {
+      m_Attached.close();
+    }
+  }
+}
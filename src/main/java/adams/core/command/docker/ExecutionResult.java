@@ -0,0 +1,276 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * ExecutionResult.java
+ * Copyright (C) 2023 University of Waikato, Hamilton, New Zealand
+ */
+
+package adams.core.command.docker;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The result of a single command invocation: output, exit status and timings.
+ *
+ * @author fracpete (fracpete at waikato dot ac dot nz)
+ */
+public class ExecutionResult
+  implements Serializable {
+
+  private static final long serialVersionUID = -4567812338127394625L;
+
+  /** the input arguments. */
+  protected String[] m_Args;
+
+  /** the executed command line. */
+  protected List<String> m_CommandLine;
+
+  /** the collected stdout. */
+  protected String m_StdOut;
+
+  /** the collected stderr. */
+  protected String m_StdErr;
+
+  /** the formatted output. */
+  protected Object m_Output;
+
+  /** the exit code. */
+  protected int m_ExitCode;
+
+  /** the submission time (msec). */
+  protected long m_SubmitTime;
+
+  /** the start time (msec). */
+  protected long m_StartTime;
+
+  /** the end time (msec). */
+  protected long m_EndTime;
+
+  /** the error message, null if none. */
+  protected String m_Error;
+
+  /**
+   * Initializes the result.
+   *
+   * @param args	the input arguments
+   * @param commandLine	the executed command line
+   * @param submitTime	the submission time (msec)
+   */
+  public ExecutionResult(String[] args, List<String> commandLine, long submitTime) {
+    m_Args        = args.clone();
+    m_CommandLine = new ArrayList<>(commandLine);
+    m_SubmitTime  = submitTime;
+    m_StdOut      = "";
+    m_StdErr      = "";
+    m_Output      = null;
+    m_ExitCode    = -1;
+    m_StartTime   = -1;
+    m_EndTime     = -1;
+    m_Error       = null;
+  }
+
+  /**
+   * Returns the input arguments.
+   *
+   * @return		the arguments
+   */
+  public String[] getArgs() {
+    return m_Args;
+  }
+
+  /**
+   * Returns the executed command line.
+   *
+   * @return		the command line
+   */
+  public List<String> getCommandLine() {
+    return m_CommandLine;
+  }
+
+  /**
+   * Sets the collected stdout/stderr.
+   *
+   * @param stdout	the stdout output
+   * @param stderr	the stderr output
+   */
+  public void setRawOutput(String stdout, String stderr) {
+    m_StdOut = stdout;
+    m_StdErr = stderr;
+  }
+
+  /**
+   * Returns the collected stdout.
+   *
+   * @return		the output
+   */
+  public String getStdOut() {
+    return m_StdOut;
+  }
+
+  /**
+   * Returns the collected stderr.
+   *
+   * @return		the output
+   */
+  public String getStdErr() {
+    return m_StdErr;
+  }
+
+  /**
+   * Sets the formatted output.
+   *
+   * @param value	the output
+   */
+  public void setOutput(Object value) {
+    m_Output = value;
+  }
+
+  /**
+   * Returns the formatted output (output type and formatter of the command).
+   *
+   * @return		the output, null if none
+   */
+  public Object getOutput() {
+    return m_Output;
+  }
+
+  /**
+   * Sets the exit code.
+   *
+   * @param value	the exit code
+   */
+  public void setExitCode(int value) {
+    m_ExitCode = value;
+  }
+
+  /**
+   * Returns the exit code.
+   *
+   * @return		the exit code, -1 if not available
+   */
+  public int getExitCode() {
+    return m_ExitCode;
+  }
+
+  /**
+   * Sets the start/end time of the execution.
+   *
+   * @param start	the start time (msec)
+   * @param end		the end time (msec)
+   */
+  public void setTimes(long start, long end) {
+    m_StartTime = start;
+    m_EndTime   = end;
+  }
+
+  /**
+   * Returns the submission time.
+   *
+   * @return		the time (msec)
+   */
+  public long getSubmitTime() {
+    return m_SubmitTime;
+  }
+
+  /**
+   * Returns the start time.
+   *
+   * @return		the time (msec), -1 if not started
+   */
+  public long getStartTime() {
+    return m_StartTime;
+  }
+
+  /**
+   * Returns the end time.
+   *
+   * @return		the time (msec), -1 if not finished
+   */
+  public long getEndTime() {
+    return m_EndTime;
+  }
+
+  /**
+   * Returns the time spent waiting for execution (eg for a pooled container).
+   *
+   * @return		the time in msec, -1 if not started
+   */
+  public long getQueueTime() {
+    if (m_StartTime == -1)
+      return -1;
+    return m_StartTime - m_SubmitTime;
+  }
+
+  /**
+   * Returns the execution time.
+   *
+   * @return		the time in msec, -1 if not finished
+   */
+  public long getDuration() {
+    if ((m_StartTime == -1) || (m_EndTime == -1))
+      return -1;
+    return m_EndTime - m_StartTime;
+  }
+
+  /**
+   * Sets the error message.
+   *
+   * @param value	the error
+   */
+  public void setError(String value) {
+    m_Error = value;
+  }
+
+  /**
+   * Returns the error message.
+   *
+   * @return		the error, null if none
+   */
+  public String getError() {
+    return m_Error;
+  }
+
+  /**
+   * Returns whether an error occurred.
+   *
+   * @return		true if failed
+   */
+  public boolean hasError() {
+    return (m_Error != null);
+  }
+
+  /**
+   * Returns whether the execution was successful.
+   *
+   * @return		true if successful
+   */
+  public boolean hasSucceeded() {
+    return (m_Error == null) && (m_ExitCode == 0);
+  }
+
+  /**
+   * Returns a short description of the result.
+   *
+   * @return		the description
+   */
+  @Override
+  public String toString() {
+    return "exit=" + m_ExitCode + ", duration=" + getDuration() + "ms, queued=" + getQueueTime() + "ms"
+      + (m_Error != null ? ", error=" + m_Error : "");
+  }
+}
@@ -0,0 +1,183 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * ImagePuller.java
+ * Copyright (C) 2023 University of Waikato, Hamilton, New Zealand
+ */
+
+package adams.core.command.docker;
+
+import adams.core.logging.LoggingHelper;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Logger;
+
+/**
+ * Pulls docker images in the background, at most once per session (eg flow
+ * execution) and image. All parties interested in an image share the same
+ * pull. Optionally, a throw-away container gets run after a successful pull
+ * to warm up the image (layers extracted, files in the page cache).
+ * Images can be pulled on other daemons as well (via DOCKER_HOST).
+ *
+ * @author fracpete (fracpete at waikato dot ac dot nz)
+ */
+public class ImagePuller {
+
+  /** the pulls per session (session -> image -> pull). */
+  protected static Map<Object,Map<String,CompletableFuture<String>>> m_Pulls = new WeakHashMap<>();
+
+  /** for executing the pulls. */
+  protected static ExecutorService m_Executor;
+
+  /** the logger in use. */
+  protected static Logger LOGGER = LoggingHelper.getLogger(ImagePuller.class);
+
+  /**
+   * Returns the executor for the pulls, instantiates it if necessary.
+   *
+   * @return		the executor
+   */
+  protected static synchronized ExecutorService getExecutor() {
+    if (m_Executor == null) {
+      m_Executor = Executors.newCachedThreadPool(r -> {
+	Thread t = new Thread(r, ImagePuller.class.getSimpleName());
+	t.setDaemon(true);
+	return t;
+      });
+    }
+    return m_Executor;
+  }
+
+  /**
+   * Runs the docker command and waits for it to finish.
+   *
+   * @param cmd		the command
+   * @param host	the daemon to use (DOCKER_HOST), null for the default one
+   * @return		the runner
+   * @throws Exception	if execution fails
+   */
+  protected static ProcessRunner run(List<String> cmd, String host) throws Exception {
+    ProcessRunner	result;
+
+    result = new ProcessRunner(cmd);
+    if (host != null)
+      result.getEnvironment().put(EndpointBalancer.DOCKER_HOST, host);
+    result.start();
+    result.waitFor();
+
+    return result;
+  }
+
+  /**
+   * Pulls the image and (optionally) runs a container to warm it up.
+   *
+   * @param binary	the docker binary
+   * @param host	the daemon to pull on (DOCKER_HOST), null for the default one
+   * @param image	the image to pull
+   * @param warmUp	whether to run a throw-away container after pulling
+   * @return		null if successful, otherwise error message
+   */
+  protected static String doPull(String binary, String host, String image, boolean warmUp) {
+    ProcessRunner	runner;
+    String		suffix;
+    long		start;
+
+    suffix = (host == null) ? "" : " on " + host;
+
+    try {
+      start  = System.currentTimeMillis();
+      runner = run(Arrays.asList(binary, "pull", "--quiet", image), host);
+      if (!runner.hasSucceeded())
+	return "Failed to pull image " + image + suffix + ":\n" + runner.toErrorMessage();
+      LOGGER.info("Pulled image " + image + suffix + " in " + (System.currentTimeMillis() - start) + "ms");
+    }
+    catch (Exception e) {
+      return "Failed to pull image " + image + suffix + ": " + e;
+    }
+
+    if (warmUp) {
+      try {
+	start  = System.currentTimeMillis();
+	runner = run(Arrays.asList(binary, "run", "--rm", "--entrypoint", ContainerScript.SHELL, image, "-c", "true"), host);
+	if (!runner.hasSucceeded())
+	  LOGGER.warning("Failed to warm up image " + image + suffix + ":\n" + runner.toErrorMessage());
+	else
+	  LOGGER.info("Warmed up image " + image + suffix + " in " + (System.currentTimeMillis() - start) + "ms");
+      }
+      catch (Exception e) {
+	LOGGER.warning("Failed to warm up image " + image + suffix + ": " + e);
+      }
+    }
+
+    return null;
+  }
+
+  /**
+   * Returns the pull of the image for the session, starts it if not yet
+   * started.
+   *
+   * @param session	the session the pull belongs to (eg the flow)
+   * @param binary	the docker binary
+   * @param image	the image to pull
+   * @param warmUp	whether to run a throw-away container after pulling
+   * @return		the pull, completes with null if successful, otherwise with an error message
+   */
+  public static CompletableFuture<String> pull(Object session, String binary, String image, boolean warmUp) {
+    return pull(session, binary, null, image, warmUp);
+  }
+
+  /**
+   * Returns the pull of the image on the specified daemon for the session,
+   * starts it if not yet started.
+   *
+   * @param session	the session the pull belongs to (eg the flow)
+   * @param binary	the docker binary
+   * @param host	the daemon to pull on (DOCKER_HOST), null for the default one
+   * @param image	the image to pull
+   * @param warmUp	whether to run a throw-away container after pulling
+   * @return		the pull, completes with null if successful, otherwise with an error message
+   */
+  public static synchronized CompletableFuture<String> pull(Object session, final String binary, final String host, final String image, final boolean warmUp) {
+    Map<String,CompletableFuture<String>>	pulls;
+    String					key;
+
+    if (!m_Pulls.containsKey(session))
+      m_Pulls.put(session, new HashMap<>());
+    pulls = m_Pulls.get(session);
+
+    key = (host == null) ? image : image + "@" + host;
+    if (!pulls.containsKey(key))
+      pulls.put(key, CompletableFuture.supplyAsync(() -> doPull(binary, host, image, warmUp), getExecutor()));
+
+    return pulls.get(key);
+  }
+
+  /**
+   * Forgets about all the pulls of the session.
+   *
+   * @param session	the session to remove
+   */
+  public static synchronized void release(Object session) {
+    m_Pulls.remove(session);
+  }
+}
@@ -0,0 +1,188 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * IncrementalJsonParser.java
+ * Copyright (C) 2023 University of Waikato, Hamilton, New Zealand
+ */
+
+package adams.core.command.docker;
+
+import net.minidev.json.parser.JSONParser;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Parses JSON documents (objects or arrays) from text that arrives in
+ * chunks, eg line by line from a process. A document gets parsed as soon as
+ * its closing bracket arrives. A document has to start at the beginning of
+ * a line (leading whitespace is allowed), other text outside of documents
+ * (eg warnings) gets ignored. Only the text of the current document is buffered.
+ * Instead of parsing them, the text of the completed documents can be returned.
+ *
+ * @author fracpete (fracpete at waikato dot ac dot nz)
+ */
+public class IncrementalJsonParser
+  implements Serializable {
+
+  private static final long serialVersionUID = 4279016563838893140L;
+
+  /** the text of the current document. */
+  protected StringBuilder m_Buffer;
+
+  /** the nesting depth. */
+  protected int m_Depth;
+
+  /** whether inside a string. */
+  protected boolean m_InString;
+
+  /** whether the previous character was an escape character. */
+  protected boolean m_Escaped;
+
+  /** whether only whitespace was encountered on the current line (outside documents). */
+  protected boolean m_LineStart;
+
+  /** whether to parse the documents or return their text. */
+  protected boolean m_ParseDocuments;
+
+  /**
+   * Initializes the parser.
+   */
+  public IncrementalJsonParser() {
+    this(true);
+  }
+
+  /**
+   * Initializes the parser.
+   *
+   * @param parseDocuments	whether to parse the documents or return their text
+   */
+  public IncrementalJsonParser(boolean parseDocuments) {
+    m_ParseDocuments = parseDocuments;
+    reset();
+  }
+
+  /**
+   * Discards any partial document.
+   */
+  public void reset() {
+    m_Buffer    = new StringBuilder();
+    m_Depth     = 0;
+    m_InString  = false;
+    m_Escaped   = false;
+    m_LineStart = true;
+  }
+
+  /**
+   * Returns whether a document is currently incomplete.
+   *
+   * @return		true if inside a document
+   */
+  public boolean isIncomplete() {
+    return (m_Depth > 0);
+  }
+
+  /**
+   * Returns the text of the incomplete document, eg when the end of the
+   * stream got reached.
+   *
+   * @return		the text, empty if no incomplete document
+   */
+  public String getRemainder() {
+    return m_Buffer.toString();
+  }
+
+  /**
+   * Adds the text and returns any documents that got completed.
+   *
+   * @param text	the text to add
+   * @return		the completed documents (JSONObject or JSONArray, their text if not parsing), empty if none
+   * @throws Exception	if a completed document fails to parse
+   */
+  public List<Object> feed(CharSequence text) throws Exception {
+    List<Object>	result;
+    char		c;
+    int			i;
+
+    result = new ArrayList<>();
+
+    for (i = 0; i < text.length(); i++) {
+      c = text.charAt(i);
+
+      // outside document
+      if (m_Depth == 0) {
+	if (c == '\n') {
+	  m_LineStart = true;
+	}
+	else if (m_LineStart && ((c == '{') || (c == '['))) {
+	  m_Depth = 1;
+	  m_Buffer.append(c);
+	}
+	else if (!Character.isWhitespace(c)) {
+	  m_LineStart = false;
+	}
+	continue;
+      }
+
+      m_Buffer.append(c);
+      if (m_InString) {
+	if (m_Escaped)
+	  m_Escaped = false;
+	else if (c == '\\')
+	  m_Escaped = true;
+	else if (c == '"')
+	  m_InString = false;
+	continue;
+      }
+
+      switch (c) {
+	case '"':
+	  m_InString = true;
+	  break;
+	case '{':
+	case '[':
+	  m_Depth++;
+	  break;
+	case '}':
+	case ']':
+	  m_Depth--;
+	  if (m_Depth == 0) {
+	    if (m_ParseDocuments)
+	      result.add(parse(m_Buffer.toString()));
+	    else
+	      result.add(m_Buffer.toString());
+	    m_Buffer    = new StringBuilder();
+	    m_LineStart = false;
+	  }
+	  break;
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * Parses the complete document.
+   *
+   * @param doc		the document to parse
+   * @return		the parsed document
+   * @throws Exception	if parsing fails
+   */
+  protected Object parse(String doc) throws Exception {
+    return new JSONParser(JSONParser.MODE_PERMISSIVE).parse(doc);
+  }
+}
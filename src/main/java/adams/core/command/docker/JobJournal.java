@@ -0,0 +1,597 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * JobJournal.java
+ * Copyright (C) 2023 University of Waikato, Hamilton, New Zealand
+ */
+
+package adams.core.command.docker;
+
+import adams.core.logging.LoggingObject;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Append-only journal of the jobs of file-writing commands, for resuming
+ * long batch conversions. Each line records a state change of a job
+ * (pending, running, done, failed) with input and output file; for
+ * completed jobs also size, timestamp and checksum of the output. The last
+ * line of a job determines its state. Lines that were only partially
+ * written (eg due to a crash) get ignored.
+ *
+ * @author fracpete (fracpete at waikato dot ac dot nz)
+ */
+public class JobJournal
+  extends LoggingObject {
+
+  private static final long serialVersionUID = -7015216213466392788L;
+
+  /** the separator between the fields. */
+  public static final String SEPARATOR = "\t";
+
+  /** the number of fields per line. */
+  public static final int NUM_FIELDS = 11;
+
+  /**
+   * The states of a job.
+   */
+  public enum State {
+    /** job was submitted, but not executed yet. */
+    PENDING,
+    /** job is executing. */
+    RUNNING,
+    /** job completed successfully. */
+    DONE,
+    /** job failed. */
+    FAILED
+  }
+
+  /**
+   * A journal entry.
+   */
+  public static class Entry {
+
+    /** the timestamp. */
+    protected long m_Timestamp;
+
+    /** the state. */
+    protected State m_State;
+
+    /** the key of the job. */
+    protected String m_Key;
+
+    /** the input file. */
+    protected String m_Input;
+
+    /** the output file. */
+    protected String m_Output;
+
+    /** the size of the output (DONE), -1 if not available. */
+    protected long m_Size;
+
+    /** the timestamp of the output (DONE), -1 if not available. */
+    protected long m_LastModified;
+
+    /** the checksum of the output (DONE), empty if not available. */
+    protected String m_Checksum;
+
+    /** the stdout. */
+    protected String m_StdOut;
+
+    /** the stderr. */
+    protected String m_StdErr;
+
+    /** the error message (FAILED). */
+    protected String m_Error;
+
+    /**
+     * Initializes the entry.
+     *
+     * @param timestamp		the timestamp
+     * @param state		the state
+     * @param key		the key of the job
+     * @param input		the input file
+     * @param output		the output file
+     * @param size		the size of the output, -1 if not available
+     * @param lastModified	the timestamp of the output, -1 if not available
+     * @param checksum		the checksum of the output, empty if not available
+     * @param stdout		the stdout
+     * @param stderr		the stderr
+     * @param error		the error message, empty if none
+     */
+    public Entry(long timestamp, State state, String key, String input, String output, long size, long lastModified, String checksum, String stdout, String stderr, String error) {
+      m_Timestamp    = timestamp;
+      m_State        = state;
+      m_Key          = key;
+      m_Input        = input;
+      m_Output       = output;
+      m_Size         = size;
+      m_LastModified = lastModified;
+      m_Checksum     = checksum;
+      m_StdOut       = stdout;
+      m_StdErr       = stderr;
+      m_Error        = error;
+    }
+
+    /**
+     * Returns the timestamp.
+     *
+     * @return		the timestamp
+     */
+    public long getTimestamp() {
+      return m_Timestamp;
+    }
+
+    /**
+     * Returns the state.
+     *
+     * @return		the state
+     */
+    public State getState() {
+      return m_State;
+    }
+
+    /**
+     * Returns the key of the job.
+     *
+     * @return		the key
+     */
+    public String getKey() {
+      return m_Key;
+    }
+
+    /**
+     * Returns the input file.
+     *
+     * @return		the input
+     */
+    public String getInput() {
+      return m_Input;
+    }
+
+    /**
+     * Returns the output file.
+     *
+     * @return		the output
+     */
+    public String getOutput() {
+      return m_Output;
+    }
+
+    /**
+     * Returns the size of the output.
+     *
+     * @return		the size, -1 if not available
+     */
+    public long getSize() {
+      return m_Size;
+    }
+
+    /**
+     * Returns the timestamp of the output.
+     *
+     * @return		the timestamp, -1 if not available
+     */
+    public long getLastModified() {
+      return m_LastModified;
+    }
+
+    /**
+     * Returns the checksum of the output.
+     *
+     * @return		the checksum, empty if not available
+     */
+    public String getChecksum() {
+      return m_Checksum;
+    }
+
+    /**
+     * Returns the stdout.
+     *
+     * @return		the stdout
+     */
+    public String getStdOut() {
+      return m_StdOut;
+    }
+
+    /**
+     * Returns the stderr.
+     *
+     * @return		the stderr
+     */
+    public String getStdErr() {
+      return m_StdErr;
+    }
+
+    /**
+     * Returns the error message.
+     *
+     * @return		the error, empty if none
+     */
+    public String getError() {
+      return m_Error;
+    }
+
+    /**
+     * Turns the entry into a journal line (without line feed).
+     *
+     * @return		the line
+     */
+    public String toLine() {
+      return m_Timestamp + SEPARATOR + m_State + SEPARATOR + m_Key
+	+ SEPARATOR + escape(m_Input) + SEPARATOR + escape(m_Output)
+	+ SEPARATOR + m_Size + SEPARATOR + m_LastModified + SEPARATOR + m_Checksum
+	+ SEPARATOR + escape(m_StdOut) + SEPARATOR + escape(m_StdErr) + SEPARATOR + escape(m_Error);
+    }
+
+    /**
+     * Parses a journal line.
+     *
+     * @param line	the line to parse
+     * @return		the entry, null if invalid (eg incomplete)
+     */
+    public static Entry parse(String line) {
+      String[]	parts;
+
+      parts = line.split(SEPARATOR, -1);
+      if (parts.length != NUM_FIELDS)
+	return null;
+      try {
+	return new Entry(
+	  Long.parseLong(parts[0]), State.valueOf(parts[1]), parts[2],
+	  unescape(parts[3]), unescape(parts[4]),
+	  Long.parseLong(parts[5]), Long.parseLong(parts[6]), parts[7],
+	  unescape(parts[8]), unescape(parts[9]), unescape(parts[10]));
+      }
+      catch (Exception e) {
+	return null;
+      }
+    }
+
+    /**
+     * Returns a short description of the entry.
+     *
+     * @return		the description
+     */
+    @Override
+    public String toString() {
+      return m_State + ": " + m_Input + " -> " + m_Output;
+    }
+  }
+
+  /** the journal file. */
+  protected File m_File;
+
+  /** the latest entry per job. */
+  protected Map<String,Entry> m_Entries;
+
+  /** for appending to the journal. */
+  protected transient FileOutputStream m_Stream;
+
+  /** whether a line feed is required before appending (last line incomplete). */
+  protected boolean m_NeedsLineFeed;
+
+  /**
+   * Initializes the journal, loads existing entries.
+   *
+   * @param file	the journal file
+   */
+  public JobJournal(File file) {
+    m_File    = file;
+    m_Entries = new HashMap<>();
+    load();
+  }
+
+  /**
+   * Returns the journal file.
+   *
+   * @return		the file
+   */
+  public File getFile() {
+    return m_File;
+  }
+
+  /**
+   * Escapes backslashes, tabs and line feeds.
+   *
+   * @param s		the string to escape
+   * @return		the escaped string
+   */
+  protected static String escape(String s) {
+    if (s == null)
+      return "";
+    return s.replace("\\", "\\\\").replace("\t", "\\t").replace("\n", "\\n").replace("\r", "\\r");
+  }
+
+  /**
+   * Reverts the escaping.
+   *
+   * @param s		the string to unescape
+   * @return		the unescaped string
+   * @see		#escape(String)
+   */
+  protected static String unescape(String s) {
+    StringBuilder	result;
+    char		c;
+    int			i;
+
+    result = new StringBuilder();
+    for (i = 0; i < s.length(); i++) {
+      c = s.charAt(i);
+      if ((c == '\\') && (i < s.length() - 1)) {
+	i++;
+	switch (s.charAt(i)) {
+	  case 't':
+	    result.append('\t');
+	    break;
+	  case 'n':
+	    result.append('\n');
+	    break;
+	  case 'r':
+	    result.append('\r');
+	    break;
+	  default:
+	    result.append(s.charAt(i));
+	}
+      }
+      else {
+	result.append(c);
+      }
+    }
+
+    return result.toString();
+  }
+
+  /**
+   * Generates the key for a job.
+   *
+   * @param parts	the parts that identify the job
+   * @return		the key
+   */
+  public static String key(String... parts) {
+    return ResultCache.hash(parts);
+  }
+
+  /**
+   * Loads the existing entries, if any.
+   */
+  protected synchronized void load() {
+    Entry	entry;
+    String	line;
+    int		invalid;
+
+    if (!m_File.isFile())
+      return;
+
+    invalid = 0;
+    try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(m_File), StandardCharsets.UTF_8))) {
+      while ((line = reader.readLine()) != null) {
+	if (line.isEmpty())
+	  continue;
+	entry = Entry.parse(line);
+	if (entry == null)
+	  invalid++;
+	else
+	  m_Entries.put(entry.getKey(), entry);
+      }
+    }
+    catch (Exception e) {
+      getLogger().warning("Failed to read journal " + m_File + ": " + e);
+    }
+
+    try (RandomAccessFile raf = new RandomAccessFile(m_File, "r")) {
+      if (raf.length() > 0) {
+	raf.seek(raf.length() - 1);
+	m_NeedsLineFeed = (raf.read() != '\n');
+      }
+    }
+    catch (Exception e) {
+      // ignored
+    }
+
+    if (invalid > 0)
+      getLogger().warning("Ignored " + invalid + " incomplete/invalid line(s) in journal " + m_File);
+    if (isLoggingEnabled())
+      getLogger().info("Loaded " + m_Entries.size() + " job(s) from journal " + m_File);
+  }
+
+  /**
+   * Returns the latest entry of the job.
+   *
+   * @param key		the key of the job
+   * @return		the entry, null if not journaled
+   */
+  public synchronized Entry lookup(String key) {
+    return m_Entries.get(key);
+  }
+
+  /**
+   * Checks whether the job completed successfully and its output is still
+   * intact (exists, same size and timestamp; optionally same checksum).
+   *
+   * @param entry	the entry to check, can be null
+   * @param verify	whether to verify the checksum as well
+   * @return		true if the job can be skipped
+   */
+  public boolean isIntact(Entry entry, boolean verify) {
+    File	output;
+
+    if ((entry == null) || (entry.getState() != State.DONE))
+      return false;
+
+    output = new File(entry.getOutput());
+    if (!output.isFile() || (output.length() != entry.getSize()) || (output.lastModified() != entry.getLastModified()))
+      return false;
+
+    if (verify) {
+      try {
+	return ResultCache.hash(output).equals(entry.getChecksum());
+      }
+      catch (Exception e) {
+	return false;
+      }
+    }
+
+    return true;
+  }
+
+  /**
+   * Prepares the job for (re-)execution: removes any output left behind by
+   * a previous execution that did not complete (or whose output is no
+   * longer intact). Jobs that never started (pending) are left alone. Only
+   * regular files get removed, never directories.
+   *
+   * @param entry	the entry of the previous execution, can be null
+   * @param output	the output file of the job
+   */
+  public void removePartialOutput(Entry entry, File output) {
+    if ((entry == null) || (entry.getState() == State.PENDING))
+      return;
+    // only regular files, never directories
+    if (output.isDirectory()) {
+      getLogger().warning("Not removing partial output, as it is a directory: " + output);
+      return;
+    }
+    if (output.isFile()) {
+      if (!output.delete())
+	getLogger().warning("Failed to remove partial output: " + output);
+      else if (isLoggingEnabled())
+	getLogger().info("Removed partial output (" + entry.getState() + "): " + output);
+    }
+  }
+
+  /**
+   * Appends the entry to the journal and syncs the file.
+   *
+   * @param entry	the entry to append
+   */
+  protected synchronized void append(Entry entry) {
+    m_Entries.put(entry.getKey(), entry);
+    try {
+      if (m_Stream == null) {
+	if (!m_File.getParentFile().exists() && !m_File.getParentFile().mkdirs())
+	  throw new IOException("Failed to create directory: " + m_File.getParentFile());
+	m_Stream = new FileOutputStream(m_File, true);
+	if (m_NeedsLineFeed) {
+	  m_Stream.write('\n');
+	  m_NeedsLineFeed = false;
+	}
+      }
+      m_Stream.write((entry.toLine() + "\n").getBytes(StandardCharsets.UTF_8));
+      m_Stream.flush();
+      m_Stream.getChannel().force(false);
+    }
+    catch (Exception e) {
+      getLogger().severe("Failed to append to journal " + m_File + ": " + e);
+    }
+  }
+
+  /**
+   * Records that the job was submitted.
+   *
+   * @param key		the key of the job
+   * @param input	the input file
+   * @param output	the output file
+   */
+  public void pending(String key, File input, File output) {
+    append(new Entry(System.currentTimeMillis(), State.PENDING, key, input.getAbsolutePath(), output.getAbsolutePath(), -1, -1, "", "", "", ""));
+  }
+
+  /**
+   * Records that the job is executing.
+   *
+   * @param key		the key of the job
+   * @param input	the input file
+   * @param output	the output file
+   */
+  public void running(String key, File input, File output) {
+    append(new Entry(System.currentTimeMillis(), State.RUNNING, key, input.getAbsolutePath(), output.getAbsolutePath(), -1, -1, "", "", "", ""));
+  }
+
+  /**
+   * Records that the job completed successfully, along with size, timestamp
+   * and checksum of the output.
+   *
+   * @param key		the key of the job
+   * @param input	the input file
+   * @param output	the output file
+   * @param stdout	the stdout, can be null
+   * @param stderr	the stderr, can be null
+   */
+  public void done(String key, File input, File output, String stdout, String stderr) {
+    String	checksum;
+
+    try {
+      checksum = ResultCache.hash(output);
+    }
+    catch (Exception e) {
+      failed(key, input, output, "Failed to compute checksum of output: " + e);
+      return;
+    }
+    append(new Entry(System.currentTimeMillis(), State.DONE, key, input.getAbsolutePath(), output.getAbsolutePath(), output.length(), output.lastModified(), checksum, stdout, stderr, ""));
+  }
+
+  /**
+   * Records that the job failed.
+   *
+   * @param key		the key of the job
+   * @param input	the input file
+   * @param output	the output file
+   * @param error	the error message
+   */
+  public void failed(String key, File input, File output, String error) {
+    append(new Entry(System.currentTimeMillis(), State.FAILED, key, input.getAbsolutePath(), output.getAbsolutePath(), -1, -1, "", "", "", error));
+  }
+
+  /**
+   * Returns the number of jobs per state.
+   *
+   * @return		the counts
+   */
+  public synchronized Map<State,Integer> getCounts() {
+    Map<State,Integer>	result;
+
+    result = new HashMap<>();
+    for (Entry entry: m_Entries.values())
+      result.put(entry.getState(), result.getOrDefault(entry.getState(), 0) + 1);
+
+    return result;
+  }
+
+  /**
+   * Closes the journal file.
+   */
+  public synchronized void close() {
+    if (m_Stream != null) {
+      try {
+	m_Stream.close();
+      }
+      catch (Exception e) {
+	// ignored
+      }
+      m_Stream = null;
+    }
+  }
+}
@@ -0,0 +1,33 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * JobPriority.java
+ * Copyright (C) 2023 University of Waikato, Hamilton, New Zealand
+ */
+
+package adams.core.command.docker;
+
+/**
+ * The priority of jobs, when competing for execution slots.
+ *
+ * @author fracpete (fracpete at waikato dot ac dot nz)
+ */
+public enum JobPriority {
+  /** a user is waiting for the result, dispatched first. */
+  INTERACTIVE,
+  /** bulk processing, dispatched when no interactive jobs are waiting. */
+  BULK
+}
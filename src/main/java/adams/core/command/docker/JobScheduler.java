@@ -0,0 +1,173 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * JobScheduler.java
+ * Copyright (C) 2023 University of Waikato, Hamilton, New Zealand
+ */
+
+package adams.core.command.docker;
+
+import adams.core.logging.LoggingObject;
+
+import java.util.PriorityQueue;
+
+/**
+ * Limits the number of jobs that execute concurrently across several
+ * parties (eg all the transformers of a flow). Waiting jobs get dispatched
+ * by priority (interactive before bulk), then longest first (estimated
+ * cost), then in order of arrival.
+ *
+ * @author fracpete (fracpete at waikato dot ac dot nz)
+ * @see ScheduledJob#compare(JobPriority, double, long, JobPriority, double, long)
+ */
+public class JobScheduler
+  extends LoggingObject {
+
+  private static final long serialVersionUID = 6302016632937442017L;
+
+  /**
+   * Ticket of a job waiting for/holding a slot.
+   */
+  public static class Ticket
+    implements Comparable<Ticket> {
+
+    /** the priority. */
+    protected JobPriority m_Priority;
+
+    /** the estimated cost. */
+    protected double m_Cost;
+
+    /** the sequence number. */
+    protected long m_Sequence;
+
+    /**
+     * Initializes the ticket.
+     *
+     * @param priority	the priority
+     * @param cost	the estimated cost
+     * @param sequence	the sequence number
+     */
+    protected Ticket(JobPriority priority, double cost, long sequence) {
+      m_Priority = priority;
+      m_Cost     = cost;
+      m_Sequence = sequence;
+    }
+
+    /**
+     * Compares the tickets.
+     *
+     * @param o		the ticket to compare with
+     * @return		less than, equal to or greater than zero
+     */
+    @Override
+    public int compareTo(Ticket o) {
+      return ScheduledJob.compare(m_Priority, m_Cost, m_Sequence, o.m_Priority, o.m_Cost, o.m_Sequence);
+    }
+  }
+
+  /** the number of slots. */
+  protected int m_Slots;
+
+  /** the number of occupied slots. */
+  protected int m_Running;
+
+  /** the waiting jobs. */
+  protected PriorityQueue<Ticket> m_Waiting;
+
+  /** the sequence counter. */
+  protected long m_Sequence;
+
+  /**
+   * Initializes the scheduler.
+   *
+   * @param slots	the number of jobs that can execute concurrently
+   */
+  public JobScheduler(int slots) {
+    if (slots < 1)
+      throw new IllegalArgumentException("At least one slot required, provided: " + slots);
+    m_Slots   = slots;
+    m_Waiting = new PriorityQueue<>();
+  }
+
+  /**
+   * Returns the number of slots.
+   *
+   * @return		the slots
+   */
+  public int getSlots() {
+    return m_Slots;
+  }
+
+  /**
+   * Waits until the job is next in line and a slot is free.
+   *
+   * @param priority	the priority of the job
+   * @param cost	the estimated cost of the job, 0 if not available
+   * @return		the ticket, required for releasing the slot
+   * @throws InterruptedException	if waiting gets interrupted
+   * @see		#release(Ticket)
+   */
+  public synchronized Ticket acquire(JobPriority priority, double cost) throws InterruptedException {
+    Ticket	result;
+
+    result = new Ticket(priority, cost, m_Sequence++);
+    m_Waiting.add(result);
+    try {
+      while ((m_Running >= m_Slots) || (m_Waiting.peek() != result))
+	wait(100);
+    }
+    catch (InterruptedException e) {
+      m_Waiting.remove(result);
+      notifyAll();
+      throw e;
+    }
+    m_Waiting.poll();
+    m_Running++;
+    notifyAll();
+
+    return result;
+  }
+
+  /**
+   * Frees up the slot of the job.
+   *
+   * @param ticket	the ticket obtained when acquiring the slot, ignored if null
+   */
+  public synchronized void release(Ticket ticket) {
+    if (ticket == null)
+      return;
+    m_Running = Math.max(0, m_Running - 1);
+    notifyAll();
+  }
+
+  /**
+   * Returns the number of waiting jobs.
+   *
+   * @return		the number
+   */
+  public synchronized int getWaiting() {
+    return m_Waiting.size();
+  }
+
+  /**
+   * Returns the number of running jobs.
+   *
+   * @return		the number
+   */
+  public synchronized int getRunning() {
+    return m_Running;
+  }
+}
@@ -0,0 +1,104 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * NativeExecutableHelper.java
+ * Copyright (C) 2023 University of Waikato, Hamilton, New Zealand
+ */
+
+package adams.core.command.docker;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Helper methods for locating natively installed executables.
+ *
+ * @author fracpete (fracpete at waikato dot ac dot nz)
+ */
+public class NativeExecutableHelper {
+
+  /**
+   * Returns the candidate file names for the executable.
+   *
+   * @param name	the name of the executable
+   * @return		the candidates
+   */
+  protected static List<String> candidates(String name) {
+    List<String>	result;
+
+    result = new ArrayList<>();
+    result.add(name);
+    if (System.getProperty("os.name", "").toLowerCase().startsWith("windows")) {
+      result.add(name + ".exe");
+      result.add(name + ".bat");
+      result.add(name + ".cmd");
+    }
+
+    return result;
+  }
+
+  /**
+   * Checks the directory for the executable.
+   *
+   * @param dir		the directory to check
+   * @param name	the name of the executable
+   * @return		the absolute path, null if not found
+   */
+  protected static String check(File dir, String name) {
+    File	file;
+
+    for (String candidate: candidates(name)) {
+      file = new File(dir, candidate);
+      if (file.isFile() && file.canExecute())
+	return file.getAbsolutePath();
+    }
+
+    return null;
+  }
+
+  /**
+   * Locates the executable, first in the specified directory and then
+   * on the system's PATH.
+   *
+   * @param dir		the directory to check first, can be null
+   * @param name	the name of the executable
+   * @return		the absolute path, null if not found
+   */
+  public static String locate(File dir, String name) {
+    String	result;
+    String	path;
+
+    if ((dir != null) && dir.isDirectory()) {
+      result = check(dir, name);
+      if (result != null)
+	return result;
+    }
+
+    path = System.getenv("PATH");
+    if (path == null)
+      return null;
+    for (String part: path.split(File.pathSeparator)) {
+      if (part.isEmpty())
+	continue;
+      result = check(new File(part), name);
+      if (result != null)
+	return result;
+    }
+
+    return null;
+  }
+}
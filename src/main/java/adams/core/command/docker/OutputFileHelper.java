@@ -0,0 +1,80 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * OutputFileHelper.java
+ * Copyright (C) 2023 University of Waikato, Hamilton, New Zealand
+ */
+
+package adams.core.command.docker;
+
+import adams.core.io.PlaceholderFile;
+
+import java.io.File;
+
+/**
+ * Helper methods for generating output file names.
+ *
+ * @author fracpete (fracpete at waikato dot ac dot nz)
+ */
+public class OutputFileHelper {
+
+  /**
+   * Returns the extension of the file name (incl dot).
+   *
+   * @param name	the file name
+   * @return		the extension, empty string if none
+   */
+  public static String getExtension(String name) {
+    int		pos;
+
+    pos = name.lastIndexOf('.');
+    if (pos <= 0)
+      return "";
+    else
+      return name.substring(pos);
+  }
+
+  /**
+   * Removes the extension from the file name.
+   *
+   * @param name	the file name
+   * @return		the name without extension
+   */
+  public static String removeExtension(String name) {
+    return name.substring(0, name.length() - getExtension(name).length());
+  }
+
+  /**
+   * Generates an output file name for the input, using the directory and
+   * extension of the template. If the template is a directory, the name of
+   * the input file gets used as is.
+   *
+   * @param template	the configured output file
+   * @param input	the input file
+   * @return		the generated output file
+   */
+  public static PlaceholderFile generateOutputFile(File template, String input) {
+    File	inputFile;
+
+    inputFile = new File(input);
+    if (template.isDirectory())
+      return new PlaceholderFile(template, inputFile.getName());
+    else
+      return new PlaceholderFile(
+	template.getAbsoluteFile().getParentFile(),
+	removeExtension(inputFile.getName()) + getExtension(template.getName()));
+  }
+}
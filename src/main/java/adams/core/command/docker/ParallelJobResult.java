@@ -0,0 +1,110 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * ParallelJobResult.java
+ * Copyright (C) 2023 University of Waikato, Hamilton, New Zealand
+ */
+
+package adams.core.command.docker;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The result of a command executed by one of the parallel transformers.
+ *
+ * @author fracpete (fracpete at waikato dot ac dot nz)
+ */
+public class ParallelJobResult
+  implements Serializable {
+
+  private static final long serialVersionUID = 7263409573095364214L;
+
+  /** the arguments. */
+  protected String[] m_Args;
+
+  /** the collected output. */
+  protected List<Object> m_Outputs;
+
+  /** the error, null if none. */
+  protected String m_Error;
+
+  /**
+   * Initializes the result.
+   *
+   * @param args	the arguments the command was executed with
+   */
+  public ParallelJobResult(String[] args) {
+    m_Args    = args.clone();
+    m_Outputs = new ArrayList<>();
+    m_Error   = null;
+  }
+
+  /**
+   * Returns the arguments the command was executed with.
+   *
+   * @return		the arguments
+   */
+  public String[] getArgs() {
+    return m_Args;
+  }
+
+  /**
+   * Adds the output.
+   *
+   * @param value	the output to add
+   */
+  public void addOutput(Object value) {
+    m_Outputs.add(value);
+  }
+
+  /**
+   * Returns the collected output.
+   *
+   * @return		the output
+   */
+  public List<Object> getOutputs() {
+    return m_Outputs;
+  }
+
+  /**
+   * Sets the error.
+   *
+   * @param value	the error
+   */
+  public void setError(String value) {
+    m_Error = value;
+  }
+
+  /**
+   * Returns the error.
+   *
+   * @return		the error, null if none
+   */
+  public String getError() {
+    return m_Error;
+  }
+
+  /**
+   * Returns whether the command failed.
+   *
+   * @return		true if failed
+   */
+  public boolean hasError() {
+    return (m_Error != null);
+  }
+}
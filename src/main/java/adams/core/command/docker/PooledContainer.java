@@ -0,0 +1,131 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * PooledContainer.java
+ * Copyright (C) 2023 University of Waikato, Hamilton, New Zealand
+ */
+
+package adams.core.command.docker;
+
+import java.io.Serializable;
+
+/**
+ * Container managed by a {@link ContainerPool}.
+ *
+ * @author fracpete (fracpete at waikato dot ac dot nz)
+ */
+public class PooledContainer
+  implements Serializable {
+
+  private static final long serialVersionUID = -5404893707934101307L;
+
+  /** the name of the container. */
+  protected String m_Name;
+
+  /** the signature (image and run options). */
+  protected String m_Signature;
+
+  /** whether the container is leased. */
+  protected boolean m_InUse;
+
+  /** whether the container has been started. */
+  protected boolean m_Started;
+
+  /** the timestamp of last use. */
+  protected long m_LastUsed;
+
+  /** how often the container has been leased. */
+  protected int m_UseCount;
+
+  /**
+   * Initializes the container.
+   *
+   * @param name	the name of the container
+   * @param signature	the signature
+   */
+  public PooledContainer(String name, String signature) {
+    m_Name      = name;
+    m_Signature = signature;
+    m_InUse     = false;
+    m_Started   = false;
+    m_LastUsed  = System.currentTimeMillis();
+    m_UseCount  = 0;
+  }
+
+  /**
+   * Returns the name of the container.
+   *
+   * @return		the name
+   */
+  public String getName() {
+    return m_Name;
+  }
+
+  /**
+   * Returns the signature (image and run options).
+   *
+   * @return		the signature
+   */
+  public String getSignature() {
+    return m_Signature;
+  }
+
+  /**
+   * Returns whether the container is currently leased.
+   *
+   * @return		true if in use
+   */
+  public boolean isInUse() {
+    return m_InUse;
+  }
+
+  /**
+   * Returns whether the container has been started.
+   *
+   * @return		true if started
+   */
+  public boolean isStarted() {
+    return m_Started;
+  }
+
+  /**
+   * Returns the timestamp of when the container was last used.
+   *
+   * @return		the timestamp (msec)
+   */
+  public long getLastUsed() {
+    return m_LastUsed;
+  }
+
+  /**
+   * Returns how often the container has been leased.
+   *
+   * @return		the count
+   */
+  public int getUseCount() {
+    return m_UseCount;
+  }
+
+  /**
+   * Returns a short description of the container.
+   *
+   * @return		the description
+   */
+  @Override
+  public String toString() {
+    return m_Name + " (in use: " + m_InUse + ", used: " + m_UseCount + ")";
+  }
+}
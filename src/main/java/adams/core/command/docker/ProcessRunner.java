@@ -0,0 +1,491 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * ProcessRunner.java
+ * Copyright (C) 2023 University of Waikato, Hamilton, New Zealand
+ */
+
+package adams.core.command.docker;
+
+import adams.core.logging.LoggingObject;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Executes an external process and collects its stdout/stderr output.
+ *
+ * @author fracpete (fracpete at waikato dot ac dot nz)
+ */
+public class ProcessRunner
+  extends LoggingObject {
+
+  private static final long serialVersionUID = 2395828370735064880L;
+
+  /**
+   * Interface for classes that get notified of lines read from stdout/stderr.
+   */
+  public interface LineListener {
+
+    /**
+     * Gets called when a line has been read.
+     *
+     * @param line	the line (without line terminator)
+     * @param stdout	whether read from stdout or stderr
+     */
+    public void lineRead(String line, boolean stdout);
+  }
+
+  /** the command to execute. */
+  protected List<String> m_Command;
+
+  /** the working directory, null for current one. */
+  protected File m_WorkingDir;
+
+  /** the additional environment variables. */
+  protected Map<String,String> m_Environment;
+
+  /** the process. */
+  protected transient Process m_Process;
+
+  /** the thread reading stdout. */
+  protected transient Thread m_StdOutReader;
+
+  /** the thread reading stderr. */
+  protected transient Thread m_StdErrReader;
+
+  /** the collected stdout. */
+  protected StringBuilder m_StdOut;
+
+  /** the collected stderr. */
+  protected StringBuilder m_StdErr;
+
+  /** the exit code. */
+  protected int m_ExitCode;
+
+  /** the start time (msec). */
+  protected long m_StartTime;
+
+  /** the end time (msec). */
+  protected long m_EndTime;
+
+  /** whether the process got destroyed. */
+  protected boolean m_Destroyed;
+
+  /** the listener for lines, can be null. */
+  protected transient LineListener m_LineListener;
+
+  /** whether to collect stdout. */
+  protected boolean m_CollectStdOut;
+
+  /** the name of the docker container the command runs in, null if not applicable. */
+  protected String m_ContainerName;
+
+  /** whether the process got stopped because it timed out. */
+  protected boolean m_TimedOut;
+
+  /**
+   * Initializes the runner.
+   *
+   * @param cmd		the command to execute
+   */
+  public ProcessRunner(List<String> cmd) {
+    m_Command       = new ArrayList<>(cmd);
+    m_WorkingDir    = null;
+    m_Environment   = new HashMap<>();
+    m_StdOut        = new StringBuilder();
+    m_StdErr        = new StringBuilder();
+    m_ExitCode      = -1;
+    m_StartTime     = -1;
+    m_EndTime       = -1;
+    m_Destroyed     = false;
+    m_CollectStdOut = true;
+    m_ContainerName = null;
+    m_TimedOut      = false;
+  }
+
+  /**
+   * Returns the command.
+   *
+   * @return		the command
+   */
+  public List<String> getCommand() {
+    return m_Command;
+  }
+
+  /**
+   * Sets the working directory.
+   *
+   * @param value	the directory, null for current one
+   */
+  public void setWorkingDir(File value) {
+    m_WorkingDir = value;
+  }
+
+  /**
+   * Returns the working directory.
+   *
+   * @return		the directory, null for current one
+   */
+  public File getWorkingDir() {
+    return m_WorkingDir;
+  }
+
+  /**
+   * Returns the additional environment variables for the process, can be
+   * modified before the process gets started.
+   *
+   * @return		the variables
+   */
+  public Map<String,String> getEnvironment() {
+    return m_Environment;
+  }
+
+  /**
+   * Sets the listener to notify of lines read from stdout/stderr.
+   *
+   * @param value	the listener, null to remove
+   */
+  public void setLineListener(LineListener value) {
+    m_LineListener = value;
+  }
+
+  /**
+   * Returns the listener to notify of lines read from stdout/stderr.
+   *
+   * @return		the listener, null if none
+   */
+  public LineListener getLineListener() {
+    return m_LineListener;
+  }
+
+  /**
+   * Sets whether to collect stdout. Useful when a line listener processes
+   * large amounts of output. Stderr always gets collected.
+   *
+   * @param value	true if to collect
+   */
+  public void setCollectStdOut(boolean value) {
+    m_CollectStdOut = value;
+  }
+
+  /**
+   * Returns whether to collect stdout.
+   *
+   * @return		true if collected
+   */
+  public boolean getCollectStdOut() {
+    return m_CollectStdOut;
+  }
+
+  /**
+   * Sets the name of the docker container the command runs in, eg for
+   * killing it on timeout.
+   *
+   * @param value	the name, null if not applicable
+   */
+  public void setContainerName(String value) {
+    m_ContainerName = value;
+  }
+
+  /**
+   * Returns the name of the docker container the command runs in.
+   *
+   * @return		the name, null if not applicable
+   */
+  public String getContainerName() {
+    return m_ContainerName;
+  }
+
+  /**
+   * Collects the line (unless stdout is not to be collected) and notifies
+   * the listener.
+   *
+   * @param line	the line (without line terminator)
+   * @param stdout	whether read from stdout or stderr
+   */
+  protected void processLine(String line, boolean stdout) {
+    StringBuilder	buffer;
+
+    if (!stdout || m_CollectStdOut) {
+      buffer = stdout ? m_StdOut : m_StdErr;
+      synchronized (buffer) {
+	buffer.append(line).append("\n");
+      }
+    }
+    if (m_LineListener != null)
+      m_LineListener.lineRead(line, stdout);
+  }
+
+  /**
+   * Starts a thread that reads the stream line by line.
+   *
+   * @param stream	the stream to read
+   * @param stdout	whether stdout or stderr is being read
+   * @param name	the name of the thread
+   * @return		the started thread
+   */
+  protected Thread startReader(final InputStream stream, final boolean stdout, String name) {
+    Thread	result;
+
+    result = new Thread(() -> {
+      String line;
+      try (BufferedReader reader = new BufferedReader(new InputStreamReader(stream))) {
+	while ((line = reader.readLine()) != null)
+	  processLine(line, stdout);
+      }
+      catch (IOException e) {
+	// stream got closed
+      }
+    }, name);
+    result.setDaemon(true);
+    result.start();
+
+    return result;
+  }
+
+  /**
+   * Starts the process.
+   *
+   * @throws IOException	if starting fails
+   */
+  public void start() throws IOException {
+    ProcessBuilder	builder;
+
+    if (m_Process != null)
+      throw new IllegalStateException("Process already started!");
+
+    if (isLoggingEnabled())
+      getLogger().info("Executing: " + m_Command);
+
+    builder = new ProcessBuilder(m_Command);
+    if (m_WorkingDir != null)
+      builder.directory(m_WorkingDir);
+    builder.environment().putAll(m_Environment);
+    m_StartTime    = System.currentTimeMillis();
+    m_Process      = builder.start();
+    m_StdOutReader = startReader(m_Process.getInputStream(), true, "stdout: " + m_Command.get(0));
+    m_StdErrReader = startReader(m_Process.getErrorStream(), false, "stderr: " + m_Command.get(0));
+  }
+
+  /**
+   * Waits for the process to finish.
+   *
+   * @return		the exit code
+   * @throws InterruptedException	if waiting gets interrupted
+   */
+  public int waitFor() throws InterruptedException {
+    if (m_Process == null)
+      throw new IllegalStateException("Process not started!");
+
+    m_ExitCode = m_Process.waitFor();
+    m_StdOutReader.join();
+    m_StdErrReader.join();
+    if (m_EndTime == -1)
+      m_EndTime = System.currentTimeMillis();
+
+    return m_ExitCode;
+  }
+
+  /**
+   * Waits for the process to finish, at most the specified time.
+   *
+   * @param timeout	the maximum time to wait in msec
+   * @return		true if finished, false if still running
+   * @throws InterruptedException	if waiting gets interrupted
+   */
+  public boolean waitFor(long timeout) throws InterruptedException {
+    if (m_Process == null)
+      throw new IllegalStateException("Process not started!");
+
+    if (!m_Process.waitFor(timeout, TimeUnit.MILLISECONDS))
+      return false;
+    waitFor();
+
+    return true;
+  }
+
+  /**
+   * Returns whether the process is running.
+   *
+   * @return		true if running
+   */
+  public boolean isRunning() {
+    return (m_Process != null) && m_Process.isAlive();
+  }
+
+  /**
+   * Returns whether the process has finished.
+   *
+   * @return		true if finished
+   */
+  public boolean isFinished() {
+    return (m_Process != null) && !m_Process.isAlive();
+  }
+
+  /**
+   * Returns whether the process has finished and stdout/stderr have been
+   * read completely, ie all lines have been passed on to the listener.
+   * A process that never got started has no output either.
+   *
+   * @return		true if finished and output complete
+   */
+  public boolean isOutputComplete() {
+    if (m_Process == null)
+      return true;
+    return isFinished()
+      && ((m_StdOutReader == null) || !m_StdOutReader.isAlive())
+      && ((m_StdErrReader == null) || !m_StdErrReader.isAlive());
+  }
+
+  /**
+   * Destroys the process.
+   */
+  public void destroy() {
+    if (m_Process == null)
+      return;
+    m_Destroyed = true;
+    m_Process.destroy();
+  }
+
+  /**
+   * Flags the process as timed out, before it gets destroyed.
+   *
+   * @see		Watchdog
+   */
+  public void markTimedOut() {
+    m_TimedOut = true;
+  }
+
+  /**
+   * Returns whether the process got stopped because it timed out.
+   *
+   * @return		true if timed out
+   */
+  public boolean isTimedOut() {
+    return m_TimedOut;
+  }
+
+  /**
+   * Returns whether the process got destroyed.
+   *
+   * @return		true if destroyed
+   */
+  public boolean isDestroyed() {
+    return m_Destroyed;
+  }
+
+  /**
+   * Returns the exit code.
+   *
+   * @return		the exit code, -1 if not finished
+   */
+  public int getExitCode() {
+    return m_ExitCode;
+  }
+
+  /**
+   * Returns whether the process finished with exit code 0.
+   *
+   * @return		true if successful
+   */
+  public boolean hasSucceeded() {
+    return (m_ExitCode == 0) && !m_Destroyed;
+  }
+
+  /**
+   * Returns the collected stdout.
+   *
+   * @return		the output
+   */
+  public String getStdOut() {
+    synchronized (m_StdOut) {
+      return m_StdOut.toString();
+    }
+  }
+
+  /**
+   * Returns the collected stderr.
+   *
+   * @return		the output
+   */
+  public String getStdErr() {
+    synchronized (m_StdErr) {
+      return m_StdErr.toString();
+    }
+  }
+
+  /**
+   * Returns the start time of the process.
+   *
+   * @return		the time in msec, -1 if not started
+   */
+  public long getStartTime() {
+    return m_StartTime;
+  }
+
+  /**
+   * Returns the end time of the process.
+   *
+   * @return		the time in msec, -1 if not finished
+   */
+  public long getEndTime() {
+    return m_EndTime;
+  }
+
+  /**
+   * Generates an error message from the collected output.
+   *
+   * @return		the message
+   */
+  public String toErrorMessage() {
+    String	result;
+
+    result = "Command:\n" + String.join(" ", m_Command) + "\n"
+      + "Exit code: " + m_ExitCode;
+    if (getStdErr().trim().length() > 0)
+      result += "\nStderr:\n" + getStdErr().trim();
+    else if (getStdOut().trim().length() > 0)
+      result += "\nStdout:\n" + getStdOut().trim();
+
+    return result;
+  }
+
+  /**
+   * Executes the command and waits for it to finish.
+   *
+   * @param cmd		the command to execute
+   * @return		the runner with the collected output
+   * @throws Exception	if execution fails or gets interrupted
+   */
+  public static ProcessRunner run(List<String> cmd) throws Exception {
+    ProcessRunner	result;
+
+    result = new ProcessRunner(cmd);
+    result.start();
+    result.waitFor();
+
+    return result;
+  }
+}
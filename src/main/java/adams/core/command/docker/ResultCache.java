@@ -0,0 +1,480 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * ResultCache.java
+ * Copyright (C) 2023 University of Waikato, Hamilton, New Zealand
+ */
+
+package adams.core.command.docker;
+
+import adams.core.logging.LoggingObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Content-addressed cache for the results of file-writing commands. Each
+ * entry is a sub-directory (named after the key) containing the generated
+ * output file and the stdout/stderr output of the command. The size of the
+ * cache is limited, with the least recently used entries being removed first.
+ *
+ * @author fracpete (fracpete at waikato dot ac dot nz)
+ */
+public class ResultCache
+  extends LoggingObject {
+
+  private static final long serialVersionUID = 7351693001539427633L;
+
+  /** the name of the output file in an entry. */
+  public static final String FILE_OUTPUT = "output";
+
+  /** the prefix of the sidecar files in an entry (followed by the suffix relative to the base name). */
+  public static final String FILE_SIDECAR = "sidecar";
+
+  /** the name of the stdout file in an entry. */
+  public static final String FILE_STDOUT = "stdout.txt";
+
+  /** the name of the stderr file in an entry. */
+  public static final String FILE_STDERR = "stderr.txt";
+
+  /** the prefix for temporary entry directories. */
+  public static final String TMP_PREFIX = ".tmp-";
+
+  /**
+   * A cache hit.
+   */
+  public static class Entry {
+
+    /** the cached output file. */
+    protected File m_OutputFile;
+
+    /** the cached sidecar files (suffix relative to base name - file). */
+    protected Map<String,File> m_Sidecars;
+
+    /** the stdout output. */
+    protected String m_StdOut;
+
+    /** the stderr output. */
+    protected String m_StdErr;
+
+    /**
+     * Initializes the entry.
+     *
+     * @param outputFile	the cached output file
+     * @param sidecars	the cached sidecar files (suffix relative to base name - file)
+     * @param stdout	the stdout output
+     * @param stderr	the stderr output
+     */
+    public Entry(File outputFile, Map<String,File> sidecars, String stdout, String stderr) {
+      m_OutputFile = outputFile;
+      m_Sidecars   = sidecars;
+      m_StdOut     = stdout;
+      m_StdErr     = stderr;
+    }
+
+    /**
+     * Returns the cached output file.
+     *
+     * @return		the file
+     */
+    public File getOutputFile() {
+      return m_OutputFile;
+    }
+
+    /**
+     * Returns the cached sidecar files.
+     *
+     * @return		the files (suffix relative to base name - file)
+     */
+    public Map<String,File> getSidecars() {
+      return m_Sidecars;
+    }
+
+    /**
+     * Returns the stdout output.
+     *
+     * @return		the output
+     */
+    public String getStdOut() {
+      return m_StdOut;
+    }
+
+    /**
+     * Returns the stderr output.
+     *
+     * @return		the output
+     */
+    public String getStdErr() {
+      return m_StdErr;
+    }
+  }
+
+  /** the cache directory. */
+  protected File m_Directory;
+
+  /** the maximum size in bytes. */
+  protected long m_MaxSize;
+
+  /**
+   * Initializes the cache.
+   *
+   * @param dir		the cache directory
+   * @param maxSize	the maximum size in bytes
+   */
+  public ResultCache(File dir, long maxSize) {
+    m_Directory = dir;
+    m_MaxSize   = maxSize;
+  }
+
+  /**
+   * Returns the cache directory.
+   *
+   * @return		the directory
+   */
+  public File getDirectory() {
+    return m_Directory;
+  }
+
+  /**
+   * Returns the maximum size of the cache.
+   *
+   * @return		the size in bytes
+   */
+  public long getMaxSize() {
+    return m_MaxSize;
+  }
+
+  /**
+   * Returns a new SHA-256 digest.
+   *
+   * @return		the digest
+   */
+  protected static MessageDigest newDigest() {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    }
+    catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-256 not available!", e);
+    }
+  }
+
+  /**
+   * Turns the digest into a hex string.
+   *
+   * @param digest	the digest to convert
+   * @return		the hex string
+   */
+  protected static String toHex(byte[] digest) {
+    StringBuilder	result;
+
+    result = new StringBuilder();
+    for (byte b: digest)
+      result.append(String.format("%02x", b & 0xFF));
+
+    return result.toString();
+  }
+
+  /**
+   * Computes the SHA-256 hash of the file content.
+   *
+   * @param file	the file to hash
+   * @return		the hash (hex)
+   * @throws IOException	if reading fails
+   */
+  public static String hash(File file) throws IOException {
+    MessageDigest	digest;
+    byte[]		buffer;
+    int			read;
+
+    digest = newDigest();
+    buffer = new byte[1024 * 1024];
+    try (InputStream in = Files.newInputStream(file.toPath())) {
+      while ((read = in.read(buffer)) != -1)
+	digest.update(buffer, 0, read);
+    }
+
+    return toHex(digest.digest());
+  }
+
+  /**
+   * Computes the SHA-256 hash of the strings.
+   *
+   * @param parts	the strings to hash
+   * @return		the hash (hex)
+   */
+  public static String hash(String... parts) {
+    MessageDigest	digest;
+
+    digest = newDigest();
+    for (String part: parts) {
+      digest.update(part.getBytes(StandardCharsets.UTF_8));
+      digest.update((byte) 0);
+    }
+
+    return toHex(digest.digest());
+  }
+
+  /**
+   * Looks up the entry for the key. Marks the entry as recently used.
+   *
+   * @param key		the key to look up
+   * @return		the entry, null if not cached
+   */
+  public synchronized Entry lookup(String key) {
+    File		dir;
+    File		output;
+    String		stdout;
+    String		stderr;
+    Map<String,File>	sidecars;
+    File[]		files;
+
+    dir    = new File(m_Directory, key);
+    output = new File(dir, FILE_OUTPUT);
+    if (!output.isFile())
+      return null;
+
+    try {
+      stdout = new String(Files.readAllBytes(new File(dir, FILE_STDOUT).toPath()), StandardCharsets.UTF_8);
+      stderr = new String(Files.readAllBytes(new File(dir, FILE_STDERR).toPath()), StandardCharsets.UTF_8);
+    }
+    catch (Exception e) {
+      getLogger().warning("Failed to read cache entry " + dir + ": " + e);
+      return null;
+    }
+
+    sidecars = new TreeMap<>();
+    files    = dir.listFiles();
+    if (files != null) {
+      for (File file: files) {
+	if (file.getName().startsWith(FILE_SIDECAR + "."))
+	  sidecars.put(file.getName().substring(FILE_SIDECAR.length()), file);
+      }
+    }
+
+    if (!dir.setLastModified(System.currentTimeMillis()))
+      getLogger().warning("Failed to update timestamp of cache entry: " + dir);
+    if (isLoggingEnabled())
+      getLogger().info("Cache hit: " + key);
+
+    return new Entry(output, sidecars, stdout, stderr);
+  }
+
+  /**
+   * Returns the base name of the file, ie the name without extension.
+   *
+   * @param file	the file to get the base name for
+   * @return		the base name
+   */
+  protected static String getBaseName(File file) {
+    String	result;
+
+    result = file.getName();
+    if (result.lastIndexOf('.') > 0)
+      result = result.substring(0, result.lastIndexOf('.'));
+
+    return result;
+  }
+
+  /**
+   * Returns the sidecar files of the output file, ie all other files in the
+   * same directory that share the base name (eg .hdr, .aux.xml, .ovr).
+   *
+   * @param outputFile	the output file to get the sidecar files for
+   * @return		the sidecar files
+   */
+  public static List<File> findSidecars(File outputFile) {
+    List<File>	result;
+    File[]	files;
+    String	prefix;
+
+    result = new ArrayList<>();
+    prefix = getBaseName(outputFile) + ".";
+    files  = outputFile.getAbsoluteFile().getParentFile().listFiles();
+    if (files != null) {
+      for (File file: files) {
+	if (file.isFile() && file.getName().startsWith(prefix) && !file.getName().equals(outputFile.getName()))
+	  result.add(file);
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * Stores the output file, its sidecar files and stdout/stderr under the
+   * key. Removes least recently used entries if the cache exceeds its
+   * maximum size.
+   *
+   * @param key		the key to store the output under
+   * @param outputFile	the output file to store (gets copied)
+   * @param sidecars	the sidecar files of the output file to store (get copied), must share the base name
+   * @param stdout	the stdout output
+   * @param stderr	the stderr output
+   * @throws IOException	if storing fails
+   * @see		#findSidecars(File)
+   */
+  public synchronized void store(String key, File outputFile, List<File> sidecars, String stdout, String stderr) throws IOException {
+    File	dir;
+    File	tmp;
+    long	size;
+    String	base;
+
+    size = outputFile.length();
+    for (File sidecar: sidecars)
+      size += sidecar.length();
+    if (size > m_MaxSize) {
+      if (isLoggingEnabled())
+	getLogger().info("Output too large for cache (" + size + " > " + m_MaxSize + " bytes): " + outputFile);
+      return;
+    }
+
+    dir = new File(m_Directory, key);
+    if (dir.exists())
+      return;
+
+    if (!m_Directory.exists() && !m_Directory.mkdirs())
+      throw new IOException("Failed to create cache directory: " + m_Directory);
+
+    // write to temp dir first, then rename
+    tmp = new File(m_Directory, TMP_PREFIX + key);
+    delete(tmp);
+    if (!tmp.mkdir())
+      throw new IOException("Failed to create cache entry: " + tmp);
+    try {
+      Files.copy(outputFile.toPath(), new File(tmp, FILE_OUTPUT).toPath());
+      base = getBaseName(outputFile);
+      for (File sidecar: sidecars)
+	Files.copy(sidecar.toPath(), new File(tmp, FILE_SIDECAR + sidecar.getName().substring(base.length())).toPath());
+      Files.write(new File(tmp, FILE_STDOUT).toPath(), stdout.getBytes(StandardCharsets.UTF_8));
+      Files.write(new File(tmp, FILE_STDERR).toPath(), stderr.getBytes(StandardCharsets.UTF_8));
+      Files.move(tmp.toPath(), dir.toPath(), StandardCopyOption.ATOMIC_MOVE);
+    }
+    catch (IOException e) {
+      delete(tmp);
+      throw e;
+    }
+    if (isLoggingEnabled())
+      getLogger().info("Cached: " + key);
+
+    evict();
+  }
+
+  /**
+   * Deletes the entry directory.
+   *
+   * @param dir		the directory to delete
+   */
+  protected void delete(File dir) {
+    File[]	files;
+
+    if (!dir.exists())
+      return;
+
+    files = dir.listFiles();
+    if (files != null) {
+      for (File file: files) {
+	if (!file.delete())
+	  getLogger().warning("Failed to delete: " + file);
+      }
+    }
+    if (!dir.delete())
+      getLogger().warning("Failed to delete: " + dir);
+  }
+
+  /**
+   * Returns the size of the entry directory.
+   *
+   * @param dir		the directory to get the size for
+   * @return		the size in bytes
+   */
+  protected long size(File dir) {
+    long	result;
+    File[]	files;
+
+    result = 0;
+    files  = dir.listFiles();
+    if (files != null) {
+      for (File file: files)
+	result += file.length();
+    }
+
+    return result;
+  }
+
+  /**
+   * Removes the least recently used entries until the cache fits its maximum size.
+   */
+  public synchronized void evict() {
+    File[]	dirs;
+    List<File>	entries;
+    long	total;
+
+    dirs = m_Directory.listFiles();
+    if (dirs == null)
+      return;
+
+    entries = new ArrayList<>();
+    total   = 0;
+    for (File dir: dirs) {
+      if (!dir.isDirectory() || dir.getName().startsWith(TMP_PREFIX))
+	continue;
+      entries.add(dir);
+      total += size(dir);
+    }
+    if (total <= m_MaxSize)
+      return;
+
+    entries.sort(Comparator.comparingLong(File::lastModified));
+    for (File dir: entries) {
+      if (total <= m_MaxSize)
+	break;
+      total -= size(dir);
+      if (isLoggingEnabled())
+	getLogger().info("Evicting: " + dir.getName());
+      delete(dir);
+    }
+  }
+
+  /**
+   * Makes the cached output file and its sidecar files available under the
+   * target file name. The files get copied rather than linked, as commands
+   * may modify their output in place later on (eg adding overviews), which
+   * would corrupt the cache otherwise.
+   *
+   * @param entry	the cache entry to materialize
+   * @param target	the file to create
+   * @throws IOException	if copying fails
+   */
+  public static void materialize(Entry entry, File target) throws IOException {
+    String	base;
+
+    Files.copy(entry.getOutputFile().toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    base = getBaseName(target);
+    for (String suffix: entry.getSidecars().keySet())
+      Files.copy(entry.getSidecars().get(suffix).toPath(), new File(target.getParentFile(), base + suffix).toPath(), StandardCopyOption.REPLACE_EXISTING);
+  }
+}
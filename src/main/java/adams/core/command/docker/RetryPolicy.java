@@ -0,0 +1,161 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * RetryPolicy.java
+ * Copyright (C) 2023 University of Waikato, Hamilton, New Zealand
+ */
+
+package adams.core.command.docker;
+
+import java.io.Serializable;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Determines whether a failed invocation can be retried and how long to wait
+ * before the next attempt (exponential backoff with jitter).
+ * <br>
+ * Only failures of the infrastructure get retried, not failures of the
+ * command itself:
+ * <ul>
+ *   <li>the process could not be started (eg daemon not reachable via the Engine API)</li>
+ *   <li>the docker CLI reported a daemon error (exit code {@link EndpointBalancer#DAEMON_ERROR})</li>
+ *   <li>the process timed out (optional)</li>
+ * </ul>
+ *
+ * @author fracpete (fracpete at waikato dot ac dot nz)
+ */
+public class RetryPolicy
+  implements Serializable {
+
+  private static final long serialVersionUID = -2210838593011468823L;
+
+  /** the factor by which the delay increases with each attempt. */
+  public static final double MULTIPLIER = 2.0;
+
+  /** the default maximum delay (msec). */
+  public static final long DEFAULT_MAX_DELAY = 60000;
+
+  /** the maximum number of retries. */
+  protected int m_MaxRetries;
+
+  /** the delay before the first retry (msec). */
+  protected long m_InitialDelay;
+
+  /** the maximum delay (msec). */
+  protected long m_MaxDelay;
+
+  /** whether to retry timed out invocations. */
+  protected boolean m_RetryTimeouts;
+
+  /**
+   * Initializes the policy.
+   *
+   * @param maxRetries		the maximum number of retries, 0 for none
+   * @param initialDelay	the delay before the first retry (msec)
+   * @param maxDelay		the maximum delay (msec)
+   * @param retryTimeouts	whether to retry timed out invocations
+   */
+  public RetryPolicy(int maxRetries, long initialDelay, long maxDelay, boolean retryTimeouts) {
+    m_MaxRetries    = Math.max(0, maxRetries);
+    m_InitialDelay  = Math.max(1, initialDelay);
+    m_MaxDelay      = Math.max(m_InitialDelay, maxDelay);
+    m_RetryTimeouts = retryTimeouts;
+  }
+
+  /**
+   * Returns the maximum number of retries.
+   *
+   * @return		the number of retries
+   */
+  public int getMaxRetries() {
+    return m_MaxRetries;
+  }
+
+  /**
+   * Returns whether the failure of the invocation was caused by the docker
+   * daemon or the invocation hanging rather than the command itself.
+   * Only applicable to invocations that are no longer running.
+   *
+   * @param runner	the runner that was executed
+   * @return		true if a daemon failure
+   */
+  public static boolean isDaemonFailure(ProcessRunner runner) {
+    if (runner.isTimedOut())
+      return true;
+    if (runner.isDestroyed())
+      return false;
+    if (!runner.isFinished())
+      return true;
+    return (runner.getExitCode() == EndpointBalancer.DAEMON_ERROR);
+  }
+
+  /**
+   * Returns whether the failed invocation can be retried.
+   *
+   * @param runner	the runner that was executed
+   * @param attempt	the attempt that failed (0-based)
+   * @return		true if to retry
+   */
+  public boolean canRetry(ProcessRunner runner, int attempt) {
+    if (attempt >= m_MaxRetries)
+      return false;
+    if (runner.isTimedOut())
+      return m_RetryTimeouts;
+    return isDaemonFailure(runner);
+  }
+
+  /**
+   * Returns the delay before the next attempt: exponential backoff, capped
+   * at the maximum delay, with random jitter (50-100% of the delay) to avoid
+   * retries of parallel invocations happening in lockstep.
+   *
+   * @param attempt	the attempt that failed (0-based)
+   * @return		the delay in msec
+   */
+  public long getDelay(int attempt) {
+    double	delay;
+
+    delay = Math.min(m_MaxDelay, m_InitialDelay * Math.pow(MULTIPLIER, attempt));
+    return (long) (delay / 2 + ThreadLocalRandom.current().nextDouble() * delay / 2);
+  }
+
+  /**
+   * Waits before the next attempt.
+   *
+   * @param attempt	the attempt that failed (0-based)
+   * @return		false if waiting got interrupted
+   */
+  public boolean backoff(int attempt) {
+    try {
+      Thread.sleep(getDelay(attempt));
+      return true;
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return false;
+    }
+  }
+
+  /**
+   * Returns a short description of the policy.
+   *
+   * @return		the description
+   */
+  @Override
+  public String toString() {
+    return "retries=" + m_MaxRetries + ", delay=" + m_InitialDelay + "-" + m_MaxDelay + "ms, timeouts=" + m_RetryTimeouts;
+  }
+}
@@ -0,0 +1,141 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * ScheduledJob.java
+ * Copyright (C) 2023 University of Waikato, Hamilton, New Zealand
+ */
+
+package adams.core.command.docker;
+
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Job that can be queued in a priority-based executor: higher priority
+ * first, then higher estimated cost (longest first), then order of
+ * submission. Once done, the job adds itself to the queue of completed
+ * jobs (if provided).
+ *
+ * @author fracpete (fracpete at waikato dot ac dot nz)
+ * @param <V>	the type of result
+ */
+public class ScheduledJob<V>
+  extends FutureTask<V>
+  implements Comparable<ScheduledJob<?>> {
+
+  /** the priority. */
+  protected JobPriority m_Priority;
+
+  /** the estimated cost. */
+  protected double m_Cost;
+
+  /** the sequence number. */
+  protected long m_Sequence;
+
+  /** the queue for completed jobs, can be null. */
+  protected Queue<Future<V>> m_Completed;
+
+  /**
+   * Initializes the job.
+   *
+   * @param callable	the actual job
+   * @param priority	the priority
+   * @param cost	the estimated cost, 0 if not available
+   * @param sequence	the sequence number (order of submission)
+   * @param completed	the queue to add the job to once done, can be null
+   */
+  public ScheduledJob(Callable<V> callable, JobPriority priority, double cost, long sequence, Queue<Future<V>> completed) {
+    super(callable);
+    m_Priority  = priority;
+    m_Cost      = cost;
+    m_Sequence  = sequence;
+    m_Completed = completed;
+  }
+
+  /**
+   * Returns the priority.
+   *
+   * @return		the priority
+   */
+  public JobPriority getPriority() {
+    return m_Priority;
+  }
+
+  /**
+   * Returns the estimated cost.
+   *
+   * @return		the cost
+   */
+  public double getCost() {
+    return m_Cost;
+  }
+
+  /**
+   * Returns the sequence number.
+   *
+   * @return		the sequence
+   */
+  public long getSequence() {
+    return m_Sequence;
+  }
+
+  /**
+   * Adds the job to the queue of completed jobs.
+   */
+  @Override
+  protected void done() {
+    if (m_Completed != null)
+      m_Completed.add(this);
+  }
+
+  /**
+   * Compares the jobs: higher priority first, then higher cost, then lower
+   * sequence.
+   *
+   * @param o		the job to compare with
+   * @return		less than, equal to or greater than zero
+   */
+  @Override
+  public int compareTo(ScheduledJob<?> o) {
+    return compare(m_Priority, m_Cost, m_Sequence, o.getPriority(), o.getCost(), o.getSequence());
+  }
+
+  /**
+   * Compares two jobs: higher priority first, then higher cost, then lower
+   * sequence.
+   *
+   * @param priority1	the priority of the first job
+   * @param cost1	the cost of the first job
+   * @param sequence1	the sequence of the first job
+   * @param priority2	the priority of the second job
+   * @param cost2	the cost of the second job
+   * @param sequence2	the sequence of the second job
+   * @return		less than, equal to or greater than zero
+   */
+  public static int compare(JobPriority priority1, double cost1, long sequence1, JobPriority priority2, double cost2, long sequence2) {
+    int		result;
+
+    result = priority1.compareTo(priority2);
+    if (result == 0)
+      result = -Double.compare(cost1, cost2);
+    if (result == 0)
+      result = Long.compare(sequence1, sequence2);
+
+    return result;
+  }
+}
@@ -0,0 +1,176 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * ScratchArea.java
+ * Copyright (C) 2023 University of Waikato, Hamilton, New Zealand
+ */
+
+package adams.core.command.docker;
+
+import adams.core.base.DockerDirectoryMapping;
+import adams.core.io.FileUtils;
+import adams.core.logging.LoggingObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Scratch area for outputs and intermediate files, located in a directory
+ * on a memory-backed file system (eg /dev/shm). The area gets mapped into
+ * the containers under {@link #CONTAINER_DIR}, allowing the containers and
+ * the flow to exchange files without touching the disk.
+ * <br>
+ * Each session (eg flow execution) gets its own directory, which gets
+ * created on first use and removed with {@link #clear()}. Each output gets
+ * its own sub-directory, so that sidecar files (eg .hdr) don't clash.
+ *
+ * @author fracpete (fracpete at waikato dot ac dot nz)
+ */
+public class ScratchArea
+  extends LoggingObject {
+
+  private static final long serialVersionUID = -2716408832613570145L;
+
+  /** the directory in the container. */
+  public static final String CONTAINER_DIR = "/scratch";
+
+  /** the name of the sub-directory for temporary files of the executables. */
+  public static final String TMP_DIR = "tmp";
+
+  /** the prefix for the session directories. */
+  public static final String PREFIX = "adams-scratch";
+
+  /** the counter for the output directories. */
+  protected static final AtomicLong m_Counter = new AtomicLong();
+
+  /** the base directory (eg /dev/shm). */
+  protected File m_BaseDir;
+
+  /** the session directory, null if not yet created. */
+  protected File m_Dir;
+
+  /**
+   * Initializes the scratch area.
+   *
+   * @param baseDir	the directory on the memory-backed file system
+   */
+  public ScratchArea(File baseDir) {
+    m_BaseDir = baseDir;
+  }
+
+  /**
+   * Returns the base directory.
+   *
+   * @return		the directory
+   */
+  public File getBaseDir() {
+    return m_BaseDir;
+  }
+
+  /**
+   * Returns the session directory, creates it if necessary.
+   *
+   * @return		the directory
+   * @throws IOException	if creation fails
+   */
+  public synchronized File getDir() throws IOException {
+    File	dir;
+
+    if (m_Dir == null) {
+      dir = new File(m_BaseDir, ContainerRegistry.newName(PREFIX));
+      Files.createDirectories(new File(dir, TMP_DIR).toPath());
+      m_Dir = dir;
+      if (isLoggingEnabled())
+	getLogger().info("Created scratch area: " + m_Dir);
+    }
+
+    return m_Dir;
+  }
+
+  /**
+   * Returns the directory for temporary files of the executables (eg
+   * CPL_TMPDIR), creates it if necessary.
+   *
+   * @return		the directory
+   * @throws IOException	if creation fails
+   */
+  public File getTmpDir() throws IOException {
+    return new File(getDir(), TMP_DIR);
+  }
+
+  /**
+   * Returns the directory mapping for the containers.
+   *
+   * @return		the mapping
+   * @throws IOException	if creation of the session directory fails
+   */
+  public DockerDirectoryMapping getMapping() throws IOException {
+    return new DockerDirectoryMapping(getDir().getAbsolutePath(), CONTAINER_DIR);
+  }
+
+  /**
+   * Returns a new file in the scratch area, located in its own sub-directory.
+   *
+   * @param name	the name of the file
+   * @return		the file
+   * @throws IOException	if creation of the sub-directory fails
+   */
+  public File newFile(String name) throws IOException {
+    File	dir;
+
+    dir = new File(getDir(), "" + m_Counter.incrementAndGet());
+    Files.createDirectories(dir.toPath());
+
+    return new File(dir, name);
+  }
+
+  /**
+   * Checks whether the file is located in the scratch area.
+   *
+   * @param file	the file to check
+   * @return		true if in the scratch area
+   */
+  public synchronized boolean contains(File file) {
+    if (m_Dir == null)
+      return false;
+    return file.getAbsoluteFile().toPath().normalize().startsWith(m_Dir.getAbsoluteFile().toPath());
+  }
+
+  /**
+   * Removes the session directory and all its content.
+   */
+  public synchronized void clear() {
+    if (m_Dir == null)
+      return;
+    if (!FileUtils.delete(m_Dir))
+      getLogger().warning("Failed to remove scratch area: " + m_Dir);
+    else if (isLoggingEnabled())
+      getLogger().info("Removed scratch area: " + m_Dir);
+    m_Dir = null;
+  }
+
+  /**
+   * Returns a short description of the scratch area.
+   *
+   * @return		the description
+   */
+  @Override
+  public String toString() {
+    return (m_Dir == null) ? m_BaseDir.toString() : m_Dir.toString();
+  }
+}
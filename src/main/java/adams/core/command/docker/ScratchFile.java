@@ -0,0 +1,194 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * ScratchFile.java
+ * Copyright (C) 2023 University of Waikato, Hamilton, New Zealand
+ */
+
+package adams.core.command.docker;
+
+import adams.core.io.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A file generated in the {@link ScratchArea}, forwarded in the flow instead
+ * of the file name. The content can be accessed via memory mapping, without
+ * copying it. The file only gets copied to persistent storage when getting
+ * promoted explicitly, along with any sidecar files (files in the same
+ * directory that share the name without extension as prefix, like .hdr).
+ *
+ * @author fracpete (fracpete at waikato dot ac dot nz)
+ */
+public class ScratchFile
+  implements Serializable {
+
+  private static final long serialVersionUID = 4018573290125482262L;
+
+  /** the file. */
+  protected File m_File;
+
+  /**
+   * Initializes the scratch file.
+   *
+   * @param file	the file in the scratch area
+   */
+  public ScratchFile(File file) {
+    m_File = file.getAbsoluteFile();
+  }
+
+  /**
+   * Returns the file.
+   *
+   * @return		the file
+   */
+  public File getFile() {
+    return m_File;
+  }
+
+  /**
+   * Returns whether the file still exists.
+   *
+   * @return		true if it exists
+   */
+  public boolean exists() {
+    return m_File.isFile();
+  }
+
+  /**
+   * Returns the size of the file.
+   *
+   * @return		the size in bytes
+   */
+  public long length() {
+    return m_File.length();
+  }
+
+  /**
+   * Returns the name of the file without extension.
+   *
+   * @param name	the name to process
+   * @return		the prefix
+   */
+  protected static String getPrefix(String name) {
+    if (name.indexOf('.') > -1)
+      return name.substring(0, name.indexOf('.'));
+    else
+      return name;
+  }
+
+  /**
+   * Returns the file and its sidecar files.
+   *
+   * @return		the files, the file itself first
+   */
+  public List<File> getFiles() {
+    List<File>	result;
+    File[]	files;
+    String	prefix;
+
+    result = new ArrayList<>();
+    result.add(m_File);
+    prefix = getPrefix(m_File.getName()) + ".";
+    files  = m_File.getParentFile().listFiles();
+    if (files != null) {
+      Arrays.sort(files);
+      for (File file: files) {
+	if (file.isFile() && !file.equals(m_File) && file.getName().startsWith(prefix))
+	  result.add(file);
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * Maps the content of the file into memory (read-only).
+   *
+   * @return		the buffer
+   * @throws IOException	if mapping fails
+   */
+  public MappedByteBuffer map() throws IOException {
+    try (FileChannel channel = FileChannel.open(m_File.toPath(), StandardOpenOption.READ)) {
+      return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
+  }
+
+  /**
+   * Copies the file (and its sidecar files) to persistent storage. The
+   * sidecar files get renamed to match the name of the target.
+   * If the target is a directory, the file names get kept.
+   *
+   * @param target	the target file or directory
+   * @return		the file the scratch file got copied to
+   * @throws IOException	if copying fails
+   */
+  public File promote(File target) throws IOException {
+    File	result;
+    String	prefix;
+    String	targetPrefix;
+    File	dest;
+
+    if (target.isDirectory())
+      result = new File(target, m_File.getName());
+    else
+      result = target;
+    result = result.getAbsoluteFile();
+    Files.createDirectories(result.getParentFile().toPath());
+
+    prefix       = getPrefix(m_File.getName());
+    targetPrefix = getPrefix(result.getName());
+    for (File file: getFiles()) {
+      if (file.equals(m_File))
+	dest = result;
+      else
+	dest = new File(result.getParentFile(), targetPrefix + file.getName().substring(prefix.length()));
+      Files.copy(file.toPath(), dest.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    return result;
+  }
+
+  /**
+   * Removes the file and its sidecar files (ie the sub-directory in the
+   * scratch area).
+   *
+   * @return		true if successfully removed
+   */
+  public boolean release() {
+    return FileUtils.delete(m_File.getParentFile());
+  }
+
+  /**
+   * Returns the path of the file.
+   *
+   * @return		the path
+   */
+  @Override
+  public String toString() {
+    return m_File.getPath();
+  }
+}
@@ -0,0 +1,193 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * ScriptStepResult.java
+ * Copyright (C) 2023 University of Waikato, Hamilton, New Zealand
+ */
+
+package adams.core.command.docker;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The result of a single step of a {@link ContainerScript}.
+ *
+ * @author fracpete (fracpete at waikato dot ac dot nz)
+ */
+public class ScriptStepResult
+  implements Serializable {
+
+  private static final long serialVersionUID = -2424470180366936164L;
+
+  /** the index of the step. */
+  protected int m_Index;
+
+  /** the command of the step. */
+  protected List<String> m_Command;
+
+  /** the stdout output. */
+  protected String m_StdOut;
+
+  /** the stderr output. */
+  protected String m_StdErr;
+
+  /** the exit code, -1 if not executed. */
+  protected int m_ExitCode;
+
+  /** the start time (msec), -1 if unknown. */
+  protected long m_StartTime;
+
+  /** the end time (msec), -1 if unknown. */
+  protected long m_EndTime;
+
+  /**
+   * Initializes the result.
+   *
+   * @param index	the index of the step
+   * @param command	the command of the step
+   */
+  public ScriptStepResult(int index, List<String> command) {
+    m_Index     = index;
+    m_Command   = new ArrayList<>(command);
+    m_StdOut    = "";
+    m_StdErr    = "";
+    m_ExitCode  = -1;
+    m_StartTime = -1;
+    m_EndTime   = -1;
+  }
+
+  /**
+   * Returns the index of the step.
+   *
+   * @return		the index
+   */
+  public int getIndex() {
+    return m_Index;
+  }
+
+  /**
+   * Returns the command of the step.
+   *
+   * @return		the command
+   */
+  public List<String> getCommand() {
+    return m_Command;
+  }
+
+  /**
+   * Returns whether the step got executed.
+   *
+   * @return		true if executed
+   */
+  public boolean isExecuted() {
+    return (m_ExitCode > -1);
+  }
+
+  /**
+   * Returns whether the step finished with exit code 0.
+   *
+   * @return		true if successful
+   */
+  public boolean hasSucceeded() {
+    return (m_ExitCode == 0);
+  }
+
+  /**
+   * Returns the stdout output.
+   *
+   * @return		the output
+   */
+  public String getStdOut() {
+    return m_StdOut;
+  }
+
+  /**
+   * Returns the stderr output.
+   *
+   * @return		the output
+   */
+  public String getStdErr() {
+    return m_StdErr;
+  }
+
+  /**
+   * Returns the exit code.
+   *
+   * @return		the exit code, -1 if not executed
+   */
+  public int getExitCode() {
+    return m_ExitCode;
+  }
+
+  /**
+   * Returns the start time of the step (as measured in the container).
+   *
+   * @return		the time in msec, -1 if unknown
+   */
+  public long getStartTime() {
+    return m_StartTime;
+  }
+
+  /**
+   * Returns the end time of the step (as measured in the container).
+   *
+   * @return		the time in msec, -1 if unknown
+   */
+  public long getEndTime() {
+    return m_EndTime;
+  }
+
+  /**
+   * Returns the duration of the step.
+   *
+   * @return		the duration in msec, -1 if unknown
+   */
+  public long getDuration() {
+    if ((m_StartTime == -1) || (m_EndTime == -1))
+      return -1;
+    return m_EndTime - m_StartTime;
+  }
+
+  /**
+   * Generates an error message for a failed step.
+   *
+   * @return		the message
+   */
+  public String toErrorMessage() {
+    String	result;
+
+    if (!isExecuted())
+      return "Step #" + (m_Index + 1) + " was not executed: " + String.join(" ", m_Command);
+
+    result = "Step #" + (m_Index + 1) + " failed with exit code " + m_ExitCode + ": " + String.join(" ", m_Command);
+    if (m_StdErr.trim().length() > 0)
+      result += "\n" + m_StdErr.trim();
+
+    return result;
+  }
+
+  /**
+   * Returns a short description of the result.
+   *
+   * @return		the description
+   */
+  @Override
+  public String toString() {
+    return "step=" + (m_Index + 1) + ", exit=" + m_ExitCode + ", duration=" + getDuration() + "ms, cmd=" + String.join(" ", m_Command);
+  }
+}
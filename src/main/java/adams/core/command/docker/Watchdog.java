@@ -0,0 +1,117 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Watchdog.java
+ * Copyright (C) 2023 University of Waikato, Hamilton, New Zealand
+ */
+
+package adams.core.command.docker;
+
+import adams.core.logging.LoggingHelper;
+
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Stops processes that exceed their time limit. Containers that the process
+ * runs in (see {@link ProcessRunner#getContainerName()}) get killed via
+ * "docker kill", as stopping the docker CLI does not stop the container
+ * itself. Afterwards, the process gets destroyed.
+ *
+ * @author fracpete (fracpete at waikato dot ac dot nz)
+ */
+public class Watchdog {
+
+  /** the maximum time to wait for "docker kill" (msec). */
+  public static final long KILL_TIMEOUT = 10000;
+
+  /** for scheduling the timeouts. */
+  protected static ScheduledExecutorService m_Executor;
+
+  /** the logger in use. */
+  protected static Logger LOGGER = LoggingHelper.getLogger(Watchdog.class);
+
+  /**
+   * Returns the executor for the timeouts, instantiates it if necessary.
+   *
+   * @return		the executor
+   */
+  protected static synchronized ScheduledExecutorService getExecutor() {
+    if (m_Executor == null) {
+      m_Executor = Executors.newScheduledThreadPool(2, r -> {
+	Thread t = new Thread(r, Watchdog.class.getSimpleName());
+	t.setDaemon(true);
+	return t;
+      });
+    }
+    return m_Executor;
+  }
+
+  /**
+   * Kills the container the process runs in (if any) and destroys the process,
+   * unless it has already finished.
+   *
+   * @param runner	the process to stop
+   * @param binary	the docker binary, null if no container to kill
+   * @param timeout	the timeout that was exceeded (msec), for logging
+   */
+  protected static void expire(ProcessRunner runner, String binary, long timeout) {
+    ProcessRunner	kill;
+
+    if (runner.isFinished() || runner.isDestroyed())
+      return;
+
+    LOGGER.warning("Timeout of " + timeout + "ms exceeded, stopping: " + String.join(" ", runner.getCommand()));
+    runner.markTimedOut();
+
+    // containers started via the Engine API get killed when destroying the runner
+    if ((binary != null) && (runner.getContainerName() != null) && !(runner instanceof EngineRunner)) {
+      kill = new ProcessRunner(Arrays.asList(binary, "kill", runner.getContainerName()));
+      kill.getEnvironment().putAll(runner.getEnvironment());
+      try {
+	kill.start();
+	if (!kill.waitFor(KILL_TIMEOUT))
+	  kill.destroy();
+	else if (!kill.hasSucceeded())
+	  LOGGER.warning("Failed to kill container " + runner.getContainerName() + ":\n" + kill.toErrorMessage());
+      }
+      catch (Exception e) {
+	LOGGER.warning("Failed to kill container " + runner.getContainerName() + ": " + e);
+      }
+    }
+
+    runner.destroy();
+  }
+
+  /**
+   * Stops the process once the timeout is exceeded. Has no effect if the
+   * process has already finished by then.
+   *
+   * @param runner	the (started) process to watch
+   * @param binary	the docker binary for killing the container, null if not applicable
+   * @param timeout	the timeout in msec, no watching if &lt;= 0
+   * @return		the scheduled check, can be cancelled once the process finished; null if not watched
+   */
+  public static ScheduledFuture<?> watch(ProcessRunner runner, String binary, long timeout) {
+    if (timeout <= 0)
+      return null;
+    return getExecutor().schedule(() -> expire(runner, binary, timeout), timeout, TimeUnit.MILLISECONDS);
+  }
+}
@@ -0,0 +1,318 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * AddOverviews.java
+ * Copyright (C) 2023 University of Waikato, Hamilton, New Zealand
+ */
+
+package adams.core.command.gdal;
+
+import adams.core.QuickInfoHelper;
+import adams.core.base.DockerDirectoryMapping;
+import adams.core.io.PlaceholderFile;
+import adams.docker.SimpleDockerHelper;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Builds or rebuilds overview images of a raster dataset (gdaladdo), allowing
+ * reads at reduced resolution (eg previews) to only touch a fraction of the
+ * file.
+ *
+ * @author fracpete (fracpete at waikato dot ac dot nz)
+ */
+public class AddOverviews
+  extends AbstractGDALCommand {
+
+  private static final long serialVersionUID = 8841253040567216035L;
+
+  /** the resampling method. */
+  protected String m_Resampling;
+
+  /** the overview levels. */
+  protected String m_Levels;
+
+  /** whether to generate external overviews (.ovr). */
+  protected boolean m_External;
+
+  /**
+   * Returns a string describing the object.
+   *
+   * @return a description suitable for displaying in the gui
+   */
+  @Override
+  public String globalInfo() {
+    return "Builds or rebuilds overview images of a raster dataset (" + getExecutable() + "), allowing reads at reduced "
+      + "resolution (eg previews) to only touch a fraction of the file.\n"
+      + "The overviews get stored in the dataset itself, if supported by the format, or in an external .ovr file.\n"
+      + "Automatically adds the directory that the dataset resides in to the docker directory mappings as " + getWorkspaceDir() + ".\n"
+      + "For more information see:\n"
+      + "https://gdal.org/programs/gdaladdo.html";
+  }
+
+  /**
+   * Adds options to the internal list of options.
+   */
+  @Override
+  public void defineOptions() {
+    super.defineOptions();
+
+    m_OptionManager.add(
+      "resampling", "resampling",
+      "average");
+
+    m_OptionManager.add(
+      "levels", "levels",
+      "");
+
+    m_OptionManager.add(
+      "external", "external",
+      false);
+  }
+
+  /**
+   * Sets the resampling method (-r).
+   *
+   * @param value	the method, empty for default
+   */
+  public void setResampling(String value) {
+    m_Resampling = value;
+    reset();
+  }
+
+  /**
+   * Returns the resampling method (-r).
+   *
+   * @return		the method, empty for default
+   */
+  public String getResampling() {
+    return m_Resampling;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String resamplingTipText() {
+    return "The resampling method to use (-r), eg nearest, average, bilinear, cubic, lanczos, mode; empty for the GDAL default.";
+  }
+
+  /**
+   * Sets the overview levels (blank-separated).
+   *
+   * @param value	the levels, empty for automatic
+   */
+  public void setLevels(String value) {
+    m_Levels = value;
+    reset();
+  }
+
+  /**
+   * Returns the overview levels (blank-separated).
+   *
+   * @return		the levels, empty for automatic
+   */
+  public String getLevels() {
+    return m_Levels;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String levelsTipText() {
+    return "The blank-separated decimation factors of the overviews (eg '2 4 8 16'); empty to let GDAL determine them "
+      + "until the overview is smaller than 256 pixels.";
+  }
+
+  /**
+   * Sets whether to generate external overviews (.ovr) rather than modifying the dataset.
+   *
+   * @param value	true if external
+   */
+  public void setExternal(boolean value) {
+    m_External = value;
+    reset();
+  }
+
+  /**
+   * Returns whether to generate external overviews (.ovr) rather than modifying the dataset.
+   *
+   * @return		true if external
+   */
+  public boolean getExternal() {
+    return m_External;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String externalTipText() {
+    return "If enabled, the dataset gets opened read-only and the overviews get stored in an external .ovr file (-ro).";
+  }
+
+  /**
+   * Returns a quick info about the object, which can be displayed in the GUI.
+   *
+   * @return		null if no info available, otherwise short string
+   */
+  @Override
+  public String getQuickInfo() {
+    String	result;
+
+    result = super.getQuickInfo();
+    result += QuickInfoHelper.toString(this, "resampling", (m_Resampling.isEmpty() ? "default" : m_Resampling), ", resampling: ");
+    result += QuickInfoHelper.toString(this, "levels", (m_Levels.isEmpty() ? "auto" : m_Levels), ", levels: ");
+    result += QuickInfoHelper.toString(this, "external", m_External, "external", ", ");
+
+    return result;
+  }
+
+  /**
+   * Returns the name of the GDAL executable.
+   *
+   * @return the name
+   */
+  @Override
+  public String getExecutable() {
+    return "gdaladdo";
+  }
+
+  /**
+   * Returns the automatic workspace directory in the container.
+   *
+   * @return		the workspace dir
+   */
+  protected String getWorkspaceDir() {
+    return "/workspace/gdaladdo";
+  }
+
+  /**
+   * Returns how many arguments have to be supplied at least.
+   *
+   * @return		the minimum (incl), unbounded if -1
+   */
+  public int minArguments() {
+    return 1;
+  }
+
+  /**
+   * Returns how many arguments can be supplied at most.
+   *
+   * @return		the maximum (incl), unbounded if -1
+   */
+  public int maxArguments() {
+    return 1;
+  }
+
+  /**
+   * Adds custom directory mappings to the already compiled list.
+   *
+   * @param mappings	the mappings to process
+   * @param args 	the input arguments
+   * @return		the updated mappings
+   */
+  protected List<DockerDirectoryMapping> addCustomDirMappings(List<DockerDirectoryMapping> mappings, String[] args) {
+    List<DockerDirectoryMapping>	result;
+    File				input;
+    DockerDirectoryMapping		mapping;
+
+    result = new ArrayList<>(super.addCustomDirMappings(mappings, args));
+    input  = new PlaceholderFile(args[0]).getAbsoluteFile().getParentFile();
+    mapping = new DockerDirectoryMapping(input.getAbsolutePath(), getWorkspaceDir());
+    if (!SimpleDockerHelper.addMapping(result, mapping))
+      getLogger().warning("Unable to add mapping (for input): " + mapping);
+
+    return result;
+  }
+
+  /**
+   * Generates the command to execute.
+   *
+   * @return the command
+   */
+  protected List<String> buildCommand() {
+    List<String>	result;
+
+    result = super.buildCommand();
+    if (!m_Resampling.trim().isEmpty()) {
+      result.add("-r");
+      result.add(m_Resampling.trim());
+    }
+    if (m_External)
+      result.add("-ro");
+
+    return result;
+  }
+
+  /**
+   * Returns the overview levels, split into separate arguments.
+   *
+   * @return		the levels, empty if automatic
+   */
+  protected List<String> getActualLevels() {
+    if (m_Levels.trim().isEmpty())
+      return new ArrayList<>();
+    return Arrays.asList(m_Levels.trim().split("\\s+"));
+  }
+
+  /**
+   * Builds the arguments from the input arguments, using local paths.
+   * Appends the levels.
+   *
+   * @param args	the args to process
+   * @return		the generated args
+   */
+  @Override
+  protected String[] buildHostArgs(String[] args) {
+    List<String>	result;
+
+    result = new ArrayList<>(Arrays.asList(args));
+    result.addAll(getActualLevels());
+
+    return result.toArray(new String[0]);
+  }
+
+  /**
+   * Builds the container arguments from the input arguments and converts
+   * them to container paths. Appends the levels.
+   *
+   * @param mappings	the mappings to use
+   * @param args	the args to process
+   * @return		the generated container args
+   * @throws IOException	if converting of a path fails
+   */
+  @Override
+  protected String[] buildContainerArgs(List<DockerDirectoryMapping> mappings, String[] args) throws IOException {
+    List<String>	result;
+
+    result = new ArrayList<>(Arrays.asList(SimpleDockerHelper.toContainerPaths(mappings, args.clone())));
+    result.addAll(getActualLevels());
+
+    return result.toArray(new String[0]);
+  }
+}
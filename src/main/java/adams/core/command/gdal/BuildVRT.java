@@ -0,0 +1,503 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * BuildVRT.java
+ * Copyright (C) 2023 University of Waikato, Hamilton, New Zealand
+ */
+
+package adams.core.command.gdal;
+
+import adams.core.QuickInfoHelper;
+import adams.core.base.DockerDirectoryMapping;
+import adams.core.command.docker.ExecutionResult;
+import adams.core.command.docker.JobJournal;
+import adams.core.io.PlaceholderFile;
+import adams.docker.SimpleDockerHelper;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.function.Supplier;
+
+/**
+ * Builds a virtual dataset (VRT) that mosaics any number of input datasets
+ * (gdalbuildvrt), without copying any raster data.
+ *
+ * @author fracpete (fracpete at waikato dot ac dot nz)
+ */
+public class BuildVRT
+  extends AbstractGDALCommandFileWriter {
+
+  private static final long serialVersionUID = -2260170386396853893L;
+
+  /** the suffix of the file with the input files. */
+  public static final String FILE_LIST_SUFFIX = ".inputs";
+
+  /** whether to place each input in a separate band. */
+  protected boolean m_Separate;
+
+  /** whether to overwrite the output file. */
+  protected boolean m_Overwrite;
+
+  /** the number of inputs from which on to use a file list. */
+  protected int m_FileListThreshold;
+
+  /**
+   * Returns a string describing the object.
+   *
+   * @return a description suitable for displaying in the gui
+   */
+  @Override
+  public String globalInfo() {
+    return "Builds a virtual dataset (VRT) that mosaics any number of input datasets (" + getExecutable() + "), "
+      + "without copying any raster data. Commands that read the VRT only read the parts of the inputs they require.\n"
+      + "The directories of the inputs and the output get mapped into the container under the same path, "
+      + "collapsing sub-directories into their parent directory. That way, the paths in the VRT are valid on the host as well. "
+      + "Inputs that reside below the directory of the VRT get referenced relative to the VRT, making it usable from other commands "
+      + "(eg " + Translate.class.getName() + ") in the container as well; other directories need to be available "
+      + "in the container under the same path (eg via the directory mappings of the connection).\n"
+      + "Large numbers of inputs get passed on via a file list (-input_file_list), stored next to the VRT "
+      + "as hidden file with suffix " + FILE_LIST_SUFFIX + " and removed after the run.\n"
+      + "As building a VRT is cheap, neither result cache nor job journal get used.\n"
+      + "For more information see:\n"
+      + "https://gdal.org/programs/gdalbuildvrt.html";
+  }
+
+  /**
+   * Adds options to the internal list of options.
+   */
+  @Override
+  public void defineOptions() {
+    super.defineOptions();
+
+    m_OptionManager.add(
+      "separate", "separate",
+      false);
+
+    m_OptionManager.add(
+      "overwrite", "overwrite",
+      true);
+
+    m_OptionManager.add(
+      "file-list-threshold", "fileListThreshold",
+      100, 0, null);
+  }
+
+  /**
+   * Returns the default output file.
+   *
+   * @return		the default
+   */
+  @Override
+  protected PlaceholderFile getDefaultOutputFile() {
+    return new PlaceholderFile("${TMP}/out.vrt");
+  }
+
+  /**
+   * Sets whether to place each input in a separate band (-separate).
+   *
+   * @param value	true if separate bands
+   */
+  public void setSeparate(boolean value) {
+    m_Separate = value;
+    reset();
+  }
+
+  /**
+   * Returns whether to place each input in a separate band (-separate).
+   *
+   * @return		true if separate bands
+   */
+  public boolean getSeparate() {
+    return m_Separate;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String separateTipText() {
+    return "If enabled, each input gets placed in a separate band (-separate) rather than mosaicking them.";
+  }
+
+  /**
+   * Sets whether to overwrite the output file (-overwrite).
+   *
+   * @param value	true if to overwrite
+   */
+  public void setOverwrite(boolean value) {
+    m_Overwrite = value;
+    reset();
+  }
+
+  /**
+   * Returns whether to overwrite the output file (-overwrite).
+   *
+   * @return		true if to overwrite
+   */
+  public boolean getOverwrite() {
+    return m_Overwrite;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String overwriteTipText() {
+    return "If enabled, an existing VRT gets overwritten (-overwrite).";
+  }
+
+  /**
+   * Sets the number of inputs from which on to pass them on via a file list.
+   *
+   * @param value	the threshold, 0 to always use a file list
+   */
+  public void setFileListThreshold(int value) {
+    if (getOptionManager().isValid("fileListThreshold", value)) {
+      m_FileListThreshold = value;
+      reset();
+    }
+  }
+
+  /**
+   * Returns the number of inputs from which on to pass them on via a file list.
+   *
+   * @return		the threshold, 0 to always use a file list
+   */
+  public int getFileListThreshold() {
+    return m_FileListThreshold;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String fileListThresholdTipText() {
+    return "The number of inputs from which on they get passed on via a file list (-input_file_list) rather than on the command-line; 0 to always use a file list.";
+  }
+
+  /**
+   * Returns a quick info about the object, which can be displayed in the GUI.
+   *
+   * @return		null if no info available, otherwise short string
+   */
+  @Override
+  public String getQuickInfo() {
+    String	result;
+
+    result = super.getQuickInfo();
+    result += QuickInfoHelper.toString(this, "separate", m_Separate, "separate", ", ");
+    result += QuickInfoHelper.toString(this, "fileListThreshold", m_FileListThreshold, ", file list from: ");
+
+    return result;
+  }
+
+  /**
+   * Returns the name of the GDAL executable.
+   *
+   * @return the name
+   */
+  @Override
+  public String getExecutable() {
+    return "gdalbuildvrt";
+  }
+
+  /**
+   * Returns how many arguments can be supplied at most.
+   *
+   * @return		the maximum (incl), unbounded if -1
+   */
+  @Override
+  public int maxArguments() {
+    return -1;
+  }
+
+  /**
+   * Generates the command to execute.
+   *
+   * @return the command
+   */
+  @Override
+  protected List<String> buildCommand() {
+    List<String>	result;
+
+    result = super.buildCommand();
+    if (m_Overwrite)
+      result.add("-overwrite");
+    if (m_Separate)
+      result.add("-separate");
+
+    return result;
+  }
+
+  /**
+   * Returns the directories to map: the ones of the inputs and the output,
+   * without the ones that are located below another directory.
+   *
+   * @param args	the input arguments
+   * @return		the directories, sorted
+   */
+  protected List<File> getDirectories(String[] args) {
+    List<File>		result;
+    TreeSet<String>	dirs;
+    String		last;
+
+    dirs = new TreeSet<>();
+    for (String arg: args)
+      dirs.add(new PlaceholderFile(arg).getAbsoluteFile().getParentFile().getAbsolutePath());
+    dirs.add(getActualOutputFile().getAbsoluteFile().getParentFile().getAbsolutePath());
+
+    result = new ArrayList<>();
+    last   = null;
+    for (String dir: dirs) {
+      if ((last != null) && (dir.equals(last) || dir.startsWith(last.endsWith(File.separator) ? last : last + File.separator)))
+	continue;
+      result.add(new File(dir));
+      last = dir;
+    }
+
+    return result;
+  }
+
+  /**
+   * Maps the directories of inputs and output under the same path in the
+   * container.
+   *
+   * @param mappings	the mappings to add to
+   * @param args 	the input arguments
+   */
+  @Override
+  protected void addWorkspaceDirMappings(List<DockerDirectoryMapping> mappings, String[] args) {
+    DockerDirectoryMapping	mapping;
+
+    for (File dir: getDirectories(args)) {
+      mapping = new DockerDirectoryMapping(dir.getAbsolutePath(), SimpleDockerHelper.fixPath(dir.getAbsolutePath()));
+      if (!SimpleDockerHelper.addMapping(mappings, mapping))
+	getLogger().warning("Unable to add mapping (for input/output): " + mapping);
+    }
+  }
+
+  /**
+   * Returns the file for storing the input files in.
+   *
+   * @return		the file
+   */
+  protected File getFileList() {
+    File	output;
+
+    output = getActualOutputFile().getAbsoluteFile();
+    return new File(output.getParentFile(), "." + output.getName() + FILE_LIST_SUFFIX);
+  }
+
+  /**
+   * Removes the file list, if present.
+   *
+   * @param list	the file list to remove
+   */
+  protected void removeFileList(File list) {
+    try {
+      Files.deleteIfExists(list.toPath());
+    }
+    catch (IOException e) {
+      getLogger().warning("Failed to remove file list: " + list + "\n" + e);
+    }
+  }
+
+  /**
+   * Builds the arguments: output file followed by the inputs. When exceeding
+   * the threshold, the inputs get written to the file list instead.
+   *
+   * @param inputs	the paths of the inputs
+   * @param output	the path of the output
+   * @param list	the path of the file list
+   * @return		the generated args
+   * @throws IOException	if writing the file list fails
+   */
+  protected String[] buildArgs(String[] inputs, String output, String list) throws IOException {
+    List<String>	result;
+
+    result = new ArrayList<>();
+    if (inputs.length >= m_FileListThreshold) {
+      Files.write(getFileList().toPath(), Arrays.asList(inputs));
+      result.add("-input_file_list");
+      result.add(list);
+      result.add(output);
+    }
+    else {
+      result.add(output);
+      result.addAll(Arrays.asList(inputs));
+    }
+
+    return result.toArray(new String[0]);
+  }
+
+  /**
+   * Returns the absolute paths of the input arguments.
+   *
+   * @param args	the input arguments
+   * @return		the absolute paths
+   */
+  protected String[] getInputs(String[] args) {
+    String[]	result;
+    int		i;
+
+    result = new String[args.length];
+    for (i = 0; i < args.length; i++)
+      result[i] = new PlaceholderFile(args[i]).getAbsolutePath();
+
+    return result;
+  }
+
+  /**
+   * Builds the arguments from the input arguments, using local paths:
+   * output file followed by the inputs. When exceeding the threshold, the
+   * inputs get written to a file list.
+   *
+   * @param args	the args to process
+   * @return		the generated args
+   */
+  @Override
+  protected String[] buildHostArgs(String[] args) {
+    try {
+      return buildArgs(getInputs(args), getActualOutputFile().getAbsolutePath(), getFileList().getAbsolutePath());
+    }
+    catch (IOException e) {
+      throw new IllegalStateException("Failed to write file list: " + getFileList(), e);
+    }
+  }
+
+  /**
+   * Builds the container arguments from the input arguments, converting
+   * the paths (also the ones in the file list) to container paths. Usually,
+   * these are the same as the local ones, but a directory may already be
+   * mapped elsewhere.
+   *
+   * @param mappings	the mappings to use
+   * @param args	the args to process
+   * @return		the generated container args
+   * @throws IOException	if converting a path or writing the file list fails
+   * @see		#addWorkspaceDirMappings(List, String[])
+   */
+  @Override
+  protected String[] buildContainerArgs(List<DockerDirectoryMapping> mappings, String[] args) throws IOException {
+    return buildArgs(
+      SimpleDockerHelper.toContainerPaths(mappings, getInputs(args)),
+      SimpleDockerHelper.toContainerPath(mappings, getActualOutputFile().getAbsolutePath()),
+      SimpleDockerHelper.toContainerPath(mappings, getFileList().getAbsolutePath()));
+  }
+
+  /**
+   * Executes the command. Removes the file list once the execution has
+   * finished (blocking mode).
+   *
+   * @param args 	the arguments to append
+   * @return		null if successful, otherwise error message
+   */
+  @Override
+  public String execute(String[] args) {
+    String	result;
+
+    result = super.execute(args);
+    if (m_Blocking || (result != null))
+      removeFileList(getFileList());
+
+    return result;
+  }
+
+  /**
+   * Returns the next output. Removes the file list once the execution has
+   * finished (non-blocking mode).
+   *
+   * @return		the output, null if none available
+   */
+  @Override
+  public Object output() {
+    Object	result;
+
+    result = super.output();
+    if (!m_Blocking && !hasOutput())
+      removeFileList(getFileList());
+
+    return result;
+  }
+
+  /**
+   * Prepares the invocation of the command. Removes the file list once the
+   * invocation has finished.
+   *
+   * @param args	the arguments to append
+   * @return		the invocation, executes the command when called
+   * @throws Exception	if the checks fail or the container arguments cannot be generated
+   */
+  @Override
+  protected Supplier<ExecutionResult> prepareInvocation(String[] args) throws Exception {
+    final Supplier<ExecutionResult>	invocation;
+    final File				list;
+
+    list       = getFileList();
+    invocation = super.prepareInvocation(args);
+
+    return () -> {
+      try {
+	return invocation.get();
+      }
+      finally {
+	removeFileList(list);
+      }
+    };
+  }
+
+  /**
+   * Returns whether the command supports batch execution.
+   *
+   * @return		always false, as all inputs already go into a single VRT
+   */
+  @Override
+  public boolean supportsBatch() {
+    return false;
+  }
+
+  /**
+   * Returns no key, as building a VRT is cheaper than hashing all the inputs.
+   *
+   * @param args	the input arguments
+   * @return		always null
+   */
+  @Override
+  protected String getCacheKey(String[] args) throws IOException {
+    return null;
+  }
+
+  /**
+   * Returns no journal, as building a VRT is cheap.
+   *
+   * @return		always null
+   */
+  @Override
+  protected JobJournal getJournal() {
+    return null;
+  }
+}
@@ -22,9 +22,14 @@ package adams.core.command.gdal;
 
 import adams.core.command.AsyncCapableExternalCommand;
 import adams.core.command.ExternalCommandWithOptions;
+import adams.core.command.docker.BatchItem;
+import adams.core.command.docker.ExecutionResult;
 import adams.flow.standalone.GDALConfiguration;
 import adams.flow.standalone.SimpleDockerConnection;
 
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
 /**
  * Interface for GDAL commands.
  *
@@ -89,4 +94,40 @@ public interface GDALCommand
    * @return		null if successful, otherwise error message
    */
   public String execute(String[] args);
+
+  /**
+   * Returns whether the command supports batch execution.
+   *
+   * @return		true if supported
+   * @see		#prepareBatchItem(String[])
+   */
+  public boolean supportsBatch();
+
+  /**
+   * Prepares the arguments for batch execution, using the current settings
+   * of the command (eg output file).
+   *
+   * @param args	the arguments for a single execution
+   * @return		the batch item
+   * @throws Exception	if checks fail or the container arguments cannot be generated
+   */
+  public BatchItem prepareBatchItem(String[] args) throws Exception;
+
+  /**
+   * Executes the batch in a single container. The output or error of
+   * each item gets stored in the item itself.
+   *
+   * @param items	the items to execute
+   * @return		null if the container could be executed, otherwise error message
+   */
+  public String executeBatch(List<BatchItem> items);
+
+  /**
+   * Submits the command for asynchronous execution. Any number of
+   * invocations can be in flight at the same time.
+   *
+   * @param args	the arguments to append
+   * @return		the future result with output, exit code and timings
+   */
+  public CompletableFuture<ExecutionResult> submit(String[] args);
 }
@@ -23,10 +23,13 @@ package adams.core.command.gdal;
 import adams.core.QuickInfoHelper;
 import adams.core.base.BaseRegExp;
 import adams.core.base.DockerDirectoryMapping;
+import adams.core.command.docker.IncrementalJsonParser;
+import adams.core.command.docker.ProcessRunner;
 import adams.core.command.output.LineSplit;
 import adams.core.command.output.OutputFormatter;
 import adams.core.io.PlaceholderFile;
 import adams.docker.SimpleDockerHelper;
+import net.minidev.json.JSONAware;
 
 import java.io.File;
 import java.util.ArrayList;
@@ -45,6 +48,12 @@ public class Info
   /** whether to output JSON. */
   protected boolean m_Json;
 
+  /** whether to parse the JSON output. */
+  protected boolean m_ParseJson;
+
+  /** the parser for the non-blocking output. */
+  protected transient IncrementalJsonParser m_Parser;
+
   /**
    * Returns a string describing the object.
    *
@@ -68,6 +77,10 @@ public class Info
     m_OptionManager.add(
       "json", "json",
       false);
+
+    m_OptionManager.add(
+      "parse-json", "parseJson",
+      false);
   }
 
   /**
@@ -86,18 +99,6 @@ public class Info
     return result;
   }
 
-  /**
-   * Sets whether to execute in blocking or async fashion.
-   *
-   * @param value	true for blocking
-   */
-  @Override
-  public void setBlocking(boolean value) {
-    super.setBlocking(value);
-    if (!m_Blocking)
-      setJson(false);
-  }
-
   /**
    * Sets whether to generate JSON or plain text output.
    *
@@ -105,8 +106,6 @@ public class Info
    */
   public void setJson(boolean value) {
     m_Json = value;
-    if (m_Json)
-      setBlocking(true);
     reset();
   }
 
@@ -126,7 +125,36 @@ public class Info
    * 			displaying in the GUI or for listing the options.
    */
   public String jsonTipText() {
-    return "If enabled, the output format is JSON rather than plain text; NB: only works in blocking mode (requires cleaning up output).";
+    return "If enabled, the output format is JSON rather than plain text; in non-blocking mode, the output gets buffered until a JSON document is complete.";
+  }
+
+  /**
+   * Sets whether to parse the JSON output and forward JSON objects/arrays.
+   *
+   * @param value	true if to parse
+   */
+  public void setParseJson(boolean value) {
+    m_ParseJson = value;
+    reset();
+  }
+
+  /**
+   * Returns whether to parse the JSON output and forward JSON objects/arrays.
+   *
+   * @return		true if to parse
+   */
+  public boolean getParseJson() {
+    return m_ParseJson;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String parseJsonTipText() {
+    return "If enabled (and JSON output is enabled), the output gets parsed incrementally and each JSON document (object or array) gets forwarded as soon as it is complete; works in blocking and non-blocking mode; the output formatter is ignored.";
   }
 
   /**
@@ -140,6 +168,7 @@ public class Info
 
     result = super.getQuickInfo();
     result += QuickInfoHelper.toString(this, "json", (m_Json ? "JSON" : "Plain text"), ", format: ");
+    result += QuickInfoHelper.toString(this, "parseJson", m_ParseJson, "parsed", ", ");
 
     return result;
   }
@@ -218,4 +247,136 @@ public class Info
 
     return result;
   }
+
+  /**
+   * Returns whether the JSON output gets parsed.
+   *
+   * @return		true if parsed
+   */
+  protected boolean isParsingJson() {
+    return m_Json && m_ParseJson;
+  }
+
+  /**
+   * Returns whether the JSON output gets buffered until a document is
+   * complete (non-blocking mode, not parsing).
+   *
+   * @return		true if buffered
+   */
+  protected boolean isBufferingJson() {
+    return m_Json && !m_ParseJson && !m_Blocking;
+  }
+
+  /**
+   * Returns the class of objects that it generates.
+   *
+   * @return		the class
+   */
+  @Override
+  public Class generates() {
+    if (isParsingJson())
+      return JSONAware.class;
+    else
+      return super.generates();
+  }
+
+  /**
+   * Returns whether the docker command has to be executed as process rather
+   * than via the docker command.
+   *
+   * @return		true if parsing or buffering the JSON output
+   */
+  @Override
+  protected boolean requiresProcessExecution() {
+    return isParsingJson() || isBufferingJson();
+  }
+
+  /**
+   * Generates the output from the collected stdout/stderr. Returns the
+   * first JSON document from stdout when parsing JSON.
+   *
+   * @param stdout	the collected stdout
+   * @param stderr	the collected stderr
+   * @return		the formatted output
+   */
+  @Override
+  protected Object formatOutput(String stdout, String stderr) {
+    List<Object>		docs;
+    IncrementalJsonParser	parser;
+
+    if (!isParsingJson())
+      return super.formatOutput(stdout, stderr);
+
+    try {
+      parser = new IncrementalJsonParser();
+      docs   = parser.feed(stdout);
+      if (parser.isIncomplete())
+	getLogger().severe("Incomplete JSON document at end of output:\n" + parser.getRemainder());
+      if (!docs.isEmpty())
+	return docs.get(0);
+      if (!parser.isIncomplete())
+	getLogger().warning("No JSON document in output:\n" + stdout + stderr);
+    }
+    catch (Exception e) {
+      getLogger().severe("Failed to parse JSON output:\n" + stdout + "\n" + e);
+    }
+
+    return null;
+  }
+
+  /**
+   * Returns the listener for processing the lines read from a process
+   * executed in non-blocking mode. Parses stdout incrementally when parsing
+   * JSON and forwards documents as soon as they are complete. Without parsing,
+   * the text of each complete document gets forwarded (via the output formatter).
+   *
+   * @return		the listener
+   */
+  @Override
+  protected ProcessRunner.LineListener newLineListener() {
+    final IncrementalJsonParser	parser;
+    final boolean		parse;
+
+    if (!isParsingJson() && !isBufferingJson())
+      return super.newLineListener();
+
+    parse    = isParsingJson();
+    parser   = new IncrementalJsonParser(parse);
+    m_Parser = parser;
+    return (String line, boolean stdout) -> {
+      if (!stdout) {
+	if (isLoggingEnabled())
+	  getLogger().info(line);
+	return;
+      }
+      try {
+	for (Object doc: parser.feed(line + "\n"))
+	  addPendingOutput(parse ? doc : m_OutputFormatter.formatOutput((String) doc));
+      }
+      catch (Exception e) {
+	getLogger().severe("Failed to parse JSON output: " + e);
+	parser.reset();
+      }
+    };
+  }
+
+  /**
+   * Returns the next output. Once the output of the process has been read
+   * completely, any incomplete JSON document gets reported as error.
+   *
+   * @return		the output, null if none available
+   */
+  @Override
+  public Object output() {
+    Object	result;
+
+    result = super.output();
+    if ((m_Parser != null) && (m_PendingOutput == null)) {
+      if (m_Parser.isIncomplete())
+	getLogger().severe("Incomplete JSON document at end of output:\n" + m_Parser.getRemainder());
+      m_Parser = null;
+    }
+
+    return result;
+  }
 }
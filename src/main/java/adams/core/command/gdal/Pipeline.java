@@ -0,0 +1,307 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Pipeline.java
+ * Copyright (C) 2023 University of Waikato, Hamilton, New Zealand
+ */
+
+package adams.core.command.gdal;
+
+import adams.core.QuickInfoHelper;
+import adams.core.Utils;
+import adams.core.command.docker.ContainerScript;
+import adams.core.command.docker.ProcessRunner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Chains GDAL operations (eg subset, reprojection, format conversion) as
+ * virtual datasets (VRT), only materializing the final output. All steps get
+ * executed in a single container run (or shell, when using native binaries).
+ *
+ * @author fracpete (fracpete at waikato dot ac dot nz)
+ */
+public class Pipeline
+  extends AbstractGDALCommandFileWriter {
+
+  private static final long serialVersionUID = 6316553372618408795L;
+
+  /** the name of the script (ie $0). */
+  public static final String SCRIPT_NAME = "pipeline";
+
+  /** the steps. */
+  protected GDALCommand[] m_Steps;
+
+  /**
+   * Returns a string describing the object.
+   *
+   * @return a description suitable for displaying in the gui
+   */
+  @Override
+  public String globalInfo() {
+    return "Chains GDAL operations (eg subset, reprojection, format conversion) as virtual datasets (VRT), "
+      + "only materializing the final output. All steps get executed in a single container run (or shell, when using native binaries).\n"
+      + "Each step must be able to write VRT (" + Utils.classToString(VRTCapable.class) + "): all but the last step write their output "
+      + "as VRT to a temporary directory (in the scratch area, if enabled), which gets removed afterwards. The last step writes the output file.\n"
+      + "Only executable and options of the steps get used, their output files get ignored; the options of the pipeline itself are not used.\n"
+      + "Automatically adds the directories that the input/output dataset reside in to the docker directory mappings under " + getWorkspaceDir() + ".\n"
+      + "For more information see:\n"
+      + "https://gdal.org/drivers/raster/vrt.html";
+  }
+
+  /**
+   * Adds options to the internal list of options.
+   */
+  @Override
+  public void defineOptions() {
+    super.defineOptions();
+
+    m_OptionManager.add(
+      "step", "steps",
+      new GDALCommand[]{new Translate()});
+  }
+
+  /**
+   * Sets the steps to execute.
+   *
+   * @param value	the steps
+   */
+  public void setSteps(GDALCommand[] value) {
+    m_Steps = value;
+    reset();
+  }
+
+  /**
+   * Returns the steps to execute.
+   *
+   * @return		the steps
+   */
+  public GDALCommand[] getSteps() {
+    return m_Steps;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String stepsTipText() {
+    return "The steps to execute, each one must be able to write VRT; the last step writes the output file.";
+  }
+
+  /**
+   * Returns a quick info about the object, which can be displayed in the GUI.
+   *
+   * @return		null if no info available, otherwise short string
+   */
+  @Override
+  public String getQuickInfo() {
+    String	result;
+
+    result = super.getQuickInfo();
+    result += QuickInfoHelper.toString(this, "steps", m_Steps.length, ", steps: ");
+
+    return result;
+  }
+
+  /**
+   * Returns the name of the executable, the shell that runs the steps.
+   *
+   * @return the name
+   */
+  @Override
+  public String getExecutable() {
+    return "sh";
+  }
+
+  /**
+   * Returns the automatic workspace directory in the container.
+   *
+   * @return		the workspace dir
+   */
+  @Override
+  protected String getWorkspaceDir() {
+    return "/workspace/" + SCRIPT_NAME;
+  }
+
+  /**
+   * Hook method for performing checks before executing the command.
+   *
+   * @return		null if checks passed, otherwise error message
+   */
+  @Override
+  protected String check() {
+    String	result;
+    int		i;
+
+    result = super.check();
+
+    if (result == null) {
+      if (m_Steps.length == 0)
+	result = "No steps defined!";
+    }
+
+    if (result == null) {
+      for (i = 0; i < m_Steps.length; i++) {
+	if (!(m_Steps[i] instanceof VRTCapable)) {
+	  result = "Step #" + (i + 1) + " cannot write VRT: " + m_Steps[i].getClass().getName();
+	  break;
+	}
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * Returns the shell if native binaries are to be used and all the
+   * executables of the steps are available as native binaries.
+   *
+   * @return		the path of the shell, null if to use docker
+   */
+  @Override
+  protected String getNativeExecutable() {
+    String	result;
+
+    result = super.getNativeExecutable();
+    if (result == null)
+      return null;
+
+    for (GDALCommand step: m_Steps) {
+      if (m_Configuration.getNativeExecutable(step.getExecutable()) == null)
+	return null;
+    }
+
+    return result;
+  }
+
+  /**
+   * Generates the script for executing the steps. Input and output file
+   * are the positional parameters 1 and 2 of the script.
+   *
+   * @param isNative	whether to use the native binaries
+   * @return		the script
+   */
+  protected ContainerScript buildScript(boolean isNative) {
+    ContainerScript	result;
+    List<String>	step;
+    String		input;
+    String		output;
+    int			i;
+
+    result = new ContainerScript(true);
+    if (m_Steps.length > 1)
+      result.useTmpDir((m_Configuration == null) ? null : m_Configuration.getScratchVariable());
+
+    input = ContainerScript.arg(1);
+    for (i = 0; i < m_Steps.length; i++) {
+      step = new ArrayList<>();
+      if (isNative)
+	step.add(m_Configuration.getNativeExecutable(m_Steps[i].getExecutable()));
+      else
+	step.add(m_Steps[i].getExecutable());
+      step.addAll(Arrays.asList(((VRTCapable) m_Steps[i]).getActualOptions()));
+      if (i < m_Steps.length - 1) {
+	step.addAll(((VRTCapable) m_Steps[i]).getVRTOptions());
+	output = ContainerScript.var(ContainerScript.TMP_VAR) + "/step" + (i + 1) + ".vrt";
+      }
+      else {
+	output = ContainerScript.arg(2);
+      }
+      step.add(input);
+      step.add(output);
+      result.addStep(step);
+      input = output;
+    }
+
+    return result;
+  }
+
+  /**
+   * Generates the command to execute: the shell running the script of the
+   * steps, with input and output file as arguments.
+   *
+   * @return the command
+   */
+  @Override
+  protected List<String> buildCommand() {
+    List<String>	result;
+
+    result = new ArrayList<>();
+    result.add(getExecutable());
+    result.add("-c");
+    result.add(buildScript(getNativeExecutable() != null).toScript());
+    result.add(SCRIPT_NAME);
+
+    return result;
+  }
+
+  /**
+   * Builds the arguments from the input arguments, using local paths.
+   *
+   * @param args	the args to process
+   * @return		the generated args
+   */
+  @Override
+  protected String[] buildHostArgs(String[] args) {
+    String[]	result;
+
+    // add the output file
+    result = new String[args.length + 1];
+    System.arraycopy(args, 0, result, 0, args.length);
+    result[result.length - 1] = getActualOutputFile().getAbsolutePath();
+
+    return result;
+  }
+
+  /**
+   * Returns whether the docker command has to be executed as process rather
+   * than via the docker command.
+   *
+   * @return		always true, to pass on the script as is
+   */
+  @Override
+  protected boolean requiresProcessExecution() {
+    return true;
+  }
+
+  /**
+   * Generates the output from the collected stdout/stderr, without the
+   * markers of the steps.
+   *
+   * @param stdout	the collected stdout
+   * @param stderr	the collected stderr
+   * @return		the formatted output
+   */
+  @Override
+  protected Object formatOutput(String stdout, String stderr) {
+    return super.formatOutput(ContainerScript.removeMarkers(stdout), ContainerScript.removeMarkers(stderr));
+  }
+
+  /**
+   * Returns the listener for processing the lines read from a process
+   * executed in non-blocking mode. Skips the markers of the steps.
+   *
+   * @return		the listener
+   */
+  @Override
+  protected ProcessRunner.LineListener newLineListener() {
+    return ContainerScript.skipMarkers(super.newLineListener());
+  }
+}
@@ -0,0 +1,555 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Script.java
+ * Copyright (C) 2023 University of Waikato, Hamilton, New Zealand
+ */
+
+package adams.core.command.gdal;
+
+import adams.core.QuickInfoHelper;
+import adams.core.base.DockerDirectoryMapping;
+import adams.core.command.docker.BatchItem;
+import adams.core.command.docker.ContainerScript;
+import adams.core.command.docker.DirectoryMappingHelper;
+import adams.core.command.docker.ProcessRunner;
+import adams.core.command.docker.ScriptStepResult;
+import adams.flow.core.Actor;
+import adams.flow.standalone.GDALConfiguration;
+import adams.flow.standalone.SimpleDockerConnection;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Executes a sequence of GDAL commands (eg gdal_translate, gdaladdo, gdalinfo)
+ * as a single shell script, i.e., in a single container run (or shell, when
+ * using native binaries). The directory mappings of the steps get merged.
+ * The output consists of the stdout/stderr, exit code and timings of each
+ * step.
+ *
+ * @author fracpete (fracpete at waikato dot ac dot nz)
+ */
+public class Script
+  extends AbstractGDALCommand {
+
+  private static final long serialVersionUID = -1766257417209347353L;
+
+  /** the name of the script (ie $0). */
+  public static final String SCRIPT_NAME = "script";
+
+  /** the steps. */
+  protected GDALCommand[] m_Steps;
+
+  /** whether to stop on the first failed step. */
+  protected boolean m_StopOnError;
+
+  /** whether to use the output file of a step as input for the following ones. */
+  protected boolean m_ChainOutputs;
+
+  /**
+   * Returns a string describing the object.
+   *
+   * @return a description suitable for displaying in the gui
+   */
+  @Override
+  public String globalInfo() {
+    return "Executes a sequence of GDAL commands (eg gdal_translate, gdaladdo, gdalinfo) as a single shell script, "
+      + "i.e., in a single container run (or shell, when using native binaries). The directory mappings of the steps get merged.\n"
+      + "The arguments get passed on to the first step. When chaining outputs, the output file of a step writing a file "
+      + "becomes the input of the steps that follow (eg gdal_translate, gdaladdo, gdalinfo), otherwise all steps receive the original arguments.\n"
+      + "Connection, configuration and the settings for executing the script (timeout, retries) are the ones of the script, "
+      + "cache, journal and scratch settings of the steps are ignored.\n"
+      + "In blocking mode, the output is an array with the result of each step (stdout, stderr, exit code, timings). "
+      + "Batch execution is not supported, as the steps already share a single container.";
+  }
+
+  /**
+   * Adds options to the internal list of options.
+   */
+  @Override
+  public void defineOptions() {
+    super.defineOptions();
+
+    m_OptionManager.add(
+      "step", "steps",
+      new GDALCommand[]{new Translate(), new Info()});
+
+    m_OptionManager.add(
+      "stop-on-error", "stopOnError",
+      true);
+
+    m_OptionManager.add(
+      "chain-outputs", "chainOutputs",
+      true);
+  }
+
+  /**
+   * Sets the steps to execute.
+   *
+   * @param value	the steps
+   */
+  public void setSteps(GDALCommand[] value) {
+    m_Steps = value;
+    reset();
+    updateSteps();
+  }
+
+  /**
+   * Returns the steps to execute.
+   *
+   * @return		the steps
+   */
+  public GDALCommand[] getSteps() {
+    return m_Steps;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String stepsTipText() {
+    return "The commands to execute, one after the other.";
+  }
+
+  /**
+   * Sets whether to stop the script on the first step that fails.
+   *
+   * @param value	true if to stop
+   */
+  public void setStopOnError(boolean value) {
+    m_StopOnError = value;
+    reset();
+  }
+
+  /**
+   * Returns whether to stop the script on the first step that fails.
+   *
+   * @return		true if to stop
+   */
+  public boolean getStopOnError() {
+    return m_StopOnError;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String stopOnErrorTipText() {
+    return "If enabled, the script stops on the first step that fails and the execution fails; otherwise all steps get executed "
+      + "and the exit codes of the steps have to be inspected.";
+  }
+
+  /**
+   * Sets whether to use the output file of a step as input for the following ones.
+   *
+   * @param value	true if to chain
+   */
+  public void setChainOutputs(boolean value) {
+    m_ChainOutputs = value;
+    reset();
+  }
+
+  /**
+   * Returns whether to use the output file of a step as input for the following ones.
+   *
+   * @return		true if to chain
+   */
+  public boolean getChainOutputs() {
+    return m_ChainOutputs;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String chainOutputsTipText() {
+    return "If enabled, the output file of a step writing a file becomes the input of the steps that follow rather than the original arguments.";
+  }
+
+  /**
+   * Returns a quick info about the object, which can be displayed in the GUI.
+   *
+   * @return		null if no info available, otherwise short string
+   */
+  @Override
+  public String getQuickInfo() {
+    String	result;
+
+    result = super.getQuickInfo();
+    result += QuickInfoHelper.toString(this, "steps", m_Steps.length, ", steps: ");
+    result += QuickInfoHelper.toString(this, "stopOnError", m_StopOnError, "stop on error", ", ");
+    result += QuickInfoHelper.toString(this, "chainOutputs", m_ChainOutputs, "chain", ", ");
+
+    return result;
+  }
+
+  /**
+   * Returns the name of the executable, the shell that runs the steps.
+   *
+   * @return the name
+   */
+  @Override
+  public String getExecutable() {
+    return "sh";
+  }
+
+  /**
+   * Returns how many arguments have to be supplied at least.
+   *
+   * @return		the minimum (incl), unbounded if -1
+   */
+  @Override
+  public int minArguments() {
+    if (m_Steps.length == 0)
+      return -1;
+    return m_Steps[0].minArguments();
+  }
+
+  /**
+   * Returns how many arguments can be supplied at most.
+   *
+   * @return		the maximum (incl), unbounded if -1
+   */
+  @Override
+  public int maxArguments() {
+    if (m_Steps.length == 0)
+      return -1;
+    return m_Steps[0].maxArguments();
+  }
+
+  /**
+   * Passes on flow context, connection and configuration to the steps, as
+   * they generate their part of the script themselves.
+   */
+  protected void updateSteps() {
+    for (GDALCommand step: m_Steps) {
+      step.setFlowContext(getFlowContext());
+      step.setConnection(m_Connection);
+      step.setConfiguration(m_Configuration);
+    }
+  }
+
+  /**
+   * Sets the flow context, also for the steps.
+   *
+   * @param value	the actor
+   */
+  @Override
+  public void setFlowContext(Actor value) {
+    super.setFlowContext(value);
+    updateSteps();
+  }
+
+  /**
+   * Sets the docker connection to use, also for the steps.
+   *
+   * @param value	the connection
+   */
+  @Override
+  public void setConnection(SimpleDockerConnection value) {
+    super.setConnection(value);
+    updateSteps();
+  }
+
+  /**
+   * Sets the GDAL configuration to use, also for the steps.
+   *
+   * @param value	the configuration
+   */
+  @Override
+  public void setConfiguration(GDALConfiguration value) {
+    super.setConfiguration(value);
+    updateSteps();
+  }
+
+  /**
+   * Hook method for performing checks before executing the command.
+   * Connection and configuration get checked by the script itself, as the
+   * steps use the same ones.
+   *
+   * @return		null if checks passed, otherwise error message
+   */
+  @Override
+  protected String check() {
+    String	result;
+    int		i;
+
+    result = super.check();
+
+    if (result == null) {
+      if (m_Steps.length == 0)
+	result = "No steps defined!";
+    }
+
+    if (result == null) {
+      for (i = 0; i < m_Steps.length; i++) {
+	if (!(m_Steps[i] instanceof AbstractGDALCommand) || (m_Steps[i] instanceof Script)) {
+	  result = "Step #" + (i + 1) + " cannot be executed as part of a script: " + m_Steps[i].getClass().getName();
+	  break;
+	}
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * Returns the shell if native binaries are to be used and all the
+   * executables of the steps are available as native binaries.
+   *
+   * @return		the path of the shell, null if to use docker
+   */
+  @Override
+  protected String getNativeExecutable() {
+    String	result;
+
+    result = super.getNativeExecutable();
+    if (result == null)
+      return null;
+
+    for (GDALCommand step: m_Steps) {
+      if (m_Configuration.getNativeExecutable(step.getExecutable()) == null)
+	return null;
+    }
+
+    return result;
+  }
+
+  /**
+   * Generates the batch items of the steps, i.e., the directory mappings and
+   * arguments that each step would use on its own.
+   *
+   * @param args	the input arguments
+   * @return		the items, one per step
+   * @throws Exception	if generating of the items fails
+   */
+  protected List<BatchItem> prepareSteps(String[] args) throws Exception {
+    List<BatchItem>	result;
+    String[]		stepArgs;
+    int			i;
+
+    result   = new ArrayList<>();
+    stepArgs = args;
+    for (i = 0; i < m_Steps.length; i++) {
+      if ((i > 0) && m_ChainOutputs && (m_Steps[i - 1] instanceof AbstractGDALCommandFileWriter))
+	stepArgs = new String[]{((AbstractGDALCommandFileWriter) m_Steps[i - 1]).getOutputFile().getAbsolutePath()};
+      if ((m_Steps[i].minArguments() > -1) && (stepArgs.length < m_Steps[i].minArguments()))
+	throw new IllegalArgumentException("Step #" + (i + 1) + ": not enough parameters, supplied " + stepArgs.length + " but expected at least " + m_Steps[i].minArguments());
+      if ((m_Steps[i].maxArguments() > -1) && (stepArgs.length > m_Steps[i].maxArguments()))
+	throw new IllegalArgumentException("Step #" + (i + 1) + ": too many parameters, supplied " + stepArgs.length + " but expected at most " + m_Steps[i].maxArguments());
+      result.add(((AbstractGDALCommand) m_Steps[i]).newBatchItem(stepArgs));
+    }
+
+    return result;
+  }
+
+  /**
+   * Generates the command to execute: the shell, expecting the script as
+   * argument.
+   *
+   * @return the command
+   */
+  @Override
+  protected List<String> buildCommand() {
+    List<String>	result;
+
+    result = new ArrayList<>();
+    result.add(getExecutable());
+    result.add("-c");
+
+    return result;
+  }
+
+  /**
+   * Adds the merged directory mappings of the steps.
+   *
+   * @param mappings	the mappings to process
+   * @param args 	the input arguments
+   * @return		the updated mappings
+   */
+  @Override
+  protected List<DockerDirectoryMapping> addCustomDirMappings(List<DockerDirectoryMapping> mappings, String[] args) {
+    List<DockerDirectoryMapping>	result;
+
+    result = new ArrayList<>(super.addCustomDirMappings(mappings, args));
+    try {
+      for (BatchItem item: prepareSteps(args))
+	DirectoryMappingHelper.merge(result, item.getMappings());
+    }
+    catch (Exception e) {
+      getLogger().warning("Failed to determine directory mappings of steps: " + e);
+    }
+
+    return result;
+  }
+
+  /**
+   * Generates the script from the batch items of the steps.
+   *
+   * @param items	the items of the steps
+   * @param mappings	the merged mappings, null for native binaries
+   * @return		the script
+   */
+  protected ContainerScript buildScript(List<BatchItem> items, List<DockerDirectoryMapping> mappings) {
+    ContainerScript	result;
+    List<String>	step;
+    Map<String,String>	renamed;
+    int			i;
+
+    result = new ContainerScript(m_StopOnError);
+    for (i = 0; i < items.size(); i++) {
+      if (mappings == null) {
+	step = ((AbstractGDALCommand) m_Steps[i]).toNativeCommand(items.get(i).getCommand(), m_Configuration.getNativeExecutable(m_Steps[i].getExecutable()));
+	step.addAll(Arrays.asList(items.get(i).getContainerArgs()));
+      }
+      else {
+	renamed = DirectoryMappingHelper.merge(mappings, items.get(i).getMappings());
+	step    = new ArrayList<>(items.get(i).getCommand());
+	step.addAll(Arrays.asList(DirectoryMappingHelper.rename(items.get(i).getContainerArgs(), renamed)));
+      }
+      result.addStep(step);
+    }
+
+    return result;
+  }
+
+  /**
+   * Builds the arguments for the native shell: the script and its name.
+   *
+   * @param args	the args to process
+   * @return		the generated args
+   */
+  @Override
+  protected String[] buildHostArgs(String[] args) {
+    try {
+      return new String[]{buildScript(prepareSteps(args), null).toScript(), SCRIPT_NAME};
+    }
+    catch (Exception e) {
+      throw new IllegalStateException("Failed to generate script: " + e.getMessage(), e);
+    }
+  }
+
+  /**
+   * Builds the arguments for the shell in the container: the script and its
+   * name.
+   *
+   * @param mappings	the mappings to use
+   * @param args	the args to process
+   * @return		the generated container args
+   * @throws IOException	if generating the script fails
+   */
+  @Override
+  protected String[] buildContainerArgs(List<DockerDirectoryMapping> mappings, String[] args) throws IOException {
+    List<BatchItem>	items;
+
+    try {
+      items = prepareSteps(args);
+    }
+    catch (IOException e) {
+      throw e;
+    }
+    catch (Exception e) {
+      throw new IOException(e.getMessage(), e);
+    }
+
+    return new String[]{buildScript(items, new ArrayList<>(mappings)).toScript(), SCRIPT_NAME};
+  }
+
+  /**
+   * Returns whether the command supports batch execution.
+   *
+   * @return		always false, as the steps already get executed in a single container
+   */
+  @Override
+  public boolean supportsBatch() {
+    return false;
+  }
+
+  /**
+   * Not supported, as the steps already get executed in a single container.
+   *
+   * @param args	the arguments for a single execution
+   * @return		the batch item
+   * @throws Exception	always
+   */
+  @Override
+  public BatchItem prepareBatchItem(String[] args) throws Exception {
+    throw new UnsupportedOperationException("Batch execution not supported by " + getClass().getName() + "!");
+  }
+
+  /**
+   * Returns whether the docker command has to be executed as process rather
+   * than via the docker command.
+   *
+   * @return		always true, to pass on the script as is
+   */
+  @Override
+  protected boolean requiresProcessExecution() {
+    return true;
+  }
+
+  /**
+   * Returns the class of objects that it generates.
+   *
+   * @return		the class
+   */
+  @Override
+  public Class generates() {
+    if (m_Blocking)
+      return ScriptStepResult[].class;
+    else
+      return super.generates();
+  }
+
+  /**
+   * Splits the collected stdout/stderr into the results of the steps.
+   *
+   * @param stdout	the collected stdout
+   * @param stderr	the collected stderr
+   * @return		the results of the steps (ScriptStepResult[])
+   */
+  @Override
+  protected Object formatOutput(String stdout, String stderr) {
+    ContainerScript	script;
+
+    script = new ContainerScript(m_StopOnError);
+    for (GDALCommand step: m_Steps)
+      script.addStep(((AbstractGDALCommand) step).buildCommand());
+
+    return script.parse(stdout, stderr).toArray(new ScriptStepResult[0]);
+  }
+
+  /**
+   * Returns the listener for processing the lines read from a process
+   * executed in non-blocking mode. Skips the markers of the steps.
+   *
+   * @return		the listener
+   */
+  @Override
+  protected ProcessRunner.LineListener newLineListener() {
+    return ContainerScript.skipMarkers(super.newLineListener());
+  }
+}
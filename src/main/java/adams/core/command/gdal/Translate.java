@@ -20,22 +20,66 @@
 
 package adams.core.command.gdal;
 
-import adams.core.base.DockerDirectoryMapping;
-import adams.docker.SimpleDockerHelper;
+import adams.core.QuickInfoHelper;
+import adams.core.Utils;
+import adams.core.command.docker.ExecutionResult;
+import adams.core.command.docker.ScratchArea;
+import adams.core.io.FileUtils;
+import adams.core.io.PlaceholderFile;
+import net.minidev.json.JSONObject;
 
-import java.io.IOException;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
 
 /**
  * Converts raster data between different formats (gdal_translate).
+ * Optionally writes a Cloud Optimized GeoTIFF (COG), i.e., a tiled and
+ * compressed GeoTIFF with internal overviews.
+ * Large rasters can be translated in tiles, which get processed concurrently
+ * and stitched together via a VRT.
  *
  * @author fracpete (fracpete at waikato dot ac dot nz)
  */
 public class Translate
-  extends AbstractGDALCommandFileWriter {
+  extends AbstractGDALCommandFileWriter
+  implements VRTCapable {
 
   private static final long serialVersionUID = -4318693242709080322L;
 
+  /** whether to write a Cloud Optimized GeoTIFF. */
+  protected boolean m_COG;
+
+  /** the compression for the COG. */
+  protected String m_COGCompression;
+
+  /** the tile size for the COG. */
+  protected int m_COGBlockSize;
+
+  /** the number of threads for the compression of the COG. */
+  protected String m_COGNumThreads;
+
+  /** whether to generate internal overviews for the COG. */
+  protected boolean m_COGOverviews;
+
+  /** the tile size in pixels (0 = no tiling). */
+  protected int m_TileSize;
+
+  /** the maximum number of tiles to translate concurrently (-1 = number of cores). */
+  protected int m_TileConcurrency;
+
+  /** the window of the tile currently being prepared (x, y, width, height). */
+  protected transient int[] m_Window;
+
+  /** whether the tiles are currently being stitched together. */
+  protected transient boolean m_Stitching;
+
   /**
    * Returns a string describing the object.
    *
@@ -44,9 +88,282 @@ public class Translate
   @Override
   public String globalInfo() {
     return "Converts raster data between different formats (" + getExecutable() + ").\n"
+      + "The COG profile writes a Cloud Optimized GeoTIFF (tiled, compressed using multiple threads, with internal overviews), "
+      + "which allows reads at reduced resolution (eg previews) to only touch a fraction of the file; "
+      + "the profile is not used when the command is a step in a " + Pipeline.class.getName() + ".\n"
+      + "In tiled mode (blocking only), rasters larger than the tile size get split into windows (-srcwin), "
+      + "which get translated concurrently in separate containers/processes into GeoTIFFs, using all options apart from "
+      + "-of/-co; options that change the size must therefore be relative (eg -outsize 50% 50%). "
+      + "The tiles get stitched together via a VRT, which gets translated into the output file in a final pass, "
+      + "using the -of/-co options and the COG profile. The tiles get stored in the scratch area (if enabled) "
+      + "or in a hidden directory next to the output file and get removed afterwards. "
+      + "Result cache and job journal are not used in tiled mode, nor does batch execution tile the rasters.\n"
       + "Automatically adds the directories that the input/output dataset reside in to the docker directory mappings under " + getWorkspaceDir() + ".\n"
       + "For more information see:\n"
-      + "https://gdal.org/programs/gdal_translate.html";
+      + "https://gdal.org/programs/gdal_translate.html\n"
+      + "https://gdal.org/drivers/raster/cog.html";
+  }
+
+  /**
+   * Adds options to the internal list of options.
+   */
+  @Override
+  public void defineOptions() {
+    super.defineOptions();
+
+    m_OptionManager.add(
+      "cog", "COG",
+      false);
+
+    m_OptionManager.add(
+      "cog-compression", "COGCompression",
+      "DEFLATE");
+
+    m_OptionManager.add(
+      "cog-block-size", "COGBlockSize",
+      512, 16, null);
+
+    m_OptionManager.add(
+      "cog-num-threads", "COGNumThreads",
+      "ALL_CPUS");
+
+    m_OptionManager.add(
+      "cog-overviews", "COGOverviews",
+      true);
+
+    m_OptionManager.add(
+      "tile-size", "tileSize",
+      0, 0, null);
+
+    m_OptionManager.add(
+      "tile-concurrency", "tileConcurrency",
+      -1, -1, null);
+  }
+
+  /**
+   * Sets whether to write a Cloud Optimized GeoTIFF (COG).
+   *
+   * @param value	true if COG
+   */
+  public void setCOG(boolean value) {
+    m_COG = value;
+    reset();
+  }
+
+  /**
+   * Returns whether to write a Cloud Optimized GeoTIFF (COG).
+   *
+   * @return		true if COG
+   */
+  public boolean getCOG() {
+    return m_COG;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String COGTipText() {
+    return "If enabled, a Cloud Optimized GeoTIFF gets written (-of COG, requires GDAL 3.1+), using the COG options.";
+  }
+
+  /**
+   * Sets the compression for the COG.
+   *
+   * @param value	the compression (eg DEFLATE, LZW, ZSTD, JPEG), empty for default
+   */
+  public void setCOGCompression(String value) {
+    m_COGCompression = value;
+    reset();
+  }
+
+  /**
+   * Returns the compression for the COG.
+   *
+   * @return		the compression, empty for default
+   */
+  public String getCOGCompression() {
+    return m_COGCompression;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String COGCompressionTipText() {
+    return "The compression for the COG (-co COMPRESS), eg DEFLATE, LZW, ZSTD, JPEG; empty for the GDAL default.";
+  }
+
+  /**
+   * Sets the tile size for the COG.
+   *
+   * @param value	the size in pixels
+   */
+  public void setCOGBlockSize(int value) {
+    if (getOptionManager().isValid("COGBlockSize", value)) {
+      m_COGBlockSize = value;
+      reset();
+    }
+  }
+
+  /**
+   * Returns the tile size for the COG.
+   *
+   * @return		the size in pixels
+   */
+  public int getCOGBlockSize() {
+    return m_COGBlockSize;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String COGBlockSizeTipText() {
+    return "The width/height of the tiles of the COG in pixels (-co BLOCKSIZE).";
+  }
+
+  /**
+   * Sets the number of threads for compressing the COG.
+   *
+   * @param value	the threads (number or ALL_CPUS), empty for default
+   */
+  public void setCOGNumThreads(String value) {
+    m_COGNumThreads = value;
+    reset();
+  }
+
+  /**
+   * Returns the number of threads for compressing the COG.
+   *
+   * @return		the threads, empty for default
+   */
+  public String getCOGNumThreads() {
+    return m_COGNumThreads;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String COGNumThreadsTipText() {
+    return "The number of threads for compressing the COG (-co NUM_THREADS), a number or ALL_CPUS; empty for single-threaded.";
+  }
+
+  /**
+   * Sets whether to generate internal overviews for the COG.
+   *
+   * @param value	true if to generate
+   */
+  public void setCOGOverviews(boolean value) {
+    m_COGOverviews = value;
+    reset();
+  }
+
+  /**
+   * Returns whether to generate internal overviews for the COG.
+   *
+   * @return		true if to generate
+   */
+  public boolean getCOGOverviews() {
+    return m_COGOverviews;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String COGOverviewsTipText() {
+    return "If enabled, internal overviews get generated for the COG (-co OVERVIEWS=AUTO), otherwise none get written (-co OVERVIEWS=NONE).";
+  }
+
+  /**
+   * Sets the size of the tiles to translate concurrently.
+   *
+   * @param value	the width/height in pixels, 0 for no tiling
+   */
+  public void setTileSize(int value) {
+    if (getOptionManager().isValid("tileSize", value)) {
+      m_TileSize = value;
+      reset();
+    }
+  }
+
+  /**
+   * Returns the size of the tiles to translate concurrently.
+   *
+   * @return		the width/height in pixels, 0 for no tiling
+   */
+  public int getTileSize() {
+    return m_TileSize;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String tileSizeTipText() {
+    return "The width/height of the tiles in pixels that get translated concurrently; 0 for no tiling.";
+  }
+
+  /**
+   * Sets the maximum number of tiles to translate concurrently.
+   *
+   * @param value	the maximum, -1 for number of cores
+   */
+  public void setTileConcurrency(int value) {
+    if (getOptionManager().isValid("tileConcurrency", value)) {
+      m_TileConcurrency = value;
+      reset();
+    }
+  }
+
+  /**
+   * Returns the maximum number of tiles to translate concurrently.
+   *
+   * @return		the maximum, -1 for number of cores
+   */
+  public int getTileConcurrency() {
+    return m_TileConcurrency;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String tileConcurrencyTipText() {
+    return "The maximum number of tiles to translate concurrently; -1 = number of available cores.";
+  }
+
+  /**
+   * Returns a quick info about the object, which can be displayed in the GUI.
+   *
+   * @return		null if no info available, otherwise short string
+   */
+  @Override
+  public String getQuickInfo() {
+    String	result;
+
+    result = super.getQuickInfo();
+    result += QuickInfoHelper.toString(this, "COG", m_COG, "COG", ", ");
+    if ((m_TileSize > 0) || QuickInfoHelper.hasVariable(this, "tileSize"))
+      result += QuickInfoHelper.toString(this, "tileSize", m_TileSize, ", tiles: ");
+
+    return result;
   }
 
   /**
@@ -60,21 +377,309 @@ public class Translate
   }
 
   /**
-   * Builds the container arguments from the input arguments and converts them to container paths.
+   * Returns the options of the command, split into separate arguments.
+   * When translating a tile, all options apart from -of/-co get used and the
+   * tile gets written as GeoTIFF; when stitching the tiles, only -of/-co get
+   * used.
+   *
+   * @return		the options
+   */
+  @Override
+  public String[] getActualOptions() {
+    List<String>	tile;
+    List<String>	stitch;
+    String[]		options;
+    int			i;
+
+    options = super.getActualOptions();
+    if ((m_Window == null) && !m_Stitching)
+      return options;
+
+    tile   = new ArrayList<>();
+    stitch = new ArrayList<>();
+    for (i = 0; i < options.length; i++) {
+      if ((options[i].equals("-of") || options[i].equals("-co")) && (i < options.length - 1)) {
+	stitch.add(options[i]);
+	stitch.add(options[++i]);
+      }
+      else if (options[i].equals("--config") && (i < options.length - 2)) {
+	tile.addAll(Arrays.asList(options[i], options[i + 1], options[i + 2]));
+	stitch.addAll(Arrays.asList(options[i], options[i + 1], options[i + 2]));
+	i += 2;
+      }
+      else {
+	tile.add(options[i]);
+      }
+    }
+
+    if (m_Stitching)
+      return stitch.toArray(new String[0]);
+
+    tile.add("-srcwin");
+    for (int value: m_Window)
+      tile.add("" + value);
+    tile.add("-of");
+    tile.add("GTiff");
+    return tile.toArray(new String[0]);
+  }
+
+  /**
+   * Generates the command to execute. Adds the options of the COG profile,
+   * if enabled (not for tiles).
+   *
+   * @return the command
+   */
+  @Override
+  protected List<String> buildCommand() {
+    List<String>	result;
+
+    result = super.buildCommand();
+    if (m_COG && (m_Window == null)) {
+      result.add("-of");
+      result.add("COG");
+      if (!m_COGCompression.trim().isEmpty()) {
+	result.add("-co");
+	result.add("COMPRESS=" + m_COGCompression.trim());
+      }
+      if (!m_COGNumThreads.trim().isEmpty()) {
+	result.add("-co");
+	result.add("NUM_THREADS=" + m_COGNumThreads.trim());
+      }
+      result.add("-co");
+      result.add("BLOCKSIZE=" + m_COGBlockSize);
+      result.add("-co");
+      result.add("OVERVIEWS=" + (m_COGOverviews ? "AUTO" : "NONE"));
+    }
+
+    return result;
+  }
+
+  /**
+   * Builds the arguments from the input arguments, using local paths.
    *
-   * @param mappings	the mappings to use
    * @param args	the args to process
-   * @return		the generated container args
-   * @throws IOException        if converting of a path fails
+   * @return		the generated args
+   */
+  @Override
+  protected String[] buildHostArgs(String[] args) {
+    String[]	result;
+
+    // add the output file
+    result = new String[args.length + 1];
+    System.arraycopy(args, 0, result, 0, args.length);
+    result[result.length - 1] = getActualOutputFile().getAbsolutePath();
+
+    return result;
+  }
+
+  /**
+   * Returns the options to append for writing a VRT.
+   *
+   * @return		the options
+   */
+  @Override
+  public List<String> getVRTOptions() {
+    return Arrays.asList("-of", "VRT");
+  }
+
+  /**
+   * Determines the size of the raster using gdalinfo.
+   *
+   * @param input	the raster to determine the size for
+   * @return		width and height in pixels
+   * @throws Exception	if determining the size fails
    */
-  protected String[] buildContainerArgs(List<DockerDirectoryMapping> mappings, String[] args) throws IOException {
-    String[]	newArgs;
+  protected int[] determineSize(String input) throws Exception {
+    Info	info;
+    String	msg;
+    Object	output;
+    List	size;
 
-    // add the output directory
-    newArgs = new String[args.length + 1];
-    System.arraycopy(args, 0, newArgs, 0, args.length);
-    newArgs[newArgs.length - 1] = m_OutputFile.getAbsolutePath();
+    info = new Info();
+    info.setJson(true);
+    info.setParseJson(true);
+    info.setBlocking(true);
+    info.setTimeout(m_Timeout);
+    info.setLoggingLevel(getLoggingLevel());
+    info.setFlowContext(getFlowContext());
+    info.setConnection(m_Connection);
+    info.setConfiguration(m_Configuration);
+    try {
+      msg = info.execute(new String[]{input});
+      if (msg != null)
+	throw new IllegalStateException(msg);
+      output = info.output();
+      if (!(output instanceof JSONObject) || !(((JSONObject) output).get("size") instanceof List))
+	throw new IllegalStateException("No size information in output: " + output);
+      size = (List) ((JSONObject) output).get("size");
+      return new int[]{((Number) size.get(0)).intValue(), ((Number) size.get(1)).intValue()};
+    }
+    finally {
+      info.cleanUp();
+    }
+  }
 
-    return SimpleDockerHelper.toContainerPaths(mappings, newArgs);
+  /**
+   * Creates the directory for storing the tiles in: in the scratch area if
+   * available, otherwise a hidden directory next to the output file.
+   *
+   * @return		the directory
+   * @throws Exception	if creation fails
+   */
+  protected File newTileDir() throws Exception {
+    ScratchArea	scratch;
+    File	output;
+    File	result;
+
+    scratch = getScratchArea();
+    if (scratch != null) {
+      result = scratch.newFile("tiles").getParentFile();
+    }
+    else {
+      output = getActualOutputFile().getAbsoluteFile();
+      result = new File(output.getParentFile(), "." + output.getName() + ".tiles");
+      Files.createDirectories(result.toPath());
+    }
+
+    return result;
+  }
+
+  /**
+   * Translates the raster in tiles, which get processed concurrently and
+   * then stitched together via a VRT.
+   *
+   * @param args	the arguments to append
+   * @return		null if successful, otherwise error message
+   */
+  protected String executeTiled(String[] args) {
+    String					result;
+    int[]					size;
+    File					dir;
+    List<String>				tiles;
+    List<CompletableFuture<ExecutionResult>>	futures;
+    Supplier<ExecutionResult>			invocation;
+    ExecutorService				executor;
+    ExecutionResult				exec;
+    BuildVRT					vrt;
+    int						x;
+    int						y;
+
+    if (!m_Blocking)
+      return "Tiled translation requires blocking mode!";
+    if (m_OutputToScratch)
+      return "Tiled translation does not support writing the output to the scratch area!";
+
+    result = check();
+    if (result != null)
+      return result;
+
+    try {
+      size = determineSize(args[0]);
+    }
+    catch (Exception e) {
+      return "Failed to determine size of " + args[0] + ":\n" + e.getMessage();
+    }
+    if ((size[0] <= m_TileSize) && (size[1] <= m_TileSize))
+      return super.execute(args);
+
+    m_Executed      = false;
+    m_Process       = null;
+    m_PendingOutput = new ArrayList<>();
+    dir             = null;
+    executor        = null;
+    try {
+      dir = newTileDir();
+
+      // translate tiles
+      if (isLoggingEnabled())
+	getLogger().info("Translating " + args[0] + " (" + size[0] + "x" + size[1] + ") in tiles of " + m_TileSize + "x" + m_TileSize);
+      tiles   = new ArrayList<>();
+      futures = new ArrayList<>();
+      executor = Executors.newFixedThreadPool((m_TileConcurrency <= 0) ? Runtime.getRuntime().availableProcessors() : m_TileConcurrency);
+      for (y = 0; y < size[1]; y += m_TileSize) {
+	for (x = 0; x < size[0]; x += m_TileSize) {
+	  m_Window           = new int[]{x, y, Math.min(m_TileSize, size[0] - x), Math.min(m_TileSize, size[1] - y)};
+	  m_ActualOutputFile = new PlaceholderFile(new File(dir, "tile-" + y + "-" + x + ".tif"));
+	  tiles.add(m_ActualOutputFile.getAbsolutePath());
+	  final Supplier<ExecutionResult> tile = prepareInvocation(args);
+	  futures.add(CompletableFuture.supplyAsync(() -> {
+	    ExecutionResult stopped;
+	    if (!m_Stopped)
+	      return tile.get();
+	    stopped = new ExecutionResult(args, new ArrayList<>(), System.currentTimeMillis());
+	    stopped.setError("Execution stopped!");
+	    return stopped;
+	  }, executor));
+	}
+      }
+      m_Window           = null;
+      m_ActualOutputFile = null;
+      for (CompletableFuture<ExecutionResult> future: futures) {
+	exec = future.join();
+	if ((result == null) && exec.hasError())
+	  result = "Failed to translate tile (" + Utils.flatten(exec.getCommandLine(), " ") + "):\n" + exec.getError();
+      }
+      if (result != null)
+	return result;
+      if (m_Stopped)
+	return "Execution stopped!";
+
+      // stitch tiles
+      vrt = new BuildVRT();
+      vrt.setOutputFile(new PlaceholderFile(new File(dir, "tiles.vrt")));
+      vrt.setBlocking(true);
+      vrt.setTimeout(m_Timeout);
+      vrt.setLoggingLevel(getLoggingLevel());
+      vrt.setFlowContext(getFlowContext());
+      vrt.setConnection(m_Connection);
+      vrt.setConfiguration(m_Configuration);
+      try {
+	result = vrt.execute(tiles.toArray(new String[0]));
+      }
+      finally {
+	vrt.cleanUp();
+      }
+      if (result != null)
+	return "Failed to stitch tiles:\n" + result;
+
+      m_Stitching = true;
+      invocation  = prepareInvocation(new String[]{vrt.getOutputFile().getAbsolutePath()});
+      m_Stitching = false;
+      exec        = invocation.get();
+      if (exec.hasError())
+	result = "Failed to translate stitched tiles:\n" + exec.getError();
+      else if (exec.getOutput() != null)
+	addPendingOutput(exec.getOutput());
+    }
+    catch (Exception e) {
+      result = "Failed to translate " + args[0] + " in tiles: " + Utils.throwableToString(e);
+    }
+    finally {
+      m_Window           = null;
+      m_ActualOutputFile = null;
+      m_Stitching        = false;
+      if (executor != null)
+	executor.shutdownNow();
+      if ((dir != null) && !FileUtils.delete(dir))
+	getLogger().warning("Failed to remove tiles: " + dir);
+      m_Executed = true;
+    }
+
+    return result;
+  }
+
+  /**
+   * Executes the command. Translates rasters larger than the tile size in
+   * tiles, if enabled.
+   *
+   * @param args 	the arguments to append
+   * @return		null if successful, otherwise error message
+   */
+  @Override
+  public String execute(String[] args) {
+    if (m_TileSize > 0)
+      return executeTiled(args);
+    else
+      return super.execute(args);
   }
 }
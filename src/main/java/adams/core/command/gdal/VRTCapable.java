@@ -0,0 +1,48 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * VRTCapable.java
+ * Copyright (C) 2023 University of Waikato, Hamilton, New Zealand
+ */
+
+package adams.core.command.gdal;
+
+import java.util.List;
+
+/**
+ * Interface for commands that can write their output as virtual dataset
+ * (VRT) instead, i.e., only describing the operation rather than materializing
+ * the raster. Such commands can be chained in a {@link Pipeline}.
+ *
+ * @author fracpete (fracpete at waikato dot ac dot nz)
+ */
+public interface VRTCapable
+  extends GDALCommand {
+
+  /**
+   * Returns the options of the command, split into separate arguments.
+   *
+   * @return		the options
+   */
+  public String[] getActualOptions();
+
+  /**
+   * Returns the options to append for writing a VRT.
+   *
+   * @return		the options (eg "-of VRT")
+   */
+  public List<String> getVRTOptions();
+}
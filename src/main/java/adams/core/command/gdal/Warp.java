@@ -0,0 +1,331 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * Warp.java
+ * Copyright (C) 2023 University of Waikato, Hamilton, New Zealand
+ */
+
+package adams.core.command.gdal;
+
+import adams.core.QuickInfoHelper;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Reprojects/resamples raster data (gdalwarp), using multithreaded warping.
+ *
+ * @author fracpete (fracpete at waikato dot ac dot nz)
+ */
+public class Warp
+  extends AbstractGDALCommandFileWriter
+  implements VRTCapable {
+
+  private static final long serialVersionUID = 3547208372939101584L;
+
+  /** whether to use multithreaded warping (-multi). */
+  protected boolean m_Multi;
+
+  /** the number of threads for the warping (-wo NUM_THREADS). */
+  protected String m_NumThreads;
+
+  /** the memory limit for caching (-wm). */
+  protected String m_WarpMemory;
+
+  /** whether to optimize the chunks for the output blocks (-wo OPTIMIZE_SIZE). */
+  protected boolean m_OptimizeSize;
+
+  /** whether to overwrite the output file (-overwrite). */
+  protected boolean m_Overwrite;
+
+  /**
+   * Returns a string describing the object.
+   *
+   * @return a description suitable for displaying in the gui
+   */
+  @Override
+  public String globalInfo() {
+    return "Reprojects/resamples raster data (" + getExecutable() + "), using multithreaded warping.\n"
+      + "The warp memory limit determines the size of the chunks that get processed; optimizing the size "
+      + "results in larger chunks that are aligned with the blocks of the output.\n"
+      + "Automatically adds the directories that the input/output dataset reside in to the docker directory mappings under " + getWorkspaceDir() + ".\n"
+      + "For more information see:\n"
+      + "https://gdal.org/programs/gdalwarp.html";
+  }
+
+  /**
+   * Adds options to the internal list of options.
+   */
+  @Override
+  public void defineOptions() {
+    super.defineOptions();
+
+    m_OptionManager.add(
+      "multi", "multi",
+      true);
+
+    m_OptionManager.add(
+      "num-threads", "numThreads",
+      "ALL_CPUS");
+
+    m_OptionManager.add(
+      "warp-memory", "warpMemory",
+      "");
+
+    m_OptionManager.add(
+      "optimize-size", "optimizeSize",
+      false);
+
+    m_OptionManager.add(
+      "overwrite", "overwrite",
+      true);
+  }
+
+  /**
+   * Sets whether to use multithreaded warping (-multi).
+   *
+   * @param value	true if multithreaded
+   */
+  public void setMulti(boolean value) {
+    m_Multi = value;
+    reset();
+  }
+
+  /**
+   * Returns whether to use multithreaded warping (-multi).
+   *
+   * @return		true if multithreaded
+   */
+  public boolean getMulti() {
+    return m_Multi;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String multiTipText() {
+    return "If enabled, I/O and warping operations run in parallel (-multi).";
+  }
+
+  /**
+   * Sets the number of threads for the warping (-wo NUM_THREADS).
+   *
+   * @param value	the threads (number or ALL_CPUS), empty for default
+   */
+  public void setNumThreads(String value) {
+    m_NumThreads = value;
+    reset();
+  }
+
+  /**
+   * Returns the number of threads for the warping (-wo NUM_THREADS).
+   *
+   * @return		the threads, empty for default
+   */
+  public String getNumThreads() {
+    return m_NumThreads;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String numThreadsTipText() {
+    return "The number of threads for the warping (-wo NUM_THREADS), a number or ALL_CPUS; empty for the GDAL default "
+      + "(GDAL_NUM_THREADS of the configuration).";
+  }
+
+  /**
+   * Sets the memory limit for caching (-wm).
+   *
+   * @param value	the limit (MB or percentage of RAM, eg 25%), empty for default
+   */
+  public void setWarpMemory(String value) {
+    m_WarpMemory = value;
+    reset();
+  }
+
+  /**
+   * Returns the memory limit for caching (-wm).
+   *
+   * @return		the limit, empty for default
+   */
+  public String getWarpMemory() {
+    return m_WarpMemory;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String warpMemoryTipText() {
+    return "The memory limit for caching (-wm), determines the size of the chunks; in MB or as percentage of the RAM (eg 25%); "
+      + "empty for the GDAL default.";
+  }
+
+  /**
+   * Sets whether to optimize the chunks for the output blocks (-wo OPTIMIZE_SIZE).
+   *
+   * @param value	true if to optimize
+   */
+  public void setOptimizeSize(boolean value) {
+    m_OptimizeSize = value;
+    reset();
+  }
+
+  /**
+   * Returns whether to optimize the chunks for the output blocks (-wo OPTIMIZE_SIZE).
+   *
+   * @return		true if to optimize
+   */
+  public boolean getOptimizeSize() {
+    return m_OptimizeSize;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String optimizeSizeTipText() {
+    return "If enabled, larger chunks get processed that are aligned with the blocks of the output (-wo OPTIMIZE_SIZE=TRUE).";
+  }
+
+  /**
+   * Sets whether to overwrite the output file rather than warping into it (-overwrite).
+   *
+   * @param value	true if to overwrite
+   */
+  public void setOverwrite(boolean value) {
+    m_Overwrite = value;
+    reset();
+  }
+
+  /**
+   * Returns whether to overwrite the output file rather than warping into it (-overwrite).
+   *
+   * @return		true if to overwrite
+   */
+  public boolean getOverwrite() {
+    return m_Overwrite;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String overwriteTipText() {
+    return "If enabled, an existing output file gets overwritten rather than warped into (-overwrite).";
+  }
+
+  /**
+   * Returns a quick info about the object, which can be displayed in the GUI.
+   *
+   * @return		null if no info available, otherwise short string
+   */
+  @Override
+  public String getQuickInfo() {
+    String	result;
+
+    result = super.getQuickInfo();
+    result += QuickInfoHelper.toString(this, "multi", m_Multi, "multi", ", ");
+    result += QuickInfoHelper.toString(this, "numThreads", (m_NumThreads.isEmpty() ? "default" : m_NumThreads), ", threads: ");
+    result += QuickInfoHelper.toString(this, "warpMemory", (m_WarpMemory.isEmpty() ? "default" : m_WarpMemory), ", memory: ");
+
+    return result;
+  }
+
+  /**
+   * Returns the name of the GDAL executable.
+   *
+   * @return the name
+   */
+  @Override
+  public String getExecutable() {
+    return "gdalwarp";
+  }
+
+  /**
+   * Returns the options of the command, split into separate arguments:
+   * the warping options, followed by the ones from the options string.
+   *
+   * @return		the options
+   */
+  @Override
+  public String[] getActualOptions() {
+    List<String>	result;
+
+    result = new ArrayList<>();
+    if (m_Overwrite)
+      result.add("-overwrite");
+    if (m_Multi)
+      result.add("-multi");
+    if (!m_NumThreads.trim().isEmpty()) {
+      result.add("-wo");
+      result.add("NUM_THREADS=" + m_NumThreads.trim());
+    }
+    if (m_OptimizeSize) {
+      result.add("-wo");
+      result.add("OPTIMIZE_SIZE=TRUE");
+    }
+    if (!m_WarpMemory.trim().isEmpty()) {
+      result.add("-wm");
+      result.add(m_WarpMemory.trim());
+    }
+    result.addAll(Arrays.asList(super.getActualOptions()));
+
+    return result.toArray(new String[0]);
+  }
+
+  /**
+   * Builds the arguments from the input arguments, using local paths.
+   *
+   * @param args	the args to process
+   * @return		the generated args
+   */
+  @Override
+  protected String[] buildHostArgs(String[] args) {
+    String[]	result;
+
+    // add the output file
+    result = new String[args.length + 1];
+    System.arraycopy(args, 0, result, 0, args.length);
+    result[result.length - 1] = getActualOutputFile().getAbsolutePath();
+
+    return result;
+  }
+
+  /**
+   * Returns the options to append for writing a VRT.
+   *
+   * @return		the options
+   */
+  @Override
+  public List<String> getVRTOptions() {
+    return Arrays.asList("-of", "VRT");
+  }
+}
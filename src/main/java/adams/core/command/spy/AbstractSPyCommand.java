@@ -25,17 +25,45 @@ import adams.core.QuickInfoHelper;
 import adams.core.Utils;
 import adams.core.base.DockerDirectoryMapping;
 import adams.core.command.AbstractAsyncCapableExternalCommandWithOptions;
+import adams.core.command.OutputType;
+import adams.core.command.docker.BatchItem;
+import adams.core.command.docker.CircuitBreaker;
+import adams.core.command.docker.ContainerPool;
+import adams.core.command.docker.ContainerRegistry;
+import adams.core.command.docker.ContainerScript;
+import adams.core.command.docker.DirectoryMappingHelper;
+import adams.core.command.docker.EndpointBalancer;
+import adams.core.command.docker.EngineRunner;
+import adams.core.command.docker.ExecutionBackend;
+import adams.core.command.docker.ExecutionResult;
+import adams.core.command.docker.PooledContainer;
+import adams.core.command.docker.ProcessRunner;
+import adams.core.command.docker.RetryPolicy;
+import adams.core.command.docker.ScratchArea;
+import adams.core.command.docker.ScriptStepResult;
+import adams.core.command.docker.Watchdog;
 import adams.core.management.User;
 import adams.docker.SimpleDockerHelper;
 import adams.docker.simpledocker.GenericWithArgs;
 import adams.docker.simpledocker.PullType;
+import adams.flow.standalone.DistributedDockerConnection;
 import adams.flow.standalone.SPyConfiguration;
 import adams.flow.standalone.SimpleDockerConnection;
 
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledFuture;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 /**
  * Abstract ancestor for SPy commands.
@@ -51,6 +79,18 @@ public abstract class AbstractSPyCommand
   /** how to pull. */
   protected PullType m_PullType;
 
+  /** the timeout in seconds (0 = no timeout). */
+  protected int m_Timeout;
+
+  /** the maximum number of retries. */
+  protected int m_MaxRetries;
+
+  /** the initial delay before retrying (msec). */
+  protected int m_RetryDelay;
+
+  /** whether to retry timed out invocations. */
+  protected boolean m_RetryTimeouts;
+
   /** the docker connection. */
   protected transient SimpleDockerConnection m_Connection;
 
@@ -60,6 +100,36 @@ public abstract class AbstractSPyCommand
   /** the underlying docker command to execute. */
   protected transient GenericWithArgs m_DockerCommand;
 
+  /** the pool the container was leased from. */
+  protected transient ContainerPool m_Pool;
+
+  /** the leased container (when using a container pool). */
+  protected transient PooledContainer m_PooledContainer;
+
+  /** the executor for submitted invocations. */
+  protected transient ExecutorService m_SubmitExecutor;
+
+  /** the currently running invocations (submitted or batch). */
+  protected transient Set<ProcessRunner> m_Submitted;
+
+  /** the process (when not using {@link GenericWithArgs}). */
+  protected transient ProcessRunner m_Process;
+
+  /** the output (native process or cache) that hasn't been retrieved yet. */
+  protected transient List<Object> m_PendingOutput;
+
+  /** the endpoint the process got assigned to (distributed connection). */
+  protected transient String m_Endpoint;
+
+  /** the circuit breaker that allowed the process to run. */
+  protected transient CircuitBreaker m_Breaker;
+
+  /** the watchdog of the process executed in non-blocking mode. */
+  protected transient ScheduledFuture<?> m_Watch;
+
+  /** the name of the container run via {@link GenericWithArgs}. */
+  protected transient String m_ContainerName;
+
   /**
    * Adds options to the internal list of options.
    */
@@ -70,6 +140,22 @@ public abstract class AbstractSPyCommand
     m_OptionManager.add(
       "pull-type", "pullType",
       PullType.DEFAULT);
+
+    m_OptionManager.add(
+      "timeout", "timeout",
+      0, 0, null);
+
+    m_OptionManager.add(
+      "max-retries", "maxRetries",
+      0, 0, null);
+
+    m_OptionManager.add(
+      "retry-delay", "retryDelay",
+      1000, 1, null);
+
+    m_OptionManager.add(
+      "retry-timeouts", "retryTimeouts",
+      false);
   }
 
   /**
@@ -101,6 +187,130 @@ public abstract class AbstractSPyCommand
     return "Determines how to pull the image; used to override the setting defined in " + Utils.classToString(SimpleDockerConnection.class) + ".";
   }
 
+  /**
+   * Sets the timeout for the execution.
+   *
+   * @param value	the timeout in seconds, 0 for no timeout
+   */
+  public void setTimeout(int value) {
+    if (getOptionManager().isValid("timeout", value)) {
+      m_Timeout = value;
+      reset();
+    }
+  }
+
+  /**
+   * Returns the timeout for the execution.
+   *
+   * @return		the timeout in seconds, 0 for no timeout
+   */
+  public int getTimeout() {
+    return m_Timeout;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String timeoutTipText() {
+    return "The maximum time in seconds the execution may take before the container gets killed; for batches, per item; 0 = no timeout.";
+  }
+
+  /**
+   * Sets the maximum number of retries for failures caused by the docker
+   * daemon (or timeouts, if enabled).
+   *
+   * @param value	the number of retries, 0 for none
+   */
+  public void setMaxRetries(int value) {
+    if (getOptionManager().isValid("maxRetries", value)) {
+      m_MaxRetries = value;
+      reset();
+    }
+  }
+
+  /**
+   * Returns the maximum number of retries for failures caused by the docker
+   * daemon (or timeouts, if enabled).
+   *
+   * @return		the number of retries, 0 for none
+   */
+  public int getMaxRetries() {
+    return m_MaxRetries;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String maxRetriesTipText() {
+    return "The maximum number of retries for failures caused by the docker daemon (daemon errors, failure to start) rather than the command; 0 = no retries.";
+  }
+
+  /**
+   * Sets the delay before the first retry, doubles with each further retry.
+   *
+   * @param value	the delay in msec
+   */
+  public void setRetryDelay(int value) {
+    if (getOptionManager().isValid("retryDelay", value)) {
+      m_RetryDelay = value;
+      reset();
+    }
+  }
+
+  /**
+   * Returns the delay before the first retry, doubles with each further retry.
+   *
+   * @return		the delay in msec
+   */
+  public int getRetryDelay() {
+    return m_RetryDelay;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String retryDelayTipText() {
+    return "The delay in msec before the first retry; doubles with each further retry (exponential backoff with jitter).";
+  }
+
+  /**
+   * Sets whether to retry timed out invocations as well.
+   *
+   * @param value	true if to retry
+   */
+  public void setRetryTimeouts(boolean value) {
+    m_RetryTimeouts = value;
+    reset();
+  }
+
+  /**
+   * Returns whether to retry timed out invocations as well.
+   *
+   * @return		true if to retry
+   */
+  public boolean getRetryTimeouts() {
+    return m_RetryTimeouts;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String retryTimeoutsTipText() {
+    return "If enabled, invocations that timed out get retried as well.";
+  }
+
   /**
    * Returns the pull type to use.
    *
@@ -164,6 +374,7 @@ public abstract class AbstractSPyCommand
 
     result = super.getQuickInfo();
     result += QuickInfoHelper.toString(this, "pullType", m_PullType, ", pull: ");
+    result += QuickInfoHelper.toString(this, "timeout", (m_Timeout > 0 ? m_Timeout + "s" : "none"), ", timeout: ");
 
     return result;
   }
@@ -179,18 +390,61 @@ public abstract class AbstractSPyCommand
     result = super.check();
 
     if (result == null) {
-      if (m_Connection == null)
-	result = "No docker connection available! Missing " + Utils.classToString(SimpleDockerConnection.class) + " standalone?";
+      if (m_Configuration == null)
+	result = "No SPy configuration available! Missing " + Utils.classToString(SPyConfiguration.class) + " standalone?";
     }
 
     if (result == null) {
-      if (m_Configuration == null)
-	result = "No SPy configuration available! Missing " + Utils.classToString(SPyConfiguration.class) + " standalone?";
+      if ((m_Connection == null) && (getNativeExecutable() == null))
+	result = "No docker connection available! Missing " + Utils.classToString(SimpleDockerConnection.class) + " standalone?";
     }
 
     return result;
   }
 
+  /**
+   * Adds the "--pull" option for the docker command, if required. Pull type
+   * {@link PullType#ALWAYS} is handled by the shared pull of the configuration
+   * instead, see {@link #waitForImage()}.
+   *
+   * @param options	the options to add to
+   */
+  protected void addPullOptions(List<String> options) {
+    PullType	pullType;
+
+    pullType = getActualPullType();
+    if ((pullType != PullType.DEFAULT) && (pullType != PullType.ALWAYS)) {
+      options.add("--pull");
+      options.add(pullType.getType());
+    }
+  }
+
+  /**
+   * Waits for the shared pull of the image if the pull type is
+   * {@link PullType#ALWAYS}, i.e., the image gets pulled at most once per
+   * flow execution rather than with every "docker run".
+   *
+   * @return		null if successful or not required, otherwise error message
+   * @see		SPyConfiguration#waitForImage(SimpleDockerConnection)
+   */
+  protected String waitForImage() {
+    if ((m_Connection == null) || (getActualPullType() != PullType.ALWAYS))
+      return null;
+    return m_Configuration.waitForImage(m_Connection);
+  }
+
+  /**
+   * Returns the path of the native binary to use instead of docker.
+   *
+   * @return		the path, null if docker is to be used
+   * @see		SPyConfiguration#getNativeExecutable(String)
+   */
+  protected String getNativeExecutable() {
+    if (m_Configuration == null)
+      return null;
+    return m_Configuration.getNativeExecutable(getExecutable());
+  }
+
   /**
    * Compiles the directory mappings.
    * <br>
@@ -219,14 +473,87 @@ public abstract class AbstractSPyCommand
   /**
    * Adds custom directory mappings to the already compiled list.
    * <br>
-   * The default implementation just returns the input.
+   * The default implementation only adds the scratch area (if enabled).
    *
    * @param mappings	the mappings to process
    * @param args 	the input arguments
    * @return		the updated mappings
+   * @see		SPyConfiguration#getScratchArea()
    */
   protected List<DockerDirectoryMapping> addCustomDirMappings(List<DockerDirectoryMapping> mappings, String[] args) {
-    return mappings;
+    List<DockerDirectoryMapping>	result;
+    ScratchArea				scratch;
+
+    scratch = getScratchArea();
+    if (scratch == null)
+      return mappings;
+
+    result = new ArrayList<>(mappings);
+    try {
+      if (!SimpleDockerHelper.addMapping(result, scratch.getMapping()))
+	getLogger().warning("Unable to add mapping (for scratch area): " + scratch);
+    }
+    catch (Exception e) {
+      getLogger().warning("Failed to create scratch area: " + e);
+    }
+
+    return result;
+  }
+
+  /**
+   * Returns the scratch area.
+   *
+   * @return		the scratch area, null if not available
+   */
+  protected ScratchArea getScratchArea() {
+    if (m_Configuration == null)
+      return null;
+    return m_Configuration.getScratchArea();
+  }
+
+  /**
+   * Returns the environment variables for the executable: the ones of the
+   * configuration plus the directory for temporary files in the scratch
+   * area (if enabled and not set explicitly).
+   *
+   * @param container	whether the executable runs in a container rather than natively
+   * @return		the variables (name -&gt; value)
+   * @see		SPyConfiguration#getContainerEnvironment()
+   * @see		SPyConfiguration#getScratchVariable()
+   */
+  protected Map<String,String> getEnvironment(boolean container) {
+    Map<String,String>	result;
+    ScratchArea		scratch;
+    String		var;
+
+    result  = m_Configuration.getContainerEnvironment();
+    scratch = getScratchArea();
+    var     = m_Configuration.getScratchVariable();
+    if ((scratch != null) && !result.containsKey(var)) {
+      try {
+	if (container)
+	  result.put(var, ScratchArea.CONTAINER_DIR + "/" + ScratchArea.TMP_DIR);
+	else
+	  result.put(var, scratch.getTmpDir().getAbsolutePath());
+      }
+      catch (Exception e) {
+	getLogger().warning("Failed to create scratch area: " + e);
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * Builds the arguments from the input arguments, using local paths.
+   * <br>
+   * The default implementation just returns a copy of the input.
+   *
+   * @param args	the args to process
+   * @return		the generated args
+   */
+  protected String[] buildHostArgs(String[] args) {
+    return args.clone();
   }
 
   /**
@@ -236,147 +563,1500 @@ public abstract class AbstractSPyCommand
    * @param args	the args to process
    * @return		the generated container args
    * @throws IOException	if converting of a path fails
+   * @see		#buildHostArgs(String[])
    */
   protected String[] buildContainerArgs(List<DockerDirectoryMapping> mappings, String[] args) throws IOException {
-    return SimpleDockerHelper.toContainerPaths(mappings, args);
+    return SimpleDockerHelper.toContainerPaths(mappings, buildHostArgs(args));
   }
 
   /**
-   * Executes the command.
+   * Turns the command (executable and options) into one that uses the native binary.
    *
-   * @param args 	the arguments to append
-   * @return		null if successful, otherwise error message
+   * @param command	the command to convert
+   * @param binary	the path of the native binary
+   * @return		the native command
    */
-  @Override
-  public String execute(String[] args) {
-    String				result;
-    List<String> 			runOptions;
-    List<DockerDirectoryMapping>	mappings;
-    String[]				containerArgs;
-    GenericWithArgs			dockerCmd;
+  protected List<String> toNativeCommand(List<String> command, String binary) {
+    List<String>	result;
+    int			index;
 
-    m_Executed = false;
+    result = new ArrayList<>(command);
+    index  = result.indexOf(getExecutable());
+    if (index > -1)
+      result.set(index, binary);
+    else
+      result.add(0, binary);
 
-    result = check();
+    return result;
+  }
 
-    if (result == null) {
-      mappings = addCustomDirMappings(buildDirMappings(), args);
-      try {
-	containerArgs = buildContainerArgs(mappings, args);
-      }
-      catch (Exception e) {
-	return e.getMessage();
-      }
+  /**
+   * Adds the output to the pending output.
+   *
+   * @param output	the output to add
+   */
+  protected void addPendingOutput(Object output) {
+    List<Object>	pending;
 
-      // options for "docker run"
-      runOptions = new ArrayList<>();
-      runOptions.add("--rm");
-      if (getActualPullType() != PullType.DEFAULT) {
-        runOptions.add("--pull");
-        runOptions.add(getActualPullType().getType());
-      }
-      runOptions.add("-u");
-      runOptions.add(User.getUserID() + ":" + User.getGroupID());
-      for (DockerDirectoryMapping mapping: mappings) {
-	runOptions.add("-v");
-	runOptions.add(mapping.getValue());
-      }
-      runOptions.add("-t");
-      runOptions.add(m_Configuration.getImage());
-      runOptions.addAll(buildCommand());
-
-      // assemble docker command
-      dockerCmd = new GenericWithArgs();
-      dockerCmd.setLoggingLevel(getLoggingLevel());
-      dockerCmd.setOutputType(m_OutputType);
-      dockerCmd.setOutputFormatter(ObjectCopyHelper.copyObject(m_OutputFormatter));
-      dockerCmd.setStdOutProcessor(ObjectCopyHelper.copyObject(m_StdOutProcessor));
-      dockerCmd.setStdErrProcessor(ObjectCopyHelper.copyObject(m_StdErrProcessor));
-      dockerCmd.setBlocking(m_Blocking);
-      dockerCmd.setAdditionalArguments(containerArgs);
-      dockerCmd.setCommand("run");
-      dockerCmd.setOptions(runOptions);
-      dockerCmd.setFlowContext(m_FlowContext);
-      dockerCmd.setConnection(m_Connection);
-      m_DockerCommand = dockerCmd;
-
-      // execute docker command
-      result = dockerCmd.execute();
-      if (result != null) {
-	if (dockerCmd.hasLastCommand())
-	  result = "Following docker command:\n"
-	    + Utils.flatten(dockerCmd.getLastCommand(), " ") + "\n"
-	    + "Failed with message:\n" + result;
+    // the list gets removed when cleaning up, while the readers may still be active
+    pending = m_PendingOutput;
+    if (pending == null)
+      return;
+    synchronized (pending) {
+      pending.add(output);
+    }
+  }
+
+  /**
+   * Returns the listener for processing the lines read from a process
+   * executed in non-blocking mode.
+   * <br>
+   * The default implementation applies output type and formatter to each line.
+   *
+   * @return		the listener
+   */
+  protected ProcessRunner.LineListener newLineListener() {
+    return (String line, boolean stdout) -> {
+      if ((m_OutputType == OutputType.BOTH) || ((m_OutputType == OutputType.STDOUT) == stdout))
+	addPendingOutput(m_OutputFormatter.formatOutput(line));
+    };
+  }
+
+  /**
+   * Executes the command line as a process, bypassing {@link GenericWithArgs}.
+   *
+   * @param cmd		the complete command line
+   * @return		null if successful, otherwise error message
+   * @see		#executeRunner(ProcessRunner)
+   */
+  protected String executeProcess(List<String> cmd) {
+    return executeRunner(new ProcessRunner(cmd));
+  }
+
+  /**
+   * Executes the runner, bypassing {@link GenericWithArgs}.
+   * In blocking mode, the output gets generated via {@link #formatOutput(String, String)},
+   * otherwise via {@link #newLineListener()}.
+   *
+   * @param runner	the runner to execute
+   * @return		null if successful, otherwise error message
+   */
+  protected String executeRunner(ProcessRunner runner) {
+    String		result;
+    ScheduledFuture<?>	watch;
+
+    result          = null;
+    m_PendingOutput = new ArrayList<>();
+    runner.setLoggingLevel(getLoggingLevel());
+    if (!m_Blocking) {
+      runner.setLineListener(newLineListener());
+      runner.setCollectStdOut(false);
+    }
+    m_Process = runner;
+
+    try {
+      watch = startSupervised(runner, m_Timeout);
+      if (m_Blocking) {
+	runner.waitFor();
+	if (watch != null)
+	  watch.cancel(false);
+	if (runner.isTimedOut())
+	  result = "Execution timed out after " + m_Timeout + "s!\n" + runner.toErrorMessage();
+	else if (runner.isDestroyed())
+	  result = "Execution stopped!";
+	else if (!runner.hasSucceeded())
+	  result = runner.toErrorMessage();
 	else
-	  result = "Docker command failed with message:\n" + result;
+	  addPendingOutput(formatOutput(runner.getStdOut(), runner.getStdErr()));
+      }
+      else {
+	m_Watch = watch;
       }
     }
-
-    m_Executed = true;
+    catch (Exception e) {
+      result = "Failed to execute: " + Utils.flatten(runner.getCommand(), " ") + "\n" + Utils.throwableToString(e);
+    }
 
     return result;
   }
 
   /**
-   * Returns whether the command is currently running.
+   * Creates the runner for the native binary, using the environment
+   * variables of the configuration (threads, cache etc).
    *
-   * @return		true if running
+   * @param cmd		the complete command line
+   * @return		the runner
+   * @see		#getEnvironment(boolean)
    */
-  @Override
-  public boolean isRunning() {
-    return (m_DockerCommand != null) && (m_DockerCommand.isRunning());
+  protected ProcessRunner newNativeRunner(List<String> cmd) {
+    ProcessRunner	result;
+
+    result = new ProcessRunner(cmd);
+    result.getEnvironment().putAll(getEnvironment(false));
+
+    return result;
   }
 
   /**
-   * Whether there is any pending output.
+   * Executes the command using the native binary, bypassing docker.
    *
-   * @return		true if output pending
+   * @param binary	the path of the native binary
+   * @param args	the input arguments
+   * @return		null if successful, otherwise error message
    */
-  @Override
-  public boolean hasOutput() {
-    return isRunning() || ((m_DockerCommand != null) && m_DockerCommand.hasOutput());
+  protected String executeNative(String binary, String[] args) {
+    List<String>	cmd;
+
+    cmd = toNativeCommand(buildCommand(), binary);
+    cmd.addAll(Arrays.asList(buildHostArgs(args)));
+
+    return executeRunner(newNativeRunner(cmd));
   }
 
   /**
-   * Returns the next output.
+   * Assembles the options for the container: user, resource limits,
+   * environment variables and directory mappings.
    *
-   * @return		the output, null if none available
+   * @param mappings	the directory mappings to use
+   * @return		the options
+   * @see		SPyConfiguration#getContainerResources()
+   * @see		#getEnvironment(boolean)
    */
-  @Override
-  public Object output() {
-    Object 	result;
-
-    result = null;
+  protected List<String> buildContainerOptions(List<DockerDirectoryMapping> mappings) {
+    List<String>	result;
+    Map<String,String>	env;
 
-    if (m_DockerCommand != null) {
-      result = m_DockerCommand.output();
-      if (m_DockerCommand.isFinished()) {
-        m_DockerCommand.cleanUp();
-        m_DockerCommand = null;
-      }
+    result = new ArrayList<>();
+    result.add("-u");
+    result.add(User.getUserID() + ":" + User.getGroupID());
+    result.addAll(m_Configuration.getContainerResources().toRunOptions());
+    env = getEnvironment(true);
+    for (String key: env.keySet()) {
+      result.add("-e");
+      result.add(key + "=" + env.get(key));
+    }
+    for (DockerDirectoryMapping mapping: mappings) {
+      result.add("-v");
+      result.add(mapping.getValue());
     }
 
     return result;
   }
 
   /**
-   * Stops the execution.
+   * Assembles the options for obtaining a container from the pool: pull type,
+   * user and directory mappings.
+   *
+   * @param mappings	the directory mappings to use
+   * @return		the options
    */
-  @Override
-  public void stopExecution() {
-    if (m_DockerCommand != null)
-      m_DockerCommand.stopExecution();
-    m_Stopped = true;
+  protected List<String> buildPooledContainerOptions(List<DockerDirectoryMapping> mappings) {
+    List<String>	result;
+
+    result = new ArrayList<>();
+    addPullOptions(result);
+    result.addAll(buildContainerOptions(mappings));
+
+    return result;
   }
 
   /**
-   * Cleans up data structures, frees up memory.
+   * Assembles the docker command.
+   *
+   * @param command	the docker command (eg run or exec)
+   * @param options	the options for the docker command
+   * @param containerArgs	the arguments to append
+   * @return		the command
    */
-  @Override
-  public void cleanUp() {
-    if (m_DockerCommand != null) {
-      m_DockerCommand.cleanUp();
-      m_DockerCommand = null;
+  protected GenericWithArgs newDockerCommand(String command, List<String> options, String[] containerArgs) {
+    GenericWithArgs	result;
+
+    result = new GenericWithArgs();
+    result.setLoggingLevel(getLoggingLevel());
+    result.setOutputType(m_OutputType);
+    result.setOutputFormatter(ObjectCopyHelper.copyObject(m_OutputFormatter));
+    result.setStdOutProcessor(ObjectCopyHelper.copyObject(m_StdOutProcessor));
+    result.setStdErrProcessor(ObjectCopyHelper.copyObject(m_StdErrProcessor));
+    result.setBlocking(m_Blocking);
+    result.setAdditionalArguments(containerArgs);
+    result.setCommand(command);
+    result.setOptions(options);
+    result.setFlowContext(m_FlowContext);
+    result.setConnection(m_Connection);
+
+    return result;
+  }
+
+  /**
+   * Executes the docker command.
+   *
+   * @param dockerCmd	the command to execute
+   * @return		null if successful, otherwise error message
+   */
+  protected String executeDockerCommand(GenericWithArgs dockerCmd) {
+    String	result;
+
+    m_DockerCommand = dockerCmd;
+    result = dockerCmd.execute();
+    if (result != null) {
+      if (dockerCmd.hasLastCommand())
+	result = "Following docker command:\n"
+	  + Utils.flatten(dockerCmd.getLastCommand(), " ") + "\n"
+	  + "Failed with message:\n" + result;
+      else
+	result = "Docker command failed with message:\n" + result;
+    }
+
+    return result;
+  }
+
+  /**
+   * Assembles the options for "docker run", including image and command.
+   *
+   * @param mappings	the directory mappings
+   * @param tty		whether to allocate a pseudo-TTY
+   * @return		the options
+   */
+  protected List<String> buildRunOptions(List<DockerDirectoryMapping> mappings, boolean tty) {
+    return buildRunOptions(mappings, tty, null, buildCommand());
+  }
+
+  /**
+   * Assembles the options for "docker run", including image and command.
+   *
+   * @param mappings	the directory mappings
+   * @param tty		whether to allocate a pseudo-TTY
+   * @param name	the name for the container, null for a random one
+   * @param command	the command to run in the container
+   * @return		the options
+   */
+  protected List<String> buildRunOptions(List<DockerDirectoryMapping> mappings, boolean tty, String name, List<String> command) {
+    List<String> 	result;
+
+    result = new ArrayList<>();
+    result.add("--rm");
+    if (name != null) {
+      result.add("--name");
+      result.add(name);
+    }
+    addPullOptions(result);
+    result.addAll(buildContainerOptions(mappings));
+    if (tty)
+      result.add("-t");
+    result.add(m_Configuration.getImage());
+    result.addAll(command);
+
+    return result;
+  }
+
+  /**
+   * Executes the command in a new container ("docker run --rm").
+   *
+   * @param mappings	the directory mappings
+   * @param containerArgs	the arguments to append
+   * @return		null if successful, otherwise error message
+   */
+  protected String executeRun(List<DockerDirectoryMapping> mappings, String[] containerArgs) {
+    String	result;
+    String	name;
+
+    name = newContainerName();
+    registerContainer(name);
+    result = executeDockerCommand(newDockerCommand("run", buildRunOptions(mappings, true, name, buildCommand()), containerArgs));
+    if (m_Blocking || (result != null))
+      unregisterContainer(false);
+
+    return result;
+  }
+
+  /**
+   * Executes the command in a container obtained from the pool ("docker exec").
+   *
+   * @param pool	the pool to use
+   * @param mappings	the directory mappings
+   * @param containerArgs	the arguments to append
+   * @return		null if successful, otherwise error message
+   */
+  protected String executePooled(ContainerPool pool, List<DockerDirectoryMapping> mappings, String[] containerArgs) {
+    String		result;
+    List<String>	containerOptions;
+    List<String> 	execOptions;
+
+    containerOptions = buildPooledContainerOptions(mappings);
+
+    try {
+      m_PooledContainer = pool.acquire(containerOptions);
+      m_Pool            = pool;
+    }
+    catch (Exception e) {
+      return "Failed to obtain container from pool: " + e.getMessage();
+    }
+
+    // options for "docker exec"
+    execOptions = new ArrayList<>();
+    execOptions.add("-t");
+    execOptions.add(m_PooledContainer.getName());
+    execOptions.addAll(buildCommand());
+
+    result = executeDockerCommand(newDockerCommand("exec", execOptions, containerArgs));
+    if (m_Blocking || (result != null))
+      releaseContainer(false);
+
+    return result;
+  }
+
+  /**
+   * Returns whether the docker command has to be executed as process rather
+   * than via {@link GenericWithArgs}, eg for custom output processing.
+   * <br>
+   * Default implementation returns false.
+   *
+   * @return		true if to execute as process
+   * @see		#executeDockerProcess(ContainerPool, List, String[])
+   */
+  protected boolean requiresProcessExecution() {
+    return false;
+  }
+
+  /**
+   * Returns whether to talk to the docker daemon directly via the Engine API
+   * rather than using the docker CLI.
+   *
+   * @return		true if to use the Engine API
+   * @see		SPyConfiguration#getEngineClient()
+   */
+  protected boolean useEngine() {
+    return (m_Configuration != null) && (m_Configuration.getBackend() == ExecutionBackend.ENGINE);
+  }
+
+  /**
+   * Returns whether the docker CLI invocations get spread across several
+   * daemons. Not applicable to native binaries or the Engine API, which
+   * uses its own endpoint.
+   *
+   * @return		true if distributed
+   * @see		DistributedDockerConnection
+   */
+  protected boolean isDistributed() {
+    return (m_Connection instanceof DistributedDockerConnection) && !useEngine() && (getNativeExecutable() == null);
+  }
+
+  /**
+   * Returns the circuit breaker for the docker daemon.
+   *
+   * @return		the breaker, null if not available (disabled or native binary)
+   * @see		SPyConfiguration#getCircuitBreaker()
+   */
+  protected CircuitBreaker getCircuitBreaker() {
+    if ((m_Configuration == null) || (getNativeExecutable() != null))
+      return null;
+    return m_Configuration.getCircuitBreaker();
+  }
+
+  /**
+   * Returns the policy for retrying failed invocations.
+   *
+   * @return		the policy
+   */
+  protected RetryPolicy getRetryPolicy() {
+    return new RetryPolicy(m_MaxRetries, m_RetryDelay, RetryPolicy.DEFAULT_MAX_DELAY, m_RetryTimeouts);
+  }
+
+  /**
+   * Returns whether the execution needs to be supervised (timeout, retries,
+   * circuit breaker), which requires executing the docker command as process.
+   *
+   * @return		true if supervised
+   */
+  protected boolean requiresSupervision() {
+    return (m_Timeout > 0) || (m_MaxRetries > 0) || (getCircuitBreaker() != null);
+  }
+
+  /**
+   * Generates a deterministic name for a new container, so it can be killed
+   * on timeout or when stopping the flow.
+   *
+   * @return		the name
+   * @see		ContainerRegistry#newName(String)
+   */
+  protected String newContainerName() {
+    return ContainerRegistry.newName("adams-" + getClass().getSimpleName().toLowerCase());
+  }
+
+  /**
+   * Returns the registry for the live containers.
+   *
+   * @return		the registry, null if no configuration available
+   * @see		SPyConfiguration#getContainerRegistry()
+   */
+  protected ContainerRegistry getContainerRegistry() {
+    if (m_Configuration == null)
+      return null;
+    return m_Configuration.getContainerRegistry();
+  }
+
+  /**
+   * Starts the runner, registers its container (if any) as live container
+   * and has the watchdog stop it (and kill its container) once the timeout
+   * is exceeded.
+   *
+   * @param runner	the runner to start
+   * @param timeout	the timeout in seconds, 0 for no timeout
+   * @return		the scheduled check, null if no timeout
+   * @throws IOException	if starting fails
+   * @see		Watchdog
+   */
+  protected ScheduledFuture<?> startSupervised(ProcessRunner runner, int timeout) throws IOException {
+    String		binary;
+    ContainerRegistry	registry;
+
+    binary = (m_Connection == null) ? null : m_Connection.getAcualBinary();
+    runner.start();
+    registry = getContainerRegistry();
+    if (registry != null)
+      registry.register(runner, binary);
+
+    return Watchdog.watch(runner, binary, timeout * 1000L);
+  }
+
+  /**
+   * Stops the runners, killing their containers immediately.
+   *
+   * @param runners	the runners to stop
+   */
+  protected void killRunners(List<ProcessRunner> runners) {
+    ContainerRegistry	registry;
+    List<String>	names;
+
+    registry = getContainerRegistry();
+    if (registry != null) {
+      names = new ArrayList<>();
+      for (ProcessRunner runner: runners) {
+	if (runner.getContainerName() != null)
+	  names.add(runner.getContainerName());
+      }
+      registry.kill(names);
+    }
+    for (ProcessRunner runner: runners)
+      runner.destroy();
+  }
+
+  /**
+   * Registers the container run via {@link GenericWithArgs} as live container.
+   *
+   * @param name	the name of the container
+   */
+  protected void registerContainer(String name) {
+    ContainerRegistry	registry;
+
+    m_ContainerName = name;
+    registry        = getContainerRegistry();
+    if (registry != null)
+      registry.register(name, m_Connection.getAcualBinary(), null);
+  }
+
+  /**
+   * Removes the container run via {@link GenericWithArgs} from the live
+   * containers, killing it if requested.
+   *
+   * @param kill	whether to kill the container
+   */
+  protected void unregisterContainer(boolean kill) {
+    ContainerRegistry	registry;
+
+    if (m_ContainerName == null)
+      return;
+
+    registry = getContainerRegistry();
+    if (registry != null) {
+      if (kill)
+	registry.kill(m_ContainerName);
+      else
+	registry.unregister(m_ContainerName);
+    }
+    m_ContainerName = null;
+  }
+
+  /**
+   * Adds the runner to the currently running invocations, so it gets stopped
+   * when stopping the execution.
+   *
+   * @param runner	the runner to add
+   */
+  protected void addRunning(ProcessRunner runner) {
+    synchronized (this) {
+      if (m_Submitted == null)
+	m_Submitted = new HashSet<>();
+    }
+    synchronized (m_Submitted) {
+      m_Submitted.add(runner);
+    }
+  }
+
+  /**
+   * Removes the runner from the currently running invocations.
+   *
+   * @param runner	the runner to remove
+   */
+  protected void removeRunning(ProcessRunner runner) {
+    Set<ProcessRunner>	submitted;
+
+    synchronized (this) {
+      submitted = m_Submitted;
+    }
+    if (submitted == null)
+      return;
+    synchronized (submitted) {
+      submitted.remove(runner);
+    }
+  }
+
+  /**
+   * Assigns the runner to the least loaded healthy endpoint (via DOCKER_HOST),
+   * if the connection is distributed.
+   *
+   * @param runner	the runner to assign
+   * @return		the endpoint, null if not distributed
+   * @throws IllegalStateException	if no healthy endpoint is available
+   * @see		#releaseEndpoint(String, ProcessRunner)
+   */
+  protected String acquireEndpoint(ProcessRunner runner) {
+    String	result;
+
+    if (!isDistributed() || (runner instanceof EngineRunner))
+      return null;
+
+    result = ((DistributedDockerConnection) m_Connection).acquireEndpoint();
+    if (result == null)
+      throw new IllegalStateException("No healthy docker endpoint available!");
+    runner.getEnvironment().put(EndpointBalancer.DOCKER_HOST, result);
+    if (isLoggingEnabled())
+      getLogger().fine("Endpoint: " + result);
+
+    return result;
+  }
+
+  /**
+   * Releases the endpoint again. An exit code of {@link EndpointBalancer#DAEMON_ERROR}
+   * counts as daemon failure.
+   *
+   * @param endpoint	the endpoint, ignored if null
+   * @param runner	the runner that was executed, can be null
+   */
+  protected void releaseEndpoint(String endpoint, ProcessRunner runner) {
+    boolean	daemonError;
+
+    if ((endpoint == null) || !(m_Connection instanceof DistributedDockerConnection))
+      return;
+
+    daemonError = (runner != null) && runner.isFinished() && !runner.isDestroyed() && (runner.getExitCode() == EndpointBalancer.DAEMON_ERROR);
+    ((DistributedDockerConnection) m_Connection).releaseEndpoint(endpoint, daemonError);
+  }
+
+  /**
+   * Creates the runner for running the command in a new container, either
+   * via the docker CLI or the Engine API.
+   *
+   * @param mappings	the directory mappings
+   * @param containerArgs	the arguments to append
+   * @return		the runner
+   */
+  protected ProcessRunner newRunRunner(List<DockerDirectoryMapping> mappings, String[] containerArgs) {
+    return newRunRunner(mappings, buildContainerCommand(containerArgs));
+  }
+
+  /**
+   * Creates the runner for running the command in a new container, either
+   * via the docker CLI or the Engine API.
+   *
+   * @param mappings	the directory mappings
+   * @param command	the command to run in the container (executable, options and arguments)
+   * @return		the runner
+   */
+  protected ProcessRunner newRunRunner(List<DockerDirectoryMapping> mappings, List<String> command) {
+    ProcessRunner	result;
+    List<String>	cmd;
+    String		name;
+
+    if (useEngine())
+      return newEngineRunRunner(mappings, null, command);
+
+    name = newContainerName();
+    cmd  = new ArrayList<>();
+    cmd.add(m_Connection.getAcualBinary());
+    cmd.add("run");
+    cmd.addAll(buildRunOptions(mappings, false, name, command));
+    result = new ProcessRunner(cmd);
+    result.setContainerName(name);
+
+    return result;
+  }
+
+  /**
+   * Creates the runner for running a new container via the Engine API.
+   *
+   * @param mappings	the directory mappings
+   * @param entrypoint	the entrypoint, null for the image's default
+   * @param command	the command to run in the container
+   * @return		the runner
+   */
+  protected EngineRunner newEngineRunRunner(List<DockerDirectoryMapping> mappings, List<String> entrypoint, List<String> command) {
+    EngineRunner	result;
+    List<String>	binds;
+
+    binds = new ArrayList<>();
+    for (DockerDirectoryMapping mapping: mappings)
+      binds.add(mapping.getValue());
+
+    result = new EngineRunner(
+      m_Configuration.getEngineClient(), m_Configuration.getImage(), entrypoint, command,
+      User.getUserID() + ":" + User.getGroupID(), binds, getActualPullType() != PullType.NEVER);
+    result.setContainerName(newContainerName());
+    result.setResources(m_Configuration.getContainerResources());
+    result.getEnvironment().putAll(getEnvironment(true));
+
+    return result;
+  }
+
+  /**
+   * Creates the runner for executing the command in a running (pooled)
+   * container, either via the docker CLI or the Engine API.
+   *
+   * @param container	the name of the container
+   * @param command	the command to execute in the container (executable, options and arguments)
+   * @return		the runner
+   */
+  protected ProcessRunner newExecRunner(String container, List<String> command) {
+    ProcessRunner	result;
+    List<String>	cmd;
+
+    if (useEngine())
+      return new EngineRunner(m_Configuration.getEngineClient(), container, command);
+
+    cmd = new ArrayList<>();
+    cmd.add(m_Connection.getAcualBinary());
+    cmd.add("exec");
+    cmd.add(container);
+    cmd.addAll(command);
+    result = new ProcessRunner(cmd);
+    // killing the exec'd process requires killing the (pooled) container
+    result.setContainerName(container);
+
+    return result;
+  }
+
+  /**
+   * Assembles the command to execute in the container.
+   *
+   * @param containerArgs	the arguments to append
+   * @return		the command (executable, options and arguments)
+   */
+  protected List<String> buildContainerCommand(String[] containerArgs) {
+    List<String>	result;
+
+    result = new ArrayList<>(buildCommand());
+    result.addAll(Arrays.asList(containerArgs));
+
+    return result;
+  }
+
+  /**
+   * Executes the docker command as process (or via the Engine API), either
+   * in a new container or in one obtained from the pool. In blocking mode,
+   * failures caused by the docker daemon get retried according to the
+   * retry policy.
+   *
+   * @param pool	the pool to use, null for a new container
+   * @param mappings	the directory mappings
+   * @param containerArgs	the arguments to append
+   * @return		null if successful, otherwise error message
+   * @see		#executeRunner(ProcessRunner)
+   */
+  protected String executeDockerProcess(ContainerPool pool, List<DockerDirectoryMapping> mappings, String[] containerArgs) {
+    String		result;
+    ProcessRunner	runner;
+    CircuitBreaker	breaker;
+    RetryPolicy		retry;
+    int			attempt;
+
+    breaker = getCircuitBreaker();
+    retry   = getRetryPolicy();
+    attempt = 0;
+    while (true) {
+      if ((breaker != null) && !breaker.allowRequest())
+	return breaker.toErrorMessage();
+
+      if (pool != null) {
+	try {
+	  m_PooledContainer = pool.acquire(buildPooledContainerOptions(mappings));
+	  m_Pool            = pool;
+	}
+	catch (Exception e) {
+	  if (breaker != null)
+	    breaker.recordFailure();
+	  return "Failed to obtain container from pool: " + e.getMessage();
+	}
+	runner = newExecRunner(m_PooledContainer.getName(), buildContainerCommand(containerArgs));
+      }
+      else {
+	runner = newRunRunner(mappings, containerArgs);
+	try {
+	  m_Endpoint = acquireEndpoint(runner);
+	}
+	catch (Exception e) {
+	  if (breaker != null)
+	    breaker.cancel();
+	  return e.getMessage();
+	}
+      }
+
+      m_Breaker = breaker;
+      result    = executeRunner(runner);
+      if (!m_Blocking && (result == null))
+	break;
+      releaseContainer(runner.isTimedOut());
+      if ((result == null) || m_Stopped || !retry.canRetry(runner, attempt))
+	break;
+      getLogger().warning("Attempt #" + (attempt + 1) + " failed, retrying:\n" + result);
+      if (!retry.backoff(attempt))
+	break;
+      attempt++;
+    }
+
+    return result;
+  }
+
+  /**
+   * Returns the leased container to the pool (if any), releases the
+   * assigned endpoint (if any) and records the outcome with the circuit
+   * breaker (if any).
+   *
+   * @param discard	whether to remove the container from the pool rather than re-using it
+   */
+  protected void releaseContainer(boolean discard) {
+    if (m_Breaker != null) {
+      if (m_Process != null)
+	m_Breaker.record(m_Process);
+      else
+	m_Breaker.cancel();
+      m_Breaker = null;
+    }
+
+    if (m_Endpoint != null) {
+      releaseEndpoint(m_Endpoint, discard ? null : m_Process);
+      m_Endpoint = null;
+    }
+
+    if ((m_Pool == null) || (m_PooledContainer == null))
+      return;
+
+    if (discard)
+      m_Pool.discard(m_PooledContainer);
+    else
+      m_Pool.release(m_PooledContainer);
+    m_Pool            = null;
+    m_PooledContainer = null;
+  }
+
+  /**
+   * Executes the command.
+   *
+   * @param args 	the arguments to append
+   * @return		null if successful, otherwise error message
+   */
+  @Override
+  public String execute(String[] args) {
+    String				result;
+    List<DockerDirectoryMapping>	mappings;
+    String[]				containerArgs;
+    ContainerPool			pool;
+    String				binary;
+
+    m_Executed = false;
+    m_Process       = null;
+    m_PendingOutput = null;
+
+    result = check();
+
+    if (result == null) {
+      binary = getNativeExecutable();
+      if (binary != null) {
+	result = executeNative(binary, args);
+      }
+      else {
+	result = waitForImage();
+	if (result != null)
+	  return result;
+	mappings = addCustomDirMappings(buildDirMappings(), args);
+	try {
+	  containerArgs = buildContainerArgs(mappings, args);
+	}
+	catch (Exception e) {
+	  return e.getMessage();
+	}
+
+	pool = m_Configuration.getPool(m_Connection);
+	if (useEngine() || requiresProcessExecution() || isDistributed() || requiresSupervision())
+	  result = executeDockerProcess(pool, mappings, containerArgs);
+	else if (pool != null)
+	  result = executePooled(pool, mappings, containerArgs);
+	else
+	  result = executeRun(mappings, containerArgs);
+      }
+    }
+
+    m_Executed = true;
+
+    return result;
+  }
+
+  /**
+   * Generates the output from the collected stdout/stderr, using the
+   * output type and formatter.
+   *
+   * @param stdout	the collected stdout
+   * @param stderr	the collected stderr
+   * @return		the formatted output
+   */
+  protected Object formatOutput(String stdout, String stderr) {
+    String	output;
+
+    switch (m_OutputType) {
+      case STDOUT:
+        output = stdout;
+        break;
+      case STDERR:
+        output = stderr;
+        break;
+      default:
+        output = stdout + stderr;
+        break;
+    }
+
+    return m_OutputFormatter.formatOutput(output);
+  }
+
+  /**
+   * Returns whether the command supports batch execution.
+   *
+   * @return		true if supported
+   * @see		#prepareBatchItem(String[])
+   */
+  @Override
+  public boolean supportsBatch() {
+    return true;
+  }
+
+  /**
+   * Prepares the arguments for batch execution, using the current settings
+   * of the command (eg output file).
+   *
+   * @param args	the arguments for a single execution
+   * @return		the batch item
+   * @throws Exception	if checks fail or the container arguments cannot be generated
+   */
+  @Override
+  public BatchItem prepareBatchItem(String[] args) throws Exception {
+    String	msg;
+
+    msg = check();
+    if (msg != null)
+      throw new IllegalStateException(msg);
+
+    return newBatchItem(args);
+  }
+
+  /**
+   * Generates the batch item from the arguments, using the current settings
+   * of the command. Does not perform any checks.
+   *
+   * @param args	the arguments for a single execution
+   * @return		the batch item
+   * @throws Exception	if the container arguments cannot be generated
+   * @see		#prepareBatchItem(String[])
+   */
+  protected BatchItem newBatchItem(String[] args) throws Exception {
+    List<DockerDirectoryMapping>	mappings;
+    String[]				containerArgs;
+    List<String>			command;
+
+    command = buildCommand();
+    if (getNativeExecutable() != null) {
+      mappings      = new ArrayList<>();
+      containerArgs = buildHostArgs(args);
+    }
+    else {
+      mappings      = addCustomDirMappings(buildDirMappings(), args);
+      containerArgs = buildContainerArgs(mappings, args);
+    }
+
+    return new BatchItem(args, mappings, containerArgs, command);
+  }
+
+  /**
+   * Executes the batch items one after the other using the native binary.
+   * The output or error of each item gets stored in the item itself.
+   *
+   * @param binary	the path of the native binary
+   * @param items	the items to execute
+   * @return		always null, as failures are recorded per item
+   */
+  protected String executeNativeBatch(String binary, List<BatchItem> items) {
+    List<String>	cmd;
+    ProcessRunner	runner;
+    ScheduledFuture<?>	watch;
+
+    for (BatchItem item: items) {
+      if (m_Stopped) {
+	item.setError("Execution stopped!");
+	continue;
+      }
+      cmd = toNativeCommand(item.getCommand(), binary);
+      cmd.addAll(Arrays.asList(item.getContainerArgs()));
+      try {
+	runner = newNativeRunner(cmd);
+	addRunning(runner);
+	try {
+	  watch = startSupervised(runner, m_Timeout);
+	  runner.waitFor();
+	  if (watch != null)
+	    watch.cancel(false);
+	}
+	finally {
+	  removeRunning(runner);
+	}
+	if (runner.isTimedOut())
+	  item.setError("Batch item (" + Utils.flatten(item.getArgs(), " ") + ") timed out after " + m_Timeout + "s!\n" + runner.toErrorMessage());
+	else if (!runner.hasSucceeded())
+	  item.setError("Batch item (" + Utils.flatten(item.getArgs(), " ") + ") failed:\n" + runner.toErrorMessage());
+	else
+	  item.setOutput(formatOutput(runner.getStdOut(), runner.getStdErr()));
+      }
+      catch (Exception e) {
+	item.setError("Failed to execute: " + Utils.flatten(cmd, " ") + "\n" + Utils.throwableToString(e));
+      }
+    }
+
+    return null;
+  }
+
+  /**
+   * Executes the batch in a single container ("docker run --rm"). The
+   * directory mappings of the items get merged. The output or error of
+   * each item gets stored in the item itself.
+   * <br>
+   * When using the native backend, the items get executed one after the other.
+   *
+   * @param items	the items to execute
+   * @return		null if the container could be executed, otherwise error message
+   */
+  @Override
+  public String executeBatch(List<BatchItem> items) {
+    String				result;
+    List<DockerDirectoryMapping>	mappings;
+    List<String[]>			containerArgs;
+    Map<String,String>			renamed;
+    ContainerScript			script;
+    List<String>			step;
+    List<String>			cmd;
+    ProcessRunner			runner;
+    List<ScriptStepResult>		steps;
+    String				binary;
+    String				endpoint;
+    String				name;
+    ScheduledFuture<?>			watch;
+    CircuitBreaker			breaker;
+    RetryPolicy				retry;
+    int					attempt;
+    int					i;
+
+    result = check();
+    if (result != null)
+      return result;
+    if (items.isEmpty())
+      return null;
+
+    binary = getNativeExecutable();
+    if (binary != null)
+      return executeNativeBatch(binary, items);
+
+    result = waitForImage();
+    if (result != null) {
+      for (BatchItem item: items)
+	item.setError(result);
+      return result;
+    }
+
+    // merge mappings
+    mappings      = new ArrayList<>();
+    containerArgs = new ArrayList<>();
+    for (BatchItem item: items) {
+      renamed = DirectoryMappingHelper.merge(mappings, item.getMappings());
+      containerArgs.add(DirectoryMappingHelper.rename(item.getContainerArgs(), renamed));
+    }
+
+    // script
+    script = new ContainerScript(false);
+    for (i = 0; i < items.size(); i++) {
+      step = new ArrayList<>(items.get(i).getCommand());
+      step.addAll(Arrays.asList(containerArgs.get(i)));
+      script.addStep(step);
+    }
+
+    // docker run
+    breaker = getCircuitBreaker();
+    retry   = getRetryPolicy();
+    attempt = 0;
+    while (true) {
+      if ((breaker != null) && !breaker.allowRequest()) {
+	result = breaker.toErrorMessage();
+	for (BatchItem item: items)
+	  item.setError(result);
+	return result;
+      }
+
+      if (useEngine()) {
+	runner = newEngineRunRunner(mappings, Arrays.asList(ContainerScript.SHELL), script.toCommand().subList(1, 3));
+      }
+      else {
+	name = newContainerName();
+	cmd  = new ArrayList<>();
+	cmd.add(m_Connection.getAcualBinary());
+	cmd.add("run");
+	cmd.add("--rm");
+	cmd.add("--name");
+	cmd.add(name);
+	addPullOptions(cmd);
+	cmd.addAll(buildContainerOptions(mappings));
+	cmd.add("--entrypoint");
+	cmd.add(ContainerScript.SHELL);
+	cmd.add(m_Configuration.getImage());
+	cmd.addAll(script.toCommand().subList(1, 3));
+	runner = new ProcessRunner(cmd);
+	runner.setContainerName(name);
+      }
+      runner.setLoggingLevel(getLoggingLevel());
+      endpoint = null;
+      try {
+	addRunning(runner);
+	endpoint = acquireEndpoint(runner);
+	watch = startSupervised(runner, m_Timeout * items.size());
+	runner.waitFor();
+	if (watch != null)
+	  watch.cancel(false);
+      }
+      catch (Exception e) {
+	result = "Failed to execute batch: " + e;
+      }
+      finally {
+	removeRunning(runner);
+	releaseEndpoint(endpoint, runner);
+	// runner never got started (eg no healthy endpoint): neither success nor failure
+	if (breaker != null) {
+	  if (runner.getStartTime() == -1)
+	    breaker.cancel();
+	  else
+	    breaker.record(runner);
+	}
+      }
+
+      if (result == null) {
+	if (runner.isTimedOut())
+	  result = "Batch timed out after " + (m_Timeout * items.size()) + "s!\n" + runner.toErrorMessage();
+	else if (runner.isFinished() && (runner.getExitCode() == EndpointBalancer.DAEMON_ERROR))
+	  result = "Failed to execute batch:\n" + runner.toErrorMessage();
+      }
+      if ((result == null) || m_Stopped || !retry.canRetry(runner, attempt))
+	break;
+      getLogger().warning("Batch attempt #" + (attempt + 1) + " failed, retrying:\n" + result);
+      if (!retry.backoff(attempt))
+	break;
+      result = null;
+      attempt++;
+    }
+
+    if ((result != null) && !runner.isFinished()) {
+      for (BatchItem item: items)
+	item.setError(result);
+      return result;
+    }
+
+    // distribute output
+    steps = script.parse(runner.getStdOut(), runner.getStdErr());
+    for (i = 0; i < items.size(); i++) {
+      if (!steps.get(i).isExecuted())
+        items.get(i).setError("Batch item #" + (i+1) + " was not executed!\n" + runner.toErrorMessage());
+      else if (!steps.get(i).hasSucceeded())
+        items.get(i).setError("Batch item #" + (i+1) + " (" + Utils.flatten(items.get(i).getArgs(), " ") + ") failed:\n" + steps.get(i).toErrorMessage());
+      else
+        items.get(i).setOutput(formatOutput(steps.get(i).getStdOut(), steps.get(i).getStdErr()));
+    }
+
+    if (!steps.isEmpty() && !steps.get(0).isExecuted())
+      result = "Failed to execute batch:\n" + runner.toErrorMessage();
+
+    return result;
+  }
+
+  /**
+   * Returns the executor for submitted invocations, instantiates it if necessary.
+   *
+   * @return		the executor
+   */
+  protected synchronized ExecutorService getSubmitExecutor() {
+    if (m_SubmitExecutor == null) {
+      m_SubmitExecutor = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, getClass().getSimpleName() + "-submit");
+        t.setDaemon(true);
+        return t;
+      });
+    }
+    return m_SubmitExecutor;
+  }
+
+  /**
+   * Runs the command for a submitted invocation. Failures caused by the
+   * docker daemon get retried according to the retry policy.
+   *
+   * @param args	the input arguments
+   * @param submitTime	the time of submission (msec)
+   * @param pool	the container pool to use, null if to run a new container
+   * @param containerOptions	the options for the pooled container, null if not pooled
+   * @param factory	creates the runner, receives the name of the pooled container (null if not pooled)
+   * @return		the result
+   */
+  protected ExecutionResult runSubmitted(String[] args, long submitTime, ContainerPool pool, List<String> containerOptions, Function<String,ProcessRunner> factory) {
+    ExecutionResult	result;
+    PooledContainer	container;
+    ProcessRunner	runner;
+    boolean		discard;
+    String		endpoint;
+    ScheduledFuture<?>	watch;
+    CircuitBreaker	breaker;
+    RetryPolicy		retry;
+    int			attempt;
+
+    breaker = getCircuitBreaker();
+    retry   = getRetryPolicy();
+    attempt = 0;
+    while (true) {
+      if ((breaker != null) && !breaker.allowRequest()) {
+	result = new ExecutionResult(args, new ArrayList<>(), submitTime);
+	result.setError(breaker.toErrorMessage());
+	return result;
+      }
+
+      container = null;
+      discard   = false;
+      runner    = null;
+      result    = null;
+      endpoint  = null;
+      try {
+	if (pool != null)
+	  container = pool.acquire(containerOptions);
+	runner = factory.apply((container == null) ? null : container.getName());
+	result = new ExecutionResult(args, runner.getCommand(), submitTime);
+	runner.setLoggingLevel(getLoggingLevel());
+	endpoint = acquireEndpoint(runner);
+	addRunning(runner);
+	try {
+	  watch = startSupervised(runner, m_Timeout);
+	  runner.waitFor();
+	  if (watch != null)
+	    watch.cancel(false);
+	}
+	finally {
+	  removeRunning(runner);
+	}
+	discard = runner.isDestroyed();
+	result.setTimes(runner.getStartTime(), runner.getEndTime());
+	result.setExitCode(runner.getExitCode());
+	result.setRawOutput(runner.getStdOut(), runner.getStdErr());
+	result.setOutput(formatOutput(runner.getStdOut(), runner.getStdErr()));
+	if (runner.isTimedOut())
+	  result.setError("Execution timed out after " + m_Timeout + "s!\n" + runner.toErrorMessage());
+	else if (runner.isDestroyed())
+	  result.setError("Execution stopped!");
+	else if (!runner.hasSucceeded())
+	  result.setError(runner.toErrorMessage());
+      }
+      catch (Exception e) {
+	discard = true;
+	if (result == null)
+	  result = new ExecutionResult(args, (runner == null) ? new ArrayList<>() : runner.getCommand(), submitTime);
+	result.setError("Failed to execute: " + Utils.flatten(result.getCommandLine(), " ") + "\n" + Utils.throwableToString(e));
+      }
+      finally {
+	releaseEndpoint(endpoint, runner);
+	if (container != null) {
+	  if (discard)
+	    pool.discard(container);
+	  else
+	    pool.release(container);
+	}
+	if (breaker != null) {
+	  if (runner != null)
+	    breaker.record(runner);
+	  else
+	    breaker.recordFailure();
+	}
+      }
+
+      if (!result.hasError() || (runner == null) || m_Stopped || !retry.canRetry(runner, attempt))
+	break;
+      getLogger().warning("Attempt #" + (attempt + 1) + " failed, retrying:\n" + result.getError());
+      if (!retry.backoff(attempt))
+	break;
+      attempt++;
+    }
+
+    return result;
+  }
+
+  /**
+   * Prepares the invocation of the command. The directory mappings and
+   * container arguments get determined at this point, i.e., using the
+   * current settings of the command (eg output file). The output gets
+   * formatted with the configured output type and formatter, stdout/stderr
+   * processors are not used.
+   *
+   * @param args	the arguments to append
+   * @return		the invocation, executes the command when called
+   * @throws Exception	if the checks fail or the container arguments cannot be generated
+   */
+  protected Supplier<ExecutionResult> prepareInvocation(final String[] args) throws Exception {
+    String				msg;
+    List<DockerDirectoryMapping>	mappings;
+    String[]				containerArgs;
+    final ContainerPool			pool;
+    final List<String>			containerOptions;
+    final List<String>			cmd;
+    final long				submitTime;
+    String				binary;
+
+    msg = check();
+    if (msg != null)
+      throw new IllegalStateException(msg);
+
+    binary = getNativeExecutable();
+    if (binary != null) {
+      cmd = toNativeCommand(buildCommand(), binary);
+      cmd.addAll(Arrays.asList(buildHostArgs(args)));
+      submitTime = System.currentTimeMillis();
+      return () -> runSubmitted(args, submitTime, null, null, (String container) -> newNativeRunner(cmd));
+    }
+
+    mappings      = addCustomDirMappings(buildDirMappings(), args);
+    containerArgs = buildContainerArgs(mappings, args);
+    cmd           = buildContainerCommand(containerArgs);
+    pool          = m_Configuration.getPool(m_Connection);
+    if (pool != null)
+      containerOptions = buildPooledContainerOptions(mappings);
+    else
+      containerOptions = null;
+    submitTime = System.currentTimeMillis();
+
+    return () -> {
+      ExecutionResult	failed;
+      String		error;
+
+      error = waitForImage();
+      if (error == null)
+	return runSubmitted(args, submitTime, pool, containerOptions, (String container) -> (container == null) ? newRunRunner(mappings, cmd) : newExecRunner(container, cmd));
+      failed = new ExecutionResult(args, cmd, submitTime);
+      failed.setError(error);
+      return failed;
+    };
+  }
+
+  /**
+   * Submits the command for asynchronous execution. The directory mappings
+   * and container arguments get determined at submission time, i.e., using
+   * the current settings of the command (eg output file). Any number of
+   * invocations can be in flight at the same time. The output gets formatted
+   * with the configured output type and formatter, stdout/stderr processors
+   * are not used.
+   *
+   * @param args	the arguments to append
+   * @return		the future result, completes exceptionally if the checks fail
+   * @see		#prepareInvocation(String[])
+   */
+  @Override
+  public CompletableFuture<ExecutionResult> submit(final String[] args) {
+    CompletableFuture<ExecutionResult>	result;
+    Supplier<ExecutionResult>		invocation;
+
+    try {
+      invocation = prepareInvocation(args);
+    }
+    catch (Exception e) {
+      result = new CompletableFuture<>();
+      result.completeExceptionally(e);
+      return result;
+    }
+
+    return CompletableFuture.supplyAsync(invocation, getSubmitExecutor());
+  }
+
+  /**
+   * Stops all submitted/batch invocations that are currently running,
+   * killing their containers immediately.
+   */
+  protected void stopSubmitted() {
+    List<ProcessRunner>	running;
+
+    if (m_Submitted == null)
+      return;
+
+    synchronized (m_Submitted) {
+      running = new ArrayList<>(m_Submitted);
+    }
+    killRunners(running);
+  }
+
+  /**
+   * Returns whether the command is currently running.
+   *
+   * @return		true if running
+   */
+  @Override
+  public boolean isRunning() {
+    if (m_Process != null)
+      return m_Process.isRunning();
+    return (m_DockerCommand != null) && (m_DockerCommand.isRunning());
+  }
+
+  /**
+   * Whether there is any pending output.
+   *
+   * @return		true if output pending
+   */
+  @Override
+  public boolean hasOutput() {
+    if (m_PendingOutput != null) {
+      synchronized (m_PendingOutput) {
+	if (!m_PendingOutput.isEmpty())
+	  return true;
+      }
+    }
+    if ((m_Process != null) && !m_Process.isOutputComplete())
+      return true;
+    return isRunning() || ((m_DockerCommand != null) && m_DockerCommand.hasOutput());
+  }
+
+  /**
+   * Finishes the process once its output has been read completely. In
+   * non-blocking mode, obtains the exit code, reports a time out or
+   * failure (the output has already been forwarded, hence no retries) and
+   * records the outcome with the circuit breaker/endpoint, like the
+   * blocking mode does.
+   */
+  protected void finishProcess() {
+    boolean	timedOut;
+
+    timedOut = false;
+    if (m_Watch != null) {
+      m_Watch.cancel(false);
+      m_Watch = null;
+    }
+
+    if (!m_Blocking && (m_Process != null)) {
+      try {
+	// output is complete, returns immediately
+	m_Process.waitFor();
+      }
+      catch (InterruptedException e) {
+	// ignored
+      }
+      timedOut = m_Process.isTimedOut();
+      if (timedOut)
+	getLogger().severe("Execution timed out after " + m_Timeout + "s!\n" + m_Process.toErrorMessage());
+      else if (!m_Process.isDestroyed() && !m_Process.hasSucceeded())
+	getLogger().severe(m_Process.toErrorMessage());
+    }
+
+    releaseContainer(timedOut);
+  }
+
+  /**
+   * Returns the next output.
+   *
+   * @return		the output, null if none available
+   */
+  @Override
+  public Object output() {
+    Object 	result;
+
+    result = null;
+
+    if (m_PendingOutput != null) {
+      synchronized (m_PendingOutput) {
+	if (!m_PendingOutput.isEmpty())
+	  result = m_PendingOutput.remove(0);
+      }
+      // only release once the readers have reached the end of stdout/stderr
+      if ((m_Process == null) || m_Process.isOutputComplete()) {
+	synchronized (m_PendingOutput) {
+	  if (m_PendingOutput.isEmpty()) {
+	    finishProcess();
+	    m_Process       = null;
+	    m_PendingOutput = null;
+	  }
+	}
+      }
+    }
+    else if (m_DockerCommand != null) {
+      result = m_DockerCommand.output();
+      if (m_DockerCommand.isFinished()) {
+        m_DockerCommand.cleanUp();
+        m_DockerCommand = null;
+        unregisterContainer(false);
+        releaseContainer(false);
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * Stops the execution. Kills the containers immediately.
+   */
+  @Override
+  public void stopExecution() {
+    unregisterContainer(true);
+    if (m_DockerCommand != null)
+      m_DockerCommand.stopExecution();
+    if (m_Process != null)
+      killRunners(Collections.singletonList(m_Process));
+    if (m_Watch != null) {
+      m_Watch.cancel(false);
+      m_Watch = null;
+    }
+    releaseContainer(true);
+    stopSubmitted();
+    m_Stopped = true;
+  }
+
+  /**
+   * Cleans up data structures, frees up memory.
+   */
+  @Override
+  public void cleanUp() {
+    unregisterContainer(true);
+    if (m_DockerCommand != null) {
+      m_DockerCommand.cleanUp();
+      m_DockerCommand = null;
+    }
+    if (m_Process != null) {
+      killRunners(Collections.singletonList(m_Process));
+      m_Process = null;
+    }
+    m_PendingOutput = null;
+    releaseContainer(true);
+    stopSubmitted();
+    if (m_SubmitExecutor != null) {
+      m_SubmitExecutor.shutdown();
+      m_SubmitExecutor = null;
     }
     super.cleanUp();
   }
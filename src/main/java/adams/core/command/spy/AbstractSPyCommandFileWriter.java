@@ -21,14 +21,25 @@
 package adams.core.command.spy;
 
 import adams.core.QuickInfoHelper;
+import adams.core.Utils;
 import adams.core.base.DockerDirectoryMapping;
+import adams.core.command.docker.BatchItem;
+import adams.core.command.docker.ExecutionResult;
+import adams.core.command.docker.JobJournal;
+import adams.core.command.docker.ResultCache;
+import adams.core.command.docker.ScratchArea;
+import adams.core.command.docker.ScratchFile;
 import adams.core.io.FileWriter;
 import adams.core.io.PlaceholderFile;
 import adams.docker.SimpleDockerHelper;
+import adams.flow.standalone.SPyConfiguration;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 /**
  * Ancestor for commands that write to an output file.
@@ -41,9 +52,27 @@ public abstract class AbstractSPyCommandFileWriter
 
   private static final long serialVersionUID = -4318693242709080322L;
 
+  /** the suffixes of known sidecar files of input files (appended to the file name, eg scene.tif.aux.xml). */
+  public static final String[] SIDECAR_SUFFIXES = {".aux.xml", ".ovr", ".msk", ".hdr"};
+
+  /** the extensions of known sidecar files of input files (replacing the extension, eg scene.hdr). */
+  public static final String[] SIDECAR_EXTENSIONS = {".hdr"};
+
   /** the output file. */
   protected PlaceholderFile m_OutputFile;
 
+  /** whether to use the result cache. */
+  protected boolean m_UseCache;
+
+  /** whether to use the job journal. */
+  protected boolean m_UseJournal;
+
+  /** whether to write the output to the scratch area. */
+  protected boolean m_OutputToScratch;
+
+  /** the output file of the current execution (eg in the scratch area), null if the configured one. */
+  protected transient PlaceholderFile m_ActualOutputFile;
+
   /**
    * Adds options to the internal list of options.
    */
@@ -54,6 +83,18 @@ public abstract class AbstractSPyCommandFileWriter
     m_OptionManager.add(
       "output", "outputFile",
       getDefaultOutputFile());
+
+    m_OptionManager.add(
+      "use-cache", "useCache",
+      true);
+
+    m_OptionManager.add(
+      "use-journal", "useJournal",
+      true);
+
+    m_OptionManager.add(
+      "output-to-scratch", "outputToScratch",
+      false);
   }
 
   /**
@@ -94,6 +135,142 @@ public abstract class AbstractSPyCommandFileWriter
     return "The name of the output file.";
   }
 
+  /**
+   * Sets whether to use the result cache (if enabled in the configuration).
+   *
+   * @param value	true if to use
+   */
+  public void setUseCache(boolean value) {
+    m_UseCache = value;
+    reset();
+  }
+
+  /**
+   * Returns whether to use the result cache (if enabled in the configuration).
+   *
+   * @return		true if to use
+   */
+  public boolean getUseCache() {
+    return m_UseCache;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String useCacheTipText() {
+    return "If enabled and the configuration has caching enabled, results get re-used for identical input, executable, options and image; only used in blocking mode.";
+  }
+
+  /**
+   * Sets whether to use the job journal (if enabled in the configuration).
+   *
+   * @param value	true if to use
+   */
+  public void setUseJournal(boolean value) {
+    m_UseJournal = value;
+    reset();
+  }
+
+  /**
+   * Returns whether to use the job journal (if enabled in the configuration).
+   *
+   * @return		true if to use
+   */
+  public boolean getUseJournal() {
+    return m_UseJournal;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String useJournalTipText() {
+    return "If enabled and the configuration has journaling enabled, jobs get recorded in the journal and completed ones get skipped when re-running; only used in blocking or batch mode.";
+  }
+
+  /**
+   * Sets whether to write the output to the scratch area of the configuration.
+   *
+   * @param value	true if to write to the scratch area
+   */
+  public void setOutputToScratch(boolean value) {
+    m_OutputToScratch = value;
+    reset();
+  }
+
+  /**
+   * Returns whether to write the output to the scratch area of the configuration.
+   *
+   * @return		true if to write to the scratch area
+   */
+  public boolean getOutputToScratch() {
+    return m_OutputToScratch;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String outputToScratchTipText() {
+    return "If enabled, the output gets written to the scratch area of the configuration (using the name of the output file, "
+      + "or the input file if the output is a directory) and forwarded as " + ScratchFile.class.getName() + " instead of the console output; "
+      + "the file only gets copied to persistent storage when promoted explicitly; not journaled; only used in blocking or batch mode.";
+  }
+
+  /**
+   * Returns the output file of the current execution.
+   *
+   * @return		the file in the scratch area, otherwise the configured output file
+   */
+  protected PlaceholderFile getActualOutputFile() {
+    if (m_ActualOutputFile != null)
+      return m_ActualOutputFile;
+    return m_OutputFile;
+  }
+
+  /**
+   * Generates a new output file in the scratch area.
+   *
+   * @param args	the input arguments
+   * @return		the file
+   * @throws Exception	if scratch area not available or file cannot be created
+   */
+  protected PlaceholderFile newScratchOutputFile(String[] args) throws Exception {
+    ScratchArea	scratch;
+    String	name;
+
+    scratch = getScratchArea();
+    if (scratch == null)
+      throw new IllegalStateException("Scratch area not enabled in " + SPyConfiguration.class.getName() + "!");
+
+    if (m_OutputFile.isDirectory())
+      name = new PlaceholderFile(args[0]).getName();
+    else
+      name = m_OutputFile.getName();
+
+    return new PlaceholderFile(scratch.newFile(name));
+  }
+
+  /**
+   * Returns the class of objects that it generates.
+   *
+   * @return		the class
+   */
+  @Override
+  public Class generates() {
+    if (m_OutputToScratch)
+      return ScratchFile.class;
+    else
+      return super.generates();
+  }
+
   /**
    * Returns a quick info about the object, which can be displayed in the GUI.
    *
@@ -105,6 +282,7 @@ public abstract class AbstractSPyCommandFileWriter
 
     result = super.getQuickInfo();
     result += QuickInfoHelper.toString(this, "outputFile", m_OutputFile, ", output: ");
+    result += QuickInfoHelper.toString(this, "outputToScratch", m_OutputToScratch, "scratch", ", ");
 
     return result;
   }
@@ -145,25 +323,490 @@ public abstract class AbstractSPyCommandFileWriter
    */
   protected List<DockerDirectoryMapping> addCustomDirMappings(List<DockerDirectoryMapping> mappings, String[] args) {
     List<DockerDirectoryMapping>	result;
-    File 				localDir;
-    String				contDir;
-    DockerDirectoryMapping		mapping;
 
     result = new ArrayList<>(super.addCustomDirMappings(mappings, args));
+    addWorkspaceDirMappings(result, args);
+
+    return result;
+  }
+
+  /**
+   * Adds the mappings for the directories of the input and output file,
+   * located under the workspace directory.
+   *
+   * @param mappings	the mappings to add to
+   * @param args 	the input arguments
+   */
+  protected void addWorkspaceDirMappings(List<DockerDirectoryMapping> mappings, String[] args) {
+    File 			localDir;
+    String			contDir;
+    DockerDirectoryMapping	mapping;
 
     // input file
     localDir = new PlaceholderFile(args[0]).getParentFile();
     contDir  = SimpleDockerHelper.fixPath(getWorkspaceDir() + "/input");
     mapping = new DockerDirectoryMapping(localDir.getAbsolutePath(), contDir);
-    if (!SimpleDockerHelper.addMapping(result, mapping))
+    if (!SimpleDockerHelper.addMapping(mappings, mapping))
       getLogger().warning("Unable to add mapping (for input): " + mapping);
 
-    // output file
-    localDir = m_OutputFile.getParentFile();
-    contDir  = SimpleDockerHelper.fixPath(getWorkspaceDir() + "/output");
-    mapping  = new DockerDirectoryMapping(localDir.getAbsolutePath(), contDir);
-    if (!SimpleDockerHelper.addMapping(result, mapping))
-      getLogger().warning("Unable to add mapping (for output): " + mapping);
+    // output file (the scratch area is already mapped)
+    if ((getScratchArea() == null) || !getScratchArea().contains(getActualOutputFile())) {
+      localDir = getActualOutputFile().getParentFile();
+      contDir  = SimpleDockerHelper.fixPath(getWorkspaceDir() + "/output");
+      mapping  = new DockerDirectoryMapping(localDir.getAbsolutePath(), contDir);
+      if (!SimpleDockerHelper.addMapping(mappings, mapping))
+	getLogger().warning("Unable to add mapping (for output): " + mapping);
+    }
+  }
+
+  /**
+   * Returns the files that make up the input datasets: each input file
+   * followed by its known sidecar files that exist (see {@link #SIDECAR_SUFFIXES}
+   * and {@link #SIDECAR_EXTENSIONS}). The output file never gets included.
+   *
+   * @param args	the input arguments
+   * @return		the files, in the order of the inputs
+   */
+  protected List<File> getCacheInputs(String[] args) {
+    List<File>		result;
+    List<File>		candidates;
+    Set<File>		excluded;
+    File		input;
+    String		base;
+
+    result   = new ArrayList<>();
+    excluded = new HashSet<>();
+    excluded.add(m_OutputFile.getAbsoluteFile());
+    excluded.add(getActualOutputFile().getAbsoluteFile());
+    for (String arg: args) {
+      input = new PlaceholderFile(arg).getAbsoluteFile();
+      result.add(input);
+      excluded.add(input);
+      candidates = new ArrayList<>();
+      for (String suffix: SIDECAR_SUFFIXES)
+	candidates.add(new File(input.getPath() + suffix));
+      base = input.getName();
+      if (base.lastIndexOf('.') > 0) {
+	base = base.substring(0, base.lastIndexOf('.'));
+	for (String ext: SIDECAR_EXTENSIONS)
+	  candidates.add(new File(input.getParentFile(), base + ext));
+      }
+      for (File candidate: candidates) {
+	if (candidate.isFile() && !excluded.contains(candidate)) {
+	  result.add(candidate);
+	  excluded.add(candidate);
+	}
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * Generates the key for the result cache from the content of all the input
+   * files (and their sidecar files), the executable, the options, the output format (extension) and
+   * the digest of the image (or the native binary).
+   *
+   * @param args	the input arguments
+   * @return		the key, null if the result cannot be cached
+   * @throws IOException	if hashing of an input file fails
+   */
+  protected String getCacheKey(String[] args) throws IOException {
+    List<String>	parts;
+    String		identity;
+    String		binary;
+    String		ext;
+
+    binary = getNativeExecutable();
+    if (binary != null)
+      identity = "native:" + binary + ":" + new File(binary).lastModified();
+    else
+      identity = m_Configuration.getImageDigest(m_Connection);
+    if (identity == null)
+      return null;
+    for (String arg: args) {
+      if (!new PlaceholderFile(arg).isFile())
+	return null;
+    }
+
+    ext = m_OutputFile.getName();
+    ext = (ext.lastIndexOf('.') > -1) ? ext.substring(ext.lastIndexOf('.')) : "";
+
+    parts = new ArrayList<>();
+    parts.add(getClass().getName());
+    parts.add(Utils.flatten(buildCommand(), " "));
+    parts.add(ext);
+    parts.add(identity);
+    for (File file: getCacheInputs(args)) {
+      parts.add(file.getName());
+      parts.add(ResultCache.hash(file));
+    }
+
+    return ResultCache.hash(parts.toArray(new String[0]));
+  }
+
+  /**
+   * Generates the key for the job journal from the command, all the input
+   * files (path, size and timestamp) and the output file.
+   *
+   * @param args	the input arguments
+   * @return		the key
+   */
+  protected String getJournalKey(String[] args) {
+    List<String>	parts;
+    File		input;
+
+    parts = new ArrayList<>();
+    parts.add(getClass().getName());
+    parts.add(Utils.flatten(buildCommand(), " "));
+    for (String arg: args) {
+      input = new PlaceholderFile(arg).getAbsoluteFile();
+      parts.add(input.getPath());
+      parts.add("" + input.length());
+      parts.add("" + input.lastModified());
+    }
+    parts.add(m_OutputFile.getAbsolutePath());
+
+    return JobJournal.key(parts.toArray(new String[0]));
+  }
+
+  /**
+   * Returns the job journal to use. Output in the scratch area does not
+   * survive the flow, hence does not get journaled.
+   *
+   * @return		the journal, null if not journaling
+   */
+  protected JobJournal getJournal() {
+    if (!m_UseJournal || m_OutputToScratch || (m_Configuration == null))
+      return null;
+    return m_Configuration.getJournal();
+  }
+
+  /**
+   * Executes the command (blocking), re-using the cached result if available.
+   * On a cache miss, the command gets executed and its result stored in the
+   * cache.
+   *
+   * @param cache	the cache to use, null if not caching
+   * @param args	the arguments to append
+   * @return		the result
+   * @throws Exception	if execution fails
+   */
+  protected ExecutionResult invoke(ResultCache cache, String[] args) throws Exception {
+    ExecutionResult	result;
+    String		key;
+    ResultCache.Entry	entry;
+    List<File>		sidecars;
+    long		start;
+
+    key   = null;
+    entry = null;
+    if (cache != null) {
+      try {
+	key = getCacheKey(args);
+      }
+      catch (Exception e) {
+	getLogger().warning("Failed to generate cache key, not caching: " + e);
+      }
+      entry = (key == null) ? null : cache.lookup(key);
+    }
+
+    if (entry != null) {
+      result = new ExecutionResult(args, new ArrayList<>(), System.currentTimeMillis());
+      try {
+	ResultCache.materialize(entry, getActualOutputFile().getAbsoluteFile());
+	result.setRawOutput(entry.getStdOut(), entry.getStdErr());
+	result.setOutput(formatOutput(entry.getStdOut(), entry.getStdErr()));
+      }
+      catch (Exception e) {
+	result.setError("Failed to materialize cached output " + entry.getOutputFile() + " as " + getActualOutputFile() + ": " + e);
+      }
+      return result;
+    }
+
+    // file systems may only store seconds
+    start  = (System.currentTimeMillis() / 1000) * 1000;
+    result = prepareInvocation(args).get();
+    if (!result.hasError() && (key != null) && getActualOutputFile().isFile()) {
+      try {
+	// only sidecar files written by the command, not eg the ones of an input in the same directory
+	sidecars = ResultCache.findSidecars(getActualOutputFile().getAbsoluteFile());
+	sidecars.removeIf((File f) -> f.lastModified() < start);
+	cache.store(key, getActualOutputFile().getAbsoluteFile(), sidecars, result.getStdOut(), result.getStdErr());
+      }
+      catch (Exception e) {
+	getLogger().warning("Failed to store result in cache: " + e);
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * Executes the command in blocking mode, using the result cache and/or
+   * job journal. Jobs that the journal lists as completed (with intact
+   * output) get skipped, output left behind by incomplete jobs gets removed
+   * before re-executing them.
+   *
+   * @param cache	the cache to use, null if not caching
+   * @param journal	the journal to use, null if not journaling
+   * @param args	the arguments to append
+   * @return		null if successful, otherwise error message
+   */
+  protected String executeManaged(ResultCache cache, JobJournal journal, String[] args) {
+    String		result;
+    String		key;
+    File		input;
+    File		output;
+    JobJournal.Entry	previous;
+    ExecutionResult	exec;
+
+    m_Executed      = false;
+    m_Process       = null;
+    m_PendingOutput = null;
+    key             = null;
+    input           = null;
+    output          = null;
+    exec            = null;
+
+    result = check();
+
+    // only regular files get journaled
+    if ((journal != null) && m_OutputFile.getAbsoluteFile().isDirectory()) {
+      if (isLoggingEnabled())
+	getLogger().info("Output is a directory, not journaling: " + m_OutputFile);
+      journal = null;
+    }
+
+    if ((result == null) && (journal != null)) {
+      key      = getJournalKey(args);
+      input    = new PlaceholderFile(args[0]).getAbsoluteFile();
+      output   = m_OutputFile.getAbsoluteFile();
+      previous = journal.lookup(key);
+      if (journal.isIntact(previous, m_Configuration.getJournalVerify())) {
+	if (isLoggingEnabled())
+	  getLogger().info("Skipping completed job (journal): " + previous);
+	m_PendingOutput = new ArrayList<>();
+	m_PendingOutput.add(formatOutput(previous.getStdOut(), previous.getStdErr()));
+	m_Executed = true;
+	return null;
+      }
+      journal.removePartialOutput(previous, output);
+      journal.running(key, input, output);
+    }
+
+    if ((result == null) && (getNativeExecutable() == null))
+      result = waitForImage();
+
+    if (result == null) {
+      try {
+	exec = invoke(cache, args);
+	if (exec.hasError()) {
+	  result = exec.getError();
+	}
+	else {
+	  m_PendingOutput = new ArrayList<>();
+	  m_PendingOutput.add(exec.getOutput());
+	}
+      }
+      catch (Exception e) {
+	result = "Failed to execute: " + Utils.throwableToString(e);
+      }
+    }
+
+    if (key != null) {
+      if (result == null)
+	journal.done(key, input, output, exec.getStdOut(), exec.getStdErr());
+      else
+	journal.failed(key, input, output, result);
+    }
+
+    m_Executed = true;
+
+    return result;
+  }
+
+  /**
+   * Executes the command in blocking mode, writing the output to the scratch
+   * area. The generated file gets forwarded as {@link ScratchFile} instead
+   * of the console output.
+   *
+   * @param cache	the cache to use, null if not caching
+   * @param args	the arguments to append
+   * @return		null if successful, otherwise error message
+   */
+  protected String executeScratch(ResultCache cache, String[] args) {
+    String	result;
+
+    if (!m_Blocking)
+      return "Writing the output to the scratch area requires blocking mode!";
+
+    try {
+      m_ActualOutputFile = newScratchOutputFile(args);
+    }
+    catch (Exception e) {
+      return "Failed to generate output file in scratch area: " + Utils.throwableToString(e);
+    }
+
+    try {
+      result = executeManaged(cache, null, args);
+      if (result == null) {
+	m_PendingOutput = new ArrayList<>();
+	m_PendingOutput.add(new ScratchFile(m_ActualOutputFile));
+      }
+      else {
+	new ScratchFile(m_ActualOutputFile).release();
+      }
+    }
+    finally {
+      m_ActualOutputFile = null;
+    }
+
+    return result;
+  }
+
+  /**
+   * Executes the command. Uses the result cache and job journal in blocking
+   * mode, if enabled.
+   *
+   * @param args 	the arguments to append
+   * @return		null if successful, otherwise error message
+   */
+  @Override
+  public String execute(String[] args) {
+    ResultCache		cache;
+    JobJournal		journal;
+
+    cache   = null;
+    journal = null;
+    if (m_Blocking && (m_Configuration != null)) {
+      if (m_UseCache)
+	cache = m_Configuration.getCache();
+      journal = getJournal();
+    }
+
+    if (m_OutputToScratch)
+      return executeScratch(cache, args);
+    else if ((cache == null) && (journal == null))
+      return super.execute(args);
+    else
+      return executeManaged(cache, journal, args);
+  }
+
+  /**
+   * Prepares the arguments for batch execution, using the current settings
+   * of the command (eg output file). Records the item as pending in the
+   * job journal (if journaling).
+   *
+   * @param args	the arguments for a single execution
+   * @return		the batch item
+   * @throws Exception	if checks fail or the container arguments cannot be generated
+   */
+  @Override
+  public BatchItem prepareBatchItem(String[] args) throws Exception {
+    BatchItem	result;
+    JobJournal	journal;
+    String	key;
+
+    if (m_OutputToScratch) {
+      m_ActualOutputFile = newScratchOutputFile(args);
+      try {
+	result = super.prepareBatchItem(args);
+	result.setScratchFile(new ScratchFile(m_ActualOutputFile));
+      }
+      finally {
+	m_ActualOutputFile = null;
+      }
+      return result;
+    }
+
+    result  = super.prepareBatchItem(args);
+    journal = getJournal();
+    // only regular files get journaled
+    if ((journal != null) && !m_OutputFile.getAbsoluteFile().isDirectory()) {
+      key = getJournalKey(args);
+      result.setJournal(key, m_OutputFile.getAbsoluteFile());
+      if (!journal.isIntact(journal.lookup(key), false))
+	journal.pending(key, new PlaceholderFile(args[0]).getAbsoluteFile(), m_OutputFile.getAbsoluteFile());
+    }
+
+    return result;
+  }
+
+  /**
+   * Forwards the output files in the scratch area of the successful items
+   * instead of the console output, removes the ones of the failed items.
+   *
+   * @param items	the executed items
+   */
+  protected void forwardScratchFiles(List<BatchItem> items) {
+    for (BatchItem item: items) {
+      if (item.getScratchFile() == null)
+	continue;
+      if (!item.hasError() && item.getScratchFile().exists()) {
+	item.setOutput(item.getScratchFile());
+      }
+      else {
+	if (!item.hasError())
+	  item.setError("No output generated in scratch area: " + item.getScratchFile());
+	item.getScratchFile().release();
+      }
+    }
+  }
+
+  /**
+   * Executes the batch. Items that the job journal lists as completed (with
+   * intact output) get skipped, the state of the others gets recorded.
+   * Output in the scratch area gets forwarded as {@link ScratchFile}.
+   *
+   * @param items	the items to execute
+   * @return		null if the container could be executed, otherwise error message
+   */
+  @Override
+  public String executeBatch(List<BatchItem> items) {
+    String		result;
+    JobJournal		journal;
+    JobJournal.Entry	previous;
+    List<BatchItem>	todo;
+    File		input;
+
+    journal = getJournal();
+    if (journal == null) {
+      result = super.executeBatch(items);
+      forwardScratchFiles(items);
+      return result;
+    }
+
+    todo = new ArrayList<>();
+    for (BatchItem item: items) {
+      if (item.getJournalKey() == null) {
+	todo.add(item);
+	continue;
+      }
+      previous = journal.lookup(item.getJournalKey());
+      if (journal.isIntact(previous, m_Configuration.getJournalVerify())) {
+	if (isLoggingEnabled())
+	  getLogger().info("Skipping completed job (journal): " + previous);
+	item.setOutput(formatOutput(previous.getStdOut(), previous.getStdErr()));
+      }
+      else {
+	journal.removePartialOutput(previous, item.getOutputFile());
+	journal.running(item.getJournalKey(), new PlaceholderFile(item.getArgs()[0]).getAbsoluteFile(), item.getOutputFile());
+	todo.add(item);
+      }
+    }
+
+    result = todo.isEmpty() ? null : super.executeBatch(todo);
+
+    for (BatchItem item: todo) {
+      if (item.getJournalKey() == null)
+	continue;
+      input = new PlaceholderFile(item.getArgs()[0]).getAbsoluteFile();
+      if (item.hasError())
+	journal.failed(item.getJournalKey(), input, item.getOutputFile(), item.getError());
+      else
+	journal.done(item.getJournalKey(), input, item.getOutputFile(), null, null);
+    }
 
     return result;
   }
@@ -20,10 +20,6 @@
 
 package adams.core.command.spy;
 
-import adams.core.base.DockerDirectoryMapping;
-import adams.docker.SimpleDockerHelper;
-
-import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -61,22 +57,21 @@ public class EnviToRGB
   }
 
   /**
-   * Builds the container arguments from the input arguments and converts them to container paths.
+   * Builds the arguments from the input arguments, using local paths.
    *
-   * @param mappings	the mappings to use
    * @param args	the args to process
-   * @return		the generated container args
-   * @throws IOException        if converting of a path fails
+   * @return		the generated args
    */
-  protected String[] buildContainerArgs(List<DockerDirectoryMapping> mappings, String[] args) throws IOException {
-    List<String>	newArgs;
+  @Override
+  protected String[] buildHostArgs(String[] args) {
+    List<String>	result;
 
-    newArgs = new ArrayList<>();
-    newArgs.add("-i");
-    newArgs.add(args[0]);
-    newArgs.add("-o");
-    newArgs.add(m_OutputFile.getAbsolutePath());
+    result = new ArrayList<>();
+    result.add("-i");
+    result.add(args[0]);
+    result.add("-o");
+    result.add(getActualOutputFile().getAbsolutePath());
 
-    return SimpleDockerHelper.toContainerPaths(mappings, newArgs.toArray(new String[0]));
+    return result.toArray(new String[0]);
   }
 }
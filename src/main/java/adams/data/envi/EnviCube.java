@@ -0,0 +1,845 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * EnviCube.java
+ * Copyright (C) 2023 University of Waikato, Hamilton, New Zealand
+ */
+
+package adams.data.envi;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Provides access to the raw data of an ENVI file (BSQ, BIL or BIP) via
+ * memory mapping. Since a single mapping is limited to 2GB, the data gets
+ * mapped in chunks that are aligned to the element size.
+ * <br>
+ * Band data is returned in row-major order (line * samples + sample).
+ * Integer data types can be read exactly (without conversion to floating
+ * point) via the long accessors. For complex data types, the float/double
+ * accessors return the real part, the imaginary part is available via the
+ * imaginary accessors.
+ * <br>
+ * Instances are thread-safe for reading.
+ *
+ * @author fracpete (fracpete at waikato dot ac dot nz)
+ */
+public class EnviCube
+  implements AutoCloseable {
+
+  /** the maximum size of a mapped chunk. */
+  public static final long MAX_CHUNK_SIZE = Integer.MAX_VALUE;
+
+  /** the header. */
+  protected EnviHeader m_Header;
+
+  /** the data file. */
+  protected File m_DataFile;
+
+  /** the file channel. */
+  protected FileChannel m_Channel;
+
+  /** the mapped chunks. */
+  protected ByteBuffer[] m_Chunks;
+
+  /** the size of a chunk in bytes. */
+  protected long m_ChunkSize;
+
+  /** the number of samples. */
+  protected int m_Samples;
+
+  /** the number of lines. */
+  protected int m_Lines;
+
+  /** the number of bands. */
+  protected int m_Bands;
+
+  /** the data type. */
+  protected EnviDataType m_DataType;
+
+  /** the size of an element in bytes. */
+  protected int m_ElementSize;
+
+  /** the interleave. */
+  protected EnviInterleave m_Interleave;
+
+  /** the byte order. */
+  protected ByteOrder m_ByteOrder;
+
+  /**
+   * Maps the data file described by the header.
+   *
+   * @param header	the header
+   * @param dataFile	the data file
+   * @throws IOException	if the header is invalid, the data file too small or mapping fails
+   */
+  public EnviCube(EnviHeader header, File dataFile) throws IOException {
+    String	msg;
+    long	offset;
+    long	total;
+    long	size;
+    int		numChunks;
+    int		i;
+
+    msg = header.check();
+    if (msg != null)
+      throw new IOException("Invalid ENVI header" + (header.getFile() != null ? " " + header.getFile() : "") + ": " + msg);
+
+    m_Header      = header;
+    m_DataFile    = dataFile;
+    m_Samples     = header.getSamples();
+    m_Lines       = header.getLines();
+    m_Bands       = header.getBands();
+    m_DataType    = header.getDataType();
+    m_ElementSize = m_DataType.getSize();
+    m_Interleave  = header.getInterleave();
+    m_ByteOrder   = header.getByteOrder();
+    m_ChunkSize   = (MAX_CHUNK_SIZE / m_ElementSize) * m_ElementSize;
+
+    offset = header.getHeaderOffset();
+    total  = (long) m_Samples * m_Lines * m_Bands * m_ElementSize;
+
+    m_Channel = FileChannel.open(dataFile.toPath(), StandardOpenOption.READ);
+    try {
+      if (m_Channel.size() < offset + total)
+	throw new IOException("Data file " + dataFile + " too small, expected " + (offset + total) + " bytes but found " + m_Channel.size() + "!");
+
+      numChunks = (int) ((total + m_ChunkSize - 1) / m_ChunkSize);
+      m_Chunks  = new ByteBuffer[numChunks];
+      for (i = 0; i < numChunks; i++) {
+	size        = Math.min(m_ChunkSize, total - i * m_ChunkSize);
+	m_Chunks[i] = m_Channel.map(FileChannel.MapMode.READ_ONLY, offset + i * m_ChunkSize, size);
+	m_Chunks[i].order(m_ByteOrder);
+      }
+    }
+    catch (IOException e) {
+      m_Channel.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Returns the header.
+   *
+   * @return		the header
+   */
+  public EnviHeader getHeader() {
+    return m_Header;
+  }
+
+  /**
+   * Returns the data file.
+   *
+   * @return		the file
+   */
+  public File getDataFile() {
+    return m_DataFile;
+  }
+
+  /**
+   * Returns the number of samples (columns).
+   *
+   * @return		the samples
+   */
+  public int getSamples() {
+    return m_Samples;
+  }
+
+  /**
+   * Returns the number of lines (rows).
+   *
+   * @return		the lines
+   */
+  public int getLines() {
+    return m_Lines;
+  }
+
+  /**
+   * Returns the number of bands.
+   *
+   * @return		the bands
+   */
+  public int getBands() {
+    return m_Bands;
+  }
+
+  /**
+   * Returns the data type.
+   *
+   * @return		the type
+   */
+  public EnviDataType getDataType() {
+    return m_DataType;
+  }
+
+  /**
+   * Returns the interleave.
+   *
+   * @return		the interleave
+   */
+  public EnviInterleave getInterleave() {
+    return m_Interleave;
+  }
+
+  /**
+   * Returns whether the cube is still open.
+   *
+   * @return		true if open
+   */
+  public boolean isOpen() {
+    return (m_Channel != null) && m_Channel.isOpen();
+  }
+
+  /**
+   * Checks the coordinates.
+   *
+   * @param line	the line
+   * @param sample	the sample
+   * @param band	the band
+   */
+  protected void check(int line, int sample, int band) {
+    if (m_Chunks == null)
+      throw new IllegalStateException("Cube already closed: " + m_DataFile);
+    if ((line < 0) || (line >= m_Lines))
+      throw new IndexOutOfBoundsException("Invalid line: " + line + " (lines: " + m_Lines + ")");
+    if ((sample < 0) || (sample >= m_Samples))
+      throw new IndexOutOfBoundsException("Invalid sample: " + sample + " (samples: " + m_Samples + ")");
+    if ((band < 0) || (band >= m_Bands))
+      throw new IndexOutOfBoundsException("Invalid band: " + band + " (bands: " + m_Bands + ")");
+  }
+
+  /**
+   * Returns the element index for the coordinates.
+   *
+   * @param line	the line
+   * @param sample	the sample
+   * @param band	the band
+   * @return		the element index
+   */
+  protected long index(int line, int sample, int band) {
+    switch (m_Interleave) {
+      case BSQ:
+	return ((long) band * m_Lines + line) * m_Samples + sample;
+      case BIL:
+	return ((long) line * m_Bands + band) * m_Samples + sample;
+      case BIP:
+	return ((long) line * m_Samples + sample) * m_Bands + band;
+      default:
+	throw new IllegalStateException("Unhandled interleave: " + m_Interleave);
+    }
+  }
+
+  /**
+   * Reads the element as double.
+   *
+   * @param element	the element index
+   * @return		the value
+   */
+  protected double read(long element) {
+    ByteBuffer	buffer;
+    long	pos;
+    int		offset;
+    long	value;
+
+    pos    = element * m_ElementSize;
+    buffer = m_Chunks[(int) (pos / m_ChunkSize)];
+    offset = (int) (pos % m_ChunkSize);
+
+    switch (m_DataType) {
+      case BYTE:
+	return buffer.get(offset) & 0xFF;
+      case INT16:
+	return buffer.getShort(offset);
+      case UINT16:
+	return buffer.getShort(offset) & 0xFFFF;
+      case INT32:
+	return buffer.getInt(offset);
+      case UINT32:
+	return buffer.getInt(offset) & 0xFFFFFFFFL;
+      case FLOAT32:
+      case COMPLEX64:
+	return buffer.getFloat(offset);
+      case FLOAT64:
+      case COMPLEX128:
+	return buffer.getDouble(offset);
+      case INT64:
+	return buffer.getLong(offset);
+      case UINT64:
+	value = buffer.getLong(offset);
+	if (value >= 0)
+	  return value;
+	return (double) (value >>> 1) * 2.0 + (value & 1);
+      default:
+	throw new IllegalStateException("Unhandled data type: " + m_DataType);
+    }
+  }
+
+  /**
+   * Reads the element of an integer data type as long. Unsigned 64-bit
+   * values are returned as is (ie two's complement, see {@link Long#toUnsignedString(long)}).
+   *
+   * @param element	the element index
+   * @return		the value
+   * @throws IllegalStateException	if not an integer data type
+   */
+  protected long readLong(long element) {
+    ByteBuffer	buffer;
+    long	pos;
+    int		offset;
+
+    pos    = element * m_ElementSize;
+    buffer = m_Chunks[(int) (pos / m_ChunkSize)];
+    offset = (int) (pos % m_ChunkSize);
+
+    switch (m_DataType) {
+      case BYTE:
+	return buffer.get(offset) & 0xFF;
+      case INT16:
+	return buffer.getShort(offset);
+      case UINT16:
+	return buffer.getShort(offset) & 0xFFFF;
+      case INT32:
+	return buffer.getInt(offset);
+      case UINT32:
+	return buffer.getInt(offset) & 0xFFFFFFFFL;
+      case INT64:
+      case UINT64:
+	return buffer.getLong(offset);
+      default:
+	throw new IllegalStateException("Not an integer data type: " + m_DataType);
+    }
+  }
+
+  /**
+   * Reads the imaginary part of the element.
+   *
+   * @param element	the element index
+   * @return		the imaginary part, 0 if not a complex data type
+   */
+  protected double readImaginary(long element) {
+    ByteBuffer	buffer;
+    long	pos;
+    int		offset;
+
+    pos    = element * m_ElementSize;
+    buffer = m_Chunks[(int) (pos / m_ChunkSize)];
+    offset = (int) (pos % m_ChunkSize);
+
+    switch (m_DataType) {
+      case COMPLEX64:
+	return buffer.getFloat(offset + 4);
+      case COMPLEX128:
+	return buffer.getDouble(offset + 8);
+      default:
+	return 0.0;
+    }
+  }
+
+  /**
+   * Reads a run of elements into the array.
+   *
+   * @param start	the index of the first element
+   * @param count	the number of elements to read
+   * @param stride	the distance between elements
+   * @param dest	the array to store the values in
+   * @param offset	the offset in the array
+   */
+  protected void readRun(long start, int count, long stride, float[] dest, int offset) {
+    ByteBuffer	buffer;
+    long	pos;
+    int		chunk;
+    int		avail;
+    int		n;
+    int		i;
+
+    // bulk copy of contiguous floats
+    if ((stride == 1) && (m_DataType == EnviDataType.FLOAT32)) {
+      i = 0;
+      while (i < count) {
+	pos    = (start + i) * m_ElementSize;
+	chunk  = (int) (pos / m_ChunkSize);
+	buffer = m_Chunks[chunk].duplicate().order(m_ByteOrder);
+	buffer.position((int) (pos % m_ChunkSize));
+	avail  = buffer.remaining() / m_ElementSize;
+	n      = Math.min(avail, count - i);
+	buffer.asFloatBuffer().get(dest, offset + i, n);
+	i += n;
+      }
+      return;
+    }
+
+    for (i = 0; i < count; i++)
+      dest[offset + i] = (float) read(start + i * stride);
+  }
+
+  /**
+   * Reads a run of elements into the array.
+   *
+   * @param start	the index of the first element
+   * @param count	the number of elements to read
+   * @param stride	the distance between elements
+   * @param dest	the array to store the values in
+   * @param offset	the offset in the array
+   */
+  protected void readRun(long start, int count, long stride, double[] dest, int offset) {
+    ByteBuffer	buffer;
+    long	pos;
+    int		chunk;
+    int		avail;
+    int		n;
+    int		i;
+
+    // bulk copy of contiguous doubles
+    if ((stride == 1) && (m_DataType == EnviDataType.FLOAT64)) {
+      i = 0;
+      while (i < count) {
+	pos    = (start + i) * m_ElementSize;
+	chunk  = (int) (pos / m_ChunkSize);
+	buffer = m_Chunks[chunk].duplicate().order(m_ByteOrder);
+	buffer.position((int) (pos % m_ChunkSize));
+	avail  = buffer.remaining() / m_ElementSize;
+	n      = Math.min(avail, count - i);
+	buffer.asDoubleBuffer().get(dest, offset + i, n);
+	i += n;
+      }
+      return;
+    }
+
+    for (i = 0; i < count; i++)
+      dest[offset + i] = read(start + i * stride);
+  }
+
+  /**
+   * Reads a run of elements of an integer data type into the array.
+   *
+   * @param start	the index of the first element
+   * @param count	the number of elements to read
+   * @param stride	the distance between elements
+   * @param dest	the array to store the values in
+   * @param offset	the offset in the array
+   * @throws IllegalStateException	if not an integer data type
+   */
+  protected void readRun(long start, int count, long stride, long[] dest, int offset) {
+    ByteBuffer	buffer;
+    long	pos;
+    int		chunk;
+    int		avail;
+    int		n;
+    int		i;
+
+    checkInteger();
+
+    // bulk copy of contiguous longs
+    if ((stride == 1) && ((m_DataType == EnviDataType.INT64) || (m_DataType == EnviDataType.UINT64))) {
+      i = 0;
+      while (i < count) {
+	pos    = (start + i) * m_ElementSize;
+	chunk  = (int) (pos / m_ChunkSize);
+	buffer = m_Chunks[chunk].duplicate().order(m_ByteOrder);
+	buffer.position((int) (pos % m_ChunkSize));
+	avail  = buffer.remaining() / m_ElementSize;
+	n      = Math.min(avail, count - i);
+	buffer.asLongBuffer().get(dest, offset + i, n);
+	i += n;
+      }
+      return;
+    }
+
+    for (i = 0; i < count; i++)
+      dest[offset + i] = readLong(start + i * stride);
+  }
+
+  /**
+   * Reads a run of imaginary parts into the array.
+   *
+   * @param start	the index of the first element
+   * @param count	the number of elements to read
+   * @param stride	the distance between elements
+   * @param dest	the array to store the values in
+   * @param offset	the offset in the array
+   */
+  protected void readImaginaryRun(long start, int count, long stride, double[] dest, int offset) {
+    int		i;
+
+    for (i = 0; i < count; i++)
+      dest[offset + i] = readImaginary(start + i * stride);
+  }
+
+  /**
+   * Returns whether the data type is an integer one.
+   *
+   * @return		true if integer type
+   */
+  public boolean isInteger() {
+    switch (m_DataType) {
+      case FLOAT32:
+      case FLOAT64:
+      case COMPLEX64:
+      case COMPLEX128:
+	return false;
+      default:
+	return true;
+    }
+  }
+
+  /**
+   * Returns whether the data type is a complex one.
+   *
+   * @return		true if complex type
+   */
+  public boolean isComplex() {
+    return m_DataType.isComplex();
+  }
+
+  /**
+   * Ensures that the data type is an integer one.
+   *
+   * @throws IllegalStateException	if not an integer data type
+   */
+  protected void checkInteger() {
+    if (!isInteger())
+      throw new IllegalStateException("Not an integer data type: " + m_DataType);
+  }
+
+  /**
+   * Returns the value at the specified location.
+   *
+   * @param line	the line
+   * @param sample	the sample
+   * @param band	the band
+   * @return		the value
+   */
+  public double getDouble(int line, int sample, int band) {
+    check(line, sample, band);
+    return read(index(line, sample, band));
+  }
+
+  /**
+   * Returns the value at the specified location.
+   *
+   * @param line	the line
+   * @param sample	the sample
+   * @param band	the band
+   * @return		the value
+   */
+  public float getFloat(int line, int sample, int band) {
+    return (float) getDouble(line, sample, band);
+  }
+
+  /**
+   * Returns the exact value at the specified location (integer data types only).
+   *
+   * @param line	the line
+   * @param sample	the sample
+   * @param band	the band
+   * @return		the value
+   * @throws IllegalStateException	if not an integer data type
+   * @see		#readLong(long)
+   */
+  public long getLong(int line, int sample, int band) {
+    check(line, sample, band);
+    return readLong(index(line, sample, band));
+  }
+
+  /**
+   * Returns the imaginary part of the value at the specified location.
+   *
+   * @param line	the line
+   * @param sample	the sample
+   * @param band	the band
+   * @return		the imaginary part, 0 if not a complex data type
+   */
+  public double getImaginary(int line, int sample, int band) {
+    check(line, sample, band);
+    return readImaginary(index(line, sample, band));
+  }
+
+  /**
+   * Checks the size of the destination array.
+   *
+   * @param length	the length of the array
+   * @param required	the required length
+   */
+  protected void checkLength(int length, long required) {
+    if (length < required)
+      throw new IllegalArgumentException("Array too small, requires " + required + " elements but has only " + length + "!");
+  }
+
+  /**
+   * Reads the band into the array (row-major, line * samples + sample).
+   *
+   * @param band	the band to read
+   * @param dest	the array to store the values in, requires samples * lines elements
+   */
+  public void readBand(int band, float[] dest) {
+    int		line;
+
+    check(0, 0, band);
+    checkLength(dest.length, (long) m_Samples * m_Lines);
+    switch (m_Interleave) {
+      case BSQ:
+	readRun(index(0, 0, band), m_Samples * m_Lines, 1, dest, 0);
+	break;
+      default:
+	for (line = 0; line < m_Lines; line++)
+	  readLine(line, band, dest, line * m_Samples);
+	break;
+    }
+  }
+
+  /**
+   * Reads the band into the array (row-major, line * samples + sample).
+   *
+   * @param band	the band to read
+   * @param dest	the array to store the values in, requires samples * lines elements
+   */
+  public void readBand(int band, double[] dest) {
+    int		line;
+
+    check(0, 0, band);
+    checkLength(dest.length, (long) m_Samples * m_Lines);
+    switch (m_Interleave) {
+      case BSQ:
+	readRun(index(0, 0, band), m_Samples * m_Lines, 1, dest, 0);
+	break;
+      default:
+	for (line = 0; line < m_Lines; line++)
+	  readLine(line, band, dest, line * m_Samples);
+	break;
+    }
+  }
+
+  /**
+   * Reads the band of an integer data type into the array (row-major,
+   * line * samples + sample).
+   *
+   * @param band	the band to read
+   * @param dest	the array to store the values in, requires samples * lines elements
+   * @throws IllegalStateException	if not an integer data type
+   */
+  public void readBand(int band, long[] dest) {
+    int		line;
+
+    check(0, 0, band);
+    checkLength(dest.length, (long) m_Samples * m_Lines);
+    switch (m_Interleave) {
+      case BSQ:
+	readRun(index(0, 0, band), m_Samples * m_Lines, 1, dest, 0);
+	break;
+      default:
+	for (line = 0; line < m_Lines; line++)
+	  readLine(line, band, dest, line * m_Samples);
+	break;
+    }
+  }
+
+  /**
+   * Reads the imaginary parts of the band into the array (row-major,
+   * line * samples + sample).
+   *
+   * @param band	the band to read
+   * @param dest	the array to store the values in, requires samples * lines elements
+   */
+  public void readBandImaginary(int band, double[] dest) {
+    int		line;
+
+    check(0, 0, band);
+    checkLength(dest.length, (long) m_Samples * m_Lines);
+    for (line = 0; line < m_Lines; line++)
+      readImaginaryRun(index(line, 0, band), m_Samples, sampleStride(), dest, line * m_Samples);
+  }
+
+  /**
+   * Returns the band (row-major, line * samples + sample).
+   *
+   * @param band	the band to read
+   * @return		the values
+   */
+  public float[] getBand(int band) {
+    float[]	result;
+
+    result = new float[m_Samples * m_Lines];
+    readBand(band, result);
+
+    return result;
+  }
+
+  /**
+   * Returns the distance between samples of the same line and band.
+   *
+   * @return		the stride
+   */
+  protected long sampleStride() {
+    return (m_Interleave == EnviInterleave.BIP) ? m_Bands : 1;
+  }
+
+  /**
+   * Returns the distance between bands of the same pixel.
+   *
+   * @return		the stride
+   */
+  protected long bandStride() {
+    switch (m_Interleave) {
+      case BSQ:
+	return (long) m_Lines * m_Samples;
+      case BIL:
+	return m_Samples;
+      default:
+	return 1;
+    }
+  }
+
+  /**
+   * Reads the line of the band into the array.
+   *
+   * @param line	the line to read
+   * @param band	the band to read
+   * @param dest	the array to store the values in
+   * @param offset	the offset in the array
+   */
+  public void readLine(int line, int band, float[] dest, int offset) {
+    check(line, 0, band);
+    checkLength(dest.length - offset, m_Samples);
+    readRun(index(line, 0, band), m_Samples, sampleStride(), dest, offset);
+  }
+
+  /**
+   * Reads the line of the band into the array.
+   *
+   * @param line	the line to read
+   * @param band	the band to read
+   * @param dest	the array to store the values in
+   * @param offset	the offset in the array
+   */
+  public void readLine(int line, int band, double[] dest, int offset) {
+    check(line, 0, band);
+    checkLength(dest.length - offset, m_Samples);
+    readRun(index(line, 0, band), m_Samples, sampleStride(), dest, offset);
+  }
+
+  /**
+   * Reads the line of the band of an integer data type into the array.
+   *
+   * @param line	the line to read
+   * @param band	the band to read
+   * @param dest	the array to store the values in
+   * @param offset	the offset in the array
+   * @throws IllegalStateException	if not an integer data type
+   */
+  public void readLine(int line, int band, long[] dest, int offset) {
+    check(line, 0, band);
+    checkLength(dest.length - offset, m_Samples);
+    readRun(index(line, 0, band), m_Samples, sampleStride(), dest, offset);
+  }
+
+  /**
+   * Reads the spectrum of the pixel into the array.
+   *
+   * @param line	the line of the pixel
+   * @param sample	the sample of the pixel
+   * @param dest	the array to store the values in, requires bands elements
+   */
+  public void readPixel(int line, int sample, float[] dest) {
+    check(line, sample, 0);
+    checkLength(dest.length, m_Bands);
+    readRun(index(line, sample, 0), m_Bands, bandStride(), dest, 0);
+  }
+
+  /**
+   * Reads the spectrum of the pixel into the array.
+   *
+   * @param line	the line of the pixel
+   * @param sample	the sample of the pixel
+   * @param dest	the array to store the values in, requires bands elements
+   */
+  public void readPixel(int line, int sample, double[] dest) {
+    check(line, sample, 0);
+    checkLength(dest.length, m_Bands);
+    readRun(index(line, sample, 0), m_Bands, bandStride(), dest, 0);
+  }
+
+  /**
+   * Reads the spectrum of the pixel of an integer data type into the array.
+   *
+   * @param line	the line of the pixel
+   * @param sample	the sample of the pixel
+   * @param dest	the array to store the values in, requires bands elements
+   * @throws IllegalStateException	if not an integer data type
+   */
+  public void readPixel(int line, int sample, long[] dest) {
+    check(line, sample, 0);
+    checkLength(dest.length, m_Bands);
+    readRun(index(line, sample, 0), m_Bands, bandStride(), dest, 0);
+  }
+
+  /**
+   * Returns the spectrum of the pixel.
+   *
+   * @param line	the line of the pixel
+   * @param sample	the sample of the pixel
+   * @return		the values
+   */
+  public float[] getPixel(int line, int sample) {
+    float[]	result;
+
+    result = new float[m_Bands];
+    readPixel(line, sample, result);
+
+    return result;
+  }
+
+  /**
+   * Releases the file channel. The mapped memory gets released once
+   * garbage collected.
+   *
+   * @throws IOException	if closing fails
+   */
+  @Override
+  public void close() throws IOException {
+    m_Chunks = null;
+    if (m_Channel != null) {
+      m_Channel.close();
+      m_Channel = null;
+    }
+  }
+
+  /**
+   * Opens the ENVI file.
+   *
+   * @param file	the header or data file
+   * @return		the cube
+   * @throws IOException	if header or data file cannot be located or read
+   */
+  public static EnviCube open(File file) throws IOException {
+    EnviHeader	header;
+    File	data;
+
+    header = EnviHeader.parse(file);
+    if (file.getPath().toLowerCase().endsWith(EnviHeader.EXTENSION))
+      data = header.findDataFile();
+    else
+      data = file;
+    if (data == null)
+      throw new IOException("Failed to locate data file for ENVI header: " + header.getFile());
+
+    return new EnviCube(header, data);
+  }
+}
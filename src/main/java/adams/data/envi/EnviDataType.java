@@ -0,0 +1,115 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * EnviDataType.java
+ * Copyright (C) 2023 University of Waikato, Hamilton, New Zealand
+ */
+
+package adams.data.envi;
+
+/**
+ * The data types supported by ENVI files.
+ *
+ * @author fracpete (fracpete at waikato dot ac dot nz)
+ */
+public enum EnviDataType {
+  /** 8-bit unsigned integer. */
+  BYTE(1, 1, false),
+  /** 16-bit signed integer. */
+  INT16(2, 2, false),
+  /** 32-bit signed integer. */
+  INT32(3, 4, false),
+  /** 32-bit float. */
+  FLOAT32(4, 4, false),
+  /** 64-bit double. */
+  FLOAT64(5, 8, false),
+  /** 2x32-bit complex (real, imaginary). */
+  COMPLEX64(6, 8, true),
+  /** 2x64-bit complex (real, imaginary). */
+  COMPLEX128(9, 16, true),
+  /** 16-bit unsigned integer. */
+  UINT16(12, 2, false),
+  /** 32-bit unsigned integer. */
+  UINT32(13, 4, false),
+  /** 64-bit signed integer. */
+  INT64(14, 8, false),
+  /** 64-bit unsigned integer. */
+  UINT64(15, 8, false);
+
+  /** the ENVI code. */
+  private final int m_Code;
+
+  /** the number of bytes per element. */
+  private final int m_Size;
+
+  /** whether a complex type. */
+  private final boolean m_Complex;
+
+  /**
+   * Initializes the data type.
+   *
+   * @param code	the ENVI code
+   * @param size	the number of bytes per element
+   * @param complex	whether a complex type
+   */
+  private EnviDataType(int code, int size, boolean complex) {
+    m_Code    = code;
+    m_Size    = size;
+    m_Complex = complex;
+  }
+
+  /**
+   * Returns the ENVI code ("data type" in the header).
+   *
+   * @return		the code
+   */
+  public int getCode() {
+    return m_Code;
+  }
+
+  /**
+   * Returns the number of bytes per element.
+   *
+   * @return		the size
+   */
+  public int getSize() {
+    return m_Size;
+  }
+
+  /**
+   * Returns whether this is a complex type.
+   *
+   * @return		true if complex
+   */
+  public boolean isComplex() {
+    return m_Complex;
+  }
+
+  /**
+   * Returns the data type for the ENVI code.
+   *
+   * @param code	the code to look up
+   * @return		the data type
+   * @throws IllegalArgumentException	if unknown code
+   */
+  public static EnviDataType fromCode(int code) {
+    for (EnviDataType type: values()) {
+      if (type.getCode() == code)
+	return type;
+    }
+    throw new IllegalArgumentException("Unsupported ENVI data type: " + code);
+  }
+}
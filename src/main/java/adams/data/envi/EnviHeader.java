@@ -0,0 +1,443 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * EnviHeader.java
+ * Copyright (C) 2023 University of Waikato, Hamilton, New Zealand
+ */
+
+package adams.data.envi;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Parser for ENVI header (.hdr) files.
+ * <br>
+ * Keys are stored in lower case. Values enclosed in curly brackets can span
+ * multiple lines and are stored without the brackets.
+ * <br>
+ * See <a href="https://www.nv5geospatialsoftware.com/docs/ENVIHeaderFiles.html" target="_blank">ENVI Header Files</a>
+ *
+ * @author fracpete (fracpete at waikato dot ac dot nz)
+ */
+public class EnviHeader
+  implements Serializable {
+
+  private static final long serialVersionUID = 8372048672810373525L;
+
+  /** the extension of header files. */
+  public static final String EXTENSION = ".hdr";
+
+  /** the key for the number of samples. */
+  public static final String KEY_SAMPLES = "samples";
+
+  /** the key for the number of lines. */
+  public static final String KEY_LINES = "lines";
+
+  /** the key for the number of bands. */
+  public static final String KEY_BANDS = "bands";
+
+  /** the key for the header offset. */
+  public static final String KEY_HEADER_OFFSET = "header offset";
+
+  /** the key for the data type. */
+  public static final String KEY_DATA_TYPE = "data type";
+
+  /** the key for the interleave. */
+  public static final String KEY_INTERLEAVE = "interleave";
+
+  /** the key for the byte order. */
+  public static final String KEY_BYTE_ORDER = "byte order";
+
+  /** the key for the band names. */
+  public static final String KEY_BAND_NAMES = "band names";
+
+  /** the key for the wavelengths. */
+  public static final String KEY_WAVELENGTH = "wavelength";
+
+  /** the key for the default bands. */
+  public static final String KEY_DEFAULT_BANDS = "default bands";
+
+  /** the extensions to try for locating the data file. */
+  public static final String[] DATA_EXTENSIONS = {"", ".img", ".dat", ".raw", ".bsq", ".bil", ".bip", ".IMG", ".DAT", ".RAW"};
+
+  /** the header file, can be null. */
+  protected File m_File;
+
+  /** the key-value pairs. */
+  protected Map<String,String> m_Values;
+
+  /**
+   * Initializes the header with the key-value pairs.
+   *
+   * @param file	the header file, can be null
+   * @param values	the key-value pairs (lower case keys)
+   */
+  protected EnviHeader(File file, Map<String,String> values) {
+    m_File   = file;
+    m_Values = new LinkedHashMap<>(values);
+  }
+
+  /**
+   * Returns the header file.
+   *
+   * @return		the file, null if not parsed from a file
+   */
+  public File getFile() {
+    return m_File;
+  }
+
+  /**
+   * Returns all the keys.
+   *
+   * @return		the keys (lower case)
+   */
+  public Set<String> keys() {
+    return m_Values.keySet();
+  }
+
+  /**
+   * Returns whether a value is present for the key.
+   *
+   * @param key		the key to check (case-insensitive)
+   * @return		true if present
+   */
+  public boolean hasValue(String key) {
+    return m_Values.containsKey(key.toLowerCase());
+  }
+
+  /**
+   * Returns the value for the key.
+   *
+   * @param key		the key to look up (case-insensitive)
+   * @return		the value, null if not present
+   */
+  public String getValue(String key) {
+    return m_Values.get(key.toLowerCase());
+  }
+
+  /**
+   * Returns the comma-separated list value for the key.
+   *
+   * @param key		the key to look up (case-insensitive)
+   * @return		the trimmed elements, empty if not present
+   */
+  public List<String> getList(String key) {
+    List<String>	result;
+    String		value;
+
+    result = new ArrayList<>();
+    value  = getValue(key);
+    if ((value == null) || value.trim().isEmpty())
+      return result;
+
+    for (String part: value.split(","))
+      result.add(part.trim());
+
+    return result;
+  }
+
+  /**
+   * Returns the integer value for the key.
+   *
+   * @param key		the key to look up (case-insensitive)
+   * @param defValue	the default value if not present
+   * @return		the value
+   * @throws NumberFormatException	if the value is not a valid integer
+   */
+  public int getInt(String key, int defValue) {
+    String	value;
+
+    value = getValue(key);
+    if ((value == null) || value.trim().isEmpty())
+      return defValue;
+
+    try {
+      return Integer.parseInt(value.trim());
+    }
+    catch (NumberFormatException e) {
+      throw new NumberFormatException("Invalid integer for '" + key + "': " + value);
+    }
+  }
+
+  /**
+   * Returns the number of samples (columns).
+   *
+   * @return		the samples
+   */
+  public int getSamples() {
+    return getInt(KEY_SAMPLES, -1);
+  }
+
+  /**
+   * Returns the number of lines (rows).
+   *
+   * @return		the lines
+   */
+  public int getLines() {
+    return getInt(KEY_LINES, -1);
+  }
+
+  /**
+   * Returns the number of bands.
+   *
+   * @return		the bands
+   */
+  public int getBands() {
+    return getInt(KEY_BANDS, -1);
+  }
+
+  /**
+   * Returns the number of bytes to skip at the start of the data file.
+   *
+   * @return		the offset
+   */
+  public int getHeaderOffset() {
+    return getInt(KEY_HEADER_OFFSET, 0);
+  }
+
+  /**
+   * Returns the data type.
+   *
+   * @return		the type
+   */
+  public EnviDataType getDataType() {
+    return EnviDataType.fromCode(getInt(KEY_DATA_TYPE, -1));
+  }
+
+  /**
+   * Returns the interleave, BSQ if not specified.
+   *
+   * @return		the interleave
+   */
+  public EnviInterleave getInterleave() {
+    if (!hasValue(KEY_INTERLEAVE))
+      return EnviInterleave.BSQ;
+    return EnviInterleave.parse(getValue(KEY_INTERLEAVE));
+  }
+
+  /**
+   * Returns the byte order of the data (0 = little endian, 1 = big endian).
+   *
+   * @return		the byte order
+   */
+  public ByteOrder getByteOrder() {
+    return (getInt(KEY_BYTE_ORDER, 0) == 1) ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN;
+  }
+
+  /**
+   * Returns the band names.
+   *
+   * @return		the names, empty if not present
+   */
+  public List<String> getBandNames() {
+    return getList(KEY_BAND_NAMES);
+  }
+
+  /**
+   * Returns the wavelengths.
+   *
+   * @return		the wavelengths, empty if not present
+   */
+  public double[] getWavelengths() {
+    double[]		result;
+    List<String>	list;
+    int			i;
+
+    list   = getList(KEY_WAVELENGTH);
+    result = new double[list.size()];
+    for (i = 0; i < list.size(); i++)
+      result[i] = Double.parseDouble(list.get(i));
+
+    return result;
+  }
+
+  /**
+   * Returns the default bands to use for display.
+   *
+   * @return		the 0-based indices (the header uses 1-based ones), empty if not present
+   */
+  public int[] getDefaultBands() {
+    int[]		result;
+    List<String>	list;
+    int			i;
+
+    list   = getList(KEY_DEFAULT_BANDS);
+    result = new int[list.size()];
+    for (i = 0; i < list.size(); i++)
+      result[i] = Integer.parseInt(list.get(i)) - 1;
+
+    return result;
+  }
+
+  /**
+   * Checks whether the essential values are present and valid.
+   *
+   * @return		null if valid, otherwise error message
+   */
+  public String check() {
+    try {
+      if (getSamples() < 1)
+	return "Invalid or missing '" + KEY_SAMPLES + "': " + getValue(KEY_SAMPLES);
+      if (getLines() < 1)
+	return "Invalid or missing '" + KEY_LINES + "': " + getValue(KEY_LINES);
+      if (getBands() < 1)
+	return "Invalid or missing '" + KEY_BANDS + "': " + getValue(KEY_BANDS);
+      if (getHeaderOffset() < 0)
+	return "Invalid '" + KEY_HEADER_OFFSET + "': " + getValue(KEY_HEADER_OFFSET);
+      getDataType();
+      getInterleave();
+      getByteOrder();
+    }
+    catch (Exception e) {
+      return e.getMessage();
+    }
+    return null;
+  }
+
+  /**
+   * Locates the data file that belongs to the header file.
+   *
+   * @return		the data file, null if not found
+   */
+  public File findDataFile() {
+    String	base;
+    File	file;
+
+    if (m_File == null)
+      return null;
+
+    base = m_File.getPath();
+    if (base.toLowerCase().endsWith(EXTENSION))
+      base = base.substring(0, base.length() - EXTENSION.length());
+    for (String ext: DATA_EXTENSIONS) {
+      file = new File(base + ext);
+      if (file.isFile() && !file.equals(m_File))
+	return file;
+    }
+
+    return null;
+  }
+
+  /**
+   * Locates the header file for the data file (or returns the file itself
+   * if it is a header file already).
+   *
+   * @param file	the data or header file
+   * @return		the header file, null if not found
+   */
+  public static File findHeaderFile(File file) {
+    String	path;
+    File	hdr;
+    int		pos;
+
+    path = file.getPath();
+    if (path.toLowerCase().endsWith(EXTENSION))
+      return file.isFile() ? file : null;
+
+    // data.img.hdr
+    hdr = new File(path + EXTENSION);
+    if (hdr.isFile())
+      return hdr;
+    hdr = new File(path + EXTENSION.toUpperCase());
+    if (hdr.isFile())
+      return hdr;
+
+    // data.hdr
+    pos = path.lastIndexOf('.');
+    if (pos > path.lastIndexOf(File.separatorChar)) {
+      hdr = new File(path.substring(0, pos) + EXTENSION);
+      if (hdr.isFile())
+	return hdr;
+      hdr = new File(path.substring(0, pos) + EXTENSION.toUpperCase());
+      if (hdr.isFile())
+	return hdr;
+    }
+
+    return null;
+  }
+
+  /**
+   * Parses the lines of a header.
+   *
+   * @param file	the header file, can be null
+   * @param lines	the lines to parse
+   * @return		the header
+   * @throws IOException	if not an ENVI header
+   */
+  public static EnviHeader parse(File file, List<String> lines) throws IOException {
+    Map<String,String>	values;
+    StringBuilder	value;
+    String		key;
+    String		line;
+    int			pos;
+    int			i;
+
+    if (lines.isEmpty() || !lines.get(0).trim().equalsIgnoreCase("ENVI"))
+      throw new IOException("Not an ENVI header" + (file != null ? ": " + file : "") + "!");
+
+    values = new LinkedHashMap<>();
+    i      = 1;
+    while (i < lines.size()) {
+      line = lines.get(i);
+      i++;
+      pos  = line.indexOf('=');
+      if (pos == -1)
+	continue;
+      key   = line.substring(0, pos).trim().toLowerCase();
+      value = new StringBuilder(line.substring(pos + 1).trim());
+      if ((value.length() > 0) && (value.charAt(0) == '{')) {
+	while ((value.indexOf("}") == -1) && (i < lines.size())) {
+	  value.append("\n").append(lines.get(i).trim());
+	  i++;
+	}
+	pos = value.lastIndexOf("}");
+	if (pos == -1)
+	  throw new IOException("Unterminated value for '" + key + "'" + (file != null ? " in " + file : "") + "!");
+	value = new StringBuilder(value.substring(1, pos).trim());
+      }
+      values.put(key, value.toString());
+    }
+
+    return new EnviHeader(file, values);
+  }
+
+  /**
+   * Parses the header file.
+   *
+   * @param file	the header file, or the data file (header gets located automatically)
+   * @return		the header
+   * @throws IOException	if reading fails or not an ENVI header
+   */
+  public static EnviHeader parse(File file) throws IOException {
+    File	hdr;
+
+    hdr = findHeaderFile(file);
+    if (hdr == null)
+      throw new IOException("Failed to locate ENVI header for: " + file);
+
+    return parse(hdr, Files.readAllLines(hdr.toPath(), StandardCharsets.ISO_8859_1));
+  }
+}
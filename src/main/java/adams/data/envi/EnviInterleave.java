@@ -0,0 +1,50 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * EnviInterleave.java
+ * Copyright (C) 2023 University of Waikato, Hamilton, New Zealand
+ */
+
+package adams.data.envi;
+
+/**
+ * The interleave types of ENVI files.
+ *
+ * @author fracpete (fracpete at waikato dot ac dot nz)
+ */
+public enum EnviInterleave {
+  /** band sequential. */
+  BSQ,
+  /** band interleaved by line. */
+  BIL,
+  /** band interleaved by pixel. */
+  BIP;
+
+  /**
+   * Parses the interleave string from the header (case-insensitive).
+   *
+   * @param value	the string to parse
+   * @return		the interleave type
+   * @throws IllegalArgumentException	if unknown type
+   */
+  public static EnviInterleave parse(String value) {
+    for (EnviInterleave type: values()) {
+      if (type.name().equalsIgnoreCase(value.trim()))
+	return type;
+    }
+    throw new IllegalArgumentException("Unsupported ENVI interleave: " + value);
+  }
+}
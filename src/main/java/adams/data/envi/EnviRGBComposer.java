@@ -0,0 +1,230 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * EnviRGBComposer.java
+ * Copyright (C) 2023 University of Waikato, Hamilton, New Zealand
+ */
+
+package adams.data.envi;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Generates an RGB image from three bands of an ENVI cube. Only the three
+ * bands get read from the cube. Bands that are not specified (-1) get
+ * determined from the "default bands" in the header, otherwise the first,
+ * middle and last band get used.
+ *
+ * @author fracpete (fracpete at waikato dot ac dot nz)
+ */
+public class EnviRGBComposer
+  implements Serializable {
+
+  private static final long serialVersionUID = 1880223713651843232L;
+
+  /** the maximum number of values to use for determining the percentiles. */
+  public static final int MAX_PERCENTILE_SAMPLES = 100000;
+
+  /** the band for the red channel (-1 for default). */
+  protected int m_RedBand;
+
+  /** the band for the green channel (-1 for default). */
+  protected int m_GreenBand;
+
+  /** the band for the blue channel (-1 for default). */
+  protected int m_BlueBand;
+
+  /** the scaling to apply. */
+  protected EnviScaling m_Scaling;
+
+  /** the lower percentile (0-100). */
+  protected double m_LowerPercentile;
+
+  /** the upper percentile (0-100). */
+  protected double m_UpperPercentile;
+
+  /**
+   * Initializes the composer with default bands and min/max scaling.
+   */
+  public EnviRGBComposer() {
+    m_RedBand         = -1;
+    m_GreenBand       = -1;
+    m_BlueBand        = -1;
+    m_Scaling         = EnviScaling.MIN_MAX;
+    m_LowerPercentile = 2.0;
+    m_UpperPercentile = 98.0;
+  }
+
+  /**
+   * Sets the bands to use.
+   *
+   * @param red		the 0-based band for red, -1 for default
+   * @param green	the 0-based band for green, -1 for default
+   * @param blue	the 0-based band for blue, -1 for default
+   */
+  public void setBands(int red, int green, int blue) {
+    m_RedBand   = red;
+    m_GreenBand = green;
+    m_BlueBand  = blue;
+  }
+
+  /**
+   * Sets the scaling.
+   *
+   * @param value	the scaling
+   */
+  public void setScaling(EnviScaling value) {
+    m_Scaling = value;
+  }
+
+  /**
+   * Sets the percentiles to use for {@link EnviScaling#PERCENTILE}.
+   *
+   * @param lower	the lower percentile (0-100)
+   * @param upper	the upper percentile (0-100)
+   */
+  public void setPercentiles(double lower, double upper) {
+    m_LowerPercentile = lower;
+    m_UpperPercentile = upper;
+  }
+
+  /**
+   * Determines the bands to use for the cube.
+   *
+   * @param cube	the cube to get the bands for
+   * @return		the 0-based bands (red, green, blue)
+   * @throws IllegalArgumentException	if a band is out of range
+   */
+  public int[] resolveBands(EnviCube cube) {
+    int[]	result;
+    int[]	defaults;
+    int		i;
+
+    defaults = cube.getHeader().getDefaultBands();
+    if (defaults.length < 3)
+      defaults = new int[]{0, cube.getBands() / 2, cube.getBands() - 1};
+
+    result = new int[]{m_RedBand, m_GreenBand, m_BlueBand};
+    for (i = 0; i < result.length; i++) {
+      if (result[i] < 0)
+	result[i] = defaults[i];
+      if (result[i] >= cube.getBands())
+	throw new IllegalArgumentException("Band #" + i + " out of range: " + result[i] + " (bands: " + cube.getBands() + ")");
+    }
+
+    return result;
+  }
+
+  /**
+   * Determines the range of values to map to 0-255.
+   *
+   * @param values	the band values
+   * @return		the range (min, max)
+   */
+  protected double[] range(float[] values) {
+    float[]	sample;
+    double	min;
+    double	max;
+    int		step;
+    int		n;
+    int		i;
+
+    switch (m_Scaling) {
+      case NONE:
+	return new double[]{0.0, 255.0};
+
+      case MIN_MAX:
+	min = Double.POSITIVE_INFINITY;
+	max = Double.NEGATIVE_INFINITY;
+	for (float value: values) {
+	  if (Float.isNaN(value) || Float.isInfinite(value))
+	    continue;
+	  if (value < min)
+	    min = value;
+	  if (value > max)
+	    max = value;
+	}
+	if (min > max)
+	  return new double[]{0.0, 0.0};
+	return new double[]{min, max};
+
+      case PERCENTILE:
+	step   = Math.max(1, values.length / MAX_PERCENTILE_SAMPLES);
+	sample = new float[(values.length + step - 1) / step];
+	n      = 0;
+	for (i = 0; i < values.length; i += step) {
+	  if (Float.isNaN(values[i]) || Float.isInfinite(values[i]))
+	    continue;
+	  sample[n++] = values[i];
+	}
+	if (n == 0)
+	  return new double[]{0.0, 0.0};
+	Arrays.sort(sample, 0, n);
+	return new double[]{
+	  sample[(int) Math.round((n - 1) * m_LowerPercentile / 100.0)],
+	  sample[(int) Math.round((n - 1) * m_UpperPercentile / 100.0)]};
+
+      default:
+	throw new IllegalStateException("Unhandled scaling: " + m_Scaling);
+    }
+  }
+
+  /**
+   * Generates the RGB image.
+   *
+   * @param cube	the cube to use
+   * @return		the image
+   */
+  public BufferedImage compose(EnviCube cube) {
+    BufferedImage	result;
+    int[]		bands;
+    int[]		pixels;
+    float[]		values;
+    double[]		range;
+    double		scale;
+    double		value;
+    int			shift;
+    int			c;
+    int			i;
+
+    bands  = resolveBands(cube);
+    result = new BufferedImage(cube.getSamples(), cube.getLines(), BufferedImage.TYPE_INT_RGB);
+    pixels = ((DataBufferInt) result.getRaster().getDataBuffer()).getData();
+    values = new float[cube.getSamples() * cube.getLines()];
+
+    for (c = 0; c < 3; c++) {
+      cube.readBand(bands[c], values);
+      range = range(values);
+      scale = (range[1] > range[0]) ? 255.0 / (range[1] - range[0]) : 0.0;
+      shift = 16 - c * 8;
+      for (i = 0; i < values.length; i++) {
+	if (Float.isNaN(values[i]))
+	  continue;
+	value = (values[i] - range[0]) * scale;
+	if (value < 0)
+	  value = 0;
+	else if (value > 255)
+	  value = 255;
+	pixels[i] |= ((int) value) << shift;
+      }
+    }
+
+    return result;
+  }
+}
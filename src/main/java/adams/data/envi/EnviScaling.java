@@ -0,0 +1,35 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * EnviScaling.java
+ * Copyright (C) 2023 University of Waikato, Hamilton, New Zealand
+ */
+
+package adams.data.envi;
+
+/**
+ * How to scale band values to the 0-255 range of an RGB channel.
+ *
+ * @author fracpete (fracpete at waikato dot ac dot nz)
+ */
+public enum EnviScaling {
+  /** no scaling, values just get clipped. */
+  NONE,
+  /** linear scaling between minimum and maximum. */
+  MIN_MAX,
+  /** linear scaling between lower and upper percentile, values outside get clipped. */
+  PERCENTILE
+}
@@ -0,0 +1,64 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * PendingInputHelper.java
+ * Copyright (C) 2023 University of Waikato, Hamilton, New Zealand
+ */
+
+package adams.flow.core;
+
+/**
+ * Helper methods for actors that hold on to work across tokens (eg jobs in
+ * flight or partial batches) and need to determine when to flush it.
+ *
+ * @author fracpete (fracpete at waikato dot ac dot nz)
+ */
+public class PendingInputHelper {
+
+  /**
+   * Checks whether more tokens may still arrive at the actor, i.e., whether
+   * any of the enabled actors preceding it in its (sequentially executing)
+   * parent still have pending output. If not, the director will finish once
+   * the actor has no pending output anymore, hence any work held back must
+   * get flushed.
+   *
+   * @param actor	the actor to check
+   * @return		true if more input may arrive
+   */
+  public static boolean hasPendingInput(Actor actor) {
+    ActorHandler	handler;
+    Actor		preceding;
+    int			index;
+    int			i;
+
+    if (!(actor.getParent() instanceof ActorHandler))
+      return false;
+    handler = (ActorHandler) actor.getParent();
+    if (handler.getActorHandlerInfo().getActorExecution() != ActorExecution.SEQUENTIAL)
+      return false;
+
+    index = handler.indexOf(actor.getName());
+    for (i = 0; i < index; i++) {
+      preceding = handler.get(i);
+      if (preceding.getSkip())
+	continue;
+      if ((preceding instanceof OutputProducer) && ((OutputProducer) preceding).hasPendingOutput())
+	return true;
+    }
+
+    return false;
+  }
+}
@@ -0,0 +1,245 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * PromoteScratchFile.java
+ * Copyright (C) 2023 University of Waikato, Hamilton, New Zealand
+ */
+
+package adams.flow.sink;
+
+import adams.core.QuickInfoHelper;
+import adams.core.command.docker.ScratchFile;
+import adams.core.io.PlaceholderFile;
+
+import java.io.File;
+
+/**
+ <!-- globalinfo-start -->
+ * Copies a file from the scratch area (and its sidecar files, like .hdr) to persistent storage.<br>
+ * GDAL&#47;SPy commands writing to the scratch area only forward the file in memory, it only gets written to disk by this sink.
+ * <br><br>
+ <!-- globalinfo-end -->
+ *
+ <!-- flow-summary-start -->
+ * Input&#47;output:<br>
+ * - accepts:<br>
+ * &nbsp;&nbsp;&nbsp;adams.core.command.docker.ScratchFile<br>
+ * <br><br>
+ <!-- flow-summary-end -->
+ *
+ <!-- options-start -->
+ * <pre>-logging-level &lt;OFF|SEVERE|WARNING|INFO|CONFIG|FINE|FINER|FINEST&gt; (property: loggingLevel)
+ * &nbsp;&nbsp;&nbsp;The logging level for outputting errors and debugging output.
+ * &nbsp;&nbsp;&nbsp;default: WARNING
+ * </pre>
+ *
+ * <pre>-name &lt;java.lang.String&gt; (property: name)
+ * &nbsp;&nbsp;&nbsp;The name of the actor.
+ * &nbsp;&nbsp;&nbsp;default: PromoteScratchFile
+ * </pre>
+ *
+ * <pre>-annotation &lt;adams.core.base.BaseAnnotation&gt; (property: annotations)
+ * &nbsp;&nbsp;&nbsp;The annotations to attach to this actor.
+ * &nbsp;&nbsp;&nbsp;default:
+ * </pre>
+ *
+ * <pre>-skip &lt;boolean&gt; (property: skip)
+ * &nbsp;&nbsp;&nbsp;If set to true, transformation is skipped and the input token is just forwarded
+ * &nbsp;&nbsp;&nbsp;as it is.
+ * &nbsp;&nbsp;&nbsp;default: false
+ * </pre>
+ *
+ * <pre>-stop-flow-on-error &lt;boolean&gt; (property: stopFlowOnError)
+ * &nbsp;&nbsp;&nbsp;If set to true, the flow execution at this level gets stopped in case this
+ * &nbsp;&nbsp;&nbsp;actor encounters an error; the error gets propagated; useful for critical
+ * &nbsp;&nbsp;&nbsp;actors.
+ * &nbsp;&nbsp;&nbsp;default: false
+ * </pre>
+ *
+ * <pre>-silent &lt;boolean&gt; (property: silent)
+ * &nbsp;&nbsp;&nbsp;If enabled, then no errors are output in the console; Note: the enclosing
+ * &nbsp;&nbsp;&nbsp;actor handler must have this enabled as well.
+ * &nbsp;&nbsp;&nbsp;default: false
+ * </pre>
+ *
+ * <pre>-output &lt;adams.core.io.PlaceholderFile&gt; (property: outputFile)
+ * &nbsp;&nbsp;&nbsp;The file to copy the scratch file to; if pointing to a directory, the name
+ * &nbsp;&nbsp;&nbsp;of the scratch file gets used.
+ * &nbsp;&nbsp;&nbsp;default: ${CWD}
+ * </pre>
+ *
+ * <pre>-release &lt;boolean&gt; (property: release)
+ * &nbsp;&nbsp;&nbsp;If enabled, the file gets removed from the scratch area after copying it,
+ * &nbsp;&nbsp;&nbsp;freeing up the memory.
+ * &nbsp;&nbsp;&nbsp;default: true
+ * </pre>
+ *
+ <!-- options-end -->
+ *
+ * @author fracpete (fracpete at waikato dot ac dot nz)
+ */
+public class PromoteScratchFile
+  extends AbstractSink {
+
+  private static final long serialVersionUID = 3650791652279071834L;
+
+  /** the output file. */
+  protected PlaceholderFile m_OutputFile;
+
+  /** whether to remove the file from the scratch area. */
+  protected boolean m_Release;
+
+  /**
+   * Returns a string describing the object.
+   *
+   * @return a description suitable for displaying in the gui
+   */
+  @Override
+  public String globalInfo() {
+    return "Copies a file from the scratch area (and its sidecar files, like .hdr) to persistent storage.\n"
+      + "GDAL/SPy commands writing to the scratch area only forward the file in memory, it only gets written to disk by this sink.";
+  }
+
+  /**
+   * Adds options to the internal list of options.
+   */
+  @Override
+  public void defineOptions() {
+    super.defineOptions();
+
+    m_OptionManager.add(
+      "output", "outputFile",
+      new PlaceholderFile("."));
+
+    m_OptionManager.add(
+      "release", "release",
+      true);
+  }
+
+  /**
+   * Returns a quick info about the actor, which will be displayed in the GUI.
+   *
+   * @return		null if no info available, otherwise short string
+   */
+  @Override
+  public String getQuickInfo() {
+    String	result;
+
+    result = QuickInfoHelper.toString(this, "outputFile", m_OutputFile, "output: ");
+    result += QuickInfoHelper.toString(this, "release", m_Release, "release", ", ");
+
+    return result;
+  }
+
+  /**
+   * Sets the file to copy the scratch file to.
+   *
+   * @param value	the file, a directory to keep the name
+   */
+  public void setOutputFile(PlaceholderFile value) {
+    m_OutputFile = value;
+    reset();
+  }
+
+  /**
+   * Returns the file to copy the scratch file to.
+   *
+   * @return		the file, a directory to keep the name
+   */
+  public PlaceholderFile getOutputFile() {
+    return m_OutputFile;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String outputFileTipText() {
+    return "The file to copy the scratch file to; if pointing to a directory, the name of the scratch file gets used.";
+  }
+
+  /**
+   * Sets whether to remove the file from the scratch area after copying it.
+   *
+   * @param value	true if to remove
+   */
+  public void setRelease(boolean value) {
+    m_Release = value;
+    reset();
+  }
+
+  /**
+   * Returns whether to remove the file from the scratch area after copying it.
+   *
+   * @return		true if to remove
+   */
+  public boolean getRelease() {
+    return m_Release;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String releaseTipText() {
+    return "If enabled, the file gets removed from the scratch area after copying it, freeing up the memory.";
+  }
+
+  /**
+   * Returns the class that the consumer accepts.
+   *
+   * @return the Class of objects that can be processed
+   */
+  @Override
+  public Class[] accepts() {
+    return new Class[]{ScratchFile.class};
+  }
+
+  /**
+   * Executes the flow item.
+   *
+   * @return null if everything is fine, otherwise error message
+   */
+  @Override
+  protected String doExecute() {
+    String	result;
+    ScratchFile	scratch;
+    File	file;
+
+    result  = null;
+    scratch = m_InputToken.getPayload(ScratchFile.class);
+
+    if (!scratch.exists())
+      return "Scratch file no longer available: " + scratch;
+
+    try {
+      file = scratch.promote(m_OutputFile.getAbsoluteFile());
+      if (isLoggingEnabled())
+	getLogger().info("Promoted " + scratch + " to " + file);
+      if (m_Release && !scratch.release())
+	getLogger().warning("Failed to remove scratch file: " + scratch);
+    }
+    catch (Exception e) {
+      result = handleException("Failed to promote scratch file " + scratch + " to " + m_OutputFile, e);
+    }
+
+    return result;
+  }
+}
@@ -0,0 +1,423 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * DistributedDockerConnection.java
+ * Copyright (C) 2023 University of Waikato, Hamilton, New Zealand
+ */
+
+package adams.flow.standalone;
+
+import adams.core.QuickInfoHelper;
+import adams.core.base.WeightedDockerEndpoint;
+import adams.core.command.docker.EndpointBalancer;
+
+import java.util.List;
+
+/**
+ <!-- globalinfo-start -->
+ * Docker connection that spreads the invocations of GDAL&#47;SPy commands across several docker daemons (via DOCKER_HOST), weighted by their capacity and the number of invocations currently in flight.<br>
+ * Endpoints get taken out of rotation after too many consecutive daemon errors or a failed health check ('docker version') and are put back once a health check succeeds again.<br>
+ * The directory mappings must be valid on all hosts (eg shared storage). Container pooling and the Engine API backend are not used with this connection.
+ * <br><br>
+ <!-- globalinfo-end -->
+ *
+ <!-- flow-summary-start -->
+ <!-- flow-summary-end -->
+ *
+ <!-- options-start -->
+ * <pre>-logging-level &lt;OFF|SEVERE|WARNING|INFO|CONFIG|FINE|FINER|FINEST&gt; (property: loggingLevel)
+ * &nbsp;&nbsp;&nbsp;The logging level for outputting errors and debugging output.
+ * &nbsp;&nbsp;&nbsp;default: WARNING
+ * </pre>
+ *
+ * <pre>-name &lt;java.lang.String&gt; (property: name)
+ * &nbsp;&nbsp;&nbsp;The name of the actor.
+ * &nbsp;&nbsp;&nbsp;default: DistributedDockerConnection
+ * </pre>
+ *
+ * <pre>-annotation &lt;adams.core.base.BaseAnnotation&gt; (property: annotations)
+ * &nbsp;&nbsp;&nbsp;The annotations to attach to this actor.
+ * &nbsp;&nbsp;&nbsp;default:
+ * </pre>
+ *
+ * <pre>-skip &lt;boolean&gt; (property: skip)
+ * &nbsp;&nbsp;&nbsp;If set to true, transformation is skipped and the input token is just forwarded
+ * &nbsp;&nbsp;&nbsp;as it is.
+ * &nbsp;&nbsp;&nbsp;default: false
+ * </pre>
+ *
+ * <pre>-stop-flow-on-error &lt;boolean&gt; (property: stopFlowOnError)
+ * &nbsp;&nbsp;&nbsp;If set to true, the flow execution at this level gets stopped in case this
+ * &nbsp;&nbsp;&nbsp;actor encounters an error; the error gets propagated; useful for critical
+ * &nbsp;&nbsp;&nbsp;actors.
+ * &nbsp;&nbsp;&nbsp;default: false
+ * </pre>
+ *
+ * <pre>-silent &lt;boolean&gt; (property: silent)
+ * &nbsp;&nbsp;&nbsp;If enabled, then no errors are output in the console; Note: the enclosing
+ * &nbsp;&nbsp;&nbsp;actor handler must have this enabled as well.
+ * &nbsp;&nbsp;&nbsp;default: false
+ * </pre>
+ *
+ * <pre>-endpoint &lt;adams.core.base.WeightedDockerEndpoint&gt; [-endpoint ...] (property: endpoints)
+ * &nbsp;&nbsp;&nbsp;The docker daemons to spread the invocations across, with their capacity
+ * &nbsp;&nbsp;&nbsp;(concurrent invocations), format: endpoint[=capacity], e.g.: tcp:&#47;&#47;box1:2375=4
+ * &nbsp;&nbsp;&nbsp;default:
+ * </pre>
+ *
+ * <pre>-max-failures &lt;int&gt; (property: maxFailures)
+ * &nbsp;&nbsp;&nbsp;The number of consecutive daemon errors after which an endpoint gets taken
+ * &nbsp;&nbsp;&nbsp;out of rotation.
+ * &nbsp;&nbsp;&nbsp;default: 3
+ * &nbsp;&nbsp;&nbsp;minimum: 1
+ * </pre>
+ *
+ * <pre>-health-check-interval &lt;int&gt; (property: healthCheckInterval)
+ * &nbsp;&nbsp;&nbsp;The interval in seconds for checking the health of the endpoints.
+ * &nbsp;&nbsp;&nbsp;default: 30
+ * &nbsp;&nbsp;&nbsp;minimum: 1
+ * </pre>
+ *
+ * <pre>-health-check-timeout &lt;int&gt; (property: healthCheckTimeout)
+ * &nbsp;&nbsp;&nbsp;The time in seconds to wait for a daemon to respond to a health check.
+ * &nbsp;&nbsp;&nbsp;default: 10
+ * &nbsp;&nbsp;&nbsp;minimum: 1
+ * </pre>
+ *
+ <!-- options-end -->
+ *
+ * @author fracpete (fracpete at waikato dot ac dot nz)
+ */
+public class DistributedDockerConnection
+  extends SimpleDockerConnection {
+
+  private static final long serialVersionUID = 3308226094718342562L;
+
+  /** the endpoints. */
+  protected WeightedDockerEndpoint[] m_Endpoints;
+
+  /** the number of consecutive failures before taking an endpoint out of rotation. */
+  protected int m_MaxFailures;
+
+  /** the health check interval in seconds. */
+  protected int m_HealthCheckInterval;
+
+  /** the health check timeout in seconds. */
+  protected int m_HealthCheckTimeout;
+
+  /** the balancer. */
+  protected transient EndpointBalancer m_Balancer;
+
+  /**
+   * Returns a string describing the object.
+   *
+   * @return a description suitable for displaying in the gui
+   */
+  @Override
+  public String globalInfo() {
+    return "Docker connection that spreads the invocations of GDAL/SPy commands across several docker daemons "
+      + "(via " + EndpointBalancer.DOCKER_HOST + "), weighted by their capacity and the number of invocations currently in flight.\n"
+      + "Endpoints get taken out of rotation after too many consecutive daemon errors or a failed health check "
+      + "('docker version') and are put back once a health check succeeds again.\n"
+      + "The directory mappings must be valid on all hosts (eg shared storage). Container pooling and the "
+      + "Engine API backend are not used with this connection.";
+  }
+
+  /**
+   * Adds options to the internal list of options.
+   */
+  @Override
+  public void defineOptions() {
+    super.defineOptions();
+
+    m_OptionManager.add(
+      "endpoint", "endpoints",
+      new WeightedDockerEndpoint[0]);
+
+    m_OptionManager.add(
+      "max-failures", "maxFailures",
+      3, 1, null);
+
+    m_OptionManager.add(
+      "health-check-interval", "healthCheckInterval",
+      30, 1, null);
+
+    m_OptionManager.add(
+      "health-check-timeout", "healthCheckTimeout",
+      10, 1, null);
+  }
+
+  /**
+   * Resets the scheme.
+   */
+  @Override
+  protected void reset() {
+    super.reset();
+
+    shutdownBalancer();
+  }
+
+  /**
+   * Sets the endpoints.
+   *
+   * @param value	the endpoints
+   */
+  public void setEndpoints(WeightedDockerEndpoint[] value) {
+    m_Endpoints = value;
+    reset();
+  }
+
+  /**
+   * Returns the endpoints.
+   *
+   * @return		the endpoints
+   */
+  public WeightedDockerEndpoint[] getEndpoints() {
+    return m_Endpoints;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String endpointsTipText() {
+    return "The docker daemons to spread the invocations across, with their capacity (concurrent invocations), "
+      + "format: endpoint[" + WeightedDockerEndpoint.SEPARATOR + "capacity], e.g.: tcp://box1:2375" + WeightedDockerEndpoint.SEPARATOR + "4";
+  }
+
+  /**
+   * Sets the number of consecutive daemon errors before taking an endpoint
+   * out of rotation.
+   *
+   * @param value	the number of failures
+   */
+  public void setMaxFailures(int value) {
+    if (getOptionManager().isValid("maxFailures", value)) {
+      m_MaxFailures = value;
+      reset();
+    }
+  }
+
+  /**
+   * Returns the number of consecutive daemon errors before taking an endpoint
+   * out of rotation.
+   *
+   * @return		the number of failures
+   */
+  public int getMaxFailures() {
+    return m_MaxFailures;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String maxFailuresTipText() {
+    return "The number of consecutive daemon errors after which an endpoint gets taken out of rotation.";
+  }
+
+  /**
+   * Sets the interval for the health checks.
+   *
+   * @param value	the interval in seconds
+   */
+  public void setHealthCheckInterval(int value) {
+    if (getOptionManager().isValid("healthCheckInterval", value)) {
+      m_HealthCheckInterval = value;
+      reset();
+    }
+  }
+
+  /**
+   * Returns the interval for the health checks.
+   *
+   * @return		the interval in seconds
+   */
+  public int getHealthCheckInterval() {
+    return m_HealthCheckInterval;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String healthCheckIntervalTipText() {
+    return "The interval in seconds for checking the health of the endpoints.";
+  }
+
+  /**
+   * Sets the time to wait for a daemon to respond to a health check.
+   *
+   * @param value	the timeout in seconds
+   */
+  public void setHealthCheckTimeout(int value) {
+    if (getOptionManager().isValid("healthCheckTimeout", value)) {
+      m_HealthCheckTimeout = value;
+      reset();
+    }
+  }
+
+  /**
+   * Returns the time to wait for a daemon to respond to a health check.
+   *
+   * @return		the timeout in seconds
+   */
+  public int getHealthCheckTimeout() {
+    return m_HealthCheckTimeout;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String healthCheckTimeoutTipText() {
+    return "The time in seconds to wait for a daemon to respond to a health check.";
+  }
+
+  /**
+   * Returns a quick info about the actor, which will be displayed in the GUI.
+   *
+   * @return		null if no info available, otherwise short string
+   */
+  @Override
+  public String getQuickInfo() {
+    String	result;
+
+    result = super.getQuickInfo();
+    if (result == null)
+      result = "";
+    else
+      result += ", ";
+    result += QuickInfoHelper.toString(this, "endpoints", m_Endpoints.length, "endpoints: ");
+
+    return result;
+  }
+
+  /**
+   * Returns the balancer, instantiates it if necessary.
+   *
+   * @return		the balancer
+   */
+  public synchronized EndpointBalancer getBalancer() {
+    if (m_Balancer == null) {
+      m_Balancer = new EndpointBalancer(getAcualBinary(), m_MaxFailures);
+      m_Balancer.setLoggingLevel(getLoggingLevel());
+      for (WeightedDockerEndpoint endpoint: m_Endpoints)
+	m_Balancer.addEndpoint(endpoint.endpointValue(), endpoint.capacityValue());
+    }
+
+    return m_Balancer;
+  }
+
+  /**
+   * Assigns an invocation to the least loaded healthy endpoint.
+   *
+   * @return		the endpoint (DOCKER_HOST), null if none available
+   * @see		#releaseEndpoint(String, boolean)
+   */
+  public String acquireEndpoint() {
+    return getBalancer().acquire();
+  }
+
+  /**
+   * Releases an invocation.
+   *
+   * @param endpoint	the endpoint that was assigned
+   * @param daemonError	whether the daemon failed to execute the invocation
+   */
+  public void releaseEndpoint(String endpoint, boolean daemonError) {
+    getBalancer().release(endpoint, daemonError);
+  }
+
+  /**
+   * Takes the endpoint out of rotation until the next successful health check.
+   *
+   * @param endpoint	the endpoint
+   */
+  public void markUnhealthy(String endpoint) {
+    getBalancer().markUnhealthy(endpoint);
+  }
+
+  /**
+   * Returns all the endpoints (DOCKER_HOST).
+   *
+   * @return		the endpoints
+   */
+  public List<String> getEndpointHosts() {
+    return getBalancer().getEndpoints();
+  }
+
+  /**
+   * Stops the health checks and removes the balancer.
+   */
+  protected synchronized void shutdownBalancer() {
+    if (m_Balancer != null) {
+      m_Balancer.stopHealthChecks();
+      if (isLoggingEnabled())
+	getLogger().info("Endpoint states:\n" + m_Balancer);
+      m_Balancer = null;
+    }
+  }
+
+  /**
+   * Executes the flow item.
+   *
+   * @return null if everything is fine, otherwise error message
+   */
+  @Override
+  protected String doExecute() {
+    String	result;
+
+    result = super.doExecute();
+
+    if (result == null) {
+      if (m_Endpoints.length == 0)
+	result = "No docker endpoints defined!";
+    }
+
+    if (result == null)
+      getBalancer().startHealthChecks(m_HealthCheckInterval * 1000L, m_HealthCheckTimeout * 1000L);
+
+    return result;
+  }
+
+  /**
+   * Cleans up after the execution has finished.
+   */
+  @Override
+  public void wrapUp() {
+    shutdownBalancer();
+    super.wrapUp();
+  }
+
+  /**
+   * Cleans up after the execution has finished. Also removes graphical
+   * components.
+   */
+  @Override
+  public void cleanUp() {
+    shutdownBalancer();
+    super.cleanUp();
+  }
+}
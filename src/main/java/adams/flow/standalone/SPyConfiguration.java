@@ -21,6 +21,34 @@
 package adams.flow.standalone;
 
 import adams.core.QuickInfoHelper;
+import adams.core.Utils;
+import adams.core.base.BaseString;
+import adams.core.command.docker.CircuitBreaker;
+import adams.core.command.docker.ContainerPool;
+import adams.core.command.docker.ContainerRegistry;
+import adams.core.command.docker.ContainerResources;
+import adams.core.command.docker.CostEstimator;
+import adams.core.command.docker.DockerEngineClient;
+import adams.core.command.docker.EngineConnection;
+import adams.core.command.docker.ExecutionBackend;
+import adams.core.command.docker.ImagePuller;
+import adams.core.command.docker.JobJournal;
+import adams.core.command.docker.JobScheduler;
+import adams.core.command.docker.NativeExecutableHelper;
+import adams.core.command.docker.ProcessRunner;
+import adams.core.command.docker.ResultCache;
+import adams.core.command.docker.ScratchArea;
+import adams.core.io.PlaceholderDirectory;
+import adams.core.io.PlaceholderFile;
+import adams.docker.simpledocker.PullType;
+import adams.flow.core.ActorUtils;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 /**
  <!-- globalinfo-start -->
@@ -75,6 +103,170 @@ import adams.core.QuickInfoHelper;
  * &nbsp;&nbsp;&nbsp;default: public.aml-repo.cms.waikato.ac.nz:443&#47;wairas&#47;happy-spy-utilities:latest
  * </pre>
  *
+ * <pre>-pool-size &lt;int&gt; (property: poolSize)
+ * &nbsp;&nbsp;&nbsp;The maximum number of long-lived containers to keep for executing commands
+ * &nbsp;&nbsp;&nbsp;via 'docker exec'; 0 disables pooling and uses 'docker run --rm' for each
+ * &nbsp;&nbsp;&nbsp;execution.
+ * &nbsp;&nbsp;&nbsp;default: 0
+ * &nbsp;&nbsp;&nbsp;minimum: 0
+ * </pre>
+ *
+ * <pre>-pool-idle-ttl &lt;int&gt; (property: poolIdleTTL)
+ * &nbsp;&nbsp;&nbsp;The time in seconds after which idle pooled containers get removed.
+ * &nbsp;&nbsp;&nbsp;default: 300
+ * &nbsp;&nbsp;&nbsp;minimum: 1
+ * </pre>
+ *
+ * <pre>-backend &lt;DOCKER|NATIVE|ENGINE&gt; (property: backend)
+ * &nbsp;&nbsp;&nbsp;How to execute the commands; NATIVE runs locally installed binaries directly
+ * &nbsp;&nbsp;&nbsp;(no docker, no directory mappings) and falls back to docker if a binary
+ * &nbsp;&nbsp;&nbsp;cannot be located; ENGINE talks to the docker daemon directly via the Engine
+ * &nbsp;&nbsp;&nbsp;API rather than spawning the docker CLI.
+ * &nbsp;&nbsp;&nbsp;default: DOCKER
+ * </pre>
+ *
+ * <pre>-native-bin-dir &lt;adams.core.io.PlaceholderDirectory&gt; (property: nativeBinDir)
+ * &nbsp;&nbsp;&nbsp;The directory to look for the native binaries first, before searching the
+ * &nbsp;&nbsp;&nbsp;PATH.
+ * &nbsp;&nbsp;&nbsp;default: ${CWD}
+ * </pre>
+ *
+ * <pre>-engine-endpoint &lt;java.lang.String&gt; (property: engineEndpoint)
+ * &nbsp;&nbsp;&nbsp;The endpoint of the docker daemon when using the Engine API, either a unix
+ * &nbsp;&nbsp;&nbsp;socket (unix:&#47;&#47;&#47;path, requires Java 16+) or TCP (tcp:&#47;&#47;host:port).
+ * &nbsp;&nbsp;&nbsp;default: unix:&#47;&#47;&#47;var&#47;run&#47;docker.sock
+ * </pre>
+ *
+ * <pre>-engine-api-version &lt;java.lang.String&gt; (property: engineAPIVersion)
+ * &nbsp;&nbsp;&nbsp;The version of the Engine API to use, eg 1.41; empty for the daemon's latest
+ * &nbsp;&nbsp;&nbsp;version.
+ * &nbsp;&nbsp;&nbsp;default: 1.41
+ * </pre>
+ *
+ * <pre>-cache-enabled &lt;boolean&gt; (property: cacheEnabled)
+ * &nbsp;&nbsp;&nbsp;If enabled, the results of file-writing commands get cached, keyed on input
+ * &nbsp;&nbsp;&nbsp;content, executable, options and image digest; a cache hit re-uses the output
+ * &nbsp;&nbsp;&nbsp;without executing the command.
+ * &nbsp;&nbsp;&nbsp;default: false
+ * </pre>
+ *
+ * <pre>-cache-dir &lt;adams.core.io.PlaceholderDirectory&gt; (property: cacheDir)
+ * &nbsp;&nbsp;&nbsp;The directory for storing the cached results.
+ * &nbsp;&nbsp;&nbsp;default: ${HOME}&#47;.happy-adams&#47;cache&#47;spy
+ * </pre>
+ *
+ * <pre>-cache-max-size &lt;int&gt; (property: cacheMaxSize)
+ * &nbsp;&nbsp;&nbsp;The maximum size of the cache in MB; least recently used results get removed
+ * &nbsp;&nbsp;&nbsp;first.
+ * &nbsp;&nbsp;&nbsp;default: 1024
+ * &nbsp;&nbsp;&nbsp;minimum: 1
+ * </pre>
+ *
+ * <pre>-pre-pull &lt;boolean&gt; (property: prePull)
+ * &nbsp;&nbsp;&nbsp;If enabled, the image gets pulled in the background when the flow starts
+ * &nbsp;&nbsp;&nbsp;(requires a SimpleDockerConnection standalone); commands with pull type
+ * &nbsp;&nbsp;&nbsp;ALWAYS wait for this pull instead of pulling themselves; the image gets pulled
+ * &nbsp;&nbsp;&nbsp;at most once per flow execution.
+ * &nbsp;&nbsp;&nbsp;default: false
+ * </pre>
+ *
+ * <pre>-warm-up &lt;boolean&gt; (property: warmUp)
+ * &nbsp;&nbsp;&nbsp;If enabled, a throw-away container gets run after pulling the image to warm
+ * &nbsp;&nbsp;&nbsp;it up.
+ * &nbsp;&nbsp;&nbsp;default: false
+ * </pre>
+ *
+ * <pre>-cost-history &lt;adams.core.io.PlaceholderFile&gt; (property: costHistory)
+ * &nbsp;&nbsp;&nbsp;The file for storing the runtime history of the executables, used for estimating
+ * &nbsp;&nbsp;&nbsp;the cost of jobs (longest-first dispatching); ignored if pointing to a directory.
+ * &nbsp;&nbsp;&nbsp;default: ${HOME}&#47;.happy-adams&#47;cost&#47;spy.props
+ * </pre>
+ *
+ * <pre>-scheduler-slots &lt;int&gt; (property: schedulerSlots)
+ * &nbsp;&nbsp;&nbsp;The maximum number of jobs of the parallel transformers that can execute
+ * &nbsp;&nbsp;&nbsp;concurrently across the flow, dispatched by priority and estimated cost;
+ * &nbsp;&nbsp;&nbsp;0 = no limit.
+ * &nbsp;&nbsp;&nbsp;default: 0
+ * &nbsp;&nbsp;&nbsp;minimum: 0
+ * </pre>
+ *
+ * <pre>-journal-enabled &lt;boolean&gt; (property: journalEnabled)
+ * &nbsp;&nbsp;&nbsp;If enabled, the jobs of file-writing commands get recorded in an append-only
+ * &nbsp;&nbsp;&nbsp;journal; when re-running, completed jobs with intact output get skipped and
+ * &nbsp;&nbsp;&nbsp;incomplete ones get redone.
+ * &nbsp;&nbsp;&nbsp;default: false
+ * </pre>
+ *
+ * <pre>-journal-file &lt;adams.core.io.PlaceholderFile&gt; (property: journalFile)
+ * &nbsp;&nbsp;&nbsp;The file for the job journal.
+ * &nbsp;&nbsp;&nbsp;default: ${HOME}&#47;.happy-adams&#47;journal&#47;spy.journal
+ * </pre>
+ *
+ * <pre>-journal-verify &lt;boolean&gt; (property: journalVerify)
+ * &nbsp;&nbsp;&nbsp;If enabled, the checksum of the output of completed jobs gets verified before
+ * &nbsp;&nbsp;&nbsp;skipping them, rather than just size and timestamp.
+ * &nbsp;&nbsp;&nbsp;default: false
+ * </pre>
+ *
+ * <pre>-breaker-threshold &lt;int&gt; (property: breakerThreshold)
+ * &nbsp;&nbsp;&nbsp;The number of consecutive docker daemon failures (daemon errors, timeouts,
+ * &nbsp;&nbsp;&nbsp;failures to start) after which commands fail fast until the cool-down period
+ * &nbsp;&nbsp;&nbsp;has passed; 0 = disabled.
+ * &nbsp;&nbsp;&nbsp;default: 0
+ * &nbsp;&nbsp;&nbsp;minimum: 0
+ * </pre>
+ *
+ * <pre>-breaker-cooldown &lt;int&gt; (property: breakerCoolDown)
+ * &nbsp;&nbsp;&nbsp;The time in seconds to fail fast before letting a trial invocation through
+ * &nbsp;&nbsp;&nbsp;again.
+ * &nbsp;&nbsp;&nbsp;default: 30
+ * &nbsp;&nbsp;&nbsp;minimum: 1
+ * </pre>
+ *
+ * <pre>-cpus &lt;double&gt; (property: cpus)
+ * &nbsp;&nbsp;&nbsp;The number of CPUs a container can use (docker run --cpus); 0 = no limit.
+ * &nbsp;&nbsp;&nbsp;default: 0.0
+ * &nbsp;&nbsp;&nbsp;minimum: 0.0
+ * </pre>
+ *
+ * <pre>-memory &lt;java.lang.String&gt; (property: memory)
+ * &nbsp;&nbsp;&nbsp;The memory limit for a container (docker run --memory), e.g., 512m or 4g;
+ * &nbsp;&nbsp;&nbsp;empty = no limit.
+ * &nbsp;&nbsp;&nbsp;default:
+ * </pre>
+ *
+ * <pre>-cpuset-cpus &lt;java.lang.String&gt; (property: cpusetCpus)
+ * &nbsp;&nbsp;&nbsp;The CPUs a container is allowed to run on (docker run --cpuset-cpus), e.g.,
+ * &nbsp;&nbsp;&nbsp;0-3 or 0,2; empty = any.
+ * &nbsp;&nbsp;&nbsp;default:
+ * </pre>
+ *
+ * <pre>-num-threads &lt;int&gt; (property: numThreads)
+ * &nbsp;&nbsp;&nbsp;The number of threads for OpenMP and the BLAS libraries (OMP_NUM_THREADS,
+ * &nbsp;&nbsp;&nbsp;OPENBLAS_NUM_THREADS, MKL_NUM_THREADS, NUMEXPR_NUM_THREADS); 0 = use the
+ * &nbsp;&nbsp;&nbsp;CPU limit if set, otherwise library defaults.
+ * &nbsp;&nbsp;&nbsp;default: 0
+ * &nbsp;&nbsp;&nbsp;minimum: 0
+ * </pre>
+ *
+ * <pre>-environment &lt;adams.core.base.BaseString&gt; [-environment ...] (property: environment)
+ * &nbsp;&nbsp;&nbsp;Additional environment variables (KEY=VALUE) for the containers (or native
+ * &nbsp;&nbsp;&nbsp;binaries); override the ones derived from the other settings.
+ * &nbsp;&nbsp;&nbsp;default:
+ * </pre>
+ *
+ * <pre>-scratch-enabled &lt;boolean&gt; (property: scratchEnabled)
+ * &nbsp;&nbsp;&nbsp;If enabled, a scratch area on a memory-backed file system gets mapped into
+ * &nbsp;&nbsp;&nbsp;the containers (under /scratch), for outputs and temporary files (TMPDIR).
+ * &nbsp;&nbsp;&nbsp;default: false
+ * </pre>
+ *
+ * <pre>-scratch-dir &lt;adams.core.io.PlaceholderDirectory&gt; (property: scratchDir)
+ * &nbsp;&nbsp;&nbsp;The directory on a memory-backed file system (eg tmpfs) to create the scratch
+ * &nbsp;&nbsp;&nbsp;area in; gets removed when the flow finishes.
+ * &nbsp;&nbsp;&nbsp;default: /dev/shm
+ * </pre>
+ *
  <!-- options-end -->
  *
  * @author fracpete (fracpete at waikato dot ac dot nz)
@@ -84,9 +276,123 @@ public class SPyConfiguration
 
   private static final long serialVersionUID = -166275315395641166L;
 
+  /** the environment variables for the number of threads. */
+  public static final String[] THREAD_VARIABLES = {"OMP_NUM_THREADS", "OPENBLAS_NUM_THREADS", "MKL_NUM_THREADS", "NUMEXPR_NUM_THREADS"};
+
   /** the docker image to use. */
   protected String m_Image;
 
+  /** the maximum number of pooled containers (0 = no pooling). */
+  protected int m_PoolSize;
+
+  /** the time-to-live in seconds for idle pooled containers. */
+  protected int m_PoolIdleTTL;
+
+  /** the execution backend. */
+  protected ExecutionBackend m_Backend;
+
+  /** the directory with the native binaries. */
+  protected PlaceholderDirectory m_NativeBinDir;
+
+  /** the endpoint for the engine API. */
+  protected String m_EngineEndpoint;
+
+  /** the version of the engine API. */
+  protected String m_EngineAPIVersion;
+
+  /** whether to cache results. */
+  protected boolean m_CacheEnabled;
+
+  /** the cache directory. */
+  protected PlaceholderDirectory m_CacheDir;
+
+  /** the maximum cache size in MB. */
+  protected int m_CacheMaxSize;
+
+  /** whether to pull the image when the flow starts. */
+  protected boolean m_PrePull;
+
+  /** whether to warm up the image after pulling. */
+  protected boolean m_WarmUp;
+
+  /** the file for the runtime history. */
+  protected PlaceholderFile m_CostHistory;
+
+  /** the number of slots for the parallel transformers across the flow (0 = no limit). */
+  protected int m_SchedulerSlots;
+
+  /** whether to journal the jobs. */
+  protected boolean m_JournalEnabled;
+
+  /** the journal file. */
+  protected PlaceholderFile m_JournalFile;
+
+  /** whether to verify the checksums of journaled outputs. */
+  protected boolean m_JournalVerify;
+
+  /** the number of consecutive daemon failures that open the circuit breaker (0 = disabled). */
+  protected int m_BreakerThreshold;
+
+  /** the cool-down period of the circuit breaker (seconds). */
+  protected int m_BreakerCoolDown;
+
+  /** the number of CPUs per container (0 = no limit). */
+  protected double m_Cpus;
+
+  /** the memory limit per container (empty = no limit). */
+  protected String m_Memory;
+
+  /** the CPUs the containers can run on (empty = any). */
+  protected String m_CpusetCpus;
+
+  /** the number of OpenMP/BLAS threads (0 = not set). */
+  protected int m_NumThreads;
+
+  /** additional environment variables (KEY=VALUE). */
+  protected BaseString[] m_Environment;
+
+  /** whether the scratch area is enabled. */
+  protected boolean m_ScratchEnabled;
+
+  /** the directory for the scratch area. */
+  protected PlaceholderDirectory m_ScratchDir;
+
+  /** the container pool. */
+  protected transient ContainerPool m_Pool;
+
+  /** the engine API client. */
+  protected transient DockerEngineClient m_EngineClient;
+
+  /** the result cache. */
+  protected transient ResultCache m_Cache;
+
+  /** the cost estimator. */
+  protected transient CostEstimator m_CostEstimator;
+
+  /** the scheduler for the parallel transformers. */
+  protected transient JobScheduler m_Scheduler;
+
+  /** the job journal. */
+  protected transient JobJournal m_Journal;
+
+  /** the scratch area. */
+  protected transient ScratchArea m_ScratchArea;
+
+  /** the circuit breaker. */
+  protected transient CircuitBreaker m_CircuitBreaker;
+
+  /** the live containers. */
+  protected transient ContainerRegistry m_ContainerRegistry;
+
+  /** the image digests (image -> digest, null if not available). */
+  protected transient Map<String,CompletableFuture<String>> m_ImageDigests;
+
+  /** whether the warning about pooling not being supported has been output. */
+  protected boolean m_PoolWarningShown;
+
+  /** the located native binaries (name -> path, empty string if not found). */
+  protected transient Map<String,String> m_NativeExecutables;
+
   /**
    * Returns a string describing the object.
    *
@@ -111,6 +417,124 @@ public class SPyConfiguration
     m_OptionManager.add(
       "image", "image",
       "public.aml-repo.cms.waikato.ac.nz:443/wairas/happy-spy-utilities:latest");
+
+    m_OptionManager.add(
+      "pool-size", "poolSize",
+      0, 0, null);
+
+    m_OptionManager.add(
+      "pool-idle-ttl", "poolIdleTTL",
+      300, 1, null);
+
+    m_OptionManager.add(
+      "backend", "backend",
+      ExecutionBackend.DOCKER);
+
+    m_OptionManager.add(
+      "native-bin-dir", "nativeBinDir",
+      new PlaceholderDirectory());
+
+    m_OptionManager.add(
+      "engine-endpoint", "engineEndpoint",
+      DockerEngineClient.DEFAULT_ENDPOINT);
+
+    m_OptionManager.add(
+      "engine-api-version", "engineAPIVersion",
+      DockerEngineClient.DEFAULT_API_VERSION);
+
+    m_OptionManager.add(
+      "cache-enabled", "cacheEnabled",
+      false);
+
+    m_OptionManager.add(
+      "cache-dir", "cacheDir",
+      new PlaceholderDirectory("${HOME}/.happy-adams/cache/spy"));
+
+    m_OptionManager.add(
+      "cache-max-size", "cacheMaxSize",
+      1024, 1, null);
+
+    m_OptionManager.add(
+      "pre-pull", "prePull",
+      false);
+
+    m_OptionManager.add(
+      "warm-up", "warmUp",
+      false);
+
+    m_OptionManager.add(
+      "cost-history", "costHistory",
+      new PlaceholderFile("${HOME}/.happy-adams/cost/spy.props"));
+
+    m_OptionManager.add(
+      "scheduler-slots", "schedulerSlots",
+      0, 0, null);
+
+    m_OptionManager.add(
+      "journal-enabled", "journalEnabled",
+      false);
+
+    m_OptionManager.add(
+      "journal-file", "journalFile",
+      new PlaceholderFile("${HOME}/.happy-adams/journal/spy.journal"));
+
+    m_OptionManager.add(
+      "journal-verify", "journalVerify",
+      false);
+
+    m_OptionManager.add(
+      "breaker-threshold", "breakerThreshold",
+      0, 0, null);
+
+    m_OptionManager.add(
+      "breaker-cooldown", "breakerCoolDown",
+      30, 1, null);
+
+    m_OptionManager.add(
+      "cpus", "cpus",
+      0.0, 0.0, null);
+
+    m_OptionManager.add(
+      "memory", "memory",
+      "");
+
+    m_OptionManager.add(
+      "cpuset-cpus", "cpusetCpus",
+      "");
+
+    m_OptionManager.add(
+      "num-threads", "numThreads",
+      0, 0, null);
+
+    m_OptionManager.add(
+      "environment", "environment",
+      new BaseString[0]);
+
+    m_OptionManager.add(
+      "scratch-enabled", "scratchEnabled",
+      false);
+
+    m_OptionManager.add(
+      "scratch-dir", "scratchDir",
+      new PlaceholderDirectory("/dev/shm"));
+  }
+
+  /**
+   * Resets the scheme.
+   */
+  @Override
+  protected void reset() {
+    super.reset();
+
+    m_NativeExecutables = null;
+    closeEngineClient();
+    m_Cache             = null;
+    m_ImageDigests      = null;
+    m_CostEstimator     = null;
+    m_Scheduler         = null;
+    m_CircuitBreaker    = null;
+    closeJournal();
+    clearScratchArea();
   }
 
   /**
@@ -120,7 +544,17 @@ public class SPyConfiguration
    */
   @Override
   public String getQuickInfo() {
-    return QuickInfoHelper.toString(this, "image", m_Image, "image: ");
+    String	result;
+
+    result = QuickInfoHelper.toString(this, "image", m_Image, "image: ");
+    result += QuickInfoHelper.toString(this, "poolSize", (m_PoolSize > 0 ? m_PoolSize : "off"), ", pool: ");
+    result += QuickInfoHelper.toString(this, "backend", m_Backend, ", backend: ");
+    result += QuickInfoHelper.toString(this, "cacheEnabled", m_CacheEnabled, "cache", ", ");
+    result += QuickInfoHelper.toString(this, "scratchEnabled", m_ScratchEnabled, "scratch", ", ");
+    result += QuickInfoHelper.toString(this, "prePull", m_PrePull, "pre-pull", ", ");
+    result += QuickInfoHelper.toString(this, "journalEnabled", m_JournalEnabled, "journal", ", ");
+
+    return result;
   }
 
   /**
@@ -153,12 +587,1300 @@ public class SPyConfiguration
   }
 
   /**
-   * Executes the flow item.
+   * Sets the maximum number of pooled containers.
    *
-   * @return null if everything is fine, otherwise error message
+   * @param value	the maximum, 0 to disable pooling
    */
-  @Override
-  protected String doExecute() {
-    return null;
+  public void setPoolSize(int value) {
+    if (getOptionManager().isValid("poolSize", value)) {
+      m_PoolSize = value;
+      reset();
+    }
+  }
+
+  /**
+   * Returns the maximum number of pooled containers.
+   *
+   * @return		the maximum, 0 if pooling disabled
+   */
+  public int getPoolSize() {
+    return m_PoolSize;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String poolSizeTipText() {
+    return "The maximum number of long-lived containers to keep for executing commands via 'docker exec'; 0 disables pooling and uses 'docker run --rm' for each execution.";
+  }
+
+  /**
+   * Sets the time in seconds after which idle pooled containers get removed.
+   *
+   * @param value	the TTL in seconds
+   */
+  public void setPoolIdleTTL(int value) {
+    if (getOptionManager().isValid("poolIdleTTL", value)) {
+      m_PoolIdleTTL = value;
+      reset();
+    }
+  }
+
+  /**
+   * Returns the time in seconds after which idle pooled containers get removed.
+   *
+   * @return		the TTL in seconds
+   */
+  public int getPoolIdleTTL() {
+    return m_PoolIdleTTL;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String poolIdleTTLTipText() {
+    return "The time in seconds after which idle pooled containers get removed.";
+  }
+
+  /**
+   * Sets how to execute the commands.
+   *
+   * @param value	the backend
+   */
+  public void setBackend(ExecutionBackend value) {
+    m_Backend = value;
+    reset();
+  }
+
+  /**
+   * Returns how to execute the commands.
+   *
+   * @return		the backend
+   */
+  public ExecutionBackend getBackend() {
+    return m_Backend;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String backendTipText() {
+    return "How to execute the commands; " + ExecutionBackend.NATIVE + " runs locally installed binaries directly (no docker, no directory mappings) and falls back to docker if a binary cannot be located; "
+      + ExecutionBackend.ENGINE + " talks to the docker daemon directly via the Engine API rather than spawning the docker CLI.";
+  }
+
+  /**
+   * Sets the directory to look for the native binaries first.
+   *
+   * @param value	the directory
+   */
+  public void setNativeBinDir(PlaceholderDirectory value) {
+    m_NativeBinDir = value;
+    reset();
+  }
+
+  /**
+   * Returns the directory to look for the native binaries first.
+   *
+   * @return		the directory
+   */
+  public PlaceholderDirectory getNativeBinDir() {
+    return m_NativeBinDir;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String nativeBinDirTipText() {
+    return "The directory to look for the native binaries first, before searching the PATH.";
+  }
+
+  /**
+   * Sets the endpoint of the docker daemon for the Engine API.
+   *
+   * @param value	the endpoint
+   */
+  public void setEngineEndpoint(String value) {
+    m_EngineEndpoint = value;
+    reset();
+  }
+
+  /**
+   * Returns the endpoint of the docker daemon for the Engine API.
+   *
+   * @return		the endpoint
+   */
+  public String getEngineEndpoint() {
+    return m_EngineEndpoint;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String engineEndpointTipText() {
+    return "The endpoint of the docker daemon when using the Engine API, either a unix socket (unix:///path, requires Java 16+) or TCP (tcp://host:port).";
+  }
+
+  /**
+   * Sets the version of the Engine API to use.
+   *
+   * @param value	the version, empty for latest
+   */
+  public void setEngineAPIVersion(String value) {
+    m_EngineAPIVersion = value;
+    reset();
+  }
+
+  /**
+   * Returns the version of the Engine API to use.
+   *
+   * @return		the version, empty for latest
+   */
+  public String getEngineAPIVersion() {
+    return m_EngineAPIVersion;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String engineAPIVersionTipText() {
+    return "The version of the Engine API to use, eg 1.41; empty for the daemon's latest version.";
+  }
+
+  /**
+   * Sets whether to cache the results of file-writing commands.
+   *
+   * @param value	true if to cache
+   */
+  public void setCacheEnabled(boolean value) {
+    m_CacheEnabled = value;
+    reset();
+  }
+
+  /**
+   * Returns whether to cache the results of file-writing commands.
+   *
+   * @return		true if to cache
+   */
+  public boolean getCacheEnabled() {
+    return m_CacheEnabled;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String cacheEnabledTipText() {
+    return "If enabled, the results of file-writing commands get cached, keyed on input content, executable, options and image digest; a cache hit re-uses the output without executing the command.";
+  }
+
+  /**
+   * Sets the directory for storing the cached results.
+   *
+   * @param value	the directory
+   */
+  public void setCacheDir(PlaceholderDirectory value) {
+    m_CacheDir = value;
+    reset();
+  }
+
+  /**
+   * Returns the directory for storing the cached results.
+   *
+   * @return		the directory
+   */
+  public PlaceholderDirectory getCacheDir() {
+    return m_CacheDir;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String cacheDirTipText() {
+    return "The directory for storing the cached results.";
+  }
+
+  /**
+   * Sets the maximum size of the cache.
+   *
+   * @param value	the size in MB
+   */
+  public void setCacheMaxSize(int value) {
+    if (getOptionManager().isValid("cacheMaxSize", value)) {
+      m_CacheMaxSize = value;
+      reset();
+    }
+  }
+
+  /**
+   * Returns the maximum size of the cache.
+   *
+   * @return		the size in MB
+   */
+  public int getCacheMaxSize() {
+    return m_CacheMaxSize;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String cacheMaxSizeTipText() {
+    return "The maximum size of the cache in MB; least recently used results get removed first.";
+  }
+
+  /**
+   * Sets whether to pull the image in the background when the flow starts.
+   *
+   * @param value	true if to pull
+   */
+  public void setPrePull(boolean value) {
+    m_PrePull = value;
+    reset();
+  }
+
+  /**
+   * Returns whether to pull the image in the background when the flow starts.
+   *
+   * @return		true if to pull
+   */
+  public boolean getPrePull() {
+    return m_PrePull;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String prePullTipText() {
+    return "If enabled, the image gets pulled in the background when the flow starts (requires a "
+      + Utils.classToString(SimpleDockerConnection.class) + " standalone); commands with pull type "
+      + PullType.ALWAYS + " wait for this pull instead of pulling themselves; the image gets pulled "
+      + "at most once per flow execution.";
+  }
+
+  /**
+   * Sets whether to run a throw-away container after pulling the image.
+   *
+   * @param value	true if to warm up
+   */
+  public void setWarmUp(boolean value) {
+    m_WarmUp = value;
+    reset();
+  }
+
+  /**
+   * Returns whether to run a throw-away container after pulling the image.
+   *
+   * @return		true if to warm up
+   */
+  public boolean getWarmUp() {
+    return m_WarmUp;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String warmUpTipText() {
+    return "If enabled, a throw-away container gets run after pulling the image to warm it up.";
+  }
+
+  /**
+   * Sets the file for storing the runtime history of the executables.
+   *
+   * @param value	the file, ignored if pointing to a directory
+   */
+  public void setCostHistory(PlaceholderFile value) {
+    m_CostHistory = value;
+    reset();
+  }
+
+  /**
+   * Returns the file for storing the runtime history of the executables.
+   *
+   * @return		the file, ignored if pointing to a directory
+   */
+  public PlaceholderFile getCostHistory() {
+    return m_CostHistory;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String costHistoryTipText() {
+    return "The file for storing the runtime history of the executables, used for estimating the cost of jobs "
+      + "(longest-first dispatching); ignored if pointing to a directory.";
+  }
+
+  /**
+   * Sets the maximum number of jobs of the parallel transformers that can
+   * execute concurrently across the flow.
+   *
+   * @param value	the number of slots, 0 for no limit
+   */
+  public void setSchedulerSlots(int value) {
+    if (getOptionManager().isValid("schedulerSlots", value)) {
+      m_SchedulerSlots = value;
+      reset();
+    }
+  }
+
+  /**
+   * Returns the maximum number of jobs of the parallel transformers that can
+   * execute concurrently across the flow.
+   *
+   * @return		the number of slots, 0 for no limit
+   */
+  public int getSchedulerSlots() {
+    return m_SchedulerSlots;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String schedulerSlotsTipText() {
+    return "The maximum number of jobs of the parallel transformers that can execute concurrently across the flow, "
+      + "dispatched by priority and estimated cost; 0 = no limit.";
+  }
+
+  /**
+   * Sets whether to journal the jobs of file-writing commands.
+   *
+   * @param value	true if to journal
+   */
+  public void setJournalEnabled(boolean value) {
+    m_JournalEnabled = value;
+    reset();
+  }
+
+  /**
+   * Returns whether to journal the jobs of file-writing commands.
+   *
+   * @return		true if to journal
+   */
+  public boolean getJournalEnabled() {
+    return m_JournalEnabled;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String journalEnabledTipText() {
+    return "If enabled, the jobs of file-writing commands get recorded in an append-only journal; when re-running, "
+      + "completed jobs with intact output get skipped and incomplete ones get redone.";
+  }
+
+  /**
+   * Sets the file for the job journal.
+   *
+   * @param value	the file
+   */
+  public void setJournalFile(PlaceholderFile value) {
+    m_JournalFile = value;
+    reset();
+  }
+
+  /**
+   * Returns the file for the job journal.
+   *
+   * @return		the file
+   */
+  public PlaceholderFile getJournalFile() {
+    return m_JournalFile;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String journalFileTipText() {
+    return "The file for the job journal.";
+  }
+
+  /**
+   * Sets whether to verify the checksum of the output of completed jobs.
+   *
+   * @param value	true if to verify
+   */
+  public void setJournalVerify(boolean value) {
+    m_JournalVerify = value;
+    reset();
+  }
+
+  /**
+   * Returns whether to verify the checksum of the output of completed jobs.
+   *
+   * @return		true if to verify
+   */
+  public boolean getJournalVerify() {
+    return m_JournalVerify;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String journalVerifyTipText() {
+    return "If enabled, the checksum of the output of completed jobs gets verified before skipping them, rather than just size and timestamp.";
+  }
+
+  /**
+   * Sets the number of consecutive docker daemon failures after which
+   * commands fail fast.
+   *
+   * @param value	the number of failures, 0 to disable
+   */
+  public void setBreakerThreshold(int value) {
+    if (getOptionManager().isValid("breakerThreshold", value)) {
+      m_BreakerThreshold = value;
+      reset();
+    }
+  }
+
+  /**
+   * Returns the number of consecutive docker daemon failures after which
+   * commands fail fast.
+   *
+   * @return		the number of failures, 0 if disabled
+   */
+  public int getBreakerThreshold() {
+    return m_BreakerThreshold;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String breakerThresholdTipText() {
+    return "The number of consecutive docker daemon failures (daemon errors, timeouts, failures to start) after which "
+      + "commands fail fast until the cool-down period has passed; 0 = disabled.";
+  }
+
+  /**
+   * Sets the time to fail fast before letting a trial invocation through.
+   *
+   * @param value	the time in seconds
+   */
+  public void setBreakerCoolDown(int value) {
+    if (getOptionManager().isValid("breakerCoolDown", value)) {
+      m_BreakerCoolDown = value;
+      reset();
+    }
+  }
+
+  /**
+   * Returns the time to fail fast before letting a trial invocation through.
+   *
+   * @return		the time in seconds
+   */
+  public int getBreakerCoolDown() {
+    return m_BreakerCoolDown;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String breakerCoolDownTipText() {
+    return "The time in seconds to fail fast before letting a trial invocation through again.";
+  }
+
+  /**
+   * Sets the number of CPUs a container can use.
+   *
+   * @param value	the CPUs, 0 for no limit
+   */
+  public void setCpus(double value) {
+    if (getOptionManager().isValid("cpus", value)) {
+      m_Cpus = value;
+      reset();
+    }
+  }
+
+  /**
+   * Returns the number of CPUs a container can use.
+   *
+   * @return		the CPUs, 0 for no limit
+   */
+  public double getCpus() {
+    return m_Cpus;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String cpusTipText() {
+    return "The number of CPUs a container can use (docker run --cpus); 0 = no limit.";
+  }
+
+  /**
+   * Sets the memory limit for a container.
+   *
+   * @param value	the limit (eg 4g), empty for no limit
+   */
+  public void setMemory(String value) {
+    m_Memory = value;
+    reset();
+  }
+
+  /**
+   * Returns the memory limit for a container.
+   *
+   * @return		the limit, empty for no limit
+   */
+  public String getMemory() {
+    return m_Memory;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String memoryTipText() {
+    return "The memory limit for a container (docker run --memory), e.g., 512m or 4g; empty = no limit.";
+  }
+
+  /**
+   * Sets the CPUs a container is allowed to run on.
+   *
+   * @param value	the CPUs (eg 0-3), empty for any
+   */
+  public void setCpusetCpus(String value) {
+    m_CpusetCpus = value;
+    reset();
+  }
+
+  /**
+   * Returns the CPUs a container is allowed to run on.
+   *
+   * @return		the CPUs, empty for any
+   */
+  public String getCpusetCpus() {
+    return m_CpusetCpus;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String cpusetCpusTipText() {
+    return "The CPUs a container is allowed to run on (docker run --cpuset-cpus), e.g., 0-3 or 0,2; empty = any.";
+  }
+
+  /**
+   * Sets the number of threads for OpenMP and the BLAS libraries.
+   *
+   * @param value	the threads, 0 for not set
+   */
+  public void setNumThreads(int value) {
+    if (getOptionManager().isValid("numThreads", value)) {
+      m_NumThreads = value;
+      reset();
+    }
+  }
+
+  /**
+   * Returns the number of threads for OpenMP and the BLAS libraries.
+   *
+   * @return		the threads, 0 if not set
+   */
+  public int getNumThreads() {
+    return m_NumThreads;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String numThreadsTipText() {
+    return "The number of threads for OpenMP and the BLAS libraries (OMP_NUM_THREADS, OPENBLAS_NUM_THREADS, MKL_NUM_THREADS, NUMEXPR_NUM_THREADS); "
+      + "0 = use the CPU limit if set, otherwise library defaults.";
+  }
+
+  /**
+   * Sets additional environment variables.
+   *
+   * @param value	the variables (KEY=VALUE)
+   */
+  public void setEnvironment(BaseString[] value) {
+    m_Environment = value;
+    reset();
+  }
+
+  /**
+   * Returns additional environment variables.
+   *
+   * @return		the variables
+   */
+  public BaseString[] getEnvironment() {
+    return m_Environment;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String environmentTipText() {
+    return "Additional environment variables (KEY=VALUE) for the containers (or native binaries); override the ones derived from the other settings.";
+  }
+
+  /**
+   * Sets whether to use a scratch area.
+   *
+   * @param value	true if to use
+   */
+  public void setScratchEnabled(boolean value) {
+    m_ScratchEnabled = value;
+    reset();
+  }
+
+  /**
+   * Returns whether to use a scratch area.
+   *
+   * @return		true if to use
+   */
+  public boolean getScratchEnabled() {
+    return m_ScratchEnabled;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String scratchEnabledTipText() {
+    return "If enabled, a scratch area on a memory-backed file system gets mapped into the containers (under " + ScratchArea.CONTAINER_DIR + "), "
+      + "for outputs and temporary files (" + getScratchVariable() + ").";
+  }
+
+  /**
+   * Sets the directory for the scratch area.
+   *
+   * @param value	the directory
+   */
+  public void setScratchDir(PlaceholderDirectory value) {
+    m_ScratchDir = value;
+    reset();
+  }
+
+  /**
+   * Returns the directory for the scratch area.
+   *
+   * @return		the directory
+   */
+  public PlaceholderDirectory getScratchDir() {
+    return m_ScratchDir;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String scratchDirTipText() {
+    return "The directory on a memory-backed file system (eg tmpfs) to create the scratch area in; gets removed when the flow finishes.";
+  }
+
+  /**
+   * Returns the resource limits for the containers.
+   *
+   * @return		the limits
+   */
+  public ContainerResources getContainerResources() {
+    return new ContainerResources(m_Cpus, m_Memory, m_CpusetCpus);
+  }
+
+  /**
+   * Returns the environment variables for the containers (or native
+   * binaries), derived from the settings and the additional variables.
+   *
+   * @return		the variables (name -&gt; value)
+   */
+  public Map<String,String> getContainerEnvironment() {
+    Map<String,String>	result;
+    int			pos;
+    int			threads;
+
+    result = new LinkedHashMap<>();
+    threads = m_NumThreads;
+    if ((threads == 0) && (m_Cpus > 0))
+      threads = Math.max(1, (int) Math.ceil(m_Cpus));
+    if (threads > 0) {
+      for (String var: THREAD_VARIABLES)
+	result.put(var, "" + threads);
+    }
+    for (BaseString env: m_Environment) {
+      pos = env.getValue().indexOf('=');
+      if (pos > 0)
+	result.put(env.getValue().substring(0, pos).trim(), env.getValue().substring(pos + 1));
+    }
+
+    return result;
+  }
+
+  /**
+   * Returns the result cache, instantiates it if necessary.
+   *
+   * @return		the cache, null if caching is disabled
+   */
+  public synchronized ResultCache getCache() {
+    if (!m_CacheEnabled)
+      return null;
+
+    if (m_Cache == null) {
+      m_Cache = new ResultCache(m_CacheDir.getAbsoluteFile(), m_CacheMaxSize * 1024L * 1024L);
+      m_Cache.setLoggingLevel(getLoggingLevel());
+    }
+
+    return m_Cache;
+  }
+
+  /**
+   * Returns the cost estimator, instantiates it if necessary (loads the
+   * runtime history).
+   *
+   * @return		the estimator
+   */
+  public synchronized CostEstimator getCostEstimator() {
+    if (m_CostEstimator == null) {
+      m_CostEstimator = new CostEstimator(m_CostHistory.isDirectory() ? null : m_CostHistory.getAbsoluteFile());
+      m_CostEstimator.setLoggingLevel(getLoggingLevel());
+    }
+
+    return m_CostEstimator;
+  }
+
+  /**
+   * Saves the runtime history of the cost estimator (if any).
+   */
+  protected synchronized void saveCostEstimator() {
+    String	msg;
+
+    if (m_CostEstimator != null) {
+      msg = m_CostEstimator.save();
+      if (msg != null)
+	getLogger().warning(msg);
+    }
+  }
+
+  /**
+   * Returns the scheduler for the jobs of the parallel transformers,
+   * instantiates it if necessary.
+   *
+   * @return		the scheduler, null if no limit
+   */
+  public synchronized JobScheduler getScheduler() {
+    if (m_SchedulerSlots == 0)
+      return null;
+
+    if (m_Scheduler == null) {
+      m_Scheduler = new JobScheduler(m_SchedulerSlots);
+      m_Scheduler.setLoggingLevel(getLoggingLevel());
+    }
+
+    return m_Scheduler;
+  }
+
+  /**
+   * Returns the circuit breaker for the docker daemon, instantiates it if
+   * necessary.
+   *
+   * @return		the breaker, null if disabled
+   */
+  public synchronized CircuitBreaker getCircuitBreaker() {
+    if (m_BreakerThreshold == 0)
+      return null;
+
+    if (m_CircuitBreaker == null) {
+      m_CircuitBreaker = new CircuitBreaker(m_BreakerThreshold, m_BreakerCoolDown * 1000L);
+      m_CircuitBreaker.setLoggingLevel(getLoggingLevel());
+    }
+
+    return m_CircuitBreaker;
+  }
+
+  /**
+   * Returns the registry for the live containers, instantiates it if necessary.
+   *
+   * @return		the registry
+   */
+  public synchronized ContainerRegistry getContainerRegistry() {
+    if (m_ContainerRegistry == null) {
+      m_ContainerRegistry = new ContainerRegistry();
+      m_ContainerRegistry.setLoggingLevel(getLoggingLevel());
+    }
+
+    return m_ContainerRegistry;
+  }
+
+  /**
+   * Kills all live containers (if any).
+   */
+  protected void killContainers() {
+    ContainerRegistry	registry;
+    int			killed;
+
+    synchronized (this) {
+      registry = m_ContainerRegistry;
+    }
+    if (registry != null) {
+      killed = registry.killAll();
+      if (killed > 0)
+	getLogger().warning("Killed " + killed + " live container(s)");
+    }
+  }
+
+  /**
+   * Returns the job journal, instantiates it if necessary (loads the
+   * existing entries).
+   *
+   * @return		the journal, null if journaling is disabled
+   */
+  public synchronized JobJournal getJournal() {
+    if (!m_JournalEnabled)
+      return null;
+
+    if (m_Journal == null) {
+      m_Journal = new JobJournal(m_JournalFile.getAbsoluteFile());
+      m_Journal.setLoggingLevel(getLoggingLevel());
+    }
+
+    return m_Journal;
+  }
+
+  /**
+   * Closes the job journal (if any).
+   */
+  protected synchronized void closeJournal() {
+    if (m_Journal != null) {
+      if (isLoggingEnabled())
+	getLogger().info("Journal " + m_Journal.getFile() + ": " + m_Journal.getCounts());
+      m_Journal.close();
+      m_Journal = null;
+    }
+  }
+
+  /**
+   * Returns the name of the environment variable for the directory that
+   * the executables use for temporary files.
+   *
+   * @return		the name
+   */
+  public String getScratchVariable() {
+    return "TMPDIR";
+  }
+
+  /**
+   * Returns the scratch area, instantiates it if necessary.
+   *
+   * @return		the scratch area, null if disabled
+   */
+  public synchronized ScratchArea getScratchArea() {
+    if (!m_ScratchEnabled)
+      return null;
+
+    if (m_ScratchArea == null) {
+      m_ScratchArea = new ScratchArea(m_ScratchDir.getAbsoluteFile());
+      m_ScratchArea.setLoggingLevel(getLoggingLevel());
+    }
+
+    return m_ScratchArea;
+  }
+
+  /**
+   * Removes the scratch area (if any) and all its content.
+   */
+  protected synchronized void clearScratchArea() {
+    if (m_ScratchArea != null) {
+      m_ScratchArea.clear();
+      m_ScratchArea = null;
+    }
+  }
+
+  /**
+   * Returns the digest (ID) of the local docker image. The digest gets cached.
+   * Only the first caller for an image inspects it (without holding the lock),
+   * concurrent callers wait for its result. Failed lookups are not cached.
+   *
+   * @param connection	the docker connection to use
+   * @return		the digest, null if not available (eg image not pulled yet)
+   */
+  public String getImageDigest(SimpleDockerConnection connection) {
+    Map<String,CompletableFuture<String>>	digests;
+    CompletableFuture<String>			future;
+    String					image;
+    String					result;
+    boolean					inspect;
+
+    synchronized (this) {
+      if (m_ImageDigests == null)
+	m_ImageDigests = new HashMap<>();
+      digests = m_ImageDigests;
+      image   = m_Image;
+      future  = digests.get(image);
+      inspect = (future == null);
+      if (inspect) {
+	future = new CompletableFuture<>();
+	digests.put(image, future);
+      }
+    }
+
+    if (!inspect)
+      return future.join();
+
+    result = inspectImageDigest(connection, image);
+    if (result == null) {
+      synchronized (this) {
+	digests.remove(image, future);
+      }
+    }
+    future.complete(result);
+
+    return result;
+  }
+
+  /**
+   * Determines the digest (ID) of the local docker image via "docker image inspect".
+   *
+   * @param connection	the docker connection to use
+   * @param image	the image to inspect
+   * @return		the digest, null if not available (eg image not pulled yet)
+   */
+  protected String inspectImageDigest(SimpleDockerConnection connection, String image) {
+    ProcessRunner	runner;
+    String		result;
+
+    try {
+      runner = ProcessRunner.run(Arrays.asList(connection.getAcualBinary(), "image", "inspect", "--format", "{{.Id}}", image));
+      if (!runner.hasSucceeded()) {
+	if (isLoggingEnabled())
+	  getLogger().info("Failed to determine digest of image " + image + ":\n" + runner.toErrorMessage());
+	return null;
+      }
+      result = runner.getStdOut().trim();
+      if (result.isEmpty())
+	return null;
+      return result;
+    }
+    catch (Exception e) {
+      getLogger().warning("Failed to determine digest of image " + image + ": " + e);
+      return null;
+    }
+  }
+
+  /**
+   * Starts the shared pulls of the image. With a distributed connection,
+   * the image gets pulled on all endpoints.
+   *
+   * @param connection	the docker connection to use
+   * @return		the pulls (endpoint -> pull), the endpoint is null for a non-distributed connection
+   */
+  protected Map<String,CompletableFuture<String>> pull(SimpleDockerConnection connection) {
+    Map<String,CompletableFuture<String>>	result;
+
+    result = new LinkedHashMap<>();
+    if (connection instanceof DistributedDockerConnection) {
+      for (String endpoint: ((DistributedDockerConnection) connection).getEndpointHosts())
+	result.put(endpoint, ImagePuller.pull(getRoot(), connection.getAcualBinary(), endpoint, m_Image, m_WarmUp));
+    }
+    else {
+      result.put(null, ImagePuller.pull(getRoot(), connection.getAcualBinary(), m_Image, m_WarmUp));
+    }
+
+    return result;
+  }
+
+  /**
+   * Waits for the shared pull of the image, starts the pull if necessary.
+   * The image gets pulled at most once per flow execution. With a distributed
+   * connection, endpoints that fail to pull the image get taken out of
+   * rotation and an error is only returned if all of them failed.
+   *
+   * @param connection	the docker connection to use
+   * @return		null if successful, otherwise error message
+   */
+  public String waitForImage(SimpleDockerConnection connection) {
+    Map<String,CompletableFuture<String>>	pulls;
+    String					result;
+    String					msg;
+    int						failed;
+
+    pulls = pull(connection);
+    for (CompletableFuture<String> pull: pulls.values()) {
+      while (!pull.isDone()) {
+	if (isStopped())
+	  return "Flow stopped while waiting for image " + m_Image + " to get pulled!";
+	try {
+	  pull.get(100, TimeUnit.MILLISECONDS);
+	}
+	catch (Exception e) {
+	  // ignored
+	}
+      }
+    }
+
+    result = null;
+    failed = 0;
+    for (String endpoint: pulls.keySet()) {
+      msg = pulls.get(endpoint).join();
+      if (msg == null)
+	continue;
+      failed++;
+      result = msg;
+      if (endpoint != null)
+	((DistributedDockerConnection) connection).markUnhealthy(endpoint);
+    }
+    if (failed < pulls.size())
+      result = null;
+
+    return result;
+  }
+
+  /**
+   * Returns the absolute path of the native binary to use for the executable.
+   * The lookup result gets cached.
+   *
+   * @param executable	the name of the executable
+   * @return		the path, null if native execution is not enabled or the binary cannot be located
+   */
+  public synchronized String getNativeExecutable(String executable) {
+    String	path;
+
+    if (m_Backend != ExecutionBackend.NATIVE)
+      return null;
+
+    if (m_NativeExecutables == null)
+      m_NativeExecutables = new HashMap<>();
+
+    if (!m_NativeExecutables.containsKey(executable)) {
+      path = NativeExecutableHelper.locate(m_NativeBinDir.getAbsoluteFile(), executable);
+      if (path == null) {
+	getLogger().warning("Native binary '" + executable + "' not found, falling back to docker!");
+	path = "";
+      }
+      else if (isLoggingEnabled()) {
+	getLogger().info("Native binary for '" + executable + "': " + path);
+      }
+      m_NativeExecutables.put(executable, path);
+    }
+
+    path = m_NativeExecutables.get(executable);
+    return path.isEmpty() ? null : path;
+  }
+
+  /**
+   * Returns the client for the Engine API, instantiates it if necessary.
+   * Idle connections to the daemon are kept alive and re-used.
+   *
+   * @return		the client
+   */
+  public synchronized DockerEngineClient getEngineClient() {
+    if (m_EngineClient == null) {
+      m_EngineClient = new DockerEngineClient(m_EngineEndpoint, m_EngineAPIVersion.trim(), Math.max(2, m_PoolSize * 2));
+      m_EngineClient.setLoggingLevel(getLoggingLevel());
+    }
+
+    return m_EngineClient;
+  }
+
+  /**
+   * Closes the idle connections of the Engine API client.
+   */
+  protected synchronized void closeEngineClient() {
+    if (m_EngineClient != null) {
+      m_EngineClient.close();
+      m_EngineClient = null;
+    }
+  }
+
+  /**
+   * Returns the container pool, instantiates it if necessary.
+   *
+   * @param connection	the docker connection to use for managing the containers
+   * @return		the pool, null if pooling is disabled or not supported by the connection
+   */
+  public synchronized ContainerPool getPool(SimpleDockerConnection connection) {
+    if (m_PoolSize == 0)
+      return null;
+
+    if (connection instanceof DistributedDockerConnection) {
+      if (!m_PoolWarningShown) {
+	getLogger().warning("Container pooling is not supported with " + Utils.classToString(DistributedDockerConnection.class) + ", ignored!");
+	m_PoolWarningShown = true;
+      }
+      return null;
+    }
+
+    if ((m_Pool == null) || m_Pool.isShutdown()) {
+      m_Pool = new ContainerPool(connection.getAcualBinary(), m_Image, m_PoolSize, m_PoolIdleTTL);
+      m_Pool.setLoggingLevel(getLoggingLevel());
+      m_Pool.setRegistry(getContainerRegistry());
+    }
+
+    return m_Pool;
+  }
+
+  /**
+   * Removes all pooled containers.
+   */
+  protected synchronized void shutdownPool() {
+    if (m_Pool != null) {
+      m_Pool.shutdown();
+      m_Pool = null;
+    }
+  }
+
+  /**
+   * Initializes the item for flow execution.
+   *
+   * @return		null if everything is fine, otherwise error message
+   */
+  @Override
+  public String setUp() {
+    String	result;
+
+    result = super.setUp();
+
+    if (result == null) {
+      if ((m_Backend == ExecutionBackend.ENGINE) && m_EngineEndpoint.startsWith("unix://") && !EngineConnection.supportsUnixSockets())
+	result = "Engine API endpoint " + m_EngineEndpoint + " requires Java 16 or later (running: " + System.getProperty("java.version") + "), "
+	  + "use a tcp:// endpoint or a different backend instead!";
+    }
+
+    return result;
+  }
+
+  /**
+   * Executes the flow item.
+   *
+   * @return null if everything is fine, otherwise error message
+   */
+  @Override
+  protected String doExecute() {
+    SimpleDockerConnection	connection;
+
+    if (!ContainerResources.isValidMemory(m_Memory))
+      return "Invalid memory limit: " + m_Memory;
+    for (BaseString env: m_Environment) {
+      if (env.getValue().indexOf('=') < 1)
+	return "Invalid environment variable, expected KEY=VALUE: " + env.getValue();
+    }
+    if (m_ScratchEnabled && !m_ScratchDir.isDirectory())
+      return "Scratch directory does not exist: " + m_ScratchDir;
+
+    // image might get updated by a pull
+    m_ImageDigests     = null;
+    m_PoolWarningShown = false;
+
+    if (m_PrePull && (m_Backend != ExecutionBackend.NATIVE)) {
+      connection = (SimpleDockerConnection) ActorUtils.findClosestType(this, SimpleDockerConnection.class, true);
+      if (connection == null)
+	return "No " + Utils.classToString(SimpleDockerConnection.class) + " actor found for pulling image!";
+      if (isLoggingEnabled())
+	getLogger().info("Pulling image in background: " + m_Image);
+      pull(connection);
+    }
+
+    return null;
+  }
+
+  /**
+   * Stops the execution. Kills all live containers immediately.
+   */
+  @Override
+  public void stopExecution() {
+    killContainers();
+    super.stopExecution();
+  }
+
+  /**
+   * Cleans up after the execution has finished.
+   */
+  @Override
+  public void wrapUp() {
+    killContainers();
+    saveCostEstimator();
+    closeJournal();
+    clearScratchArea();
+    shutdownPool();
+    closeEngineClient();
+    ImagePuller.release(getRoot());
+    super.wrapUp();
+  }
+
+  /**
+   * Cleans up after the execution has finished. Also removes graphical
+   * components.
+   */
+  @Override
+  public void cleanUp() {
+    killContainers();
+    saveCostEstimator();
+    closeJournal();
+    clearScratchArea();
+    shutdownPool();
+    closeEngineClient();
+    ImagePuller.release(getRoot());
+    super.cleanUp();
   }
 }
@@ -0,0 +1,698 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * EnviToRGBImage.java
+ * Copyright (C) 2023 University of Waikato, Hamilton, New Zealand
+ */
+
+package adams.flow.transformer;
+
+import adams.core.QuickInfoHelper;
+import adams.core.command.docker.ScratchFile;
+import adams.core.io.PlaceholderFile;
+import adams.data.envi.EnviCube;
+import adams.data.envi.EnviHeader;
+import adams.data.envi.EnviRGBComposer;
+import adams.data.envi.EnviScaling;
+import adams.data.image.BufferedImageContainer;
+import adams.flow.core.Token;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ <!-- globalinfo-start -->
+ * Generates an RGB image from three bands of an ENVI file, without the need for docker or Python. The ENVI data gets accessed via memory mapping and only the three bands get read.<br>
+ * Bands that are not specified (-1) get determined from the 'default bands' in the header, otherwise the first, middle and last band get used.<br>
+ * Recently used files are kept open, allowing fast recomposition with different bands.<br>
+ * Files in the scratch area, as forwarded by GDAL&#47;SPy commands writing to the scratch area, get read in place.
+ * <br><br>
+ <!-- globalinfo-end -->
+ *
+ <!-- flow-summary-start -->
+ * Input&#47;output:<br>
+ * - accepts:<br>
+ * &nbsp;&nbsp;&nbsp;java.lang.String<br>
+ * &nbsp;&nbsp;&nbsp;java.io.File<br>
+ * &nbsp;&nbsp;&nbsp;adams.core.command.docker.ScratchFile<br>
+ * - generates:<br>
+ * &nbsp;&nbsp;&nbsp;adams.data.image.BufferedImageContainer<br>
+ * <br><br>
+ <!-- flow-summary-end -->
+ *
+ <!-- options-start -->
+ * <pre>-logging-level &lt;OFF|SEVERE|WARNING|INFO|CONFIG|FINE|FINER|FINEST&gt; (property: loggingLevel)
+ * &nbsp;&nbsp;&nbsp;The logging level for outputting errors and debugging output.
+ * &nbsp;&nbsp;&nbsp;default: WARNING
+ * </pre>
+ *
+ * <pre>-name &lt;java.lang.String&gt; (property: name)
+ * &nbsp;&nbsp;&nbsp;The name of the actor.
+ * &nbsp;&nbsp;&nbsp;default: EnviToRGBImage
+ * </pre>
+ *
+ * <pre>-annotation &lt;adams.core.base.BaseAnnotation&gt; (property: annotations)
+ * &nbsp;&nbsp;&nbsp;The annotations to attach to this actor.
+ * &nbsp;&nbsp;&nbsp;default:
+ * </pre>
+ *
+ * <pre>-skip &lt;boolean&gt; (property: skip)
+ * &nbsp;&nbsp;&nbsp;If set to true, transformation is skipped and the input token is just forwarded
+ * &nbsp;&nbsp;&nbsp;as it is.
+ * &nbsp;&nbsp;&nbsp;default: false
+ * </pre>
+ *
+ * <pre>-stop-flow-on-error &lt;boolean&gt; (property: stopFlowOnError)
+ * &nbsp;&nbsp;&nbsp;If set to true, the flow execution at this level gets stopped in case this
+ * &nbsp;&nbsp;&nbsp;actor encounters an error; the error gets propagated; useful for critical
+ * &nbsp;&nbsp;&nbsp;actors.
+ * &nbsp;&nbsp;&nbsp;default: false
+ * </pre>
+ *
+ * <pre>-silent &lt;boolean&gt; (property: silent)
+ * &nbsp;&nbsp;&nbsp;If enabled, then no errors are output in the console; Note: the enclosing
+ * &nbsp;&nbsp;&nbsp;actor handler must have this enabled as well.
+ * &nbsp;&nbsp;&nbsp;default: false
+ * </pre>
+ *
+ * <pre>-red-band &lt;int&gt; (property: redBand)
+ * &nbsp;&nbsp;&nbsp;The 0-based index of the band to use for the red channel; -1 for default.
+ * &nbsp;&nbsp;&nbsp;default: -1
+ * &nbsp;&nbsp;&nbsp;minimum: -1
+ * </pre>
+ *
+ * <pre>-green-band &lt;int&gt; (property: greenBand)
+ * &nbsp;&nbsp;&nbsp;The 0-based index of the band to use for the green channel; -1 for default.
+ * &nbsp;&nbsp;&nbsp;default: -1
+ * &nbsp;&nbsp;&nbsp;minimum: -1
+ * </pre>
+ *
+ * <pre>-blue-band &lt;int&gt; (property: blueBand)
+ * &nbsp;&nbsp;&nbsp;The 0-based index of the band to use for the blue channel; -1 for default.
+ * &nbsp;&nbsp;&nbsp;default: -1
+ * &nbsp;&nbsp;&nbsp;minimum: -1
+ * </pre>
+ *
+ * <pre>-scaling &lt;NONE|MIN_MAX|PERCENTILE&gt; (property: scaling)
+ * &nbsp;&nbsp;&nbsp;How to scale the band values to the 0-255 range.
+ * &nbsp;&nbsp;&nbsp;default: MIN_MAX
+ * </pre>
+ *
+ * <pre>-lower-percentile &lt;double&gt; (property: lowerPercentile)
+ * &nbsp;&nbsp;&nbsp;The lower percentile to use for scaling PERCENTILE.
+ * &nbsp;&nbsp;&nbsp;default: 2.0
+ * &nbsp;&nbsp;&nbsp;minimum: 0.0
+ * &nbsp;&nbsp;&nbsp;maximum: 100.0
+ * </pre>
+ *
+ * <pre>-upper-percentile &lt;double&gt; (property: upperPercentile)
+ * &nbsp;&nbsp;&nbsp;The upper percentile to use for scaling PERCENTILE.
+ * &nbsp;&nbsp;&nbsp;default: 98.0
+ * &nbsp;&nbsp;&nbsp;minimum: 0.0
+ * &nbsp;&nbsp;&nbsp;maximum: 100.0
+ * </pre>
+ *
+ * <pre>-output-file &lt;adams.core.io.PlaceholderFile&gt; (property: outputFile)
+ * &nbsp;&nbsp;&nbsp;The file to write the image to (format determined by extension), forwarding
+ * &nbsp;&nbsp;&nbsp;the file name; if pointing to a directory, the image gets forwarded instead.
+ * &nbsp;&nbsp;&nbsp;default: ${CWD}
+ * </pre>
+ *
+ * <pre>-max-open-files &lt;int&gt; (property: maxOpenFiles)
+ * &nbsp;&nbsp;&nbsp;The maximum number of ENVI files to keep open for re-use; 0 closes a file
+ * &nbsp;&nbsp;&nbsp;immediately after use.
+ * &nbsp;&nbsp;&nbsp;default: 1
+ * &nbsp;&nbsp;&nbsp;minimum: 0
+ * </pre>
+ *
+ <!-- options-end -->
+ *
+ * @author fracpete (fracpete at waikato dot ac dot nz)
+ */
+public class EnviToRGBImage
+  extends AbstractTransformer {
+
+  private static final long serialVersionUID = -3006745839316418466L;
+
+  /** the band for the red channel. */
+  protected int m_RedBand;
+
+  /** the band for the green channel. */
+  protected int m_GreenBand;
+
+  /** the band for the blue channel. */
+  protected int m_BlueBand;
+
+  /** the scaling. */
+  protected EnviScaling m_Scaling;
+
+  /** the lower percentile. */
+  protected double m_LowerPercentile;
+
+  /** the upper percentile. */
+  protected double m_UpperPercentile;
+
+  /** the output file. */
+  protected PlaceholderFile m_OutputFile;
+
+  /** the maximum number of open files. */
+  protected int m_MaxOpenFiles;
+
+  /** the open cubes (in access order). */
+  protected transient LinkedHashMap<String,EnviCube> m_Cubes;
+
+  /** the timestamps of the open cubes. */
+  protected transient Map<String,Long> m_Timestamps;
+
+  /**
+   * Returns a string describing the object.
+   *
+   * @return a description suitable for displaying in the gui
+   */
+  @Override
+  public String globalInfo() {
+    return "Generates an RGB image from three bands of an ENVI file, without the need for docker or Python. "
+      + "The ENVI data gets accessed via memory mapping and only the three bands get read.\n"
+      + "Bands that are not specified (-1) get determined from the 'default bands' in the header, "
+      + "otherwise the first, middle and last band get used.\n"
+      + "Recently used files are kept open, allowing fast recomposition with different bands.\n"
+      + "Files in the scratch area, as forwarded by GDAL/SPy commands writing to the scratch area, get read in place.";
+  }
+
+  /**
+   * Adds options to the internal list of options.
+   */
+  @Override
+  public void defineOptions() {
+    super.defineOptions();
+
+    m_OptionManager.add(
+      "red-band", "redBand",
+      -1, -1, null);
+
+    m_OptionManager.add(
+      "green-band", "greenBand",
+      -1, -1, null);
+
+    m_OptionManager.add(
+      "blue-band", "blueBand",
+      -1, -1, null);
+
+    m_OptionManager.add(
+      "scaling", "scaling",
+      EnviScaling.MIN_MAX);
+
+    m_OptionManager.add(
+      "lower-percentile", "lowerPercentile",
+      2.0, 0.0, 100.0);
+
+    m_OptionManager.add(
+      "upper-percentile", "upperPercentile",
+      98.0, 0.0, 100.0);
+
+    m_OptionManager.add(
+      "output-file", "outputFile",
+      new PlaceholderFile("."));
+
+    m_OptionManager.add(
+      "max-open-files", "maxOpenFiles",
+      1, 0, null);
+  }
+
+  /**
+   * Returns a quick info about the actor, which will be displayed in the GUI.
+   *
+   * @return		null if no info available, otherwise short string
+   */
+  @Override
+  public String getQuickInfo() {
+    String	result;
+
+    result = QuickInfoHelper.toString(this, "redBand", (m_RedBand == -1 ? "default" : m_RedBand), "r: ");
+    result += QuickInfoHelper.toString(this, "greenBand", (m_GreenBand == -1 ? "default" : m_GreenBand), ", g: ");
+    result += QuickInfoHelper.toString(this, "blueBand", (m_BlueBand == -1 ? "default" : m_BlueBand), ", b: ");
+    result += QuickInfoHelper.toString(this, "scaling", m_Scaling, ", scaling: ");
+    if (!m_OutputFile.isDirectory() || QuickInfoHelper.hasVariable(this, "outputFile"))
+      result += QuickInfoHelper.toString(this, "outputFile", m_OutputFile, ", output: ");
+
+    return result;
+  }
+
+  /**
+   * Sets the band for the red channel.
+   *
+   * @param value	the 0-based band, -1 for default
+   */
+  public void setRedBand(int value) {
+    if (getOptionManager().isValid("redBand", value)) {
+      m_RedBand = value;
+      reset();
+    }
+  }
+
+  /**
+   * Returns the band for the red channel.
+   *
+   * @return		the 0-based band, -1 for default
+   */
+  public int getRedBand() {
+    return m_RedBand;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String redBandTipText() {
+    return "The 0-based index of the band to use for the red channel; -1 for default.";
+  }
+
+  /**
+   * Sets the band for the green channel.
+   *
+   * @param value	the 0-based band, -1 for default
+   */
+  public void setGreenBand(int value) {
+    if (getOptionManager().isValid("greenBand", value)) {
+      m_GreenBand = value;
+      reset();
+    }
+  }
+
+  /**
+   * Returns the band for the green channel.
+   *
+   * @return		the 0-based band, -1 for default
+   */
+  public int getGreenBand() {
+    return m_GreenBand;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String greenBandTipText() {
+    return "The 0-based index of the band to use for the green channel; -1 for default.";
+  }
+
+  /**
+   * Sets the band for the blue channel.
+   *
+   * @param value	the 0-based band, -1 for default
+   */
+  public void setBlueBand(int value) {
+    if (getOptionManager().isValid("blueBand", value)) {
+      m_BlueBand = value;
+      reset();
+    }
+  }
+
+  /**
+   * Returns the band for the blue channel.
+   *
+   * @return		the 0-based band, -1 for default
+   */
+  public int getBlueBand() {
+    return m_BlueBand;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String blueBandTipText() {
+    return "The 0-based index of the band to use for the blue channel; -1 for default.";
+  }
+
+  /**
+   * Sets how to scale the band values.
+   *
+   * @param value	the scaling
+   */
+  public void setScaling(EnviScaling value) {
+    m_Scaling = value;
+    reset();
+  }
+
+  /**
+   * Returns how to scale the band values.
+   *
+   * @return		the scaling
+   */
+  public EnviScaling getScaling() {
+    return m_Scaling;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String scalingTipText() {
+    return "How to scale the band values to the 0-255 range.";
+  }
+
+  /**
+   * Sets the lower percentile.
+   *
+   * @param value	the percentile (0-100)
+   */
+  public void setLowerPercentile(double value) {
+    if (getOptionManager().isValid("lowerPercentile", value)) {
+      m_LowerPercentile = value;
+      reset();
+    }
+  }
+
+  /**
+   * Returns the lower percentile.
+   *
+   * @return		the percentile (0-100)
+   */
+  public double getLowerPercentile() {
+    return m_LowerPercentile;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String lowerPercentileTipText() {
+    return "The lower percentile to use for scaling " + EnviScaling.PERCENTILE + ".";
+  }
+
+  /**
+   * Sets the upper percentile.
+   *
+   * @param value	the percentile (0-100)
+   */
+  public void setUpperPercentile(double value) {
+    if (getOptionManager().isValid("upperPercentile", value)) {
+      m_UpperPercentile = value;
+      reset();
+    }
+  }
+
+  /**
+   * Returns the upper percentile.
+   *
+   * @return		the percentile (0-100)
+   */
+  public double getUpperPercentile() {
+    return m_UpperPercentile;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String upperPercentileTipText() {
+    return "The upper percentile to use for scaling " + EnviScaling.PERCENTILE + ".";
+  }
+
+  /**
+   * Sets the output file.
+   *
+   * @param value	the file, a directory to forward the image
+   */
+  public void setOutputFile(PlaceholderFile value) {
+    m_OutputFile = value;
+    reset();
+  }
+
+  /**
+   * Returns the output file.
+   *
+   * @return		the file, a directory to forward the image
+   */
+  public PlaceholderFile getOutputFile() {
+    return m_OutputFile;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String outputFileTipText() {
+    return "The file to write the image to (format determined by extension), forwarding the file name; if pointing to a directory, the image gets forwarded instead.";
+  }
+
+  /**
+   * Sets the maximum number of ENVI files to keep open.
+   *
+   * @param value	the maximum, 0 to close immediately
+   */
+  public void setMaxOpenFiles(int value) {
+    if (getOptionManager().isValid("maxOpenFiles", value)) {
+      m_MaxOpenFiles = value;
+      reset();
+    }
+  }
+
+  /**
+   * Returns the maximum number of ENVI files to keep open.
+   *
+   * @return		the maximum, 0 to close immediately
+   */
+  public int getMaxOpenFiles() {
+    return m_MaxOpenFiles;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String maxOpenFilesTipText() {
+    return "The maximum number of ENVI files to keep open for re-use; 0 closes a file immediately after use.";
+  }
+
+  /**
+   * Returns the class that the consumer accepts.
+   *
+   * @return the Class of objects that can be processed
+   */
+  @Override
+  public Class[] accepts() {
+    return new Class[]{String.class, File.class, ScratchFile.class};
+  }
+
+  /**
+   * Returns the class of objects that it generates.
+   *
+   * @return the Class of the generated tokens
+   */
+  @Override
+  public Class[] generates() {
+    if (m_OutputFile.isDirectory())
+      return new Class[]{BufferedImageContainer.class};
+    else
+      return new Class[]{String.class};
+  }
+
+  /**
+   * Returns the timestamp of the ENVI file (header or data, whichever is newer).
+   *
+   * @param cube	the cube to get the timestamp for
+   * @return		the timestamp
+   */
+  protected long getTimestamp(EnviCube cube) {
+    long	result;
+
+    result = cube.getDataFile().lastModified();
+    if (cube.getHeader().getFile() != null)
+      result = Math.max(result, cube.getHeader().getFile().lastModified());
+
+    return result;
+  }
+
+  /**
+   * Closes the cube, logs any errors.
+   *
+   * @param cube	the cube to close
+   */
+  protected void closeCube(EnviCube cube) {
+    try {
+      cube.close();
+    }
+    catch (Exception e) {
+      getLogger().warning("Failed to close ENVI file " + cube.getDataFile() + ": " + e);
+    }
+  }
+
+  /**
+   * Returns the cube for the file, either from the open ones or newly opened.
+   * Files that have changed since they were opened get reopened.
+   *
+   * @param file	the header or data file
+   * @return		the cube
+   * @throws Exception	if opening fails
+   */
+  protected EnviCube getCube(File file) throws Exception {
+    EnviCube			result;
+    String			key;
+    Iterator<String>		iter;
+    List<String>		evict;
+
+    if (m_Cubes == null) {
+      m_Cubes      = new LinkedHashMap<>(16, 0.75f, true);
+      m_Timestamps = new HashMap<>();
+    }
+
+    key    = file.getAbsolutePath();
+    result = m_Cubes.get(key);
+    if ((result != null) && (getTimestamp(result) != m_Timestamps.get(key))) {
+      if (isLoggingEnabled())
+	getLogger().info("ENVI file has changed, reopening: " + file);
+      m_Cubes.remove(key);
+      m_Timestamps.remove(key);
+      closeCube(result);
+      result = null;
+    }
+
+    if (result == null) {
+      result = EnviCube.open(file);
+      m_Cubes.put(key, result);
+      m_Timestamps.put(key, getTimestamp(result));
+    }
+
+    // evict least recently used ones
+    evict = new ArrayList<>();
+    iter  = m_Cubes.keySet().iterator();
+    while (iter.hasNext() && (m_Cubes.size() - evict.size() > Math.max(1, m_MaxOpenFiles)))
+      evict.add(iter.next());
+    for (String k: evict) {
+      closeCube(m_Cubes.remove(k));
+      m_Timestamps.remove(k);
+    }
+
+    return result;
+  }
+
+  /**
+   * Closes all open cubes.
+   */
+  protected void closeCubes() {
+    if (m_Cubes == null)
+      return;
+
+    for (EnviCube cube: m_Cubes.values())
+      closeCube(cube);
+    m_Cubes      = null;
+    m_Timestamps = null;
+  }
+
+  /**
+   * Executes the flow item.
+   *
+   * @return		null if everything is fine, otherwise error message
+   */
+  @Override
+  protected String doExecute() {
+    String			result;
+    File			file;
+    EnviCube			cube;
+    EnviRGBComposer		composer;
+    BufferedImage		image;
+    BufferedImageContainer	cont;
+    String			format;
+    int[]			bands;
+    long			start;
+
+    result = null;
+
+    if (m_InputToken.hasPayload(String.class))
+      file = new PlaceholderFile(m_InputToken.getPayload(String.class));
+    else if (m_InputToken.hasPayload(File.class))
+      file = new PlaceholderFile(m_InputToken.getPayload(File.class));
+    else if (m_InputToken.hasPayload(ScratchFile.class))
+      file = new PlaceholderFile(m_InputToken.getPayload(ScratchFile.class).getFile());
+    else
+      return m_InputToken.unhandledData();
+
+    try {
+      start    = System.currentTimeMillis();
+      cube     = getCube(file);
+      composer = new EnviRGBComposer();
+      composer.setBands(m_RedBand, m_GreenBand, m_BlueBand);
+      composer.setScaling(m_Scaling);
+      composer.setPercentiles(m_LowerPercentile, m_UpperPercentile);
+      bands    = composer.resolveBands(cube);
+      image    = composer.compose(cube);
+      if (m_MaxOpenFiles == 0) {
+	m_Cubes.remove(file.getAbsolutePath());
+	m_Timestamps.remove(file.getAbsolutePath());
+	closeCube(cube);
+      }
+      if (isLoggingEnabled())
+	getLogger().info("Generated RGB image from " + file + " in " + (System.currentTimeMillis() - start) + "ms");
+
+      if (m_OutputFile.isDirectory()) {
+	cont = new BufferedImageContainer();
+	cont.setImage(image);
+	cont.getReport().setStringValue("File", file.getAbsolutePath());
+	cont.getReport().setNumericValue("Red band", bands[0]);
+	cont.getReport().setNumericValue("Green band", bands[1]);
+	cont.getReport().setNumericValue("Blue band", bands[2]);
+	m_OutputToken = new Token(cont);
+      }
+      else {
+	format = m_OutputFile.getName();
+	format = format.substring(format.lastIndexOf('.') + 1).toLowerCase();
+	if (!ImageIO.write(image, format, m_OutputFile.getAbsoluteFile()))
+	  result = "No image writer available for format '" + format + "': " + m_OutputFile;
+	else
+	  m_OutputToken = new Token(m_OutputFile.getAbsolutePath());
+      }
+    }
+    catch (Exception e) {
+      result = handleException("Failed to generate RGB image from: " + file, e);
+    }
+
+    return result;
+  }
+
+  /**
+   * Cleans up after the execution has finished.
+   */
+  @Override
+  public void wrapUp() {
+    closeCubes();
+    super.wrapUp();
+  }
+}
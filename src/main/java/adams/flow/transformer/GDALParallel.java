@@ -0,0 +1,1114 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * GDALParallel.java
+ * Copyright (C) 2023 University of Waikato, Hamilton, New Zealand
+ */
+
+package adams.flow.transformer;
+
+import adams.core.ObjectCopyHelper;
+import adams.core.QuickInfoHelper;
+import adams.core.Utils;
+import adams.core.command.docker.AdaptiveLimiter;
+import adams.core.command.docker.CostEstimator;
+import adams.core.command.docker.ExecutionBackend;
+import adams.core.command.docker.JobPriority;
+import adams.core.command.docker.JobScheduler;
+import adams.core.command.docker.OutputFileHelper;
+import adams.core.command.docker.ParallelJobResult;
+import adams.core.command.docker.ScheduledJob;
+import adams.core.command.docker.ScratchFile;
+import adams.core.command.gdal.GDALCommand;
+import adams.core.command.gdal.Info;
+import adams.core.io.FileWriter;
+import adams.core.io.PlaceholderFile;
+import adams.core.option.OptionUtils;
+import adams.flow.core.ActorUtils;
+import adams.flow.core.PendingInputHelper;
+import adams.flow.core.Token;
+import adams.flow.standalone.GDALConfiguration;
+import adams.flow.standalone.SimpleDockerConnection;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ <!-- globalinfo-start -->
+ * Executes the specified GDAL program on the incoming file(s)&#47;dir(s) in parallel, using up to the specified number of concurrent commands.<br>
+ * A string or scratch file array gets fanned out, with each element being processed by a separate invocation; for commands that write to a file, the output file name gets generated from the input file name, using directory and extension of the configured output file.<br>
+ * Jobs stay in flight across tokens: the next token gets accepted as long as fewer jobs than the number of threads are in flight; the remaining jobs get drained once no more tokens can arrive. Failed jobs get reported as errors.<br>
+ * The configured command gets copied per worker and always executed in blocking mode; the copies get re-created whenever the setup of the command changes (eg via variables).<br>
+ * The results get forwarded as soon as the commands complete, either in the order of the input or in the order of completion.<br>
+ * In adaptive mode, the number of concurrent commands gets adjusted between the minimum and maximum number of threads, based on the latency and throughput of the completed commands (AIMD).<br>
+ * Jobs can be dispatched longest-first, using the cost estimated from file size, band count and runtime history (see GDALConfiguration). With a flow-wide limit on concurrent jobs (scheduler slots of GDALConfiguration), waiting jobs get dispatched by priority first (interactive before bulk).
+ * <br><br>
+ <!-- globalinfo-end -->
+ *
+ <!-- flow-summary-start -->
+ * Input&#47;output:<br>
+ * - accepts:<br>
+ * &nbsp;&nbsp;&nbsp;java.lang.String<br>
+ * &nbsp;&nbsp;&nbsp;java.lang.String[]<br>
+ * &nbsp;&nbsp;&nbsp;adams.core.command.docker.ScratchFile<br>
+ * &nbsp;&nbsp;&nbsp;adams.core.command.docker.ScratchFile[]<br>
+ * - generates:<br>
+ * &nbsp;&nbsp;&nbsp;java.lang.String[]<br>
+ * <br><br>
+ <!-- flow-summary-end -->
+ *
+ <!-- options-start -->
+ * <pre>-logging-level &lt;OFF|SEVERE|WARNING|INFO|CONFIG|FINE|FINER|FINEST&gt; (property: loggingLevel)
+ * &nbsp;&nbsp;&nbsp;The logging level for outputting errors and debugging output.
+ * &nbsp;&nbsp;&nbsp;default: WARNING
+ * </pre>
+ *
+ * <pre>-name &lt;java.lang.String&gt; (property: name)
+ * &nbsp;&nbsp;&nbsp;The name of the actor.
+ * &nbsp;&nbsp;&nbsp;default: GDALParallel
+ * </pre>
+ *
+ * <pre>-annotation &lt;adams.core.base.BaseAnnotation&gt; (property: annotations)
+ * &nbsp;&nbsp;&nbsp;The annotations to attach to this actor.
+ * &nbsp;&nbsp;&nbsp;default:
+ * </pre>
+ *
+ * <pre>-skip &lt;boolean&gt; (property: skip)
+ * &nbsp;&nbsp;&nbsp;If set to true, transformation is skipped and the input token is just forwarded
+ * &nbsp;&nbsp;&nbsp;as it is.
+ * &nbsp;&nbsp;&nbsp;default: false
+ * </pre>
+ *
+ * <pre>-stop-flow-on-error &lt;boolean&gt; (property: stopFlowOnError)
+ * &nbsp;&nbsp;&nbsp;If set to true, the flow execution at this level gets stopped in case this
+ * &nbsp;&nbsp;&nbsp;actor encounters an error; the error gets propagated; useful for critical
+ * &nbsp;&nbsp;&nbsp;actors.
+ * &nbsp;&nbsp;&nbsp;default: false
+ * </pre>
+ *
+ * <pre>-silent &lt;boolean&gt; (property: silent)
+ * &nbsp;&nbsp;&nbsp;If enabled, then no errors are output in the console; Note: the enclosing
+ * &nbsp;&nbsp;&nbsp;actor handler must have this enabled as well.
+ * &nbsp;&nbsp;&nbsp;default: false
+ * </pre>
+ *
+ * <pre>-command &lt;adams.core.command.gdal.GDALCommand&gt; (property: command)
+ * &nbsp;&nbsp;&nbsp;The GDAL command to run.
+ * &nbsp;&nbsp;&nbsp;default: adams.core.command.gdal.Info -output-formatter \"adams.core.command.output.LineSplit -regexp \\\"ERROR .*\\\" -invert true\" -stdout-processor adams.core.command.stdout.Null -stderr-processor adams.core.command.stderr.Null
+ * </pre>
+ *
+ * <pre>-num-threads &lt;int&gt; (property: numThreads)
+ * &nbsp;&nbsp;&nbsp;The maximum number of commands to execute concurrently; -1 = number of
+ * &nbsp;&nbsp;&nbsp;available cores.
+ * &nbsp;&nbsp;&nbsp;default: -1
+ * &nbsp;&nbsp;&nbsp;minimum: -1
+ * </pre>
+ *
+ * <pre>-ordered &lt;boolean&gt; (property: ordered)
+ * &nbsp;&nbsp;&nbsp;If enabled, the results get forwarded in the order of the input rather than
+ * &nbsp;&nbsp;&nbsp;in the order of completion.
+ * &nbsp;&nbsp;&nbsp;default: false
+ * </pre>
+ *
+ * <pre>-adaptive &lt;boolean&gt; (property: adaptive)
+ * &nbsp;&nbsp;&nbsp;If enabled, the number of concurrent commands gets adjusted between the
+ * &nbsp;&nbsp;&nbsp;minimum and maximum number of threads, based on latency and throughput of
+ * &nbsp;&nbsp;&nbsp;the completed commands.
+ * &nbsp;&nbsp;&nbsp;default: false
+ * </pre>
+ *
+ * <pre>-min-threads &lt;int&gt; (property: minThreads)
+ * &nbsp;&nbsp;&nbsp;The minimum number of commands to execute concurrently in adaptive mode.
+ * &nbsp;&nbsp;&nbsp;default: 1
+ * &nbsp;&nbsp;&nbsp;minimum: 1
+ * </pre>
+ *
+ * <pre>-limit-variable &lt;java.lang.String&gt; (property: limitVariable)
+ * &nbsp;&nbsp;&nbsp;The flow variable to store the current number of concurrent commands in
+ * &nbsp;&nbsp;&nbsp;(adaptive mode); ignored if empty.
+ * &nbsp;&nbsp;&nbsp;default:
+ * </pre>
+ *
+ * <pre>-longest-first &lt;boolean&gt; (property: longestFirst)
+ * &nbsp;&nbsp;&nbsp;If enabled, the jobs get dispatched in order of their estimated cost (longest
+ * &nbsp;&nbsp;&nbsp;first), based on file size, band count and runtime history of the executable.
+ * &nbsp;&nbsp;&nbsp;default: false
+ * </pre>
+ *
+ * <pre>-priority &lt;INTERACTIVE|BULK&gt; (property: priority)
+ * &nbsp;&nbsp;&nbsp;The priority of the jobs when competing with other transformers for the
+ * &nbsp;&nbsp;&nbsp;scheduler slots of the configuration.
+ * &nbsp;&nbsp;&nbsp;default: BULK
+ * </pre>
+ *
+ <!-- options-end -->
+ *
+ * @author fracpete (fracpete at waikato dot ac dot nz)
+ */
+public class GDALParallel
+  extends AbstractTransformer {
+
+  private static final long serialVersionUID = 4887326549264620165L;
+
+  /** the GDAL command to execute. */
+  protected GDALCommand m_Command;
+
+  /** the maximum number of concurrent commands. */
+  protected int m_NumThreads;
+
+  /** whether to forward the results in order. */
+  protected boolean m_Ordered;
+
+  /** whether to adapt the number of concurrent commands. */
+  protected boolean m_Adaptive;
+
+  /** the minimum number of concurrent commands (adaptive). */
+  protected int m_MinThreads;
+
+  /** the variable to store the current limit in. */
+  protected String m_LimitVariable;
+
+  /** whether to dispatch longest jobs first. */
+  protected boolean m_LongestFirst;
+
+  /** the priority of the jobs. */
+  protected JobPriority m_Priority;
+
+  /** the docker connection. */
+  protected transient SimpleDockerConnection m_Connection;
+
+  /** the GDAL configuration. */
+  protected transient GDALConfiguration m_Configuration;
+
+  /** the executor. */
+  protected transient ExecutorService m_Executor;
+
+  /** the available command copies. */
+  protected transient BlockingQueue<GDALCommand> m_Workers;
+
+  /** the command copies that are currently executing. */
+  protected transient Set<GDALCommand> m_Running;
+
+  /** the number of command copies created so far. */
+  protected int m_NumWorkers;
+
+  /** the setup (command-line) of the command that the copies were created from. */
+  protected transient String m_WorkerSetup;
+
+  /** the command copies that are executing with an outdated setup. */
+  protected transient Set<GDALCommand> m_Outdated;
+
+  /** for collecting the results in order of completion. */
+  protected transient BlockingQueue<Future<ParallelJobResult>> m_Completed;
+
+  /** the sequence number for the jobs. */
+  protected long m_Sequence;
+
+  /** the futures of the jobs in flight (in order of submission). */
+  protected transient List<Future<ParallelJobResult>> m_Pending;
+
+  /** the outputs that are ready to be forwarded. */
+  protected transient List<Object> m_Ready;
+
+  /** the limiter (adaptive). */
+  protected transient AdaptiveLimiter m_Limiter;
+
+  /**
+   * Returns a string describing the object.
+   *
+   * @return a description suitable for displaying in the gui
+   */
+  @Override
+  public String globalInfo() {
+    return "Executes the specified GDAL program on the incoming file(s)/dir(s) in parallel, "
+      + "using up to the specified number of concurrent commands.\n"
+      + "A string or scratch file array gets fanned out, with each element being processed by a separate invocation; "
+      + "for commands that write to a file, the output file name gets generated from the input file name, "
+      + "using directory and extension of the configured output file.\n"
+      + "Jobs stay in flight across tokens: the next token gets accepted as long as fewer jobs than the number "
+      + "of threads are in flight; the remaining jobs get drained once no more tokens can arrive. "
+      + "Failed jobs get reported as errors.\n"
+      + "The configured command gets copied per worker and always executed in blocking mode; "
+      + "the copies get re-created whenever the setup of the command changes (eg via variables).\n"
+      + "The results get forwarded as soon as the commands complete, either in the order of the input "
+      + "or in the order of completion.\n"
+      + "In adaptive mode, the number of concurrent commands gets adjusted between the minimum and maximum "
+      + "number of threads, based on the latency and throughput of the completed commands (AIMD).\n"
+      + "Jobs can be dispatched longest-first, using the cost estimated from file size, band count and runtime "
+      + "history (see " + Utils.classToString(GDALConfiguration.class) + "). With a flow-wide limit on concurrent "
+      + "jobs (scheduler slots of " + Utils.classToString(GDALConfiguration.class) + "), waiting jobs get "
+      + "dispatched by priority first (interactive before bulk).";
+  }
+
+  /**
+   * Adds options to the internal list of options.
+   */
+  @Override
+  public void defineOptions() {
+    super.defineOptions();
+
+    m_OptionManager.add(
+      "command", "command",
+      new Info());
+
+    m_OptionManager.add(
+      "num-threads", "numThreads",
+      -1, -1, null);
+
+    m_OptionManager.add(
+      "ordered", "ordered",
+      false);
+
+    m_OptionManager.add(
+      "adaptive", "adaptive",
+      false);
+
+    m_OptionManager.add(
+      "min-threads", "minThreads",
+      1, 1, null);
+
+    m_OptionManager.add(
+      "limit-variable", "limitVariable",
+      "");
+
+    m_OptionManager.add(
+      "longest-first", "longestFirst",
+      false);
+
+    m_OptionManager.add(
+      "priority", "priority",
+      JobPriority.BULK);
+  }
+
+  /**
+   * Resets the scheme.
+   */
+  @Override
+  protected void reset() {
+    super.reset();
+
+    m_Pending = new ArrayList<>();
+    m_Ready   = new ArrayList<>();
+  }
+
+  /**
+   * Returns a quick info about the actor, which will be displayed in the GUI.
+   *
+   * @return		null if no info available, otherwise short string
+   */
+  @Override
+  public String getQuickInfo() {
+    String	result;
+
+    result = QuickInfoHelper.toString(this, "command", m_Command);
+    result += QuickInfoHelper.toString(this, "numThreads", (m_NumThreads == -1 ? "#cores" : m_NumThreads), ", threads: ");
+    result += QuickInfoHelper.toString(this, "ordered", m_Ordered, "ordered", ", ");
+    result += QuickInfoHelper.toString(this, "adaptive", m_Adaptive, "adaptive (min: " + m_MinThreads + ")", ", ");
+    result += QuickInfoHelper.toString(this, "longestFirst", m_LongestFirst, "longest-first", ", ");
+    result += QuickInfoHelper.toString(this, "priority", m_Priority, ", priority: ");
+
+    return result;
+  }
+
+  /**
+   * Sets the command to run.
+   *
+   * @param value	the command
+   */
+  public void setCommand(GDALCommand value) {
+    m_Command = value;
+    reset();
+  }
+
+  /**
+   * Returns the command to run.
+   *
+   * @return		the command
+   */
+  public GDALCommand getCommand() {
+    return m_Command;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String commandTipText() {
+    return "The GDAL command to run.";
+  }
+
+  /**
+   * Sets the maximum number of concurrent commands.
+   *
+   * @param value	the maximum, -1 for number of cores
+   */
+  public void setNumThreads(int value) {
+    if (getOptionManager().isValid("numThreads", value)) {
+      m_NumThreads = value;
+      reset();
+    }
+  }
+
+  /**
+   * Returns the maximum number of concurrent commands.
+   *
+   * @return		the maximum, -1 for number of cores
+   */
+  public int getNumThreads() {
+    return m_NumThreads;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String numThreadsTipText() {
+    return "The maximum number of commands to execute concurrently; -1 = number of available cores.";
+  }
+
+  /**
+   * Sets whether to forward the results in the order of the input.
+   *
+   * @param value	true if in order of input, false if in order of completion
+   */
+  public void setOrdered(boolean value) {
+    m_Ordered = value;
+    reset();
+  }
+
+  /**
+   * Returns whether to forward the results in the order of the input.
+   *
+   * @return		true if in order of input, false if in order of completion
+   */
+  public boolean getOrdered() {
+    return m_Ordered;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String orderedTipText() {
+    return "If enabled, the results get forwarded in the order of the input rather than in the order of completion.";
+  }
+
+  /**
+   * Sets whether to adapt the number of concurrent commands.
+   *
+   * @param value	true if adaptive
+   */
+  public void setAdaptive(boolean value) {
+    m_Adaptive = value;
+    reset();
+  }
+
+  /**
+   * Returns whether to adapt the number of concurrent commands.
+   *
+   * @return		true if adaptive
+   */
+  public boolean getAdaptive() {
+    return m_Adaptive;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String adaptiveTipText() {
+    return "If enabled, the number of concurrent commands gets adjusted between the minimum and maximum number "
+      + "of threads, based on latency and throughput of the completed commands.";
+  }
+
+  /**
+   * Sets the minimum number of concurrent commands in adaptive mode.
+   *
+   * @param value	the minimum
+   */
+  public void setMinThreads(int value) {
+    if (getOptionManager().isValid("minThreads", value)) {
+      m_MinThreads = value;
+      reset();
+    }
+  }
+
+  /**
+   * Returns the minimum number of concurrent commands in adaptive mode.
+   *
+   * @return		the minimum
+   */
+  public int getMinThreads() {
+    return m_MinThreads;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String minThreadsTipText() {
+    return "The minimum number of commands to execute concurrently in adaptive mode.";
+  }
+
+  /**
+   * Sets the flow variable to store the current number of concurrent commands in.
+   *
+   * @param value	the variable name, empty to ignore
+   */
+  public void setLimitVariable(String value) {
+    m_LimitVariable = value;
+    reset();
+  }
+
+  /**
+   * Returns the flow variable to store the current number of concurrent commands in.
+   *
+   * @return		the variable name, empty to ignore
+   */
+  public String getLimitVariable() {
+    return m_LimitVariable;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String limitVariableTipText() {
+    return "The flow variable to store the current number of concurrent commands in (adaptive mode); ignored if empty.";
+  }
+
+  /**
+   * Sets whether to dispatch the jobs longest first.
+   *
+   * @param value	true if longest first
+   */
+  public void setLongestFirst(boolean value) {
+    m_LongestFirst = value;
+    reset();
+  }
+
+  /**
+   * Returns whether to dispatch the jobs longest first.
+   *
+   * @return		true if longest first
+   */
+  public boolean getLongestFirst() {
+    return m_LongestFirst;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String longestFirstTipText() {
+    return "If enabled, the jobs get dispatched in order of their estimated cost (longest first), based on file size, "
+      + "band count and runtime history of the executable.";
+  }
+
+  /**
+   * Sets the priority of the jobs.
+   *
+   * @param value	the priority
+   */
+  public void setPriority(JobPriority value) {
+    m_Priority = value;
+    reset();
+  }
+
+  /**
+   * Returns the priority of the jobs.
+   *
+   * @return		the priority
+   */
+  public JobPriority getPriority() {
+    return m_Priority;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String priorityTipText() {
+    return "The priority of the jobs when competing with other transformers for the scheduler slots of the configuration.";
+  }
+
+  /**
+   * Returns the current number of concurrent commands.
+   *
+   * @return		the limit, the maximum number of threads if not adaptive
+   */
+  public int getCurrentLimit() {
+    if (m_Limiter != null)
+      return m_Limiter.getLimit();
+    else
+      return getActualNumThreads();
+  }
+
+  /**
+   * Returns the class that the consumer accepts.
+   *
+   * @return the Class of objects that can be processed
+   */
+  @Override
+  public Class[] accepts() {
+    return new Class[]{String.class, String[].class, ScratchFile.class, ScratchFile[].class};
+  }
+
+  /**
+   * Returns the class of objects that it generates.
+   *
+   * @return the Class of the generated tokens
+   */
+  @Override
+  public Class[] generates() {
+    return new Class[]{m_Command.generates()};
+  }
+
+  /**
+   * Returns the actual number of concurrent commands.
+   *
+   * @return		the number of threads
+   */
+  protected int getActualNumThreads() {
+    if (m_NumThreads <= 0)
+      return Runtime.getRuntime().availableProcessors();
+    else
+      return m_NumThreads;
+  }
+
+  /**
+   * Initializes the item for flow execution.
+   *
+   * @return		null if everything is fine, otherwise error message
+   */
+  @Override
+  public String setUp() {
+    String	result;
+
+    result = super.setUp();
+
+    if (result == null) {
+      m_Configuration = (GDALConfiguration) ActorUtils.findClosestType(this, GDALConfiguration.class, true);
+      if (m_Configuration == null)
+        result = "No " + Utils.classToString(GDALConfiguration.class) + " actor found!";
+    }
+
+    if (result == null) {
+      m_Connection = (SimpleDockerConnection) ActorUtils.findClosestType(this, SimpleDockerConnection.class, true);
+      if (m_Connection == null) {
+        // native binaries don't require docker (unless falling back to docker)
+        if (m_Configuration.getBackend() != ExecutionBackend.NATIVE)
+          result = "No " + Utils.classToString(SimpleDockerConnection.class) + " actor found!";
+      }
+      else if (m_Connection.getAcualBinary() == null) {
+        result = "No docker binary available from: " + m_Connection.getFullName();
+      }
+    }
+
+    if (result == null) {
+      // idle threads pick the next job by priority/cost
+      m_Executor   = new ThreadPoolExecutor(getActualNumThreads(), getActualNumThreads(), 0L, TimeUnit.MILLISECONDS, new PriorityBlockingQueue<>());
+      m_Completed  = new LinkedBlockingQueue<>();
+      m_Sequence   = 0;
+      m_Workers    = new LinkedBlockingQueue<>();
+      m_Running    = new HashSet<>();
+      m_Outdated   = new HashSet<>();
+      m_NumWorkers = 0;
+      m_WorkerSetup = null;
+      m_Limiter    = null;
+      if (m_Adaptive) {
+        m_Limiter = new AdaptiveLimiter(Math.min(m_MinThreads, getActualNumThreads()), getActualNumThreads());
+        m_Limiter.setLoggingLevel(getLoggingLevel());
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * Creates a new copy of the command.
+   *
+   * @return		the copy
+   */
+  protected GDALCommand newWorker() {
+    GDALCommand		result;
+
+    result = ObjectCopyHelper.copyObject(m_Command);
+    result.setBlocking(true);
+    result.setFlowContext(this);
+    result.setConnection(m_Connection);
+    result.setConfiguration(m_Configuration);
+
+    return result;
+  }
+
+  /**
+   * Ensures that the command copies reflect the current setup of the
+   * command (eg after variables changed). Idle copies get discarded, the
+   * executing ones get replaced once they are released.
+   */
+  protected void syncWorkers() {
+    String	setup;
+
+    setup = OptionUtils.getCommandLine(m_Command);
+    synchronized (m_Workers) {
+      if (setup.equals(m_WorkerSetup))
+        return;
+      if ((m_WorkerSetup != null) && isLoggingEnabled())
+        getLogger().info("Setup of command changed, re-creating copies");
+      m_WorkerSetup = setup;
+      for (GDALCommand worker: m_Workers) {
+        worker.cleanUp();
+        m_NumWorkers--;
+      }
+      m_Workers.clear();
+      synchronized (m_Running) {
+        m_Outdated.addAll(m_Running);
+      }
+    }
+  }
+
+  /**
+   * Obtains an idle copy of the command, creates a new one if the number of
+   * threads hasn't been reached yet.
+   *
+   * @return		the command
+   * @throws InterruptedException	if waiting for an idle command gets interrupted
+   */
+  protected GDALCommand acquireWorker() throws InterruptedException {
+    GDALCommand		result;
+
+    synchronized (m_Workers) {
+      result = m_Workers.poll();
+      if ((result == null) && (m_NumWorkers < getActualNumThreads())) {
+        result = newWorker();
+        m_NumWorkers++;
+      }
+    }
+    if (result == null)
+      result = m_Workers.take();
+
+    synchronized (m_Running) {
+      m_Running.add(result);
+    }
+
+    return result;
+  }
+
+  /**
+   * Returns the command copy to the idle ones. A copy with an outdated setup
+   * gets replaced with a new one.
+   *
+   * @param worker	the command
+   */
+  protected void releaseWorker(GDALCommand worker) {
+    boolean	outdated;
+
+    synchronized (m_Running) {
+      m_Running.remove(worker);
+      outdated = m_Outdated.remove(worker);
+    }
+    if (outdated) {
+      worker.cleanUp();
+      worker = newWorker();
+    }
+    m_Workers.add(worker);
+  }
+
+  /**
+   * Executes the command with the specified arguments.
+   *
+   * @param args	the arguments
+   * @param output	the output file to use, null if not writing to a file
+   * @param cost	the estimated cost, 0 if not available
+   * @return		the result
+   */
+  protected ParallelJobResult executeJob(String[] args, PlaceholderFile output, double cost) {
+    ParallelJobResult		result;
+    GDALCommand			worker;
+    String			msg;
+    Object			out;
+    boolean			limited;
+    JobScheduler		scheduler;
+    JobScheduler.Ticket		ticket;
+    long			start;
+    boolean			success;
+
+    result    = new ParallelJobResult(args);
+    worker    = null;
+    limited   = false;
+    scheduler = m_Configuration.getScheduler();
+    ticket    = null;
+    start     = System.currentTimeMillis();
+    try {
+      if (m_Limiter != null) {
+        m_Limiter.acquire();
+        limited = true;
+      }
+      if (scheduler != null)
+        ticket = scheduler.acquire(m_Priority, cost);
+      start  = System.currentTimeMillis();
+      worker = acquireWorker();
+      // always set, a re-used copy still has the output file of its previous job
+      if (worker instanceof FileWriter)
+        ((FileWriter) worker).setOutputFile(output);
+      if (isStopped())
+        return result;
+      msg = worker.execute(args);
+      if (msg != null) {
+        result.setError(msg);
+      }
+      else {
+        while (worker.hasOutput() && !isStopped()) {
+          out = worker.output();
+          if (out != null)
+            result.addOutput(out);
+        }
+      }
+    }
+    catch (Exception e) {
+      result.setError("Failed to execute: " + Utils.flatten(args, " ") + "\n" + Utils.throwableToString(e));
+    }
+    finally {
+      if (worker != null)
+        releaseWorker(worker);
+      if (scheduler != null)
+        scheduler.release(ticket);
+      success = !result.hasError() && !isStopped();
+      if (limited)
+        m_Limiter.release(System.currentTimeMillis() - start, inputSize(args), success);
+      if (success && m_LongestFirst && (args.length > 0))
+        m_Configuration.getCostEstimator().record(m_Command.getExecutable(), new File(args[0]), System.currentTimeMillis() - start);
+    }
+
+    return result;
+  }
+
+  /**
+   * Returns the size of the input file for normalizing the latency.
+   *
+   * @param args	the arguments
+   * @return		the size in bytes, 0 if not a file
+   */
+  protected long inputSize(String[] args) {
+    if (args.length == 0)
+      return 0;
+    return CostEstimator.readSize(new File(args[0]));
+  }
+
+  /**
+   * Estimates the cost of the job.
+   *
+   * @param args	the arguments
+   * @return		the cost, 0 if not available
+   */
+  protected double estimateCost(String[] args) {
+    if (!m_LongestFirst || (args.length == 0))
+      return 0;
+    return m_Configuration.getCostEstimator().estimate(m_Command.getExecutable(), new File(args[0]));
+  }
+
+  /**
+   * Executes the flow item.
+   *
+   * @return null if everything is fine, otherwise error message
+   */
+  @Override
+  protected String doExecute() {
+    String				result;
+    List<String[]>			jobs;
+    List<PlaceholderFile>		outputs;
+    List<ScheduledJob<ParallelJobResult>>	scheduled;
+    ScheduledJob<ParallelJobResult>	job;
+    String[]				array;
+    ScratchFile[]			files;
+    PlaceholderFile			output;
+    int					i;
+
+    result  = null;
+    jobs    = new ArrayList<>();
+    outputs = new ArrayList<>();
+    output  = null;
+    if (m_Command instanceof FileWriter)
+      output = ((FileWriter) m_Command).getOutputFile();
+
+    array = null;
+    if (m_InputToken.hasPayload(String.class)) {
+      array = new String[]{m_InputToken.getPayload(String.class)};
+    }
+    else if (m_InputToken.hasPayload(String[].class)) {
+      array = m_InputToken.getPayload(String[].class);
+    }
+    else if (m_InputToken.hasPayload(ScratchFile.class)) {
+      array = new String[]{m_InputToken.getPayload(ScratchFile.class).getFile().getAbsolutePath()};
+    }
+    else if (m_InputToken.hasPayload(ScratchFile[].class)) {
+      files = m_InputToken.getPayload(ScratchFile[].class);
+      array = new String[files.length];
+      for (i = 0; i < files.length; i++)
+        array[i] = files[i].getFile().getAbsolutePath();
+    }
+
+    if (array != null) {
+      for (String element: array) {
+        jobs.add(new String[]{element});
+        // jobs of several tokens may be in flight, hence always generate the output file name
+        if (output != null)
+          outputs.add(OutputFileHelper.generateOutputFile(output, element));
+        else
+          outputs.add(null);
+      }
+    }
+    else {
+      result = m_InputToken.unhandledData();
+    }
+
+    // check number of parameters
+    if ((result == null) && (m_Command.minArguments() > 1))
+      result = "Command requires at least " + m_Command.minArguments() + " arguments, but only single inputs are supported!";
+
+    if (result == null) {
+      syncWorkers();
+      scheduled = new ArrayList<>();
+      for (i = 0; i < jobs.size(); i++) {
+        final String[] args = jobs.get(i);
+        final PlaceholderFile file = outputs.get(i);
+        final double cost = estimateCost(args);
+        // ordered output uses the pending futures, the completion queue would only grow
+        job = new ScheduledJob<>(() -> executeJob(args, file, cost), m_Priority, cost, m_Sequence++, (m_Ordered ? null : m_Completed));
+        m_Pending.add(job);
+        scheduled.add(job);
+      }
+      // the first jobs start right away, don't get queued
+      Collections.sort(scheduled);
+      for (ScheduledJob<ParallelJobResult> j: scheduled)
+        m_Executor.execute(j);
+    }
+
+    return result;
+  }
+
+  /**
+   * Checks whether there is pending output to be collected after
+   * executing the flow item.
+   *
+   * @return		true if there is pending output
+   */
+  @Override
+  public boolean hasPendingOutput() {
+    if (isStopped())
+      return false;
+    if (!m_Ready.isEmpty())
+      return true;
+    if (m_Pending.isEmpty())
+      return false;
+    return isResultAvailable() || mustWait();
+  }
+
+  /**
+   * Checks whether the next result can be obtained without waiting.
+   *
+   * @return		true if available
+   */
+  protected boolean isResultAvailable() {
+    if (m_Ordered)
+      return m_Pending.get(0).isDone();
+    else
+      return !m_Completed.isEmpty();
+  }
+
+  /**
+   * Checks whether to wait for jobs in flight rather than accepting the next
+   * token, i.e., when the number of jobs in flight has reached the number of
+   * threads or when no more tokens can arrive.
+   *
+   * @return		true if to wait
+   */
+  protected boolean mustWait() {
+    return (m_Pending.size() >= getActualNumThreads()) || !PendingInputHelper.hasPendingInput(this);
+  }
+
+  /**
+   * Waits for the next result, depending on whether the output is ordered or not.
+   *
+   * @return		the result, null if interrupted
+   */
+  protected ParallelJobResult nextResult() {
+    Future<ParallelJobResult>	future;
+
+    try {
+      if (m_Ordered) {
+        future = m_Pending.remove(0);
+      }
+      else {
+        future = m_Completed.take();
+        m_Pending.remove(future);
+      }
+      return future.get();
+    }
+    catch (Exception e) {
+      if (!isStopped())
+        getLogger().severe("Failed to obtain result: " + e);
+      m_Pending.clear();
+      return null;
+    }
+  }
+
+  /**
+   * Returns the generated token. Failed jobs get reported as errors.
+   *
+   * @return		the generated token
+   */
+  @Override
+  public Token output() {
+    ParallelJobResult	result;
+
+    while (m_Ready.isEmpty() && !m_Pending.isEmpty() && !isStopped() && (isResultAvailable() || mustWait())) {
+      result = nextResult();
+      if ((m_Limiter != null) && !m_LimitVariable.isEmpty())
+        getVariables().set(m_LimitVariable, "" + m_Limiter.getLimit());
+      if (result == null)
+        break;
+      if (result.hasError())
+        getErrorHandler().handleError(this, "output", result.getError());
+      else
+        m_Ready.addAll(result.getOutputs());
+    }
+
+    if (m_Ready.isEmpty())
+      return null;
+    else
+      return new Token(m_Ready.remove(0));
+  }
+
+  /**
+   * Stops the execution of all running commands.
+   */
+  protected void stopWorkers() {
+    List<GDALCommand>	running;
+
+    if (m_Running == null)
+      return;
+
+    synchronized (m_Running) {
+      running = new ArrayList<>(m_Running);
+    }
+    for (GDALCommand worker: running)
+      worker.stopExecution();
+  }
+
+  /**
+   * Shuts down the executor and cleans up the command copies.
+   */
+  protected void shutdownWorkers() {
+    stopWorkers();
+    if (m_Executor != null) {
+      m_Executor.shutdownNow();
+      m_Executor   = null;
+      m_Completed  = null;
+    }
+    if (m_Workers != null) {
+      for (GDALCommand worker: m_Workers)
+        worker.cleanUp();
+      m_Workers.clear();
+    }
+    if (m_Pending != null)
+      m_Pending.clear();
+    if (m_Ready != null)
+      m_Ready.clear();
+    if ((m_Limiter != null) && isLoggingEnabled())
+      getLogger().info("Adaptive limiter: " + m_Limiter);
+    m_Limiter = null;
+  }
+
+  /**
+   * Stops the execution. No message set.
+   */
+  @Override
+  public void stopExecution() {
+    super.stopExecution();
+    stopWorkers();
+  }
+
+  /**
+   * Waits for any jobs still in flight (eg when the flow finished without
+   * draining them), reporting failed ones. Their output cannot get forwarded
+   * anymore.
+   */
+  protected void drainPending() {
+    ParallelJobResult	result;
+
+    if ((m_Pending == null) || m_Pending.isEmpty() || isStopped())
+      return;
+
+    getLogger().warning("Waiting for remaining " + m_Pending.size() + " job(s), output will not get forwarded");
+    while (!m_Pending.isEmpty() && !isStopped()) {
+      result = nextResult();
+      if (result == null)
+        break;
+      if (result.hasError())
+        getErrorHandler().handleError(this, "wrapUp", result.getError());
+    }
+  }
+
+  /**
+   * Cleans up after the execution has finished.
+   */
+  @Override
+  public void wrapUp() {
+    drainPending();
+    shutdownWorkers();
+    super.wrapUp();
+  }
+
+  /**
+   * Cleans up after the execution has finished. Also removes graphical
+   * components.
+   */
+  @Override
+  public void cleanUp() {
+    shutdownWorkers();
+    m_Command.cleanUp();
+    super.cleanUp();
+  }
+}
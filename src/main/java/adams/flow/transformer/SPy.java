@@ -22,13 +22,20 @@ package adams.flow.transformer;
 
 import adams.core.QuickInfoHelper;
 import adams.core.Utils;
+import adams.core.command.docker.BatchItem;
+import adams.core.command.docker.ExecutionBackend;
+import adams.core.command.docker.ScratchFile;
 import adams.core.command.spy.EnviToRGB;
 import adams.core.command.spy.SPyCommand;
 import adams.flow.core.ActorUtils;
+import adams.flow.core.PendingInputHelper;
 import adams.flow.core.Token;
 import adams.flow.standalone.SPyConfiguration;
 import adams.flow.standalone.SimpleDockerConnection;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  <!-- globalinfo-start -->
  * Executes the specified SPy program, supplying it with the incoming file(s)&#47;dir(s).
@@ -40,6 +47,8 @@ import adams.flow.standalone.SimpleDockerConnection;
  * - accepts:<br>
  * &nbsp;&nbsp;&nbsp;java.lang.String<br>
  * &nbsp;&nbsp;&nbsp;java.lang.String[]<br>
+ * &nbsp;&nbsp;&nbsp;adams.core.command.docker.ScratchFile<br>
+ * &nbsp;&nbsp;&nbsp;adams.core.command.docker.ScratchFile[]<br>
  * - generates:<br>
  * &nbsp;&nbsp;&nbsp;java.lang.String[]<br>
  * <br><br>
@@ -85,6 +94,21 @@ import adams.flow.standalone.SimpleDockerConnection;
  * &nbsp;&nbsp;&nbsp;default: adams.core.command.spy.SPyInfo -output-formatter \"adams.core.command.output.LineSplit -regexp \\\"ERROR .*\\\" -invert true\" -stdout-processor adams.core.command.stdout.Null -stderr-processor adams.core.command.stderr.Null
  * </pre>
  *
+ * <pre>-batch-size &lt;int&gt; (property: batchSize)
+ * &nbsp;&nbsp;&nbsp;The number of inputs to collect and execute in a single container run; 1
+ * &nbsp;&nbsp;&nbsp;disables batch mode; not all commands support batch mode.
+ * &nbsp;&nbsp;&nbsp;default: 1
+ * &nbsp;&nbsp;&nbsp;minimum: 1
+ * </pre>
+ *
+ * <pre>-batch-time-window &lt;int&gt; (property: batchTimeWindow)
+ * &nbsp;&nbsp;&nbsp;The time window in msec after which a batch gets executed, even if it hasn't
+ * &nbsp;&nbsp;&nbsp;reached the batch size yet (checked whenever a token arrives or output
+ * &nbsp;&nbsp;&nbsp;gets polled); 0 to disable.
+ * &nbsp;&nbsp;&nbsp;default: 0
+ * &nbsp;&nbsp;&nbsp;minimum: 0
+ * </pre>
+ *
  <!-- options-end -->
  *
  * @author fracpete (fracpete at waikato dot ac dot nz)
@@ -103,6 +127,21 @@ public class SPy
   /** the SPy configuration. */
   protected transient SPyConfiguration m_Configuration;
 
+  /** the number of inputs per batch. */
+  protected int m_BatchSize;
+
+  /** the time window in msec for a batch (0 = no window). */
+  protected int m_BatchTimeWindow;
+
+  /** the collected batch items. */
+  protected transient List<BatchItem> m_Batch;
+
+  /** the timestamp of the first item in the batch. */
+  protected long m_BatchStart;
+
+  /** the outputs of the last batch. */
+  protected transient List<Object> m_BatchOutput;
+
   /**
    * Returns a string describing the object.
    *
@@ -123,6 +162,26 @@ public class SPy
     m_OptionManager.add(
       "command", "command",
       new EnviToRGB());
+
+    m_OptionManager.add(
+      "batch-size", "batchSize",
+      1, 1, null);
+
+    m_OptionManager.add(
+      "batch-time-window", "batchTimeWindow",
+      0, 0, null);
+  }
+
+  /**
+   * Resets the scheme.
+   */
+  @Override
+  protected void reset() {
+    super.reset();
+
+    m_Batch       = new ArrayList<>();
+    m_BatchStart  = -1;
+    m_BatchOutput = new ArrayList<>();
   }
 
   /**
@@ -132,7 +191,13 @@ public class SPy
    */
   @Override
   public String getQuickInfo() {
-    return QuickInfoHelper.toString(this, "command", m_Command);
+    String	result;
+
+    result = QuickInfoHelper.toString(this, "command", m_Command);
+    if ((m_BatchSize > 1) || QuickInfoHelper.hasVariable(this, "batchSize"))
+      result += QuickInfoHelper.toString(this, "batchSize", m_BatchSize, ", batch: ");
+
+    return result;
   }
 
   /**
@@ -164,6 +229,70 @@ public class SPy
     return "The SPy command to run.";
   }
 
+  /**
+   * Sets the number of inputs to collect and execute in a single container run.
+   *
+   * @param value	the number of inputs, 1 to disable batch mode
+   */
+  public void setBatchSize(int value) {
+    if (getOptionManager().isValid("batchSize", value)) {
+      m_BatchSize = value;
+      reset();
+    }
+  }
+
+  /**
+   * Returns the number of inputs to collect and execute in a single container run.
+   *
+   * @return		the number of inputs, 1 if batch mode disabled
+   */
+  public int getBatchSize() {
+    return m_BatchSize;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String batchSizeTipText() {
+    return "The number of inputs to collect and execute in a single container run; 1 disables batch mode; not all commands support batch mode.";
+  }
+
+  /**
+   * Sets the time window after which a batch gets executed, even if it
+   * hasn't reached the batch size yet.
+   *
+   * @param value	the time window in msec, 0 to disable
+   */
+  public void setBatchTimeWindow(int value) {
+    if (getOptionManager().isValid("batchTimeWindow", value)) {
+      m_BatchTimeWindow = value;
+      reset();
+    }
+  }
+
+  /**
+   * Returns the time window after which a batch gets executed, even if it
+   * hasn't reached the batch size yet.
+   *
+   * @return		the time window in msec, 0 if disabled
+   */
+  public int getBatchTimeWindow() {
+    return m_BatchTimeWindow;
+  }
+
+  /**
+   * Returns the tip text for this property.
+   *
+   * @return 		tip text for this property suitable for
+   * 			displaying in the GUI or for listing the options.
+   */
+  public String batchTimeWindowTipText() {
+    return "The time window in msec after which a batch gets executed, even if it hasn't reached the batch size yet (checked whenever a token arrives or output gets polled); 0 to disable.";
+  }
+
   /**
    * Returns the class that the consumer accepts.
    *
@@ -171,7 +300,7 @@ public class SPy
    */
   @Override
   public Class[] accepts() {
-    return new Class[]{String.class, String[].class};
+    return new Class[]{String.class, String[].class, ScratchFile.class, ScratchFile[].class};
   }
 
   /**
@@ -196,11 +325,8 @@ public class SPy
     result = super.setUp();
 
     if (result == null) {
-      m_Connection = (SimpleDockerConnection) ActorUtils.findClosestType(this, SimpleDockerConnection.class, true);
-      if (m_Connection == null)
-        result = "No " + Utils.classToString(SimpleDockerConnection.class) + " actor found!";
-      else if (m_Connection.getAcualBinary() == null)
-        result = "No docker binary available from: " + m_Connection.getFullName();
+      if ((m_BatchSize > 1) && !m_Command.supportsBatch())
+        result = "Command does not support batch mode: " + m_Command.getClass().getName();
     }
 
     if (result == null) {
@@ -209,6 +335,18 @@ public class SPy
         result = "No " + Utils.classToString(SPyConfiguration.class) + " actor found!";
     }
 
+    if (result == null) {
+      m_Connection = (SimpleDockerConnection) ActorUtils.findClosestType(this, SimpleDockerConnection.class, true);
+      if (m_Connection == null) {
+        // native binaries don't require docker (unless falling back to docker)
+        if (m_Configuration.getBackend() != ExecutionBackend.NATIVE)
+          result = "No " + Utils.classToString(SimpleDockerConnection.class) + " actor found!";
+      }
+      else if (m_Connection.getAcualBinary() == null) {
+        result = "No docker binary available from: " + m_Connection.getFullName();
+      }
+    }
+
     return result;
   }
 
@@ -219,8 +357,10 @@ public class SPy
    */
   @Override
   protected String doExecute() {
-    String	result;
-    String[]	args;
+    String		result;
+    String[]		args;
+    ScratchFile[]	files;
+    int			i;
 
     result = null;
     args   = new String[0];
@@ -229,6 +369,14 @@ public class SPy
       args = new String[]{m_InputToken.getPayload(String.class)};
     else if (m_InputToken.hasPayload(String[].class))
       args = m_InputToken.getPayload(String[].class);
+    else if (m_InputToken.hasPayload(ScratchFile.class))
+      args = new String[]{m_InputToken.getPayload(ScratchFile.class).getFile().getAbsolutePath()};
+    else if (m_InputToken.hasPayload(ScratchFile[].class)) {
+      files = m_InputToken.getPayload(ScratchFile[].class);
+      args  = new String[files.length];
+      for (i = 0; i < files.length; i++)
+        args[i] = files[i].getFile().getAbsolutePath();
+    }
     else
       result = m_InputToken.unhandledData();
 
@@ -250,12 +398,90 @@ public class SPy
       m_Command.setFlowContext(this);
       m_Command.setConnection(m_Connection);
       m_Command.setConfiguration(m_Configuration);
-      result = m_Command.execute(args);
+      if (m_BatchSize > 1)
+        result = addToBatch(args);
+      else
+        result = m_Command.execute(args);
     }
 
     return result;
   }
 
+  /**
+   * Adds the arguments to the current batch and executes the batch if
+   * the batch size or time window has been reached.
+   *
+   * @param args	the arguments to add
+   * @return		null if successful, otherwise error message
+   */
+  protected String addToBatch(String[] args) {
+    try {
+      m_Batch.add(m_Command.prepareBatchItem(args));
+    }
+    catch (Exception e) {
+      return handleException("Failed to prepare batch item: " + Utils.flatten(args, " "), e);
+    }
+    if (m_BatchStart == -1)
+      m_BatchStart = System.currentTimeMillis();
+
+    if ((m_Batch.size() >= m_BatchSize) || isBatchWindowExpired())
+      return executeBatch();
+
+    return null;
+  }
+
+  /**
+   * Checks whether the time window of the current batch has expired.
+   *
+   * @return		true if expired
+   */
+  protected boolean isBatchWindowExpired() {
+    return (m_BatchTimeWindow > 0) && (m_BatchStart != -1) && (System.currentTimeMillis() - m_BatchStart >= m_BatchTimeWindow);
+  }
+
+  /**
+   * Checks whether the current (partial) batch needs executing, i.e., when
+   * its time window has expired or when no more tokens can arrive.
+   *
+   * @return		true if to flush
+   */
+  protected boolean isBatchFlushRequired() {
+    return !m_Batch.isEmpty() && (isBatchWindowExpired() || !PendingInputHelper.hasPendingInput(this));
+  }
+
+  /**
+   * Executes the current batch.
+   *
+   * @return		null if successful, otherwise error message
+   */
+  protected String executeBatch() {
+    String		result;
+    List<BatchItem>	batch;
+    List<String>	errors;
+
+    batch        = m_Batch;
+    m_Batch      = new ArrayList<>();
+    m_BatchStart = -1;
+    if (batch.isEmpty())
+      return null;
+
+    if (isLoggingEnabled())
+      getLogger().info("Executing batch of " + batch.size() + " item(s)");
+
+    result = m_Command.executeBatch(batch);
+    errors = new ArrayList<>();
+    for (BatchItem item: batch) {
+      if (item.hasError())
+        errors.add(item.getError());
+      else if (item.hasOutput())
+        m_BatchOutput.add(item.getOutput());
+    }
+    if ((result == null) && !errors.isEmpty())
+      result = Utils.flatten(errors, "\n");
+
+    return result;
+  }
+
   /**
    * Checks whether there is pending output to be collected after
    * executing the flow item.
@@ -264,11 +490,12 @@ public class SPy
    */
   @Override
   public boolean hasPendingOutput() {
-    return m_Command.hasOutput();
+    return !m_BatchOutput.isEmpty() || m_Command.hasOutput() || isBatchFlushRequired();
   }
 
   /**
-   * Returns the generated token.
+   * Returns the generated token. Executes the current (partial) batch
+   * first, if required. Errors of the batch get reported via the error handler.
    *
    * @return		the generated token
    */
@@ -276,10 +503,20 @@ public class SPy
   public Token output() {
     Token	result;
     Object	output;
+    String	msg;
 
     result = null;
 
-    output = m_Command.output();
+    if (m_BatchOutput.isEmpty() && isBatchFlushRequired()) {
+      msg = executeBatch();
+      if (msg != null)
+        getErrorHandler().handleError(this, "output", msg);
+    }
+
+    if (!m_BatchOutput.isEmpty())
+      output = m_BatchOutput.remove(0);
+    else
+      output = m_Command.output();
     if (output != null)
       result = new Token(output);
 
@@ -295,6 +532,26 @@ public class SPy
     super.stopExecution();
   }
 
+  /**
+   * Cleans up after the execution has finished. Executes any remaining
+   * batch items (eg if the output did not get polled anymore), though their
+   * output cannot be forwarded anymore.
+   */
+  @Override
+  public void wrapUp() {
+    String	msg;
+
+    if ((m_Batch != null) && !m_Batch.isEmpty() && !isStopped()) {
+      getLogger().warning("Executing remaining " + m_Batch.size() + " batch item(s), output will not get forwarded");
+      msg = executeBatch();
+      if (msg != null)
+        getLogger().severe(msg);
+      m_BatchOutput.clear();
+    }
+
+    super.wrapUp();
+  }
+
   /**
    * Cleans up after the execution has finished. Also removes graphical
    * components.
@@ -0,0 +1,209 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * DockerEngineClientTest.java
+ * Copyright (C) 2023 University of Waikato, Hamilton, New Zealand
+ */
+
+package adams.core.command.docker;
+
+import adams.core.command.docker.StubDockerDaemon.Request;
+import adams.test.AdamsTestCase;
+import junit.framework.Test;
+import junit.framework.TestSuite;
+import net.minidev.json.JSONObject;
+import net.minidev.json.parser.JSONParser;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+
+/**
+ * Tests the request framing of the {@link DockerEngineClient} against a
+ * stub daemon.
+ *
+ * @author fracpete (fracpete at waikato dot ac dot nz)
+ */
+public class DockerEngineClientTest
+  extends AdamsTestCase {
+
+  /** the stub daemon. */
+  protected StubDockerDaemon m_Daemon;
+
+  /** the client. */
+  protected DockerEngineClient m_Client;
+
+  /**
+   * Constructs the test case. Called by subclasses.
+   *
+   * @param name 	the name of the test
+   */
+  public DockerEngineClientTest(String name) {
+    super(name);
+  }
+
+  /**
+   * Called by JUnit before each test method.
+   *
+   * @throws Exception	if an error occurs
+   */
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+
+    m_Daemon = new StubDockerDaemon();
+    m_Client = new DockerEngineClient(m_Daemon.getEndpoint(), DockerEngineClient.DEFAULT_API_VERSION, 2);
+  }
+
+  /**
+   * Called by JUnit after each test method.
+   *
+   * @throws Exception	if tear-down fails
+   */
+  @Override
+  protected void tearDown() throws Exception {
+    m_Client.close();
+    m_Daemon.close();
+
+    super.tearDown();
+  }
+
+  /**
+   * Tests the request line and headers of a request with a JSON body.
+   *
+   * @throws Exception	if the test fails
+   */
+  public void testRequestWithBody() throws Exception {
+    Request	request;
+    String	id;
+    JSONObject	body;
+
+    m_Daemon.on("POST", "/v1.41/containers/create?name=job+1", StubDockerDaemon.json(201, "{\"Id\":\"c1\",\"Warnings\":[]}"));
+    id = m_Client.createContainer("job 1", "alpine:3", null, Arrays.asList("echo", "hi"), "1000:1000", Collections.singletonList("/tmp:/data"), false);
+    assertEquals("container ID", "c1", id);
+
+    request = m_Daemon.find("POST", "/v1.41/containers/create?name=job+1");
+    assertNotNull("request not received", request);
+    assertEquals("request line", "POST /v1.41/containers/create?name=job+1 HTTP/1.1", request.requestLine);
+    assertEquals("host", "docker", request.headers.get("host"));
+    assertEquals("content type", "application/json", request.headers.get("content-type"));
+    assertEquals("content length", "" + request.body.length, request.headers.get("content-length"));
+    body = (JSONObject) new JSONParser(JSONParser.MODE_PERMISSIVE).parse(request.getBodyAsString());
+    assertEquals("image", "alpine:3", body.get("Image"));
+    assertEquals("cmd", Arrays.asList("echo", "hi"), body.get("Cmd"));
+    assertEquals("user", "1000:1000", body.get("User"));
+    assertEquals("binds", Collections.singletonList("/tmp:/data"), ((JSONObject) body.get("HostConfig")).get("Binds"));
+    assertFalse("upgrade", request.headers.containsKey("upgrade"));
+  }
+
+  /**
+   * Tests the headers of a request without body.
+   *
+   * @throws Exception	if the test fails
+   */
+  public void testRequestWithoutBody() throws Exception {
+    Request			request;
+    EngineConnection.Response	response;
+
+    m_Daemon.on("GET", "/v1.41/version", StubDockerDaemon.json(200, "{\"ApiVersion\":\"1.41\"}"));
+    response = m_Client.request("GET", "/version", null);
+    assertEquals("status", 200, response.getStatus());
+    assertEquals("body", "{\"ApiVersion\":\"1.41\"}", response.getBodyAsString());
+
+    request = m_Daemon.find("GET", "/v1.41/version");
+    assertNotNull("request not received", request);
+    assertEquals("content length", "0", request.headers.get("content-length"));
+    assertFalse("content type", request.headers.containsKey("content-type"));
+  }
+
+  /**
+   * Tests reading a chunked response and re-using the connection.
+   *
+   * @throws Exception	if the test fails
+   */
+  public void testChunkedAndKeepAlive() throws Exception {
+    EngineConnection.Response	response;
+
+    m_Daemon.on("GET", "/v1.41/info", StubDockerDaemon.chunked(200, "{\"Containers\":", "3,\"Images\":", "12}"));
+    m_Daemon.on("GET", "/v1.41/version", StubDockerDaemon.json(200, "{}"));
+    response = m_Client.request("GET", "/info", null);
+    assertEquals("chunked body", "{\"Containers\":3,\"Images\":12}", new String(response.getBody(), StandardCharsets.UTF_8));
+    m_Client.request("GET", "/version", null);
+
+    assertEquals("requests", 2, m_Daemon.getRequests().size());
+    assertEquals("same connection", m_Daemon.getRequests().get(0).connection, m_Daemon.getRequests().get(1).connection);
+  }
+
+  /**
+   * Tests the error reporting for unsuccessful requests.
+   *
+   * @throws Exception	if the test fails
+   */
+  public void testFailedRequest() throws Exception {
+    try {
+      m_Client.startContainer("missing");
+      fail("no exception for HTTP 404");
+    }
+    catch (IOException e) {
+      assertTrue("status in message: " + e.getMessage(), e.getMessage().contains("404"));
+    }
+  }
+
+  /**
+   * Tests the request for hijacking the connection.
+   *
+   * @throws Exception	if the test fails
+   */
+  public void testHijack() throws Exception {
+    Request		request;
+    EngineConnection	conn;
+
+    m_Daemon.on("POST", "/v1.41/containers/c1/attach?stream=1&stdout=1&stderr=1", StubDockerDaemon.upgrade());
+    conn = m_Client.attachContainer("c1");
+    try {
+      assertFalse("hijacked connection re-usable", conn.isReusable());
+      assertEquals("end of stream", -1, conn.getStream().read());
+    }
+    finally {
+      conn.close();
+    }
+
+    request = m_Daemon.find("POST", "/v1.41/containers/c1/attach?stream=1&stdout=1&stderr=1");
+    assertNotNull("request not received", request);
+    assertEquals("connection", "Upgrade", request.headers.get("connection"));
+    assertEquals("upgrade", "tcp", request.headers.get("upgrade"));
+    assertEquals("content length", "0", request.headers.get("content-length"));
+  }
+
+  /**
+   * Returns a test suite.
+   *
+   * @return		the test suite
+   */
+  public static Test suite() {
+    return new TestSuite(DockerEngineClientTest.class);
+  }
+
+  /**
+   * Runs the test from commandline.
+   *
+   * @param args	ignored
+   */
+  public static void main(String[] args) {
+    runTest(suite());
+  }
+}
@@ -0,0 +1,233 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * EndpointBalancerTest.java
+ * Copyright (C) 2023 University of Waikato, Hamilton, New Zealand
+ */
+
+package adams.core.command.docker;
+
+import adams.test.AdamsTestCase;
+import junit.framework.Test;
+import junit.framework.TestSuite;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Tests the {@link EndpointBalancer}. Health checks are run against
+ * stand-in daemons, see {@link StubDockerBinary}.
+ *
+ * @author fracpete (fracpete at waikato dot ac dot nz)
+ */
+public class EndpointBalancerTest
+  extends AdamsTestCase {
+
+  /** the first endpoint. */
+  public final static String ENDPOINT_A = "tcp://a:2375";
+
+  /** the second endpoint. */
+  public final static String ENDPOINT_B = "tcp://b:2375";
+
+  /** the stand-in docker binary. */
+  protected StubDockerBinary m_Binary;
+
+  /**
+   * Constructs the test case. Called by subclasses.
+   *
+   * @param name 	the name of the test
+   */
+  public EndpointBalancerTest(String name) {
+    super(name);
+  }
+
+  /**
+   * Called by JUnit after each test method.
+   *
+   * @throws Exception	if tear-down fails
+   */
+  @Override
+  protected void tearDown() throws Exception {
+    if (m_Binary != null) {
+      m_Binary.close();
+      m_Binary = null;
+    }
+
+    super.tearDown();
+  }
+
+  /**
+   * Returns a balancer with endpoint A (capacity 2) and B (capacity 1).
+   *
+   * @param binary	the docker binary
+   * @param maxFailures	the number of consecutive failures
+   * @return		the balancer
+   */
+  protected EndpointBalancer newBalancer(String binary, int maxFailures) {
+    EndpointBalancer	result;
+
+    result = new EndpointBalancer(binary, maxFailures);
+    result.addEndpoint(ENDPOINT_A, 2);
+    result.addEndpoint(ENDPOINT_B, 1);
+
+    return result;
+  }
+
+  /**
+   * Tests that invocations get spread according to capacity and load.
+   */
+  public void testSelection() {
+    EndpointBalancer	balancer;
+    List<String>	acquired;
+    int			i;
+
+    balancer = newBalancer("docker", 3);
+    assertEquals("endpoints", Arrays.asList(ENDPOINT_A, ENDPOINT_B), balancer.getEndpoints());
+
+    acquired = new ArrayList<>();
+    for (i = 0; i < 6; i++)
+      acquired.add(balancer.acquire());
+    assertEquals("assignment", Arrays.asList(ENDPOINT_A, ENDPOINT_A, ENDPOINT_B, ENDPOINT_A, ENDPOINT_A, ENDPOINT_B), acquired);
+    assertEquals("in-flight A", 4, balancer.getState(ENDPOINT_A).getInFlight());
+    assertEquals("in-flight B", 2, balancer.getState(ENDPOINT_B).getInFlight());
+
+    // capacity is only a share, not a limit
+    assertNotNull("over capacity", balancer.acquire());
+  }
+
+  /**
+   * Tests that releasing invocations frees up the endpoint again.
+   */
+  public void testReleaseAccounting() {
+    EndpointBalancer	balancer;
+
+    balancer = newBalancer("docker", 3);
+    assertEquals("first", ENDPOINT_A, balancer.acquire());
+    assertEquals("second", ENDPOINT_A, balancer.acquire());
+    assertEquals("third", ENDPOINT_B, balancer.acquire());
+
+    balancer.release(ENDPOINT_A, false);
+    assertEquals("in-flight A", 1, balancer.getState(ENDPOINT_A).getInFlight());
+    assertEquals("released slot re-used", ENDPOINT_A, balancer.acquire());
+
+    balancer.release(ENDPOINT_B, false);
+    balancer.release(ENDPOINT_B, false);
+    assertEquals("in-flight B not negative", 0, balancer.getState(ENDPOINT_B).getInFlight());
+    assertEquals("total B", 1, balancer.getState(ENDPOINT_B).getTotal());
+    assertEquals("total A", 3, balancer.getState(ENDPOINT_A).getTotal());
+
+    // unknown endpoints get ignored
+    balancer.release("tcp://unknown:2375", true);
+    assertTrue("A healthy", balancer.isHealthy(ENDPOINT_A));
+    assertFalse("unknown healthy", balancer.isHealthy("tcp://unknown:2375"));
+  }
+
+  /**
+   * Tests that endpoints with consecutive daemon errors get skipped.
+   */
+  public void testUnhealthySkipping() {
+    EndpointBalancer	balancer;
+    int			i;
+
+    balancer = newBalancer("docker", 2);
+
+    // a success resets the consecutive failures
+    balancer.release(balancer.acquire(), true);
+    balancer.release(balancer.acquire(), false);
+    balancer.release(balancer.acquire(), true);
+    assertTrue("A still healthy", balancer.isHealthy(ENDPOINT_A));
+
+    balancer.release(balancer.acquire(), true);
+    assertFalse("A taken out of rotation", balancer.isHealthy(ENDPOINT_A));
+    assertEquals("in-flight A", 0, balancer.getState(ENDPOINT_A).getInFlight());
+    for (i = 0; i < 3; i++)
+      assertEquals("A skipped", ENDPOINT_B, balancer.acquire());
+
+    balancer.markUnhealthy(ENDPOINT_B);
+    assertFalse("B taken out of rotation", balancer.isHealthy(ENDPOINT_B));
+    assertNull("no healthy endpoint", balancer.acquire());
+
+    // releasing invocations still in flight on an unhealthy endpoint
+    for (i = 0; i < 3; i++)
+      balancer.release(ENDPOINT_B, false);
+    assertEquals("in-flight B", 0, balancer.getState(ENDPOINT_B).getInFlight());
+    assertFalse("B still out of rotation", balancer.isHealthy(ENDPOINT_B));
+  }
+
+  /**
+   * Tests the health checks against stand-in daemons.
+   *
+   * @throws Exception	if the test fails
+   */
+  public void testHealthCheck() throws Exception {
+    EndpointBalancer	balancer;
+
+    if (!StubDockerBinary.isSupported())
+      return;
+
+    m_Binary = new StubDockerBinary();
+    balancer = newBalancer(m_Binary.getBinary(), 1);
+    m_Binary.setDown("b", true);
+    balancer.checkHealth(10000);
+    assertTrue("A healthy", balancer.isHealthy(ENDPOINT_A));
+    assertFalse("B down", balancer.isHealthy(ENDPOINT_B));
+    assertEquals("B skipped", ENDPOINT_A, balancer.acquire());
+    assertEquals("B skipped", ENDPOINT_A, balancer.acquire());
+    assertEquals("B skipped", ENDPOINT_A, balancer.acquire());
+
+    balancer.release(ENDPOINT_A, true);
+    assertFalse("A taken out of rotation", balancer.isHealthy(ENDPOINT_A));
+    assertNull("no healthy endpoint", balancer.acquire());
+
+    m_Binary.setDown("b", false);
+    balancer.checkHealth(10000);
+    assertTrue("A back in rotation", balancer.isHealthy(ENDPOINT_A));
+    assertTrue("B back in rotation", balancer.isHealthy(ENDPOINT_B));
+    assertEquals("B least loaded", ENDPOINT_B, balancer.acquire());
+  }
+
+  /**
+   * Tests that a missing docker binary fails the health check.
+   */
+  public void testHealthCheckMissingBinary() {
+    EndpointBalancer	balancer;
+
+    balancer = newBalancer("/nonexistent/docker", 3);
+    balancer.checkHealth(5000);
+    assertFalse("A unhealthy", balancer.isHealthy(ENDPOINT_A));
+    assertFalse("B unhealthy", balancer.isHealthy(ENDPOINT_B));
+    assertNull("no healthy endpoint", balancer.acquire());
+  }
+
+  /**
+   * Returns a test suite.
+   *
+   * @return		the test suite
+   */
+  public static Test suite() {
+    return new TestSuite(EndpointBalancerTest.class);
+  }
+
+  /**
+   * Runs the test from commandline.
+   *
+   * @param args	ignored
+   */
+  public static void main(String[] args) {
+    runTest(suite());
+  }
+}
@@ -0,0 +1,258 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * EngineRunnerTest.java
+ * Copyright (C) 2023 University of Waikato, Hamilton, New Zealand
+ */
+
+package adams.core.command.docker;
+
+import adams.core.command.docker.StubDockerDaemon.Request;
+import adams.test.AdamsTestCase;
+import junit.framework.Test;
+import junit.framework.TestSuite;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Tests the {@link EngineRunner} (exit codes, demultiplexing of the output,
+ * clean-up of containers) against a stub daemon.
+ *
+ * @author fracpete (fracpete at waikato dot ac dot nz)
+ */
+public class EngineRunnerTest
+  extends AdamsTestCase {
+
+  /** the stream type for stdout. */
+  public final static int STDOUT = 1;
+
+  /** the stream type for stderr. */
+  public final static int STDERR = 2;
+
+  /** the maximum time to wait for a runner in msec. */
+  public final static int TIMEOUT = 10000;
+
+  /** the stub daemon. */
+  protected StubDockerDaemon m_Daemon;
+
+  /** the client. */
+  protected DockerEngineClient m_Client;
+
+  /**
+   * Constructs the test case. Called by subclasses.
+   *
+   * @param name 	the name of the test
+   */
+  public EngineRunnerTest(String name) {
+    super(name);
+  }
+
+  /**
+   * Called by JUnit before each test method.
+   *
+   * @throws Exception	if an error occurs
+   */
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+
+    m_Daemon = new StubDockerDaemon();
+    m_Client = new DockerEngineClient(m_Daemon.getEndpoint(), DockerEngineClient.DEFAULT_API_VERSION, 2);
+  }
+
+  /**
+   * Called by JUnit after each test method.
+   *
+   * @throws Exception	if tear-down fails
+   */
+  @Override
+  protected void tearDown() throws Exception {
+    m_Client.close();
+    m_Daemon.close();
+
+    super.tearDown();
+  }
+
+  /**
+   * Registers the handlers for running container "c1" with the specified
+   * output frames and exit code.
+   *
+   * @param exitCode	the exit code to report
+   * @param frames	the output frames (stream type, payload)
+   */
+  protected void setUpContainer(int exitCode, Object... frames) {
+    m_Daemon.on("POST", "/v1.41/containers/create", StubDockerDaemon.json(201, "{\"Id\":\"c1\",\"Warnings\":[]}"));
+    m_Daemon.on("POST", "/v1.41/containers/c1/attach?stream=1&stdout=1&stderr=1", StubDockerDaemon.upgrade(frames));
+    m_Daemon.on("POST", "/v1.41/containers/c1/start", StubDockerDaemon.json(204, null));
+    m_Daemon.on("POST", "/v1.41/containers/c1/wait", StubDockerDaemon.json(200, "{\"StatusCode\":" + exitCode + "}"));
+    m_Daemon.on("DELETE", "/v1.41/containers/c1?force=1", StubDockerDaemon.json(204, null));
+  }
+
+  /**
+   * Runs the runner and waits for it to finish.
+   *
+   * @param runner	the runner to execute
+   * @throws Exception	if starting fails or the runner does not finish in time
+   */
+  protected void run(EngineRunner runner) throws Exception {
+    runner.start();
+    assertTrue("runner did not finish in time", runner.waitFor(TIMEOUT));
+  }
+
+  /**
+   * Returns the method and path of the recorded requests.
+   *
+   * @return		the requests
+   */
+  protected List<String> getRequests() {
+    List<String>	result;
+
+    result = new ArrayList<>();
+    for (Request request: m_Daemon.getRequests())
+      result.add(request.method + " " + request.path);
+
+    return result;
+  }
+
+  /**
+   * Tests running a container: sequence of requests, exit code and removal.
+   *
+   * @throws Exception	if the test fails
+   */
+  public void testRunExitCode() throws Exception {
+    EngineRunner	runner;
+
+    setUpContainer(3, STDOUT, "done\n");
+    runner = new EngineRunner(m_Client, "alpine:3", null, Arrays.asList("sh", "-c", "exit 3"), null, new ArrayList<>(), false);
+    run(runner);
+
+    assertEquals("exit code", 3, runner.getExitCode());
+    assertFalse("succeeded", runner.hasSucceeded());
+    assertEquals("container ID", "c1", runner.getContainerID());
+    assertEquals("stdout", "done\n", runner.getStdOut());
+    assertEquals("requests", Arrays.asList(
+      "POST /v1.41/containers/create",
+      "POST /v1.41/containers/c1/attach?stream=1&stdout=1&stderr=1",
+      "POST /v1.41/containers/c1/start",
+      "POST /v1.41/containers/c1/wait",
+      "DELETE /v1.41/containers/c1?force=1"), getRequests());
+  }
+
+  /**
+   * Tests demultiplexing of interleaved stdout/stderr frames, with lines
+   * spanning several frames and an unterminated last line.
+   *
+   * @throws Exception	if the test fails
+   */
+  public void testDemux() throws Exception {
+    EngineRunner	runner;
+    List<String>	stdout;
+    List<String>	stderr;
+
+    setUpContainer(0,
+      STDOUT, "hel",
+      STDOUT, "lo\nwor",
+      STDERR, "warn",
+      STDOUT, "",
+      STDOUT, "ld\r\n",
+      STDERR, "ing\nfailed\n",
+      STDOUT, "tail");
+    stdout = Collections.synchronizedList(new ArrayList<>());
+    stderr = Collections.synchronizedList(new ArrayList<>());
+    runner = new EngineRunner(m_Client, "alpine:3", null, Collections.singletonList("true"), null, new ArrayList<>(), false);
+    runner.setLineListener((String line, boolean isStdout) -> (isStdout ? stdout : stderr).add(line));
+    run(runner);
+
+    assertEquals("exit code", 0, runner.getExitCode());
+    assertEquals("stdout", "hello\nworld\ntail\n", runner.getStdOut());
+    assertEquals("stderr", "warning\nfailed\n", runner.getStdErr());
+    assertEquals("stdout lines", Arrays.asList("hello", "world", "tail"), stdout);
+    assertEquals("stderr lines", Arrays.asList("warning", "failed"), stderr);
+  }
+
+  /**
+   * Tests executing a command in a running container.
+   *
+   * @throws Exception	if the test fails
+   */
+  public void testExec() throws Exception {
+    EngineRunner	runner;
+    Request		request;
+
+    m_Daemon.on("POST", "/v1.41/containers/worker/exec", StubDockerDaemon.json(201, "{\"Id\":\"e1\"}"));
+    m_Daemon.on("POST", "/v1.41/exec/e1/start", StubDockerDaemon.upgrade(STDOUT, "out\n", STDERR, "err\n"));
+    m_Daemon.on("GET", "/v1.41/exec/e1/json", StubDockerDaemon.json(200, "{\"Running\":false,\"ExitCode\":42}"));
+    runner = new EngineRunner(m_Client, "worker", Arrays.asList("gdalinfo", "/data/in.tif"));
+    run(runner);
+
+    assertEquals("exit code", 42, runner.getExitCode());
+    assertEquals("stdout", "out\n", runner.getStdOut());
+    assertEquals("stderr", "err\n", runner.getStdErr());
+    assertEquals("requests", Arrays.asList(
+      "POST /v1.41/containers/worker/exec",
+      "POST /v1.41/exec/e1/start",
+      "GET /v1.41/exec/e1/json"), getRequests());
+    request = m_Daemon.find("POST", "/v1.41/exec/e1/start");
+    assertEquals("upgrade", "tcp", request.headers.get("upgrade"));
+    assertEquals("content length", "" + request.body.length, request.headers.get("content-length"));
+    assertTrue("detach", request.getBodyAsString().contains("\"Detach\":false"));
+  }
+
+  /**
+   * Tests that a container gets removed if starting it fails.
+   *
+   * @throws Exception	if the test fails
+   */
+  public void testStartFailure() throws Exception {
+    EngineRunner	runner;
+
+    setUpContainer(0);
+    m_Daemon.on("POST", "/v1.41/containers/c1/start", StubDockerDaemon.json(500, "{\"message\":\"cannot start\"}"));
+    runner = new EngineRunner(m_Client, "alpine:3", null, Collections.singletonList("true"), null, new ArrayList<>(), false);
+    try {
+      runner.start();
+      fail("no exception for failed start");
+    }
+    catch (IOException e) {
+      assertTrue("message: " + e.getMessage(), e.getMessage().contains("cannot start"));
+    }
+
+    assertNotNull("container not removed", m_Daemon.find("DELETE", "/v1.41/containers/c1?force=1"));
+    assertTrue("output complete", runner.isOutputComplete());
+  }
+
+  /**
+   * Returns a test suite.
+   *
+   * @return		the test suite
+   */
+  public static Test suite() {
+    return new TestSuite(EngineRunnerTest.class);
+  }
+
+  /**
+   * Runs the test from commandline.
+   *
+   * @param args	ignored
+   */
+  public static void main(String[] args) {
+    runTest(suite());
+  }
+}
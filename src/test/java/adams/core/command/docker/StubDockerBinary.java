@@ -0,0 +1,115 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * StubDockerBinary.java
+ * Copyright (C) 2023 University of Waikato, Hamilton, New Zealand
+ */
+
+package adams.core.command.docker;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+/**
+ * Stand-in for the docker binary (shell script) that answers "docker version"
+ * for the daemon specified via DOCKER_HOST, unless the host got marked as down.
+ * Only supported on platforms with a POSIX shell.
+ *
+ * @author fracpete (fracpete at waikato dot ac dot nz)
+ */
+public class StubDockerBinary
+  implements Closeable {
+
+  /** the directory with the script and the markers. */
+  protected File m_Dir;
+
+  /** the script. */
+  protected File m_Binary;
+
+  /**
+   * Creates the stand-in binary in a temporary directory.
+   *
+   * @throws IOException	if creating the binary fails
+   */
+  public StubDockerBinary() throws IOException {
+    m_Dir    = Files.createTempDirectory("daemons").toFile();
+    m_Binary = new File(m_Dir, "docker");
+    Files.write(m_Binary.toPath(), Arrays.asList(
+      "#!/bin/sh",
+      "host=${DOCKER_HOST#*://}",
+      "host=${host%%:*}",
+      "if [ -f \"" + m_Dir.getAbsolutePath() + "/$host.down\" ]; then",
+      "  echo \"Cannot connect to the Docker daemon at $DOCKER_HOST\" >&2",
+      "  exit 1",
+      "fi",
+      "echo 24.0.7"), StandardCharsets.UTF_8);
+    m_Binary.setExecutable(true);
+  }
+
+  /**
+   * Returns whether the stand-in binary can be used on this platform.
+   *
+   * @return		true if supported
+   */
+  public static boolean isSupported() {
+    return (File.separatorChar == '/') && new File("/bin/sh").exists();
+  }
+
+  /**
+   * Returns the path of the binary.
+   *
+   * @return		the path
+   */
+  public String getBinary() {
+    return m_Binary.getAbsolutePath();
+  }
+
+  /**
+   * Marks the daemon on the host as down or up.
+   *
+   * @param host	the host
+   * @param down	whether down or up
+   * @throws IOException	if marking fails
+   */
+  public void setDown(String host, boolean down) throws IOException {
+    File	file;
+
+    file = new File(m_Dir, host + ".down");
+    if (down)
+      file.createNewFile();
+    else
+      file.delete();
+  }
+
+  /**
+   * Removes the binary and the markers.
+   */
+  @Override
+  public void close() {
+    File[]	files;
+
+    files = m_Dir.listFiles();
+    if (files != null) {
+      for (File file: files)
+	file.delete();
+    }
+    m_Dir.delete();
+  }
+}
@@ -0,0 +1,424 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * StubDockerDaemon.java
+ * Copyright (C) 2023 University of Waikato, Hamilton, New Zealand
+ */
+
+package adams.core.command.docker;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Minimal stand-in for the docker daemon, listening on a loopback TCP port.
+ * Records all requests and answers them with canned responses that get
+ * registered per method and path (including query).
+ *
+ * @author fracpete (fracpete at waikato dot ac dot nz)
+ */
+public class StubDockerDaemon
+  implements Closeable {
+
+  /**
+   * A recorded request.
+   */
+  public static class Request {
+
+    /** the connection the request was received on. */
+    public final int connection;
+
+    /** the request line. */
+    public final String requestLine;
+
+    /** the method. */
+    public final String method;
+
+    /** the path, including query. */
+    public final String path;
+
+    /** the headers (lower case names). */
+    public final Map<String,String> headers;
+
+    /** the body. */
+    public final byte[] body;
+
+    /**
+     * Initializes the request.
+     *
+     * @param connection	the connection index
+     * @param requestLine	the request line
+     * @param headers		the headers
+     * @param body		the body
+     */
+    public Request(int connection, String requestLine, Map<String,String> headers, byte[] body) {
+      String[]	parts;
+
+      parts            = requestLine.split(" ");
+      this.connection  = connection;
+      this.requestLine = requestLine;
+      this.method      = parts[0];
+      this.path        = parts[1];
+      this.headers     = headers;
+      this.body        = body;
+    }
+
+    /**
+     * Returns the body as string.
+     *
+     * @return		the body
+     */
+    public String getBodyAsString() {
+      return new String(body, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns the request line.
+     *
+     * @return		the request line
+     */
+    @Override
+    public String toString() {
+      return requestLine;
+    }
+  }
+
+  /**
+   * Writes the response for a request.
+   */
+  public interface Handler {
+
+    /**
+     * Writes the response.
+     *
+     * @param request	the request
+     * @param out	the stream to write to
+     * @return		true if the connection can be kept alive
+     * @throws IOException	if writing fails
+     */
+    public boolean respond(Request request, OutputStream out) throws IOException;
+  }
+
+  /** the server socket. */
+  protected ServerSocket m_Server;
+
+  /** the handlers ("METHOD path"). */
+  protected Map<String,Handler> m_Handlers;
+
+  /** the recorded requests. */
+  protected List<Request> m_Requests;
+
+  /** the number of accepted connections. */
+  protected int m_Connections;
+
+  /** the open sockets. */
+  protected List<Socket> m_Sockets;
+
+  /**
+   * Starts the daemon on a free loopback port.
+   *
+   * @throws IOException	if the server socket cannot be opened
+   */
+  public StubDockerDaemon() throws IOException {
+    Thread	acceptor;
+
+    m_Server   = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+    m_Handlers = new HashMap<>();
+    m_Requests = new ArrayList<>();
+    m_Sockets  = new ArrayList<>();
+    acceptor   = new Thread(this::accept, "stub docker daemon");
+    acceptor.setDaemon(true);
+    acceptor.start();
+  }
+
+  /**
+   * Returns the endpoint to connect to.
+   *
+   * @return		the endpoint (tcp://...)
+   */
+  public String getEndpoint() {
+    return "tcp://127.0.0.1:" + m_Server.getLocalPort();
+  }
+
+  /**
+   * Registers the handler for the method and path.
+   *
+   * @param method	the HTTP method
+   * @param path	the path, including query
+   * @param handler	the handler
+   */
+  public synchronized void on(String method, String path, Handler handler) {
+    m_Handlers.put(method + " " + path, handler);
+  }
+
+  /**
+   * Returns the recorded requests.
+   *
+   * @return		the requests (copy)
+   */
+  public synchronized List<Request> getRequests() {
+    return new ArrayList<>(m_Requests);
+  }
+
+  /**
+   * Returns the first recorded request with the method and path.
+   *
+   * @param method	the HTTP method
+   * @param path	the path, including query
+   * @return		the request, null if not found
+   */
+  public synchronized Request find(String method, String path) {
+    for (Request request: m_Requests) {
+      if (request.method.equals(method) && request.path.equals(path))
+	return request;
+    }
+    return null;
+  }
+
+  /**
+   * Accepts connections till the server gets closed.
+   */
+  protected void accept() {
+    Socket	socket;
+    int		index;
+
+    while (!m_Server.isClosed()) {
+      try {
+	socket = m_Server.accept();
+	synchronized (this) {
+	  index = m_Connections++;
+	  m_Sockets.add(socket);
+	}
+	startConnection(socket, index);
+      }
+      catch (IOException e) {
+	// server closed
+      }
+    }
+  }
+
+  /**
+   * Starts a thread for handling the connection.
+   *
+   * @param socket	the connection
+   * @param index	the index of the connection
+   */
+  protected void startConnection(final Socket socket, final int index) {
+    Thread	handler;
+
+    handler = new Thread(() -> serve(socket, index), "stub docker connection " + index);
+    handler.setDaemon(true);
+    handler.start();
+  }
+
+  /**
+   * Reads a line terminated by CRLF.
+   *
+   * @param in		the stream to read from
+   * @return		the line, null if the stream ended
+   * @throws IOException	if reading fails
+   */
+  protected String readLine(InputStream in) throws IOException {
+    ByteArrayOutputStream	line;
+    int				b;
+
+    line = new ByteArrayOutputStream();
+    while ((b = in.read()) != '\n') {
+      if (b == -1)
+	return null;
+      if (b != '\r')
+	line.write(b);
+    }
+
+    return line.toString(StandardCharsets.US_ASCII);
+  }
+
+  /**
+   * Handles the requests of a (kept alive) connection.
+   *
+   * @param socket	the connection
+   * @param index	the index of the connection
+   */
+  protected void serve(Socket socket, int index) {
+    InputStream		in;
+    OutputStream	out;
+    String		line;
+    String		requestLine;
+    Map<String,String>	headers;
+    byte[]		body;
+    int			pos;
+    int			read;
+    int			n;
+    Request		request;
+    Handler		handler;
+
+    try {
+      in  = new BufferedInputStream(socket.getInputStream());
+      out = socket.getOutputStream();
+      while ((requestLine = readLine(in)) != null) {
+	headers = new HashMap<>();
+	while (((line = readLine(in)) != null) && !line.isEmpty()) {
+	  pos = line.indexOf(':');
+	  headers.put(line.substring(0, pos).trim().toLowerCase(), line.substring(pos + 1).trim());
+	}
+	body = new byte[headers.containsKey("content-length") ? Integer.parseInt(headers.get("content-length")) : 0];
+	read = 0;
+	while (read < body.length) {
+	  n = in.read(body, read, body.length - read);
+	  if (n == -1)
+	    throw new IOException("Request body incomplete!");
+	  read += n;
+	}
+	request = new Request(index, requestLine, headers, body);
+	synchronized (this) {
+	  m_Requests.add(request);
+	  handler = m_Handlers.get(request.method + " " + request.path);
+	}
+	if (handler == null)
+	  handler = json(404, "{\"message\":\"no such route: " + request.path + "\"}");
+	if (!handler.respond(request, out))
+	  break;
+	out.flush();
+      }
+    }
+    catch (IOException e) {
+      // connection closed
+    }
+    finally {
+      try {
+	socket.close();
+      }
+      catch (IOException e) {
+	// ignored
+      }
+    }
+  }
+
+  /**
+   * Returns a handler that responds with a JSON body (or no body if null).
+   *
+   * @param status	the status code
+   * @param json	the JSON body, null for none
+   * @return		the handler
+   */
+  public static Handler json(final int status, final String json) {
+    return (request, out) -> {
+      byte[]	data;
+      data = (json == null) ? new byte[0] : json.getBytes(StandardCharsets.UTF_8);
+      out.write(("HTTP/1.1 " + status + " Stub\r\n"
+	+ "Content-Type: application/json\r\n"
+	+ "Content-Length: " + data.length + "\r\n"
+	+ "\r\n").getBytes(StandardCharsets.US_ASCII));
+      out.write(data);
+      return true;
+    };
+  }
+
+  /**
+   * Returns a handler that responds with a chunked JSON body.
+   *
+   * @param status	the status code
+   * @param chunks	the chunks of the body
+   * @return		the handler
+   */
+  public static Handler chunked(final int status, final String... chunks) {
+    return (request, out) -> {
+      byte[]	data;
+      out.write(("HTTP/1.1 " + status + " Stub\r\n"
+	+ "Content-Type: application/json\r\n"
+	+ "Transfer-Encoding: chunked\r\n"
+	+ "\r\n").getBytes(StandardCharsets.US_ASCII));
+      for (String chunk: chunks) {
+	data = chunk.getBytes(StandardCharsets.UTF_8);
+	out.write((Integer.toHexString(data.length) + "\r\n").getBytes(StandardCharsets.US_ASCII));
+	out.write(data);
+	out.write("\r\n".getBytes(StandardCharsets.US_ASCII));
+	out.flush();
+      }
+      out.write("0\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+      return true;
+    };
+  }
+
+  /**
+   * Returns a handler that upgrades the connection to a raw stream, writes
+   * the frames (multiplexed like docker does) and closes the connection.
+   *
+   * @param frames	the frames, each a stream type (1=stdout, 2=stderr) and payload
+   * @return		the handler
+   */
+  public static Handler upgrade(final Object... frames) {
+    return (request, out) -> {
+      byte[]	data;
+      byte[]	header;
+      int	i;
+      out.write(("HTTP/1.1 101 UPGRADED\r\n"
+	+ "Content-Type: application/vnd.docker.raw-stream\r\n"
+	+ "Connection: Upgrade\r\n"
+	+ "Upgrade: tcp\r\n"
+	+ "\r\n").getBytes(StandardCharsets.US_ASCII));
+      out.flush();
+      for (i = 0; i < frames.length; i += 2) {
+	data      = ((String) frames[i + 1]).getBytes(StandardCharsets.UTF_8);
+	header    = new byte[8];
+	header[0] = ((Integer) frames[i]).byteValue();
+	header[4] = (byte) (data.length >>> 24);
+	header[5] = (byte) (data.length >>> 16);
+	header[6] = (byte) (data.length >>> 8);
+	header[7] = (byte) data.length;
+	out.write(header);
+	out.write(data);
+	out.flush();
+      }
+      return false;
+    };
+  }
+
+  /**
+   * Stops the daemon and closes all connections.
+   */
+  @Override
+  public void close() {
+    try {
+      m_Server.close();
+    }
+    catch (IOException e) {
+      // ignored
+    }
+    synchronized (this) {
+      for (Socket socket: m_Sockets) {
+	try {
+	  socket.close();
+	}
+	catch (IOException e) {
+	  // ignored
+	}
+      }
+    }
+  }
+}
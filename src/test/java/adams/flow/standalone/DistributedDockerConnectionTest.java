@@ -0,0 +1,175 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/*
+ * DistributedDockerConnectionTest.java
+ * Copyright (C) 2023 University of Waikato, Hamilton, New Zealand
+ */
+
+package adams.flow.standalone;
+
+import adams.core.base.WeightedDockerEndpoint;
+import adams.core.command.docker.EndpointBalancer;
+import adams.core.command.docker.StubDockerBinary;
+import adams.test.AdamsTestCase;
+import junit.framework.Test;
+import junit.framework.TestSuite;
+
+import java.util.Arrays;
+
+/**
+ * Tests the {@link DistributedDockerConnection} standalone against stand-in
+ * daemons, see {@link StubDockerBinary}.
+ *
+ * @author fracpete (fracpete at waikato dot ac dot nz)
+ */
+public class DistributedDockerConnectionTest
+  extends AdamsTestCase {
+
+  /** the first endpoint. */
+  public final static String ENDPOINT_A = "tcp://a:2375";
+
+  /** the second endpoint. */
+  public final static String ENDPOINT_B = "tcp://b:2375";
+
+  /** the stand-in docker binary. */
+  protected StubDockerBinary m_Binary;
+
+  /** the connection. */
+  protected DistributedDockerConnection m_Connection;
+
+  /**
+   * Constructs the test case. Called by subclasses.
+   *
+   * @param name 	the name of the test
+   */
+  public DistributedDockerConnectionTest(String name) {
+    super(name);
+  }
+
+  /**
+   * Called by JUnit before each test method.
+   *
+   * @throws Exception	if an error occurs
+   */
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+
+    m_Connection = new DistributedDockerConnection();
+    m_Connection.setEndpoints(new WeightedDockerEndpoint[]{
+      new WeightedDockerEndpoint(ENDPOINT_A, 2),
+      new WeightedDockerEndpoint(ENDPOINT_B, 1),
+    });
+    m_Connection.setMaxFailures(2);
+  }
+
+  /**
+   * Called by JUnit after each test method.
+   *
+   * @throws Exception	if tear-down fails
+   */
+  @Override
+  protected void tearDown() throws Exception {
+    m_Connection.cleanUp();
+    if (m_Binary != null) {
+      m_Binary.close();
+      m_Binary = null;
+    }
+
+    super.tearDown();
+  }
+
+  /**
+   * Tests that the endpoints get handed to the balancer with their capacity.
+   */
+  public void testEndpointSelection() {
+    assertEquals("endpoints", Arrays.asList(ENDPOINT_A, ENDPOINT_B), m_Connection.getEndpointHosts());
+    assertEquals("first", ENDPOINT_A, m_Connection.acquireEndpoint());
+    assertEquals("second", ENDPOINT_A, m_Connection.acquireEndpoint());
+    assertEquals("third", ENDPOINT_B, m_Connection.acquireEndpoint());
+
+    m_Connection.releaseEndpoint(ENDPOINT_B, false);
+    assertEquals("released", ENDPOINT_B, m_Connection.acquireEndpoint());
+  }
+
+  /**
+   * Tests that failing endpoints get skipped.
+   */
+  public void testUnhealthySkipping() {
+    m_Connection.releaseEndpoint(m_Connection.acquireEndpoint(), true);
+    m_Connection.releaseEndpoint(m_Connection.acquireEndpoint(), true);
+    assertFalse("A taken out of rotation", m_Connection.getBalancer().isHealthy(ENDPOINT_A));
+    assertEquals("A skipped", ENDPOINT_B, m_Connection.acquireEndpoint());
+    assertEquals("A skipped", ENDPOINT_B, m_Connection.acquireEndpoint());
+
+    m_Connection.markUnhealthy(ENDPOINT_B);
+    assertNull("no healthy endpoint", m_Connection.acquireEndpoint());
+  }
+
+  /**
+   * Tests that changing the options discards the balancer and its state.
+   */
+  public void testReset() {
+    EndpointBalancer	balancer;
+
+    balancer = m_Connection.getBalancer();
+    m_Connection.markUnhealthy(ENDPOINT_A);
+    m_Connection.setMaxFailures(3);
+    assertNotSame("new balancer", balancer, m_Connection.getBalancer());
+    assertTrue("A back in rotation", m_Connection.getBalancer().isHealthy(ENDPOINT_A));
+  }
+
+  /**
+   * Tests the health checks against stand-in daemons.
+   *
+   * @throws Exception	if the test fails
+   */
+  public void testHealthCheck() throws Exception {
+    if (!StubDockerBinary.isSupported())
+      return;
+
+    m_Binary = new StubDockerBinary();
+    m_Binary.setDown("a", true);
+    m_Connection.setBinary(m_Binary.getBinary());
+    m_Connection.getBalancer().checkHealth(10000);
+    assertFalse("A down", m_Connection.getBalancer().isHealthy(ENDPOINT_A));
+    assertEquals("A skipped", ENDPOINT_B, m_Connection.acquireEndpoint());
+    assertEquals("A skipped", ENDPOINT_B, m_Connection.acquireEndpoint());
+
+    m_Binary.setDown("a", false);
+    m_Connection.getBalancer().checkHealth(10000);
+    assertTrue("A back in rotation", m_Connection.getBalancer().isHealthy(ENDPOINT_A));
+    assertEquals("A least loaded", ENDPOINT_A, m_Connection.acquireEndpoint());
+  }
+
+  /**
+   * Returns a test suite.
+   *
+   * @return		the test suite
+   */
+  public static Test suite() {
+    return new TestSuite(DistributedDockerConnectionTest.class);
+  }
+
+  /**
+   * Runs the test from commandline.
+   *
+   * @param args	ignored
+   */
+  public static void main(String[] args) {
+    runTest(suite());
+  }
+}